@@ -0,0 +1,204 @@
+package unze.ptf.woodcraft.woodcraft.dao;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import unze.ptf.woodcraft.woodcraft.db.ConnectionManager;
+import unze.ptf.woodcraft.woodcraft.db.Database;
+import unze.ptf.woodcraft.woodcraft.db.DatabaseInitializer;
+import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.model.NodePoint;
+import unze.ptf.woodcraft.woodcraft.model.Role;
+import unze.ptf.woodcraft.woodcraft.model.ShapePolygon;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentQueryBenchmark {
+    private static final int DOCUMENTS = 10_000;
+    private static final int NODES_PER_DOCUMENT = 12;
+    private static final String[] INDEXES = {
+            "idx_documents_user", "idx_materials_user", "idx_nodes_document", "idx_edges_document",
+            "idx_edges_start_node", "idx_edges_end_node", "idx_guides_document", "idx_shapes_document",
+            "idx_shapes_material", "idx_manual_shapes_document", "idx_dimensions_document"
+    };
+
+    // false drops the lookup indexes again to reproduce the full-scan behaviour before they existed.
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private Path home;
+    private String previousHome;
+    private int firstDocumentId;
+    private int nextDocument;
+    private final DocumentDao documentDao = new DocumentDao();
+    private final NodeDao nodeDao = new NodeDao();
+    private final EdgeDao edgeDao = new EdgeDao();
+    private final ShapeDao shapeDao = new ShapeDao();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        home = Files.createTempDirectory("woodcraft-bench");
+        previousHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.toString());
+        DatabaseInitializer.initialize();
+        int userId = new UserDao().createUser("bench", "-", Role.ADMIN);
+        Database.runInTransaction(connection -> populate(connection, userId));
+        if (!indexed) {
+            try (Connection connection = Database.getConnection(); Statement statement = connection.createStatement()) {
+                for (String index : INDEXES) {
+                    statement.executeUpdate("DROP INDEX " + index);
+                }
+            }
+        }
+        try (Connection connection = Database.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        // Pool counters for the trial, printed next to the scores: a rising wait per acquisition means the
+        // benchmark measured pool contention rather than the query.
+        ConnectionManager.Metrics metrics = Database.getMetrics();
+        System.out.printf("%nconnections: open=%d idle=%d, readers %d (avg wait %d ns), writer %d (avg wait %d ns)%n",
+                metrics.openConnections(), metrics.idleReaders(),
+                metrics.readerAcquisitions(), averageNanos(metrics.readerWaitNanos(), metrics.readerAcquisitions()),
+                metrics.writerAcquisitions(), averageNanos(metrics.writerWaitNanos(), metrics.writerAcquisitions()));
+        Database.shutdown();
+        System.setProperty("user.home", previousHome);
+        try (Stream<Path> files = Files.walk(home)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<NodePoint> findNodesByDocument() {
+        return nodeDao.findByDocument(nextDocumentId());
+    }
+
+    @Benchmark
+    public List<Edge> findEdgesByDocument() {
+        return edgeDao.findByDocument(nextDocumentId());
+    }
+
+    @Benchmark
+    public List<ShapePolygon> findShapesByDocument() {
+        return shapeDao.findByDocument(nextDocumentId());
+    }
+
+    @Benchmark
+    public void deleteEdgesByNode() throws SQLException {
+        int nodeId = (nextDocumentId() - firstDocumentId) * NODES_PER_DOCUMENT + 1;
+        rolledBack(() -> edgeDao.deleteByNode(nodeId));
+    }
+
+    @Benchmark
+    public void deleteDocumentCascade() throws SQLException {
+        int documentId = nextDocumentId();
+        rolledBack(() -> documentDao.deleteByIdCascade(documentId));
+    }
+
+    private static long averageNanos(long totalNanos, long acquisitions) {
+        return acquisitions == 0 ? 0 : totalNanos / acquisitions;
+    }
+
+    private int nextDocumentId() {
+        nextDocument = (nextDocument + 7919) % DOCUMENTS;
+        return firstDocumentId + nextDocument;
+    }
+
+    private void rolledBack(Runnable work) throws SQLException {
+        try (Connection connection = Database.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                work.run();
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void populate(Connection connection, int userId) throws SQLException {
+        try (PreparedStatement document = connection.prepareStatement(
+                "INSERT INTO documents(id, user_id, name) VALUES (?, ?, ?)");
+             PreparedStatement node = connection.prepareStatement(
+                     "INSERT INTO nodes(id, document_id, x_cm, y_cm) VALUES (?, ?, ?, ?)");
+             PreparedStatement edge = connection.prepareStatement(
+                     "INSERT INTO edges(document_id, start_node_id, end_node_id) VALUES (?, ?, ?)");
+             PreparedStatement guide = connection.prepareStatement(
+                     "INSERT INTO guides(document_id, orientation, position_cm) VALUES (?, 'HORIZONTAL', 10)");
+             PreparedStatement shape = connection.prepareStatement(
+                     "INSERT INTO shapes(document_id, node_ids, area_cm2, perimeter_cm) VALUES (?, ?, 100, 40)");
+             PreparedStatement dimension = connection.prepareStatement(
+                     "INSERT INTO dimensions(document_id, start_x_cm, start_y_cm, end_x_cm, end_y_cm) "
+                             + "VALUES (?, 0, 0, 10, 0)")) {
+            firstDocumentId = 1;
+            for (int d = 0; d < DOCUMENTS; d++) {
+                int documentId = firstDocumentId + d;
+                document.setInt(1, documentId);
+                document.setInt(2, userId);
+                document.setString(3, "Dokument " + documentId);
+                document.addBatch();
+                int firstNode = d * NODES_PER_DOCUMENT + 1;
+                StringBuilder nodeIds = new StringBuilder();
+                for (int n = 0; n < NODES_PER_DOCUMENT; n++) {
+                    double angle = 2 * Math.PI * n / NODES_PER_DOCUMENT;
+                    node.setInt(1, firstNode + n);
+                    node.setInt(2, documentId);
+                    node.setDouble(3, 50 + 40 * Math.cos(angle));
+                    node.setDouble(4, 50 + 40 * Math.sin(angle));
+                    node.addBatch();
+                    edge.setInt(1, documentId);
+                    edge.setInt(2, firstNode + n);
+                    edge.setInt(3, firstNode + (n + 1) % NODES_PER_DOCUMENT);
+                    edge.addBatch();
+                    nodeIds.append(n == 0 ? "" : ",").append(firstNode + n);
+                }
+                guide.setInt(1, documentId);
+                guide.addBatch();
+                shape.setInt(1, documentId);
+                shape.setString(2, nodeIds.toString());
+                shape.addBatch();
+                dimension.setInt(1, documentId);
+                dimension.addBatch();
+                if (d % 500 == 499 || d == DOCUMENTS - 1) {
+                    document.executeBatch();
+                    node.executeBatch();
+                    edge.executeBatch();
+                    guide.executeBatch();
+                    shape.executeBatch();
+                    dimension.executeBatch();
+                }
+            }
+        }
+    }
+}
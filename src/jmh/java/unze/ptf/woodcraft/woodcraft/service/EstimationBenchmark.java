@@ -0,0 +1,80 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import unze.ptf.woodcraft.woodcraft.dao.MaterialDao;
+import unze.ptf.woodcraft.woodcraft.dao.ShapeDao;
+import unze.ptf.woodcraft.woodcraft.model.GrainDirection;
+import unze.ptf.woodcraft.woodcraft.model.Material;
+import unze.ptf.woodcraft.woodcraft.model.MaterialType;
+import unze.ptf.woodcraft.woodcraft.model.ShapePolygon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EstimationBenchmark {
+    @Param({"GRID", "CABINET", "CURVED"})
+    public SyntheticDocument.Layout layout;
+
+    @Param({"10", "40"})
+    public int size;
+
+    private EstimationService estimationService;
+
+    @Setup
+    public void setUp() {
+        GeometryService geometryService = new GeometryService();
+        SyntheticDocument document = SyntheticDocument.create(layout, size);
+        Map<Integer, Material> materials = new HashMap<>();
+        materials.put(1, new Material(1, 1, "Iverica", MaterialType.SHEET, 280, 207, 95, 0, 0, null,
+                GrainDirection.NONE, 0.8));
+        materials.put(2, new Material(2, 1, "MDF", MaterialType.SHEET, 0, 0, 0, 18, 0, null,
+                GrainDirection.NONE, 0));
+        materials.put(3, new Material(3, 1, "Letva", MaterialType.LUMBER, 0, 0, 0, 0, 4.5, null,
+                GrainDirection.HORIZONTAL, 0));
+        List<ShapePolygon> shapes = new ArrayList<>();
+        for (ShapePolygon shape : geometryService.buildShapes(SyntheticDocument.DOCUMENT_ID, document.nodes,
+                document.edges)) {
+            int materialId = 1 + shapes.size() % materials.size();
+            shapes.add(new ShapePolygon(shapes.size() + 1, shape.getDocumentId(), materialId, 1 + shapes.size() % 3,
+                    shape.getNodeIds(), shape.getNodes(), shape.getAreaCm2(), shape.getPerimeterCm()));
+        }
+        ShapeDao shapeDao = new ShapeDao() {
+            @Override
+            public List<ShapePolygon> findByDocument(int documentId) {
+                return shapes;
+            }
+        };
+        MaterialDao materialDao = new MaterialDao() {
+            @Override
+            public Optional<Material> findById(int materialId) {
+                return Optional.ofNullable(materials.get(materialId));
+            }
+        };
+        estimationService = new EstimationService(materialDao, shapeDao, geometryService);
+    }
+
+    @Benchmark
+    public List<EstimationSummary> estimate() {
+        return estimationService.estimate(SyntheticDocument.DOCUMENT_ID, 10);
+    }
+}
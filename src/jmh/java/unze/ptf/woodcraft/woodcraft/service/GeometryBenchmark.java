@@ -0,0 +1,86 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import javafx.geometry.Point2D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import unze.ptf.woodcraft.woodcraft.model.ShapePolygon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+    @Param({"GRID", "CABINET", "CURVED"})
+    public SyntheticDocument.Layout layout;
+
+    @Param({"10", "40"})
+    public int size;
+
+    private GeometryService geometryService;
+    private SyntheticDocument document;
+    private CompactGraph graph;
+    private List<ShapePolygon> faces;
+    private List<List<Point2D>> outlines;
+
+    @Setup
+    public void setUp() {
+        geometryService = new GeometryService();
+        document = SyntheticDocument.create(layout, size);
+        graph = CompactGraph.of(document.nodes, document.edges);
+        faces = new ArrayList<>();
+        outlines = new ArrayList<>();
+        for (List<Integer> face : new PlanarFaceExtractor().extractFaces(graph)) {
+            if (geometryService.computeSignedAreaCm2(face, graph) <= 0) {
+                continue;
+            }
+            faces.add(geometryService.buildShapeFromCycle(SyntheticDocument.DOCUMENT_ID, null, face, graph));
+            outlines.add(geometryService.sampleCycle(face, graph));
+        }
+    }
+
+    @Benchmark
+    public List<ShapePolygon> buildShapes() {
+        return geometryService.buildShapes(SyntheticDocument.DOCUMENT_ID, document.nodes, document.edges);
+    }
+
+    @Benchmark
+    public List<List<Integer>> detectAllCycles() {
+        return geometryService.detectAllCycles(document.edges);
+    }
+
+    @Benchmark
+    public List<ShapePolygon> filterContainedCycles() {
+        return geometryService.filterContainedCycles(faces, graph);
+    }
+
+    @Benchmark
+    public void computeAreaCm2(Blackhole blackhole) {
+        for (List<Point2D> outline : outlines) {
+            blackhole.consume(geometryService.computeAreaCm2(outline));
+        }
+    }
+
+    @Benchmark
+    public void computeCycleMetrics(Blackhole blackhole) {
+        for (ShapePolygon face : faces) {
+            blackhole.consume(geometryService.computeSignedAreaCm2(face.getNodeIds(), graph));
+            blackhole.consume(geometryService.computePerimeterCm(face.getNodeIds(), graph));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.model.NodePoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class SyntheticDocument {
+    public enum Layout {
+        GRID,
+        CABINET,
+        CURVED
+    }
+
+    static final int DOCUMENT_ID = 1;
+
+    final List<NodePoint> nodes = new ArrayList<>();
+    final List<Edge> edges = new ArrayList<>();
+
+    private SyntheticDocument() {
+    }
+
+    static SyntheticDocument create(Layout layout, int size) {
+        SyntheticDocument document = new SyntheticDocument();
+        switch (layout) {
+            case GRID -> document.grid(size, 0);
+            case CABINET -> document.cabinets(size);
+            case CURVED -> document.grid(size, 1.5);
+        }
+        return document;
+    }
+
+    private void grid(int size, double bulge) {
+        double cell = 10;
+        int first = nodes.size() + 1;
+        for (int y = 0; y <= size; y++) {
+            for (int x = 0; x <= size; x++) {
+                addNode(x * cell, y * cell);
+            }
+        }
+        for (int y = 0; y <= size; y++) {
+            for (int x = 0; x <= size; x++) {
+                int id = first + y * (size + 1) + x;
+                double sign = (x + y) % 2 == 0 ? 1 : -1;
+                if (x < size) {
+                    addEdge(id, id + 1, bulge == 0 || y == 0 || y == size ? 0 : bulge * sign, true);
+                }
+                if (y < size) {
+                    addEdge(id, id + size + 1, bulge == 0 || x == 0 || x == size ? 0 : bulge * sign, false);
+                }
+            }
+        }
+    }
+
+    private void cabinets(int count) {
+        int perRow = (int) Math.ceil(Math.sqrt(count));
+        for (int i = 0; i < count; i++) {
+            double ox = (i % perRow) * 70;
+            double oy = (i / perRow) * 90;
+            int shelves = 2 + i % 4;
+            double width = 60;
+            double height = 80;
+            int[] left = new int[shelves + 1];
+            int[] right = new int[shelves + 1];
+            for (int s = 0; s <= shelves; s++) {
+                double y = oy + height * s / shelves;
+                left[s] = addNode(ox, y);
+                right[s] = addNode(ox + width, y);
+                addEdge(left[s], right[s], 0, true);
+                if (s > 0) {
+                    addEdge(left[s - 1], left[s], 0, false);
+                    addEdge(right[s - 1], right[s], 0, false);
+                }
+            }
+            int a = addNode(ox + 25, oy + 4);
+            int b = addNode(ox + 35, oy + 4);
+            int c = addNode(ox + 35, oy + 6);
+            int d = addNode(ox + 25, oy + 6);
+            addEdge(a, b, 0, true);
+            addEdge(b, c, 0, false);
+            addEdge(c, d, 0, true);
+            addEdge(d, a, 0, false);
+        }
+    }
+
+    private int addNode(double x, double y) {
+        int id = nodes.size() + 1;
+        nodes.add(new NodePoint(id, DOCUMENT_ID, x, y));
+        return id;
+    }
+
+    private void addEdge(int startId, int endId, double bulge, boolean horizontal) {
+        int id = edges.size() + 1;
+        if (bulge == 0) {
+            edges.add(new Edge(id, DOCUMENT_ID, startId, endId));
+            return;
+        }
+        NodePoint start = nodes.get(startId - 1);
+        NodePoint end = nodes.get(endId - 1);
+        double dx = end.getXCm() - start.getXCm();
+        double dy = end.getYCm() - start.getYCm();
+        double offsetX = horizontal ? 0 : bulge;
+        double offsetY = horizontal ? bulge : 0;
+        edges.add(new Edge(id, DOCUMENT_ID, startId, endId,
+                start.getXCm() + dx / 3 + offsetX, start.getYCm() + dy / 3 + offsetY,
+                start.getXCm() + dx * 2 / 3 + offsetX, start.getYCm() + dy * 2 / 3 + offsetY));
+    }
+}
@@ -4,6 +4,7 @@ import javafx.application.Application;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
 import unze.ptf.woodcraft.woodcraft.dao.DocumentDao;
+import unze.ptf.woodcraft.woodcraft.dao.DocumentRepository;
 import unze.ptf.woodcraft.woodcraft.dao.DimensionDao;
 import unze.ptf.woodcraft.woodcraft.dao.EdgeDao;
 import unze.ptf.woodcraft.woodcraft.dao.GuideDao;
@@ -12,6 +13,7 @@ import unze.ptf.woodcraft.woodcraft.dao.MaterialDao;
 import unze.ptf.woodcraft.woodcraft.dao.NodeDao;
 import unze.ptf.woodcraft.woodcraft.dao.ShapeDao;
 import unze.ptf.woodcraft.woodcraft.dao.UserDao;
+import unze.ptf.woodcraft.woodcraft.db.Database;
 import unze.ptf.woodcraft.woodcraft.db.DatabaseInitializer;
 import unze.ptf.woodcraft.woodcraft.service.AuthService;
 import unze.ptf.woodcraft.woodcraft.service.EstimationService;
@@ -20,6 +22,8 @@ import unze.ptf.woodcraft.woodcraft.session.SessionManager;
 import unze.ptf.woodcraft.woodcraft.ui.SceneNavigator;
 
 public class WoodCraftApp extends Application {
+    private DocumentRepository documentRepository;
+
     @Override
     public void start(Stage stage) {
         DatabaseInitializer.initialize();
@@ -34,6 +38,8 @@ public class WoodCraftApp extends Application {
         GuideDao guideDao = new GuideDao();
         ShapeDao shapeDao = new ShapeDao();
         ManualShapeDao manualShapeDao = new ManualShapeDao();
+        documentRepository = new DocumentRepository(nodeDao, edgeDao, guideDao, dimensionDao, shapeDao,
+                manualShapeDao);
 
         SessionManager sessionManager = new SessionManager();
         AuthService authService = new AuthService(userDao, sessionManager);
@@ -41,11 +47,21 @@ public class WoodCraftApp extends Application {
         EstimationService estimationService = new EstimationService(materialDao, shapeDao, geometryService);
 
         SceneNavigator navigator = new SceneNavigator(stage, sessionManager, authService, userDao, materialDao,
-                documentDao, dimensionDao, nodeDao, edgeDao, guideDao, shapeDao, manualShapeDao,
-                geometryService, estimationService);
+                documentDao, documentRepository, geometryService, estimationService);
         navigator.showInitialScene();
     }
 
+    @Override
+    public void stop() {
+        try {
+            if (documentRepository != null) {
+                documentRepository.close();
+            }
+        } finally {
+            Database.shutdown();
+        }
+    }
+
     private void setStageIcon(Stage stage) {
         var iconUrl = getClass().getResource("/images/logo.png");
         if (iconUrl != null) {
@@ -9,6 +9,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class DimensionDao {
@@ -62,7 +63,7 @@ public class DimensionDao {
                 WHERE document_id = ?
                 """;
         List<Dimension> dimensions = new ArrayList<>();
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, documentId);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -116,6 +117,53 @@ public class DimensionDao {
         }
     }
 
+    public void updateEndpoints(Collection<Dimension> dimensions) {
+        String sql = "UPDATE dimensions SET start_x_cm = ?, start_y_cm = ?, end_x_cm = ?, end_y_cm = ? WHERE id = ?";
+        try {
+            Database.runInTransaction(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (Dimension dimension : dimensions) {
+                        statement.setDouble(1, dimension.getStartXCm());
+                        statement.setDouble(2, dimension.getStartYCm());
+                        statement.setDouble(3, dimension.getEndXCm());
+                        statement.setDouble(4, dimension.getEndYCm());
+                        statement.setInt(5, dimension.getId());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            });
+        } catch (SQLException exception) {
+            throw new IllegalStateException("Failed to update dimension endpoints", exception);
+        }
+    }
+
+    public void updateGeometry(Collection<Dimension> dimensions) {
+        String sql = """
+            UPDATE dimensions SET start_x_cm = ?, start_y_cm = ?, end_x_cm = ?, end_y_cm = ?,
+            offset_x_cm = ?, offset_y_cm = ? WHERE id = ?
+            """;
+        try {
+            Database.runInTransaction(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (Dimension dimension : dimensions) {
+                        statement.setDouble(1, dimension.getStartXCm());
+                        statement.setDouble(2, dimension.getStartYCm());
+                        statement.setDouble(3, dimension.getEndXCm());
+                        statement.setDouble(4, dimension.getEndYCm());
+                        statement.setDouble(5, dimension.getOffsetXCm());
+                        statement.setDouble(6, dimension.getOffsetYCm());
+                        statement.setInt(7, dimension.getId());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            });
+        } catch (SQLException exception) {
+            throw new IllegalStateException("Failed to update dimension geometry", exception);
+        }
+    }
+
     public void deleteById(int dimensionId) {
         String sql = "DELETE FROM dimensions WHERE id = ?";
         try (Connection connection = Database.getConnection();
@@ -127,36 +175,42 @@ public class DimensionDao {
         }
     }
 
-    public void insertWithId(Dimension dimension) {
+    public void insertAllWithId(List<Dimension> dimensions) {
         String sql = """
                 INSERT INTO dimensions(id, document_id, start_x_cm, start_y_cm, end_x_cm, end_y_cm,
                 offset_x_cm, offset_y_cm, type, start_node_id, end_node_id)
                 VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
                 """;
-        try (Connection connection = Database.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, dimension.getId());
-            statement.setInt(2, dimension.getDocumentId());
-            statement.setDouble(3, dimension.getStartXCm());
-            statement.setDouble(4, dimension.getStartYCm());
-            statement.setDouble(5, dimension.getEndXCm());
-            statement.setDouble(6, dimension.getEndYCm());
-            statement.setDouble(7, dimension.getOffsetXCm());
-            statement.setDouble(8, dimension.getOffsetYCm());
-            statement.setString(9, dimension.getType().name());
-            if (dimension.getStartNodeId() == null) {
-                statement.setNull(10, java.sql.Types.INTEGER);
-            } else {
-                statement.setInt(10, dimension.getStartNodeId());
-            }
-            if (dimension.getEndNodeId() == null) {
-                statement.setNull(11, java.sql.Types.INTEGER);
-            } else {
-                statement.setInt(11, dimension.getEndNodeId());
-            }
-            statement.executeUpdate();
+        try {
+            Database.runInTransaction(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (Dimension dimension : dimensions) {
+                        statement.setInt(1, dimension.getId());
+                        statement.setInt(2, dimension.getDocumentId());
+                        statement.setDouble(3, dimension.getStartXCm());
+                        statement.setDouble(4, dimension.getStartYCm());
+                        statement.setDouble(5, dimension.getEndXCm());
+                        statement.setDouble(6, dimension.getEndYCm());
+                        statement.setDouble(7, dimension.getOffsetXCm());
+                        statement.setDouble(8, dimension.getOffsetYCm());
+                        statement.setString(9, dimension.getType().name());
+                        if (dimension.getStartNodeId() == null) {
+                            statement.setNull(10, java.sql.Types.INTEGER);
+                        } else {
+                            statement.setInt(10, dimension.getStartNodeId());
+                        }
+                        if (dimension.getEndNodeId() == null) {
+                            statement.setNull(11, java.sql.Types.INTEGER);
+                        } else {
+                            statement.setInt(11, dimension.getEndNodeId());
+                        }
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            });
         } catch (SQLException exception) {
-            throw new IllegalStateException("Failed to insert dimension with id", exception);
+            throw new IllegalStateException("Failed to insert dimensions with id", exception);
         }
     }
 
@@ -42,7 +42,7 @@ public class DocumentDao {
 
     public Optional<Document> findFirstByUser(int userId) {
         String sql = "SELECT id, user_id, name, width_cm, height_cm, kerf_mm, unit_system FROM documents WHERE user_id = ? ORDER BY id LIMIT 1";
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, userId);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -58,7 +58,7 @@ public class DocumentDao {
 
     public Optional<Document> findById(int documentId, int userId) {
         String sql = "SELECT id, user_id, name, width_cm, height_cm, kerf_mm, unit_system FROM documents WHERE id = ? AND user_id = ?";
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, documentId);
             statement.setInt(2, userId);
@@ -76,7 +76,7 @@ public class DocumentDao {
     public java.util.List<Document> findByUser(int userId) {
         String sql = "SELECT id, user_id, name, width_cm, height_cm, kerf_mm, unit_system FROM documents WHERE user_id = ? ORDER BY id DESC";
         java.util.List<Document> documents = new java.util.ArrayList<>();
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, userId);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -106,42 +106,12 @@ public class DocumentDao {
     }
 
     public void deleteByIdCascade(int documentId) {
-        try (Connection connection = Database.getConnection()) {
-            try (PreparedStatement deleteDimensions = connection.prepareStatement(
-                    "DELETE FROM dimensions WHERE document_id = ?")) {
-                deleteDimensions.setInt(1, documentId);
-                deleteDimensions.executeUpdate();
-            }
-            try (PreparedStatement deleteEdges = connection.prepareStatement(
-                    "DELETE FROM edges WHERE document_id = ?")) {
-                deleteEdges.setInt(1, documentId);
-                deleteEdges.executeUpdate();
-            }
-            try (PreparedStatement deleteNodes = connection.prepareStatement(
-                    "DELETE FROM nodes WHERE document_id = ?")) {
-                deleteNodes.setInt(1, documentId);
-                deleteNodes.executeUpdate();
-            }
-            try (PreparedStatement deleteGuides = connection.prepareStatement(
-                    "DELETE FROM guides WHERE document_id = ?")) {
-                deleteGuides.setInt(1, documentId);
-                deleteGuides.executeUpdate();
-            }
-            try (PreparedStatement deleteShapes = connection.prepareStatement(
-                    "DELETE FROM shapes WHERE document_id = ?")) {
-                deleteShapes.setInt(1, documentId);
-                deleteShapes.executeUpdate();
-            }
-            try (PreparedStatement deleteManual = connection.prepareStatement(
-                    "DELETE FROM manual_shapes WHERE document_id = ?")) {
-                deleteManual.setInt(1, documentId);
-                deleteManual.executeUpdate();
-            }
-            try (PreparedStatement deleteDoc = connection.prepareStatement(
-                    "DELETE FROM documents WHERE id = ?")) {
-                deleteDoc.setInt(1, documentId);
-                deleteDoc.executeUpdate();
-            }
+        // Child rows are removed by the ON DELETE CASCADE foreign keys.
+        String sql = "DELETE FROM documents WHERE id = ?";
+        try (Connection connection = Database.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, documentId);
+            statement.executeUpdate();
         } catch (SQLException exception) {
             throw new IllegalStateException("Failed to delete document", exception);
         }
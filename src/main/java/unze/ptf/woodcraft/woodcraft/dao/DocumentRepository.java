@@ -0,0 +1,787 @@
+package unze.ptf.woodcraft.woodcraft.dao;
+
+import javafx.geometry.Point2D;
+import unze.ptf.woodcraft.woodcraft.db.Database;
+import unze.ptf.woodcraft.woodcraft.model.Dimension;
+import unze.ptf.woodcraft.woodcraft.model.DocumentChanges;
+import unze.ptf.woodcraft.woodcraft.model.DimensionType;
+import unze.ptf.woodcraft.woodcraft.model.DocumentState;
+import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.model.EdgeControlUpdate;
+import unze.ptf.woodcraft.woodcraft.model.Guide;
+import unze.ptf.woodcraft.woodcraft.model.ManualShape;
+import unze.ptf.woodcraft.woodcraft.model.NodePoint;
+import unze.ptf.woodcraft.woodcraft.model.ShapePolygon;
+import unze.ptf.woodcraft.woodcraft.util.PersistentIntMap;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+// Holds the open document in memory; reads never touch SQLite and writes are replayed in order on a
+// background thread. Edits must come from the FX thread, but snapshot() can be read from any thread.
+public class DocumentRepository {
+    private static final int MAX_BATCH = 512;
+    private static final int ID_BLOCK = 256;
+    static final int HISTORY_LIMIT = 200;
+    private static final long RETRY_DELAY_MS = 250;
+    private static final long MAX_RETRY_DELAY_MS = 5000;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final List<String> TABLES = List.of("nodes", "edges", "guides", "dimensions", "shapes",
+            "manual_shapes");
+    private static final Runnable STOP = () -> {
+    };
+    private static final Runnable REFILL = () -> {
+    };
+
+    private final NodeDao nodeDao;
+    private final EdgeDao edgeDao;
+    private final GuideDao guideDao;
+    private final DimensionDao dimensionDao;
+    private final ShapeDao shapeDao;
+    private final ManualShapeDao manualShapeDao;
+
+    private final Table<NodePoint> nodes;
+    private final Table<Edge> edges;
+    private final Table<Guide> guides;
+    private final Table<Dimension> dimensions;
+    private final Table<ShapePolygon> shapes;
+    private final Table<ManualShape> manualShapes;
+    private final Map<String, int[]> idBlocks = new HashMap<>();
+    // Next blocks, reserved by the worker before the current ones run out so nextId never waits on SQLite.
+    private final Map<String, int[]> spareBlocks = new ConcurrentHashMap<>();
+    private final Set<String> refills = ConcurrentHashMap.newKeySet();
+    private volatile DocumentState state = DocumentState.EMPTY;
+    private int documentId = -1;
+
+    // Each patch lists the rows one edit touched, in the order it touched them.
+    private final ArrayDeque<List<Change<?>>> undoStack = new ArrayDeque<>();
+    private final ArrayDeque<List<Change<?>>> redoStack = new ArrayDeque<>();
+    private List<Change<?>> openPatch;
+
+    private final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private final Object progressLock = new Object();
+    private long enqueued;
+    private long completed;
+    private Thread worker;
+    private volatile Throwable failure;
+    // The last write that was given up on; unlike failure it is not cleared by later writes succeeding.
+    private volatile Throwable lostWrite;
+    private Consumer<Throwable> onError;
+
+    public DocumentRepository(NodeDao nodeDao, EdgeDao edgeDao, GuideDao guideDao, DimensionDao dimensionDao,
+                              ShapeDao shapeDao, ManualShapeDao manualShapeDao) {
+        this.nodeDao = nodeDao;
+        this.edgeDao = edgeDao;
+        this.guideDao = guideDao;
+        this.dimensionDao = dimensionDao;
+        this.shapeDao = shapeDao;
+        this.manualShapeDao = manualShapeDao;
+        nodes = new Table<>(DocumentState::getNodes, DocumentState::withNodes, nodeDao::insertAllWithId,
+                nodeDao::delete,
+                (before, after) -> nodeDao.updatePosition(after.getId(), after.getXCm(), after.getYCm()));
+        edges = new Table<>(DocumentState::getEdges, DocumentState::withEdges, edgeDao::insertAllWithId,
+                edgeDao::deleteById,
+                (before, after) -> edgeDao.updateControls(after.getId(), after.getControlStartXCm(),
+                        after.getControlStartYCm(), after.getControlEndXCm(), after.getControlEndYCm()));
+        guides = new Table<>(DocumentState::getGuides, DocumentState::withGuides, guideDao::insertAllWithId,
+                guideDao::deleteById,
+                (before, after) -> guideDao.updatePosition(after.getId(), after.getPositionCm()));
+        dimensions = new Table<>(DocumentState::getDimensions, DocumentState::withDimensions,
+                dimensionDao::insertAllWithId, dimensionDao::deleteById, this::writeDimension);
+        shapes = new Table<>(DocumentState::getShapes, DocumentState::withShapes, shapeDao::insertAllWithId,
+                shapeDao::deleteById, this::writeShape);
+        manualShapes = new Table<>(DocumentState::getManualShapes, DocumentState::withManualShapes,
+                manualShapeDao::insertAllWithId, manualShapeDao::deleteById,
+                (before, after) -> manualShapeDao.updatePoints(after.getId(), after.getPoints()));
+    }
+
+    public void setOnError(Consumer<Throwable> onError) {
+        this.onError = onError;
+    }
+
+    public void open(int documentId) {
+        stopWorker();
+        failure = null;
+        lostWrite = null;
+        clear();
+        this.documentId = documentId;
+        nodeDao.findByDocument(documentId).forEach(node -> set(nodes, node.getId(), node));
+        edgeDao.findByDocument(documentId).forEach(edge -> set(edges, edge.getId(), edge));
+        guideDao.findByDocument(documentId).forEach(guide -> set(guides, guide.getId(), guide));
+        dimensionDao.findByDocument(documentId).forEach(dimension -> set(dimensions, dimension.getId(), dimension));
+        shapeDao.findByDocument(documentId).forEach(shape -> set(shapes, shape.getId(), shape));
+        manualShapeDao.findByDocument(documentId).forEach(shape -> set(manualShapes, shape.getId(), shape));
+        worker = new Thread(this::runWorker, "woodcraft-write-behind");
+        worker.setDaemon(true);
+        worker.start();
+        refills.clear();
+        for (String table : TABLES) {
+            if (!spareBlocks.containsKey(table)) {
+                requestRefill(table);
+            }
+        }
+    }
+
+    public boolean isOpen(int documentId) {
+        return worker != null && this.documentId == documentId;
+    }
+
+    public void flush() {
+        synchronized (progressLock) {
+            long target = enqueued;
+            // Stop waiting once a write has failed; the caller hears about it instead of sitting out the retries.
+            while (completed < target && failure == null) {
+                try {
+                    progressLock.wait();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while saving document changes", exception);
+                }
+            }
+        }
+        throwIfFailed();
+    }
+
+    public void close() {
+        if (worker == null) {
+            return;
+        }
+        stopWorker();
+        clear();
+        documentId = -1;
+        throwIfFailed();
+    }
+
+    // Starts a new undo step; everything changed until the next call is undone together.
+    public void beginEdit() {
+        sealOpenPatch();
+        openPatch = new ArrayList<>();
+        redoStack.clear();
+    }
+
+    public Optional<DocumentChanges> undo() {
+        sealOpenPatch();
+        if (undoStack.isEmpty()) {
+            return Optional.empty();
+        }
+        List<Change<?>> patch = undoStack.pop();
+        InsertRun inserts = new InsertRun();
+        for (int i = patch.size() - 1; i >= 0; i--) {
+            restore(patch.get(i), true, inserts);
+        }
+        inserts.flush();
+        redoStack.push(patch);
+        return Optional.of(changesOf(patch));
+    }
+
+    public Optional<DocumentChanges> redo() {
+        sealOpenPatch();
+        if (redoStack.isEmpty()) {
+            return Optional.empty();
+        }
+        List<Change<?>> patch = redoStack.pop();
+        InsertRun inserts = new InsertRun();
+        for (Change<?> change : patch) {
+            restore(change, false, inserts);
+        }
+        inserts.flush();
+        undoStack.push(patch);
+        return Optional.of(changesOf(patch));
+    }
+
+    // The current version of the document; later edits never change the returned object.
+    public DocumentState snapshot() {
+        return state;
+    }
+
+    public List<NodePoint> getNodes() {
+        return state.getNodes().values();
+    }
+
+    public List<Edge> getEdges() {
+        return state.getEdges().values();
+    }
+
+    public List<Guide> getGuides() {
+        return state.getGuides().values();
+    }
+
+    public List<Dimension> getDimensions() {
+        return state.getDimensions().values();
+    }
+
+    public List<ShapePolygon> getShapes() {
+        return state.getShapes().values();
+    }
+
+    public List<ManualShape> getManualShapes() {
+        return state.getManualShapes().values();
+    }
+
+    public NodePoint createNode(double xCm, double yCm) {
+        NodePoint node = new NodePoint(nextId("nodes"), documentId, xCm, yCm);
+        put(nodes, node.getId(), node);
+        return node;
+    }
+
+    public void moveNodes(Map<Integer, Point2D> positions) {
+        Map<Integer, NodePoint> moved = new LinkedHashMap<>();
+        Map<Integer, Point2D> written = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Point2D> entry : positions.entrySet()) {
+            NodePoint node = state.getNodes().get(entry.getKey());
+            Point2D position = entry.getValue();
+            if (node != null && (node.getXCm() != position.getX() || node.getYCm() != position.getY())) {
+                moved.put(node.getId(), new NodePoint(node.getId(), node.getDocumentId(), position.getX(),
+                        position.getY()));
+                written.put(node.getId(), position);
+            }
+        }
+        putAll(nodes, moved, () -> nodeDao.updatePositions(written));
+    }
+
+    public void deleteNode(int nodeId) {
+        // Edges go first so that undo, which replays the patch backwards, restores the node before them.
+        for (Edge edge : state.getEdges().values()) {
+            if (edge.getStartNodeId() == nodeId || edge.getEndNodeId() == nodeId) {
+                put(edges, edge.getId(), null);
+            }
+        }
+        put(nodes, nodeId, null);
+    }
+
+    public Edge createEdge(int startNodeId, int endNodeId) {
+        Edge edge = new Edge(nextId("edges"), documentId, startNodeId, endNodeId);
+        put(edges, edge.getId(), edge);
+        return edge;
+    }
+
+    public void updateEdgeControls(Collection<EdgeControlUpdate> updates) {
+        Map<Integer, Edge> changed = new LinkedHashMap<>();
+        List<EdgeControlUpdate> written = new ArrayList<>();
+        for (EdgeControlUpdate update : updates) {
+            Edge edge = state.getEdges().get(update.edgeId());
+            if (edge == null || sameControls(edge, update)) {
+                continue;
+            }
+            changed.put(edge.getId(), new Edge(edge.getId(), edge.getDocumentId(), edge.getStartNodeId(),
+                    edge.getEndNodeId(), update.start().getX(), update.start().getY(),
+                    update.end().getX(), update.end().getY()));
+            written.add(update);
+        }
+        putAll(edges, changed, () -> edgeDao.updateControls(written));
+    }
+
+    public void deleteEdge(int edgeId) {
+        put(edges, edgeId, null);
+    }
+
+    public Guide createGuide(Guide.Orientation orientation, double positionCm) {
+        Guide guide = new Guide(nextId("guides"), documentId, orientation, positionCm);
+        put(guides, guide.getId(), guide);
+        return guide;
+    }
+
+    public void moveGuide(int guideId, double positionCm) {
+        Guide guide = state.getGuides().get(guideId);
+        if (guide != null) {
+            put(guides, guideId, new Guide(guideId, guide.getDocumentId(), guide.getOrientation(), positionCm));
+        }
+    }
+
+    public void deleteGuide(int guideId) {
+        put(guides, guideId, null);
+    }
+
+    public Dimension createDimension(double startXCm, double startYCm, double endXCm, double endYCm,
+                                     double offsetXCm, double offsetYCm, DimensionType type,
+                                     Integer startNodeId, Integer endNodeId) {
+        Dimension dimension = new Dimension(nextId("dimensions"), documentId, startXCm, startYCm, endXCm, endYCm,
+                offsetXCm, offsetYCm, type, startNodeId, endNodeId);
+        put(dimensions, dimension.getId(), dimension);
+        return dimension;
+    }
+
+    // Takes the endpoints of the given rows; offsets and everything else stay as they are.
+    public void updateDimensionEndpoints(Collection<Dimension> updates) {
+        Map<Integer, Dimension> changed = new LinkedHashMap<>();
+        for (Dimension update : updates) {
+            Dimension dimension = state.getDimensions().get(update.getId());
+            if (dimension == null || (dimension.getStartXCm() == update.getStartXCm()
+                    && dimension.getStartYCm() == update.getStartYCm() && dimension.getEndXCm() == update.getEndXCm()
+                    && dimension.getEndYCm() == update.getEndYCm())) {
+                continue;
+            }
+            changed.put(dimension.getId(), new Dimension(dimension.getId(), dimension.getDocumentId(),
+                    update.getStartXCm(), update.getStartYCm(), update.getEndXCm(), update.getEndYCm(),
+                    dimension.getOffsetXCm(), dimension.getOffsetYCm(), dimension.getType(),
+                    dimension.getStartNodeId(), dimension.getEndNodeId()));
+        }
+        List<Dimension> written = List.copyOf(changed.values());
+        putAll(dimensions, changed, () -> dimensionDao.updateEndpoints(written));
+    }
+
+    // Endpoints and offsets of dragged dimensions, written with one batched statement.
+    public void moveDimensions(Collection<Dimension> updates) {
+        Map<Integer, Dimension> changed = new LinkedHashMap<>();
+        for (Dimension update : updates) {
+            Dimension dimension = state.getDimensions().get(update.getId());
+            if (dimension == null || (dimension.getStartXCm() == update.getStartXCm()
+                    && dimension.getStartYCm() == update.getStartYCm() && dimension.getEndXCm() == update.getEndXCm()
+                    && dimension.getEndYCm() == update.getEndYCm() && dimension.getOffsetXCm() == update.getOffsetXCm()
+                    && dimension.getOffsetYCm() == update.getOffsetYCm())) {
+                continue;
+            }
+            changed.put(dimension.getId(), new Dimension(dimension.getId(), dimension.getDocumentId(),
+                    update.getStartXCm(), update.getStartYCm(), update.getEndXCm(), update.getEndYCm(),
+                    update.getOffsetXCm(), update.getOffsetYCm(), dimension.getType(),
+                    dimension.getStartNodeId(), dimension.getEndNodeId()));
+        }
+        List<Dimension> written = List.copyOf(changed.values());
+        putAll(dimensions, changed, () -> dimensionDao.updateGeometry(written));
+    }
+
+    public void updateDimensionOffset(int dimensionId, double offsetXCm, double offsetYCm) {
+        Dimension dimension = state.getDimensions().get(dimensionId);
+        if (dimension != null) {
+            put(dimensions, dimensionId, new Dimension(dimensionId, dimension.getDocumentId(),
+                    dimension.getStartXCm(), dimension.getStartYCm(), dimension.getEndXCm(), dimension.getEndYCm(),
+                    offsetXCm, offsetYCm, dimension.getType(), dimension.getStartNodeId(), dimension.getEndNodeId()));
+        }
+    }
+
+    public void deleteDimension(int dimensionId) {
+        put(dimensions, dimensionId, null);
+    }
+
+    public ShapePolygon createShape(ShapePolygon shape) {
+        ShapePolygon created = new ShapePolygon(nextId("shapes"), shape.getDocumentId(), shape.getMaterialId(),
+                shape.getQuantity(), shape.getNodeIds(), shape.getNodes(), shape.getAreaCm2(),
+                shape.getPerimeterCm());
+        put(shapes, created.getId(), created);
+        return created;
+    }
+
+    public void updateShapeGeometry(ShapePolygon shape) {
+        if (state.getShapes().containsKey(shape.getId())) {
+            put(shapes, shape.getId(), shape);
+        }
+    }
+
+    public void updateShapeMaterial(int shapeId, Integer materialId) {
+        ShapePolygon shape = state.getShapes().get(shapeId);
+        if (shape != null) {
+            put(shapes, shapeId, new ShapePolygon(shapeId, shape.getDocumentId(), materialId, shape.getQuantity(),
+                    shape.getNodeIds(), shape.getNodes(), shape.getAreaCm2(), shape.getPerimeterCm()));
+        }
+    }
+
+    public void deleteShape(int shapeId) {
+        put(shapes, shapeId, null);
+    }
+
+    public void updateManualShapePoints(int shapeId, List<Point2D> points) {
+        ManualShape shape = state.getManualShapes().get(shapeId);
+        if (shape != null) {
+            put(manualShapes, shapeId, new ManualShape(shapeId, shape.getDocumentId(), List.copyOf(points)));
+        }
+    }
+
+    public void deleteManualShape(int shapeId) {
+        put(manualShapes, shapeId, null);
+    }
+
+    private void sealOpenPatch() {
+        if (openPatch != null && !openPatch.isEmpty()) {
+            undoStack.push(openPatch);
+            while (undoStack.size() > HISTORY_LIMIT) {
+                undoStack.removeLast();
+            }
+        }
+        // Nothing is recorded again until the next beginEdit, so follow-up work after an undo stays out of history.
+        openPatch = null;
+    }
+
+    private <T> void put(Table<T> table, int id, T row) {
+        T before = set(table, id, row);
+        if (before == null && row == null) {
+            return;
+        }
+        if (openPatch != null) {
+            openPatch.add(new Change<>(table, id, before, row));
+        }
+        write(table, id, before, row);
+    }
+
+    // Records every row for undo but hands the database a single batched write.
+    private <T> void putAll(Table<T> table, Map<Integer, T> rows, Runnable write) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Integer, T> entry : rows.entrySet()) {
+            T before = set(table, entry.getKey(), entry.getValue());
+            if (openPatch != null) {
+                openPatch.add(new Change<>(table, entry.getKey(), before, entry.getValue()));
+            }
+        }
+        enqueue(write);
+    }
+
+    private static boolean sameControls(Edge edge, EdgeControlUpdate update) {
+        return Objects.equals(edge.getControlStartXCm(), update.start().getX())
+                && Objects.equals(edge.getControlStartYCm(), update.start().getY())
+                && Objects.equals(edge.getControlEndXCm(), update.end().getX())
+                && Objects.equals(edge.getControlEndYCm(), update.end().getY());
+    }
+
+    private DocumentChanges changesOf(List<Change<?>> patch) {
+        return new DocumentChanges(touched(nodes, patch), touched(edges, patch), touched(guides, patch),
+                touched(dimensions, patch), touched(shapes, patch), touched(manualShapes, patch));
+    }
+
+    private <T> Map<Integer, T> touched(Table<T> table, List<Change<?>> patch) {
+        PersistentIntMap<T> rows = table.rows.apply(state);
+        Map<Integer, T> touched = new LinkedHashMap<>();
+        for (Change<?> change : patch) {
+            if (change.table() == table) {
+                touched.put(change.id(), rows.get(change.id()));
+            }
+        }
+        return touched;
+    }
+
+    private <T> void restore(Change<T> change, boolean undo, InsertRun inserts) {
+        T row = undo ? change.before() : change.after();
+        T current = set(change.table(), change.id(), row);
+        if (current == null && row != null) {
+            inserts.add(change.table(), row);
+        } else if (current != null) {
+            inserts.flush();
+            write(change.table(), change.id(), current, row);
+        }
+    }
+
+    private <T> T set(Table<T> table, int id, T row) {
+        PersistentIntMap<T> rows = table.rows.apply(state);
+        T before = rows.get(id);
+        state = table.withRows.apply(state, row == null ? rows.remove(id) : rows.put(id, row));
+        return before;
+    }
+
+    private <T> void write(Table<T> table, int id, T before, T after) {
+        if (after == null) {
+            enqueue(() -> table.delete.accept(id));
+        } else if (before == null) {
+            enqueue(() -> table.insert.accept(List.of(after)));
+        } else {
+            enqueue(() -> table.update.accept(before, after));
+        }
+    }
+
+    private void writeDimension(Dimension before, Dimension after) {
+        if (before.getStartXCm() != after.getStartXCm() || before.getStartYCm() != after.getStartYCm()
+                || before.getEndXCm() != after.getEndXCm() || before.getEndYCm() != after.getEndYCm()) {
+            dimensionDao.updateEndpoints(after.getId(), after.getStartXCm(), after.getStartYCm(),
+                    after.getEndXCm(), after.getEndYCm());
+        }
+        if (before.getOffsetXCm() != after.getOffsetXCm() || before.getOffsetYCm() != after.getOffsetYCm()) {
+            dimensionDao.updateOffset(after.getId(), after.getOffsetXCm(), after.getOffsetYCm());
+        }
+    }
+
+    private void writeShape(ShapePolygon before, ShapePolygon after) {
+        if (before.getAreaCm2() != after.getAreaCm2() || before.getPerimeterCm() != after.getPerimeterCm()
+                || !before.getNodeIds().equals(after.getNodeIds())) {
+            shapeDao.updateGeometry(after);
+        }
+        if (!Objects.equals(before.getMaterialId(), after.getMaterialId())) {
+            shapeDao.updateMaterial(after.getId(), after.getMaterialId());
+        }
+    }
+
+    private void clear() {
+        state = DocumentState.EMPTY;
+        undoStack.clear();
+        redoStack.clear();
+        openPatch = null;
+    }
+
+    private void enqueue(Runnable write) {
+        if (worker == null) {
+            throw new IllegalStateException("No document is open");
+        }
+        synchronized (progressLock) {
+            enqueued++;
+        }
+        queue.add(write);
+    }
+
+    private int nextId(String table) {
+        // Ids come from blocks reserved in sqlite_sequence, so they never collide with AUTOINCREMENT inserts
+        // made elsewhere while our own inserts are still queued.
+        int[] block = idBlocks.get(table);
+        if (block == null || block[0] > block[1]) {
+            block = spareBlocks.remove(table);
+            if (block == null) {
+                // The worker has not caught up, e.g. it is retrying a failed batch; reserve on this thread.
+                block = reserveIds(table);
+            }
+            idBlocks.put(table, block);
+            requestRefill(table);
+        }
+        return block[0]++;
+    }
+
+    private void requestRefill(String table) {
+        if (refills.add(table)) {
+            enqueue(REFILL);
+        }
+    }
+
+    private void refillIdBlocks() {
+        for (String table : TABLES) {
+            if (!refills.contains(table)) {
+                continue;
+            }
+            try {
+                spareBlocks.put(table, reserveIds(table));
+                refills.remove(table);
+            } catch (IllegalStateException exception) {
+                // Left requested: the next batch tries again, and nextId can still reserve for itself.
+            }
+        }
+    }
+
+    private int[] reserveIds(String table) {
+        int[] block = new int[2];
+        try {
+            Database.runInTransaction(connection -> {
+                long last = 0;
+                try (PreparedStatement query = connection.prepareStatement(
+                        "SELECT seq FROM sqlite_sequence WHERE name = ?")) {
+                    query.setString(1, table);
+                    try (ResultSet resultSet = query.executeQuery()) {
+                        if (resultSet.next()) {
+                            last = resultSet.getLong(1);
+                        }
+                    }
+                }
+                try (PreparedStatement query = connection.prepareStatement(
+                        "SELECT COALESCE(MAX(id), 0) FROM " + table);
+                     ResultSet resultSet = query.executeQuery()) {
+                    resultSet.next();
+                    last = Math.max(last, resultSet.getLong(1));
+                }
+                long reserved = last + ID_BLOCK;
+                try (PreparedStatement update = connection.prepareStatement(
+                        "UPDATE sqlite_sequence SET seq = ? WHERE name = ?")) {
+                    update.setLong(1, reserved);
+                    update.setString(2, table);
+                    if (update.executeUpdate() == 0) {
+                        try (PreparedStatement insert = connection.prepareStatement(
+                                "INSERT INTO sqlite_sequence(name, seq) VALUES (?, ?)")) {
+                            insert.setString(1, table);
+                            insert.setLong(2, reserved);
+                            insert.executeUpdate();
+                        }
+                    }
+                }
+                block[0] = Math.toIntExact(last + 1);
+                block[1] = Math.toIntExact(reserved);
+            });
+        } catch (SQLException exception) {
+            throw new IllegalStateException("Failed to reserve ids for " + table, exception);
+        }
+        return block;
+    }
+
+    private void stopWorker() {
+        if (worker == null) {
+            return;
+        }
+        enqueue(STOP);
+        try {
+            worker.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+    }
+
+    private void runWorker() {
+        try {
+            drainQueue();
+        } catch (Throwable error) {
+            failure = error;
+        } finally {
+            synchronized (progressLock) {
+                // Nothing drains the queue any more, so flush and close must not wait for it.
+                if (completed < enqueued && failure == null) {
+                    failure = new IllegalStateException("Write-behind worker stopped");
+                }
+                progressLock.notifyAll();
+            }
+        }
+    }
+
+    private void drainQueue() {
+        List<Runnable> writes = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                writes.add(queue.take());
+            } catch (InterruptedException exception) {
+                return;
+            }
+            queue.drainTo(writes, MAX_BATCH - 1);
+            int markers = writes.size();
+            writes.removeIf(write -> write == REFILL);
+            // STOP is always the last thing enqueued, so nothing follows it.
+            stopping = writes.remove(STOP);
+            markCompleted(markers - writes.size());
+            if (!writes.isEmpty()) {
+                try {
+                    Database.runInTransaction(connection -> {
+                        for (Runnable write : writes) {
+                            write.run();
+                        }
+                    });
+                    failure = null;
+                    markCompleted(writes.size());
+                } catch (Throwable exception) {
+                    reportFailure(exception);
+                    // The batch rolled back as a whole. Replay it one write at a time, in order, so a write that
+                    // keeps failing can be dropped instead of holding back everything queued behind it.
+                    if (!retryEach(writes)) {
+                        return;
+                    }
+                }
+                writes.clear();
+            }
+            if (!stopping) {
+                refillIdBlocks();
+            }
+        }
+    }
+
+    private boolean retryEach(List<Runnable> writes) {
+        for (Runnable write : writes) {
+            long retryDelay = RETRY_DELAY_MS;
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (InterruptedException interrupted) {
+                    return false;
+                }
+                try {
+                    Database.runInTransaction(connection -> write.run());
+                    failure = null;
+                    break;
+                } catch (Throwable exception) {
+                    reportFailure(exception);
+                    if (attempt == MAX_ATTEMPTS) {
+                        // Fails every time, e.g. a constraint violation: give up on it; flush and close report it.
+                        lostWrite = exception;
+                        break;
+                    }
+                    retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+                }
+            }
+            markCompleted(1);
+        }
+        return true;
+    }
+
+    private void reportFailure(Throwable exception) {
+        boolean firstFailure = failure == null;
+        failure = exception;
+        synchronized (progressLock) {
+            progressLock.notifyAll();
+        }
+        if (firstFailure && onError != null) {
+            onError.accept(exception);
+        }
+    }
+
+    private void markCompleted(int count) {
+        if (count == 0) {
+            return;
+        }
+        synchronized (progressLock) {
+            completed += count;
+            progressLock.notifyAll();
+        }
+    }
+
+    private void throwIfFailed() {
+        Throwable error = failure != null ? failure : lostWrite;
+        if (error != null) {
+            throw new IllegalStateException("Failed to save document changes", error);
+        }
+    }
+
+    private record Change<T>(Table<T> table, int id, T before, T after) {
+    }
+
+    // Collects back-to-back restored rows of one table, e.g. the edges of an undone node delete, so they
+    // reach the database as one batched insert. Any other write flushes first to keep the patch order.
+    private final class InsertRun {
+        private Table<?> table;
+        private List<Object> rows = new ArrayList<>();
+
+        private <T> void add(Table<T> table, T row) {
+            if (this.table != table) {
+                flush();
+                this.table = table;
+            }
+            rows.add(row);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void flush() {
+            if (rows.isEmpty()) {
+                return;
+            }
+            Table<Object> target = (Table<Object>) table;
+            List<Object> batch = rows;
+            enqueue(() -> target.insert.accept(batch));
+            rows = new ArrayList<>();
+            table = null;
+        }
+    }
+
+    private static final class Table<T> {
+        private final Function<DocumentState, PersistentIntMap<T>> rows;
+        private final BiFunction<DocumentState, PersistentIntMap<T>, DocumentState> withRows;
+        private final Consumer<List<T>> insert;
+        private final IntConsumer delete;
+        private final BiConsumer<T, T> update;
+
+        private Table(Function<DocumentState, PersistentIntMap<T>> rows,
+                      BiFunction<DocumentState, PersistentIntMap<T>, DocumentState> withRows,
+                      Consumer<List<T>> insert, IntConsumer delete, BiConsumer<T, T> update) {
+            this.rows = rows;
+            this.withRows = withRows;
+            this.insert = insert;
+            this.delete = delete;
+            this.update = update;
+        }
+    }
+}
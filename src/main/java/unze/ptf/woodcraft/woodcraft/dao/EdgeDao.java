@@ -2,12 +2,14 @@ package unze.ptf.woodcraft.woodcraft.dao;
 
 import unze.ptf.woodcraft.woodcraft.db.Database;
 import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.model.EdgeControlUpdate;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class EdgeDao {
@@ -61,25 +63,31 @@ public class EdgeDao {
         }
     }
 
-    public void insertWithId(Edge edge) {
+    public void insertAllWithId(List<Edge> edges) {
         String sql = """
             INSERT INTO edges(id, document_id, start_node_id, end_node_id,
             control_start_x_cm, control_start_y_cm, control_end_x_cm, control_end_y_cm)
             VALUES (?, ?, ?, ?, ?, ?, ?, ?)
             """;
-        try (Connection connection = Database.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, edge.getId());
-            statement.setInt(2, edge.getDocumentId());
-            statement.setInt(3, edge.getStartNodeId());
-            statement.setInt(4, edge.getEndNodeId());
-            setControl(statement, 5, edge.getControlStartXCm());
-            setControl(statement, 6, edge.getControlStartYCm());
-            setControl(statement, 7, edge.getControlEndXCm());
-            setControl(statement, 8, edge.getControlEndYCm());
-            statement.executeUpdate();
+        try {
+            Database.runInTransaction(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (Edge edge : edges) {
+                        statement.setInt(1, edge.getId());
+                        statement.setInt(2, edge.getDocumentId());
+                        statement.setInt(3, edge.getStartNodeId());
+                        statement.setInt(4, edge.getEndNodeId());
+                        setControl(statement, 5, edge.getControlStartXCm());
+                        setControl(statement, 6, edge.getControlStartYCm());
+                        setControl(statement, 7, edge.getControlEndXCm());
+                        setControl(statement, 8, edge.getControlEndYCm());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            });
         } catch (SQLException exception) {
-            throw new IllegalStateException("Failed to insert edge with id", exception);
+            throw new IllegalStateException("Failed to insert edges with id", exception);
         }
     }
 
@@ -114,6 +122,32 @@ public class EdgeDao {
         }
     }
 
+    public void updateControls(Collection<EdgeControlUpdate> updates) {
+        String sql = """
+            UPDATE edges
+            SET control_start_x_cm = ?, control_start_y_cm = ?,
+                control_end_x_cm = ?, control_end_y_cm = ?
+            WHERE id = ?
+            """;
+        try {
+            Database.runInTransaction(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (EdgeControlUpdate update : updates) {
+                        statement.setDouble(1, update.start().getX());
+                        statement.setDouble(2, update.start().getY());
+                        statement.setDouble(3, update.end().getX());
+                        statement.setDouble(4, update.end().getY());
+                        statement.setInt(5, update.edgeId());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            });
+        } catch (SQLException exception) {
+            throw new IllegalStateException("Failed to update edge controls", exception);
+        }
+    }
+
     public List<Edge> findByDocument(int documentId) {
         String sql = """
             SELECT id, document_id, start_node_id, end_node_id,
@@ -122,7 +156,7 @@ public class EdgeDao {
             WHERE document_id = ?
             """;
         List<Edge> edges = new ArrayList<>();
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, documentId);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -33,7 +33,7 @@ public class GuideDao {
     public List<Guide> findByDocument(int documentId) {
         String sql = "SELECT id, document_id, orientation, position_cm FROM guides WHERE document_id = ?";
         List<Guide> guides = new ArrayList<>();
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, documentId);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -63,17 +63,23 @@ public class GuideDao {
         }
     }
 
-    public void insertWithId(Guide guide) {
+    public void insertAllWithId(List<Guide> guides) {
         String sql = "INSERT INTO guides(id, document_id, orientation, position_cm) VALUES (?, ?, ?, ?)";
-        try (Connection connection = Database.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, guide.getId());
-            statement.setInt(2, guide.getDocumentId());
-            statement.setString(3, guide.getOrientation().name());
-            statement.setDouble(4, guide.getPositionCm());
-            statement.executeUpdate();
+        try {
+            Database.runInTransaction(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (Guide guide : guides) {
+                        statement.setInt(1, guide.getId());
+                        statement.setInt(2, guide.getDocumentId());
+                        statement.setString(3, guide.getOrientation().name());
+                        statement.setDouble(4, guide.getPositionCm());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            });
         } catch (SQLException exception) {
-            throw new IllegalStateException("Failed to insert guide with id", exception);
+            throw new IllegalStateException("Failed to insert guides with id", exception);
         }
     }
 
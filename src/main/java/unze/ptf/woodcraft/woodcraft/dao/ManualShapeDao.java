@@ -3,6 +3,7 @@ package unze.ptf.woodcraft.woodcraft.dao;
 import javafx.geometry.Point2D;
 import unze.ptf.woodcraft.woodcraft.db.Database;
 import unze.ptf.woodcraft.woodcraft.model.ManualShape;
+import unze.ptf.woodcraft.woodcraft.util.GeometryCodec;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -17,7 +18,7 @@ public class ManualShapeDao {
         try (Connection connection = Database.getConnection();
              PreparedStatement statement = connection.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
             statement.setInt(1, shape.getDocumentId());
-            statement.setString(2, serializePoints(shape.getPoints()));
+            statement.setBytes(2, GeometryCodec.encodePoints(shape.getPoints()));
             statement.executeUpdate();
             try (ResultSet keys = statement.getGeneratedKeys()) {
                 if (keys.next()) {
@@ -33,7 +34,7 @@ public class ManualShapeDao {
     public List<ManualShape> findByDocument(int documentId) {
         String sql = "SELECT id, document_id, points FROM manual_shapes WHERE document_id = ?";
         List<ManualShape> shapes = new ArrayList<>();
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, documentId);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -41,7 +42,7 @@ public class ManualShapeDao {
                     shapes.add(new ManualShape(
                             resultSet.getInt("id"),
                             resultSet.getInt("document_id"),
-                            parsePoints(resultSet.getString("points"))
+                            GeometryCodec.decodePoints(resultSet.getBytes("points"))
                     ));
                 }
             }
@@ -55,7 +56,7 @@ public class ManualShapeDao {
         String sql = "UPDATE manual_shapes SET points = ? WHERE id = ?";
         try (Connection connection = Database.getConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, serializePoints(points));
+            statement.setBytes(1, GeometryCodec.encodePoints(points));
             statement.setInt(2, shapeId);
             statement.executeUpdate();
         } catch (SQLException exception) {
@@ -85,52 +86,22 @@ public class ManualShapeDao {
         }
     }
 
-    public void insertWithId(ManualShape shape) {
+    public void insertAllWithId(List<ManualShape> shapes) {
         String sql = "INSERT INTO manual_shapes(id, document_id, points) VALUES (?, ?, ?)";
-        try (Connection connection = Database.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, shape.getId());
-            statement.setInt(2, shape.getDocumentId());
-            statement.setString(3, serializePoints(shape.getPoints()));
-            statement.executeUpdate();
+        try {
+            Database.runInTransaction(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (ManualShape shape : shapes) {
+                        statement.setInt(1, shape.getId());
+                        statement.setInt(2, shape.getDocumentId());
+                        statement.setBytes(3, GeometryCodec.encodePoints(shape.getPoints()));
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            });
         } catch (SQLException exception) {
-            throw new IllegalStateException("Failed to insert manual shape with id", exception);
-        }
-    }
-
-    private String serializePoints(List<Point2D> points) {
-        if (points == null || points.isEmpty()) {
-            return "";
-        }
-        StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < points.size(); i++) {
-            Point2D point = points.get(i);
-            builder.append(point.getX()).append(':').append(point.getY());
-            if (i < points.size() - 1) {
-                builder.append(',');
-            }
-        }
-        return builder.toString();
-    }
-
-    private List<Point2D> parsePoints(String value) {
-        List<Point2D> points = new ArrayList<>();
-        if (value == null || value.isBlank()) {
-            return points;
-        }
-        String[] parts = value.split(",");
-        for (String part : parts) {
-            String[] coords = part.trim().split(":");
-            if (coords.length != 2) {
-                continue;
-            }
-            try {
-                double x = Double.parseDouble(coords[0]);
-                double y = Double.parseDouble(coords[1]);
-                points.add(new Point2D(x, y));
-            } catch (NumberFormatException ignored) {
-            }
+            throw new IllegalStateException("Failed to insert manual shapes with id", exception);
         }
-        return points;
     }
 }
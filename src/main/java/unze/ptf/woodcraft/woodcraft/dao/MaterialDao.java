@@ -49,7 +49,7 @@ public class MaterialDao {
     public List<Material> findByUser(int userId) {
         String sql = "SELECT * FROM materials WHERE user_id = ? ORDER BY name";
         List<Material> materials = new ArrayList<>();
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, userId);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -65,7 +65,7 @@ public class MaterialDao {
 
     public Optional<Material> findById(int materialId) {
         String sql = "SELECT * FROM materials WHERE id = ?";
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, materialId);
             try (ResultSet resultSet = statement.executeQuery()) {
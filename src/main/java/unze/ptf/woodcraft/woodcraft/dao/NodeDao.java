@@ -1,5 +1,6 @@
 package unze.ptf.woodcraft.woodcraft.dao;
 
+import javafx.geometry.Point2D;
 import unze.ptf.woodcraft.woodcraft.db.Database;
 import unze.ptf.woodcraft.woodcraft.model.NodePoint;
 
@@ -9,6 +10,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class NodeDao {
     public NodePoint create(int documentId, double xCm, double yCm) {
@@ -54,17 +56,42 @@ public class NodeDao {
         }
     }
 
-    public void insertWithId(NodePoint node) {
+    public void updatePositions(Map<Integer, Point2D> positions) {
+        String sql = "UPDATE nodes SET x_cm = ?, y_cm = ? WHERE id = ?";
+        try {
+            Database.runInTransaction(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (Map.Entry<Integer, Point2D> entry : positions.entrySet()) {
+                        statement.setDouble(1, entry.getValue().getX());
+                        statement.setDouble(2, entry.getValue().getY());
+                        statement.setInt(3, entry.getKey());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            });
+        } catch (SQLException exception) {
+            throw new IllegalStateException("Failed to update node positions", exception);
+        }
+    }
+
+    public void insertAllWithId(List<NodePoint> nodes) {
         String sql = "INSERT INTO nodes(id, document_id, x_cm, y_cm) VALUES (?, ?, ?, ?)";
-        try (Connection connection = Database.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, node.getId());
-            statement.setInt(2, node.getDocumentId());
-            statement.setDouble(3, node.getXCm());
-            statement.setDouble(4, node.getYCm());
-            statement.executeUpdate();
+        try {
+            Database.runInTransaction(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (NodePoint node : nodes) {
+                        statement.setInt(1, node.getId());
+                        statement.setInt(2, node.getDocumentId());
+                        statement.setDouble(3, node.getXCm());
+                        statement.setDouble(4, node.getYCm());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            });
         } catch (SQLException exception) {
-            throw new IllegalStateException("Failed to insert node with id", exception);
+            throw new IllegalStateException("Failed to insert nodes with id", exception);
         }
     }
 
@@ -82,7 +109,7 @@ public class NodeDao {
     public List<NodePoint> findByDocument(int documentId) {
         String sql = "SELECT id, document_id, x_cm, y_cm FROM nodes WHERE document_id = ?";
         List<NodePoint> nodes = new ArrayList<>();
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, documentId);
             try (ResultSet resultSet = statement.executeQuery()) {
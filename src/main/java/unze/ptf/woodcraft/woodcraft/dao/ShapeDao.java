@@ -2,6 +2,7 @@ package unze.ptf.woodcraft.woodcraft.dao;
 
 import unze.ptf.woodcraft.woodcraft.db.Database;
 import unze.ptf.woodcraft.woodcraft.model.ShapePolygon;
+import unze.ptf.woodcraft.woodcraft.util.GeometryCodec;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -25,7 +26,7 @@ public class ShapeDao {
                 insert.setInt(2, shape.getMaterialId());
             }
             insert.setInt(3, shape.getQuantity());
-            insert.setString(4, serializeNodeIds(shape));
+            insert.setBytes(4, encodeNodeIds(shape));
             insert.setDouble(5, shape.getAreaCm2());
             insert.setDouble(6, shape.getPerimeterCm());
             insert.executeUpdate();
@@ -60,46 +61,70 @@ public class ShapeDao {
         }
     }
 
-    public void insertWithId(ShapePolygon shape) {
+    public void insertAllWithId(List<ShapePolygon> shapes) {
         String insertSql = """
             INSERT INTO shapes(id, document_id, material_id, quantity, node_ids, area_cm2, perimeter_cm)
             VALUES (?, ?, ?, ?, ?, ?, ?)
             """;
+        try {
+            Database.runInTransaction(connection -> {
+                try (PreparedStatement insert = connection.prepareStatement(insertSql)) {
+                    for (ShapePolygon shape : shapes) {
+                        insert.setInt(1, shape.getId());
+                        insert.setInt(2, shape.getDocumentId());
+                        if (shape.getMaterialId() == null) {
+                            insert.setNull(3, java.sql.Types.INTEGER);
+                        } else {
+                            insert.setInt(3, shape.getMaterialId());
+                        }
+                        insert.setInt(4, shape.getQuantity());
+                        insert.setBytes(5, encodeNodeIds(shape));
+                        insert.setDouble(6, shape.getAreaCm2());
+                        insert.setDouble(7, shape.getPerimeterCm());
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+            });
+        } catch (SQLException exception) {
+            throw new IllegalStateException("Failed to insert shapes with id", exception);
+        }
+    }
+
+    public void deleteById(int shapeId) {
+        String deleteSql = "DELETE FROM shapes WHERE id = ?";
         try (Connection connection = Database.getConnection();
-             PreparedStatement insert = connection.prepareStatement(insertSql)) {
-            insert.setInt(1, shape.getId());
-            insert.setInt(2, shape.getDocumentId());
-            if (shape.getMaterialId() == null) {
-                insert.setNull(3, java.sql.Types.INTEGER);
-            } else {
-                insert.setInt(3, shape.getMaterialId());
-            }
-            insert.setInt(4, shape.getQuantity());
-            insert.setString(5, serializeNodeIds(shape));
-            insert.setDouble(6, shape.getAreaCm2());
-            insert.setDouble(7, shape.getPerimeterCm());
-            insert.executeUpdate();
+             PreparedStatement delete = connection.prepareStatement(deleteSql)) {
+            delete.setInt(1, shapeId);
+            delete.executeUpdate();
         } catch (SQLException exception) {
-            throw new IllegalStateException("Failed to insert shape with id", exception);
+            throw new IllegalStateException("Failed to delete shape", exception);
         }
     }
 
-    public void replaceShapes(int documentId, List<ShapePolygon> shapes) {
-        deleteByDocument(documentId);
-        for (ShapePolygon shape : shapes) {
-            createShape(shape);
+    public void updateGeometry(ShapePolygon shape) {
+        String sql = "UPDATE shapes SET node_ids = ?, area_cm2 = ?, perimeter_cm = ? WHERE id = ?";
+        try (Connection connection = Database.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setBytes(1, encodeNodeIds(shape));
+            statement.setDouble(2, shape.getAreaCm2());
+            statement.setDouble(3, shape.getPerimeterCm());
+            statement.setInt(4, shape.getId());
+            statement.executeUpdate();
+        } catch (SQLException exception) {
+            throw new IllegalStateException("Failed to update shape geometry", exception);
         }
     }
 
     public List<ShapePolygon> findByDocument(int documentId) {
         String sql = "SELECT id, document_id, material_id, quantity, node_ids, area_cm2, perimeter_cm FROM shapes WHERE document_id = ?";
         List<ShapePolygon> shapes = new ArrayList<>();
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, documentId);
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
-                    List<Integer> nodeIds = parseNodeIds(resultSet.getString("node_ids"));
+                    List<Integer> nodeIds = GeometryCodec.decodeIds(resultSet.getBytes("node_ids"));
                     shapes.add(new ShapePolygon(
                             resultSet.getInt("id"),
                             resultSet.getInt("document_id"),
@@ -134,8 +159,7 @@ public class ShapeDao {
         }
     }
 
-    private String serializeNodeIds(ShapePolygon shape) {
-        StringBuilder builder = new StringBuilder();
+    private byte[] encodeNodeIds(ShapePolygon shape) {
         List<Integer> nodeIds = shape.getNodeIds();
         if (nodeIds == null || nodeIds.isEmpty()) {
             nodeIds = new ArrayList<>();
@@ -143,28 +167,6 @@ public class ShapeDao {
                 nodeIds.add(shape.getNodes().get(index).getId());
             }
         }
-        for (int index = 0; index < nodeIds.size(); index++) {
-            builder.append(nodeIds.get(index));
-            if (index < nodeIds.size() - 1) {
-                builder.append(',');
-            }
-        }
-        return builder.toString();
-    }
-
-    private List<Integer> parseNodeIds(String value) {
-        if (value == null || value.isBlank()) {
-            return List.of();
-        }
-        String[] parts = value.split(",");
-        List<Integer> nodeIds = new ArrayList<>();
-        for (String part : parts) {
-            try {
-                nodeIds.add(Integer.parseInt(part.trim()));
-            } catch (NumberFormatException ignored) {
-                // ignore invalid entries
-            }
-        }
-        return nodeIds;
+        return GeometryCodec.encodeIds(nodeIds);
     }
 }
@@ -34,7 +34,7 @@ public class UserDao {
 
     public Optional<User> findByUsername(String username) {
         String sql = "SELECT id, username, password_hash, role FROM users WHERE username = ?";
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setString(1, username);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -50,7 +50,7 @@ public class UserDao {
 
     public Optional<User> findById(int id) {
         String sql = "SELECT id, username, password_hash, role FROM users WHERE id = ?";
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, id);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -67,7 +67,7 @@ public class UserDao {
     public List<User> findAll() {
         String sql = "SELECT id, username, password_hash, role FROM users ORDER BY username";
         List<User> users = new ArrayList<>();
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql);
              ResultSet resultSet = statement.executeQuery()) {
             while (resultSet.next()) {
@@ -81,7 +81,7 @@ public class UserDao {
 
     public long countUsers() {
         String sql = "SELECT COUNT(*) FROM users";
-        try (Connection connection = Database.getConnection();
+        try (Connection connection = Database.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql);
              ResultSet resultSet = statement.executeQuery()) {
             if (resultSet.next()) {
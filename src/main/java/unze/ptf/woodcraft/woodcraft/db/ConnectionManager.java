@@ -0,0 +1,221 @@
+package unze.ptf.woodcraft.woodcraft.db;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+public final class ConnectionManager {
+    public record Metrics(int openConnections, int idleReaders, long writerAcquisitions, long writerWaitNanos,
+                          long readerAcquisitions, long readerWaitNanos) {
+    }
+
+    private static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+    private static final int BUSY_TIMEOUT_MS = 5000;
+    private static final long MMAP_SIZE_BYTES = 256L * 1024 * 1024;
+    private static final int CACHE_SIZE_KIB = 16 * 1024;
+
+    private final String url;
+    private final int maxReaders;
+    private final ReentrantLock writerLock = new ReentrantLock(true);
+    private final LinkedBlockingDeque<Connection> idleReaders = new LinkedBlockingDeque<>();
+    private final AtomicInteger openReaders = new AtomicInteger();
+    private final LongAdder writerAcquisitions = new LongAdder();
+    private final LongAdder writerWaitNanos = new LongAdder();
+    private final LongAdder readerAcquisitions = new LongAdder();
+    private final LongAdder readerWaitNanos = new LongAdder();
+    private Connection writer;
+    private volatile boolean writerOpen;
+    private volatile boolean closed;
+
+    ConnectionManager(String url, int maxReaders) {
+        this.url = url;
+        this.maxReaders = maxReaders;
+    }
+
+    Connection writer() throws SQLException {
+        long start = System.nanoTime();
+        writerLock.lock();
+        writerWaitNanos.add(System.nanoTime() - start);
+        writerAcquisitions.increment();
+        try {
+            if (closed) {
+                throw new SQLException("Connection manager is shut down");
+            }
+            if (writer == null) {
+                writer = open(false);
+                writerOpen = true;
+            }
+            return lease(writer, this::releaseWriter);
+        } catch (SQLException | RuntimeException exception) {
+            writerLock.unlock();
+            throw exception;
+        }
+    }
+
+    Connection reader() throws SQLException {
+        if (writerLock.isHeldByCurrentThread()) {
+            // Reads inside a write must see its uncommitted changes.
+            return writer();
+        }
+        long start = System.nanoTime();
+        Connection connection = idleReaders.pollFirst();
+        if (connection == null) {
+            if (openReaders.incrementAndGet() <= maxReaders) {
+                try {
+                    connection = open(true);
+                } catch (SQLException exception) {
+                    openReaders.decrementAndGet();
+                    throw exception;
+                }
+            } else {
+                openReaders.decrementAndGet();
+                try {
+                    connection = idleReaders.pollFirst(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a read connection", exception);
+                }
+                if (connection == null) {
+                    throw new SQLTimeoutException("Timed out waiting for a read connection");
+                }
+            }
+        }
+        readerWaitNanos.add(System.nanoTime() - start);
+        readerAcquisitions.increment();
+        return lease(connection, this::releaseReader);
+    }
+
+    Metrics metrics() {
+        return new Metrics(openReaders.get() + (writerOpen ? 1 : 0), idleReaders.size(),
+                writerAcquisitions.sum(), writerWaitNanos.sum(),
+                readerAcquisitions.sum(), readerWaitNanos.sum());
+    }
+
+    void shutdown() {
+        closed = true;
+        Connection connection;
+        while ((connection = idleReaders.pollFirst()) != null) {
+            closeQuietly(connection);
+            openReaders.decrementAndGet();
+        }
+        writerLock.lock();
+        try {
+            if (writer != null) {
+                closeQuietly(writer);
+                writer = null;
+                writerOpen = false;
+            }
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    private Connection open(boolean readOnly) throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+            statement.execute("PRAGMA foreign_keys = ON");
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute("PRAGMA synchronous = NORMAL");
+            statement.execute("PRAGMA mmap_size = " + MMAP_SIZE_BYTES);
+            statement.execute("PRAGMA cache_size = -" + CACHE_SIZE_KIB);
+            if (readOnly) {
+                statement.execute("PRAGMA query_only = 1");
+            }
+        } catch (SQLException exception) {
+            closeQuietly(connection);
+            throw exception;
+        }
+        return connection;
+    }
+
+    private void releaseWriter(Connection connection) {
+        try {
+            if (writerLock.getHoldCount() == 1 && !resetQuietly(connection)) {
+                closeQuietly(connection);
+                writer = null;
+                writerOpen = false;
+            }
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    private void releaseReader(Connection connection) {
+        if (closed || !resetQuietly(connection)) {
+            closeQuietly(connection);
+            openReaders.decrementAndGet();
+            return;
+        }
+        idleReaders.offerFirst(connection);
+    }
+
+    private static boolean resetQuietly(Connection connection) {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            return !connection.isClosed();
+        } catch (SQLException exception) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private static Connection lease(Connection connection, Consumer<Connection> release) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close" -> {
+                            if (released.compareAndSet(false, true)) {
+                                release.accept(connection);
+                            }
+                            return null;
+                        }
+                        case "isClosed" -> {
+                            if (released.get()) {
+                                return true;
+                            }
+                        }
+                        case "equals" -> {
+                            return proxy == args[0];
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(proxy);
+                        }
+                        case "toString" -> {
+                            return "Pooled" + connection;
+                        }
+                        default -> {
+                            if (released.get()) {
+                                throw new SQLException("Connection already returned to the pool");
+                            }
+                        }
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException exception) {
+                        throw exception.getCause();
+                    }
+                });
+    }
+}
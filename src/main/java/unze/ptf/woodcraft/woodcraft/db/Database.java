@@ -3,26 +3,85 @@ package unze.ptf.woodcraft.woodcraft.db;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public final class Database {
+    @FunctionalInterface
+    public interface SqlWork {
+        void run(Connection connection) throws SQLException;
+    }
+
     private static final String DB_FILE = "woodcraft.db";
     private static final String JDBC_PREFIX = "jdbc:sqlite:";
+    private static final int READER_POOL_SIZE = 4;
+
+    private static volatile ConnectionManager manager;
 
     private Database() {
     }
 
     public static Connection getConnection() throws SQLException {
-        ensureDirectory();
-        String dbPath = getDatabasePath().toString();
-        return DriverManager.getConnection(JDBC_PREFIX + dbPath);
+        return manager().writer();
+    }
+
+    public static Connection getReadConnection() throws SQLException {
+        return manager().reader();
+    }
+
+    public static void runInTransaction(SqlWork work) throws SQLException {
+        try (Connection connection = getConnection()) {
+            if (!connection.getAutoCommit()) {
+                // Already inside a transaction on this thread: join it.
+                work.run(connection);
+                return;
+            }
+            connection.setAutoCommit(false);
+            try {
+                work.run(connection);
+                connection.commit();
+            } catch (SQLException | RuntimeException | Error exception) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackException) {
+                    exception.addSuppressed(rollbackException);
+                }
+                throw exception;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    public static ConnectionManager.Metrics getMetrics() {
+        ConnectionManager current = manager;
+        return current == null ? new ConnectionManager.Metrics(0, 0, 0, 0, 0, 0) : current.metrics();
+    }
+
+    public static synchronized void shutdown() {
+        if (manager != null) {
+            manager.shutdown();
+            manager = null;
+        }
     }
 
     public static Path getDatabasePath() {
         return Path.of(System.getProperty("user.home"), ".woodcraft", DB_FILE);
     }
 
+    private static ConnectionManager manager() {
+        ConnectionManager current = manager;
+        if (current != null) {
+            return current;
+        }
+        synchronized (Database.class) {
+            if (manager == null) {
+                ensureDirectory();
+                manager = new ConnectionManager(JDBC_PREFIX + getDatabasePath(), READER_POOL_SIZE);
+            }
+            return manager;
+        }
+    }
+
     private static void ensureDirectory() {
         try {
             Path dir = Path.of(System.getProperty("user.home"), ".woodcraft");
@@ -1,177 +1,395 @@
 package unze.ptf.woodcraft.woodcraft.db;
 
+import unze.ptf.woodcraft.woodcraft.util.GeometryCodec;
+
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 
 public final class DatabaseInitializer {
+    @FunctionalInterface
+    private interface Migration {
+        void apply(Connection connection, Statement statement) throws SQLException;
+    }
+
+    // Schema version N is reached by applying MIGRATIONS[N - 1]; only ever append to this list.
+    private static final List<Migration> MIGRATIONS = List.of(
+            DatabaseInitializer::createBaseline,
+            DatabaseInitializer::cascadeDocumentChildren,
+            DatabaseInitializer::createLookupIndexes,
+            DatabaseInitializer::packGeometryColumns
+    );
+
     private DatabaseInitializer() {
     }
 
     public static void initialize() {
-        try (Connection connection = Database.getConnection(); Statement statement = connection.createStatement()) {
-            statement.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS users (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    username TEXT UNIQUE NOT NULL,
-                    password_hash TEXT NOT NULL,
-                    role TEXT NOT NULL
-                )
-                """);
-            statement.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS documents (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    user_id INTEGER NOT NULL,
-                    name TEXT NOT NULL,
-                    width_cm REAL NOT NULL DEFAULT 244,
-                    height_cm REAL NOT NULL DEFAULT 122,
-                    kerf_mm REAL NOT NULL DEFAULT 3,
-                    unit_system TEXT NOT NULL DEFAULT 'CM',
-                    FOREIGN KEY (user_id) REFERENCES users(id)
-                )
-                """);
-            try {
-                statement.executeUpdate("ALTER TABLE documents ADD COLUMN width_cm REAL NOT NULL DEFAULT 244");
-            } catch (SQLException ignored) {
-            }
-            try {
-                statement.executeUpdate("ALTER TABLE documents ADD COLUMN height_cm REAL NOT NULL DEFAULT 122");
-            } catch (SQLException ignored) {
-            }
-            try {
-                statement.executeUpdate("ALTER TABLE documents ADD COLUMN kerf_mm REAL NOT NULL DEFAULT 3");
-            } catch (SQLException ignored) {
-            }
-            try {
-                statement.executeUpdate("ALTER TABLE documents ADD COLUMN unit_system TEXT NOT NULL DEFAULT 'CM'");
-            } catch (SQLException ignored) {
-            }
-            statement.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS materials (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    user_id INTEGER NOT NULL,
-                    name TEXT NOT NULL,
-                    type TEXT NOT NULL,
-                    sheet_width_cm REAL,
-                    sheet_height_cm REAL,
-                    sheet_price REAL,
-                    price_per_square_meter REAL,
-                    price_per_linear_meter REAL,
-                    image_path TEXT,
-                    grain_direction TEXT NOT NULL DEFAULT 'NONE',
-                    edge_banding_cost_per_meter REAL NOT NULL DEFAULT 0,
-                    FOREIGN KEY (user_id) REFERENCES users(id)
-                )
-                """);
-            try {
-                statement.executeUpdate("ALTER TABLE materials ADD COLUMN image_path TEXT");
-            } catch (SQLException ignored) {
-                // Column already exists or migration not needed.
+        try (Connection connection = Database.getConnection()) {
+            int version = readUserVersion(connection);
+            if (version > MIGRATIONS.size()) {
+                throw new IllegalStateException("Database schema version " + version
+                        + " is newer than this application supports (" + MIGRATIONS.size() + ")");
             }
-            try {
-                statement.executeUpdate("ALTER TABLE materials ADD COLUMN grain_direction TEXT NOT NULL DEFAULT 'NONE'");
-            } catch (SQLException ignored) {
-            }
-            try {
-                statement.executeUpdate("ALTER TABLE materials ADD COLUMN edge_banding_cost_per_meter REAL NOT NULL DEFAULT 0");
-            } catch (SQLException ignored) {
+            if (version == MIGRATIONS.size()) {
+                return;
             }
-            statement.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS nodes (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    document_id INTEGER NOT NULL,
-                    x_cm REAL NOT NULL,
-                    y_cm REAL NOT NULL,
-                    FOREIGN KEY (document_id) REFERENCES documents(id)
-                )
-                """);
-            statement.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS edges (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    document_id INTEGER NOT NULL,
-                    start_node_id INTEGER NOT NULL,
-                    end_node_id INTEGER NOT NULL,
-                    control_start_x_cm REAL,
-                    control_start_y_cm REAL,
-                    control_end_x_cm REAL,
-                    control_end_y_cm REAL,
-                    FOREIGN KEY (document_id) REFERENCES documents(id),
-                    FOREIGN KEY (start_node_id) REFERENCES nodes(id),
-                    FOREIGN KEY (end_node_id) REFERENCES nodes(id)
-                )
-                """);
+            // Table rebuilds must not trigger cascades; foreign_keys cannot change inside a transaction.
+            setForeignKeys(connection, false);
             try {
-                statement.executeUpdate("ALTER TABLE edges ADD COLUMN control_start_x_cm REAL");
-            } catch (SQLException ignored) {
+                for (int index = version; index < MIGRATIONS.size(); index++) {
+                    Migration migration = MIGRATIONS.get(index);
+                    int target = index + 1;
+                    Database.runInTransaction(transaction -> {
+                        try (Statement statement = transaction.createStatement()) {
+                            migration.apply(transaction, statement);
+                            statement.executeUpdate("PRAGMA user_version = " + target);
+                        }
+                    });
+                }
+            } finally {
+                setForeignKeys(connection, true);
             }
-            try {
-                statement.executeUpdate("ALTER TABLE edges ADD COLUMN control_start_y_cm REAL");
-            } catch (SQLException ignored) {
+        } catch (SQLException exception) {
+            throw new IllegalStateException("Failed to initialize database", exception);
+        }
+    }
+
+    private static int readUserVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA user_version")) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    private static void setForeignKeys(Connection connection, boolean enabled) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA foreign_keys = " + (enabled ? "ON" : "OFF"));
+        }
+    }
+
+    private static void createBaseline(Connection connection, Statement statement) throws SQLException {
+        statement.executeUpdate("""
+            CREATE TABLE IF NOT EXISTS users (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                username TEXT UNIQUE NOT NULL,
+                password_hash TEXT NOT NULL,
+                role TEXT NOT NULL
+            )
+            """);
+        statement.executeUpdate("""
+            CREATE TABLE IF NOT EXISTS documents (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                user_id INTEGER NOT NULL,
+                name TEXT NOT NULL,
+                width_cm REAL NOT NULL DEFAULT 244,
+                height_cm REAL NOT NULL DEFAULT 122,
+                kerf_mm REAL NOT NULL DEFAULT 3,
+                unit_system TEXT NOT NULL DEFAULT 'CM',
+                FOREIGN KEY (user_id) REFERENCES users(id)
+            )
+            """);
+        statement.executeUpdate("""
+            CREATE TABLE IF NOT EXISTS materials (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                user_id INTEGER NOT NULL,
+                name TEXT NOT NULL,
+                type TEXT NOT NULL,
+                sheet_width_cm REAL,
+                sheet_height_cm REAL,
+                sheet_price REAL,
+                price_per_square_meter REAL,
+                price_per_linear_meter REAL,
+                image_path TEXT,
+                grain_direction TEXT NOT NULL DEFAULT 'NONE',
+                edge_banding_cost_per_meter REAL NOT NULL DEFAULT 0,
+                FOREIGN KEY (user_id) REFERENCES users(id)
+            )
+            """);
+        statement.executeUpdate("""
+            CREATE TABLE IF NOT EXISTS nodes (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                document_id INTEGER NOT NULL,
+                x_cm REAL NOT NULL,
+                y_cm REAL NOT NULL,
+                FOREIGN KEY (document_id) REFERENCES documents(id)
+            )
+            """);
+        statement.executeUpdate("""
+            CREATE TABLE IF NOT EXISTS edges (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                document_id INTEGER NOT NULL,
+                start_node_id INTEGER NOT NULL,
+                end_node_id INTEGER NOT NULL,
+                control_start_x_cm REAL,
+                control_start_y_cm REAL,
+                control_end_x_cm REAL,
+                control_end_y_cm REAL,
+                FOREIGN KEY (document_id) REFERENCES documents(id),
+                FOREIGN KEY (start_node_id) REFERENCES nodes(id),
+                FOREIGN KEY (end_node_id) REFERENCES nodes(id)
+            )
+            """);
+        statement.executeUpdate("""
+            CREATE TABLE IF NOT EXISTS guides (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                document_id INTEGER NOT NULL,
+                orientation TEXT NOT NULL,
+                position_cm REAL NOT NULL,
+                FOREIGN KEY (document_id) REFERENCES documents(id)
+            )
+            """);
+        statement.executeUpdate("""
+            CREATE TABLE IF NOT EXISTS shapes (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                document_id INTEGER NOT NULL,
+                material_id INTEGER,
+                quantity INTEGER NOT NULL DEFAULT 1,
+                node_ids TEXT NOT NULL,
+                area_cm2 REAL NOT NULL,
+                perimeter_cm REAL NOT NULL,
+                FOREIGN KEY (document_id) REFERENCES documents(id),
+                FOREIGN KEY (material_id) REFERENCES materials(id)
+            )
+            """);
+        statement.executeUpdate("""
+            CREATE TABLE IF NOT EXISTS manual_shapes (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                document_id INTEGER NOT NULL,
+                points TEXT NOT NULL,
+                FOREIGN KEY (document_id) REFERENCES documents(id)
+            )
+            """);
+        statement.executeUpdate("""
+            CREATE TABLE IF NOT EXISTS dimensions (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                document_id INTEGER NOT NULL,
+                start_x_cm REAL NOT NULL,
+                start_y_cm REAL NOT NULL,
+                end_x_cm REAL NOT NULL,
+                end_y_cm REAL NOT NULL,
+                offset_x_cm REAL NOT NULL DEFAULT 0,
+                offset_y_cm REAL NOT NULL DEFAULT 0,
+                type TEXT NOT NULL DEFAULT 'ALIGNED',
+                start_node_id INTEGER,
+                end_node_id INTEGER,
+                FOREIGN KEY (document_id) REFERENCES documents(id)
+            )
+            """);
+        // Databases created before versioning may predate some of these columns.
+        addColumnIfMissing(connection, statement, "documents", "width_cm", "REAL NOT NULL DEFAULT 244");
+        addColumnIfMissing(connection, statement, "documents", "height_cm", "REAL NOT NULL DEFAULT 122");
+        addColumnIfMissing(connection, statement, "documents", "kerf_mm", "REAL NOT NULL DEFAULT 3");
+        addColumnIfMissing(connection, statement, "documents", "unit_system", "TEXT NOT NULL DEFAULT 'CM'");
+        addColumnIfMissing(connection, statement, "materials", "image_path", "TEXT");
+        addColumnIfMissing(connection, statement, "materials", "grain_direction", "TEXT NOT NULL DEFAULT 'NONE'");
+        addColumnIfMissing(connection, statement, "materials", "edge_banding_cost_per_meter", "REAL NOT NULL DEFAULT 0");
+        addColumnIfMissing(connection, statement, "edges", "control_start_x_cm", "REAL");
+        addColumnIfMissing(connection, statement, "edges", "control_start_y_cm", "REAL");
+        addColumnIfMissing(connection, statement, "edges", "control_end_x_cm", "REAL");
+        addColumnIfMissing(connection, statement, "edges", "control_end_y_cm", "REAL");
+        addColumnIfMissing(connection, statement, "dimensions", "start_node_id", "INTEGER");
+        addColumnIfMissing(connection, statement, "dimensions", "end_node_id", "INTEGER");
+    }
+
+    private static void cascadeDocumentChildren(Connection connection, Statement statement) throws SQLException {
+        // Rows whose parent is already gone are dropped instead of failing the foreign key check.
+        rebuildTable(connection, statement, "nodes", """
+            CREATE TABLE nodes_new (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                document_id INTEGER NOT NULL,
+                x_cm REAL NOT NULL,
+                y_cm REAL NOT NULL,
+                FOREIGN KEY (document_id) REFERENCES documents(id) ON DELETE CASCADE
+            )
+            """, """
+            INSERT INTO nodes_new(id, document_id, x_cm, y_cm)
+            SELECT id, document_id, x_cm, y_cm FROM nodes
+            WHERE document_id IN (SELECT id FROM documents)
+            """);
+        rebuildTable(connection, statement, "edges", """
+            CREATE TABLE edges_new (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                document_id INTEGER NOT NULL,
+                start_node_id INTEGER NOT NULL,
+                end_node_id INTEGER NOT NULL,
+                control_start_x_cm REAL,
+                control_start_y_cm REAL,
+                control_end_x_cm REAL,
+                control_end_y_cm REAL,
+                FOREIGN KEY (document_id) REFERENCES documents(id) ON DELETE CASCADE,
+                FOREIGN KEY (start_node_id) REFERENCES nodes(id) ON DELETE CASCADE,
+                FOREIGN KEY (end_node_id) REFERENCES nodes(id) ON DELETE CASCADE
+            )
+            """, """
+            INSERT INTO edges_new(id, document_id, start_node_id, end_node_id,
+            control_start_x_cm, control_start_y_cm, control_end_x_cm, control_end_y_cm)
+            SELECT id, document_id, start_node_id, end_node_id,
+            control_start_x_cm, control_start_y_cm, control_end_x_cm, control_end_y_cm FROM edges
+            WHERE document_id IN (SELECT id FROM documents)
+            AND start_node_id IN (SELECT id FROM nodes)
+            AND end_node_id IN (SELECT id FROM nodes)
+            """);
+        rebuildTable(connection, statement, "guides", """
+            CREATE TABLE guides_new (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                document_id INTEGER NOT NULL,
+                orientation TEXT NOT NULL,
+                position_cm REAL NOT NULL,
+                FOREIGN KEY (document_id) REFERENCES documents(id) ON DELETE CASCADE
+            )
+            """, """
+            INSERT INTO guides_new(id, document_id, orientation, position_cm)
+            SELECT id, document_id, orientation, position_cm FROM guides
+            WHERE document_id IN (SELECT id FROM documents)
+            """);
+        rebuildTable(connection, statement, "shapes", """
+            CREATE TABLE shapes_new (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                document_id INTEGER NOT NULL,
+                material_id INTEGER,
+                quantity INTEGER NOT NULL DEFAULT 1,
+                node_ids TEXT NOT NULL,
+                area_cm2 REAL NOT NULL,
+                perimeter_cm REAL NOT NULL,
+                FOREIGN KEY (document_id) REFERENCES documents(id) ON DELETE CASCADE,
+                FOREIGN KEY (material_id) REFERENCES materials(id) ON DELETE SET NULL
+            )
+            """, """
+            INSERT INTO shapes_new(id, document_id, material_id, quantity, node_ids, area_cm2, perimeter_cm)
+            SELECT id, document_id,
+            CASE WHEN material_id IN (SELECT id FROM materials) THEN material_id END,
+            quantity, node_ids, area_cm2, perimeter_cm FROM shapes
+            WHERE document_id IN (SELECT id FROM documents)
+            """);
+        rebuildTable(connection, statement, "manual_shapes", """
+            CREATE TABLE manual_shapes_new (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                document_id INTEGER NOT NULL,
+                points TEXT NOT NULL,
+                FOREIGN KEY (document_id) REFERENCES documents(id) ON DELETE CASCADE
+            )
+            """, """
+            INSERT INTO manual_shapes_new(id, document_id, points)
+            SELECT id, document_id, points FROM manual_shapes
+            WHERE document_id IN (SELECT id FROM documents)
+            """);
+        rebuildTable(connection, statement, "dimensions", """
+            CREATE TABLE dimensions_new (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                document_id INTEGER NOT NULL,
+                start_x_cm REAL NOT NULL,
+                start_y_cm REAL NOT NULL,
+                end_x_cm REAL NOT NULL,
+                end_y_cm REAL NOT NULL,
+                offset_x_cm REAL NOT NULL DEFAULT 0,
+                offset_y_cm REAL NOT NULL DEFAULT 0,
+                type TEXT NOT NULL DEFAULT 'ALIGNED',
+                start_node_id INTEGER,
+                end_node_id INTEGER,
+                FOREIGN KEY (document_id) REFERENCES documents(id) ON DELETE CASCADE
+            )
+            """, """
+            INSERT INTO dimensions_new(id, document_id, start_x_cm, start_y_cm, end_x_cm, end_y_cm,
+            offset_x_cm, offset_y_cm, type, start_node_id, end_node_id)
+            SELECT id, document_id, start_x_cm, start_y_cm, end_x_cm, end_y_cm,
+            offset_x_cm, offset_y_cm, type, start_node_id, end_node_id FROM dimensions
+            WHERE document_id IN (SELECT id FROM documents)
+            """);
+        for (String table : List.of("nodes", "edges", "guides", "shapes", "manual_shapes", "dimensions")) {
+            try (ResultSet violations = statement.executeQuery("PRAGMA foreign_key_check(" + table + ")")) {
+                if (violations.next()) {
+                    throw new SQLException("Foreign key violation in " + table + " after migration");
+                }
             }
-            try {
-                statement.executeUpdate("ALTER TABLE edges ADD COLUMN control_end_x_cm REAL");
-            } catch (SQLException ignored) {
+        }
+    }
+
+    private static void createLookupIndexes(Connection connection, Statement statement) throws SQLException {
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_documents_user ON documents(user_id)");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_materials_user ON materials(user_id)");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_nodes_document ON nodes(document_id)");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_edges_document ON edges(document_id)");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_edges_start_node ON edges(start_node_id)");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_edges_end_node ON edges(end_node_id)");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_guides_document ON guides(document_id)");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_shapes_document ON shapes(document_id)");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_shapes_material ON shapes(material_id)");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_manual_shapes_document ON manual_shapes(document_id)");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_dimensions_document ON dimensions(document_id)");
+    }
+
+    private static void packGeometryColumns(Connection connection, Statement statement) throws SQLException {
+        // The DAOs write packed BLOBs and can still decode text rows; converting the old text rows once here
+        // keeps loads off the string parsing path.
+        repackColumn(connection, statement, "shapes", "node_ids",
+                value -> GeometryCodec.encodeIds(GeometryCodec.parseIds(value)));
+        repackColumn(connection, statement, "manual_shapes", "points",
+                value -> GeometryCodec.encodePoints(GeometryCodec.parsePoints(value)));
+    }
+
+    private static void repackColumn(Connection connection, Statement statement, String table, String column,
+                                     Function<String, byte[]> encoder) throws SQLException {
+        try (ResultSet rows = statement.executeQuery(
+                "SELECT id, " + column + " FROM " + table + " WHERE typeof(" + column + ") = 'text'");
+             PreparedStatement update = connection.prepareStatement(
+                     "UPDATE " + table + " SET " + column + " = ? WHERE id = ?")) {
+            while (rows.next()) {
+                update.setBytes(1, encoder.apply(rows.getString(2)));
+                update.setInt(2, rows.getInt(1));
+                update.addBatch();
             }
-            try {
-                statement.executeUpdate("ALTER TABLE edges ADD COLUMN control_end_y_cm REAL");
-            } catch (SQLException ignored) {
+            update.executeBatch();
+        }
+    }
+
+    private static void rebuildTable(Connection connection, Statement statement, String table, String createSql,
+                                     String copySql) throws SQLException {
+        long sequence = 0;
+        try (PreparedStatement query = connection.prepareStatement("SELECT seq FROM sqlite_sequence WHERE name = ?")) {
+            query.setString(1, table);
+            try (ResultSet resultSet = query.executeQuery()) {
+                if (resultSet.next()) {
+                    sequence = resultSet.getLong(1);
+                }
             }
-            statement.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS guides (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    document_id INTEGER NOT NULL,
-                    orientation TEXT NOT NULL,
-                    position_cm REAL NOT NULL,
-                    FOREIGN KEY (document_id) REFERENCES documents(id)
-                )
-                """);
-            statement.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS shapes (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    document_id INTEGER NOT NULL,
-                    material_id INTEGER,
-                    quantity INTEGER NOT NULL DEFAULT 1,
-                    node_ids TEXT NOT NULL,
-                    area_cm2 REAL NOT NULL,
-                    perimeter_cm REAL NOT NULL,
-                    FOREIGN KEY (document_id) REFERENCES documents(id),
-                    FOREIGN KEY (material_id) REFERENCES materials(id)
-                )
-                """);
-            statement.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS manual_shapes (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    document_id INTEGER NOT NULL,
-                    points TEXT NOT NULL,
-                    FOREIGN KEY (document_id) REFERENCES documents(id)
-                )
-                """);
-            statement.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS dimensions (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    document_id INTEGER NOT NULL,
-                    start_x_cm REAL NOT NULL,
-                    start_y_cm REAL NOT NULL,
-                    end_x_cm REAL NOT NULL,
-                    end_y_cm REAL NOT NULL,
-                    offset_x_cm REAL NOT NULL DEFAULT 0,
-                    offset_y_cm REAL NOT NULL DEFAULT 0,
-                    type TEXT NOT NULL DEFAULT 'ALIGNED',
-                    start_node_id INTEGER,
-                    end_node_id INTEGER,
-                    FOREIGN KEY (document_id) REFERENCES documents(id)
-                )
-                """);
-            try {
-                statement.executeUpdate("ALTER TABLE dimensions ADD COLUMN start_node_id INTEGER");
-            } catch (SQLException ignored) {
+        }
+        statement.executeUpdate(createSql);
+        statement.executeUpdate(copySql);
+        statement.executeUpdate("DROP TABLE " + table);
+        statement.executeUpdate("ALTER TABLE " + table + "_new RENAME TO " + table);
+        // Keep AUTOINCREMENT from handing out ids of rows deleted before the rebuild.
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE sqlite_sequence SET seq = MAX(seq, ?) WHERE name = ?")) {
+            update.setLong(1, sequence);
+            update.setString(2, table);
+            if (update.executeUpdate() == 0 && sequence > 0) {
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO sqlite_sequence(name, seq) VALUES (?, ?)")) {
+                    insert.setString(1, table);
+                    insert.setLong(2, sequence);
+                    insert.executeUpdate();
+                }
             }
-            try {
-                statement.executeUpdate("ALTER TABLE dimensions ADD COLUMN end_node_id INTEGER");
-            } catch (SQLException ignored) {
+        }
+    }
+
+    private static void addColumnIfMissing(Connection connection, Statement statement, String table, String column,
+                                           String definition) throws SQLException {
+        Set<String> columns = new HashSet<>();
+        try (Statement query = connection.createStatement();
+             ResultSet resultSet = query.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (resultSet.next()) {
+                columns.add(resultSet.getString("name"));
             }
-        } catch (SQLException exception) {
-            throw new IllegalStateException("Failed to initialize database", exception);
+        }
+        if (!columns.contains(column)) {
+            statement.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
         }
     }
 }
@@ -2,9 +2,9 @@ package unze.ptf.woodcraft.woodcraft.io;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import javafx.geometry.Point2D;
 import unze.ptf.woodcraft.woodcraft.dao.*;
 import unze.ptf.woodcraft.woodcraft.model.*;
+import unze.ptf.woodcraft.woodcraft.util.GeometryCodec;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -119,7 +119,7 @@ public class ProjectPackageService {
             dto.id = s.getId();
             dto.materialId = s.getMaterialId();
             dto.quantity = s.getQuantity();
-            dto.nodeIds = joinIds(s.getNodeIds());
+            dto.nodeIds = GeometryCodec.formatIds(s.getNodeIds());
             dto.areaCm2 = s.getAreaCm2();
             dto.perimeterCm = s.getPerimeterCm();
             pack.shapes.add(dto);
@@ -129,7 +129,7 @@ public class ProjectPackageService {
         for (ManualShape ms : manualShapes) {
             ProjectPackage.ManualShapeDto dto = new ProjectPackage.ManualShapeDto();
             dto.id = ms.getId();
-            dto.points = serializePoints(ms.getPoints()); // identicno DAO formatu
+            dto.points = GeometryCodec.formatPoints(ms.getPoints()); // paket ostaje u tekstualnom formatu
             pack.manualShapes.add(dto);
         }
 
@@ -292,7 +292,7 @@ public class ProjectPackageService {
         // 6) manual shapes
         if (pack.manualShapes != null) {
             for (ProjectPackage.ManualShapeDto ms : pack.manualShapes) {
-                ManualShape shape = new ManualShape(-1, newDocId, parsePoints(ms.points));
+                ManualShape shape = new ManualShape(-1, newDocId, GeometryCodec.parsePoints(ms.points));
                 manualShapeDao.create(shape);
             }
         }
@@ -397,16 +397,6 @@ public class ProjectPackageService {
         return i >= 0 ? name.substring(i) : "";
     }
 
-    private static String joinIds(List<Integer> ids) {
-        if (ids == null || ids.isEmpty()) return "";
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < ids.size(); i++) {
-            sb.append(ids.get(i));
-            if (i < ids.size() - 1) sb.append(',');
-        }
-        return sb.toString();
-    }
-
     // ✅ STRICT remap: ne dozvoljava "preskakanje" nodeova
     private static List<Integer> remapNodeIdsStringStrict(String value, Map<Integer, Integer> nodeMap) {
         if (value == null || value.isBlank()) return List.of();
@@ -438,35 +428,6 @@ public class ProjectPackageService {
         return v;
     }
 
-    // ManualShape format identican ManualShapeDao (x:y,x:y)
-    private static String serializePoints(List<Point2D> points) {
-        if (points == null || points.isEmpty()) return "";
-        StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < points.size(); i++) {
-            Point2D p = points.get(i);
-            builder.append(p.getX()).append(':').append(p.getY());
-            if (i < points.size() - 1) builder.append(',');
-        }
-        return builder.toString();
-    }
-
-    private static List<Point2D> parsePoints(String value) {
-        List<Point2D> points = new ArrayList<Point2D>();
-        if (value == null || value.isBlank()) return points;
-
-        String[] parts = value.split(",");
-        for (String part : parts) {
-            String[] coords = part.trim().split(":");
-            if (coords.length != 2) continue;
-            try {
-                double x = Double.parseDouble(coords[0]);
-                double y = Double.parseDouble(coords[1]);
-                points.add(new Point2D(x, y));
-            } catch (NumberFormatException ignored) {}
-        }
-        return points;
-    }
-
     private static Path ensureAssetsDir(int userId) throws IOException {
         Path dir = Paths.get(System.getProperty("user.home"), ".woodcraft", "assets", String.valueOf(userId));
         Files.createDirectories(dir);
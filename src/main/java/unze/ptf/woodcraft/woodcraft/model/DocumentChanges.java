@@ -0,0 +1,31 @@
+package unze.ptf.woodcraft.woodcraft.model;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.ToIntFunction;
+
+// The rows one undo or redo touched, by id, as they are now; a null row is one that no longer exists.
+public record DocumentChanges(Map<Integer, NodePoint> nodes, Map<Integer, Edge> edges, Map<Integer, Guide> guides,
+                              Map<Integer, Dimension> dimensions, Map<Integer, ShapePolygon> shapes,
+                              Map<Integer, ManualShape> manualShapes) {
+
+    // Replaces, removes or appends the changed rows of a list that holds one row per id.
+    public static <T> void applyTo(List<T> rows, Map<Integer, T> changes, ToIntFunction<T> idOf) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        Map<Integer, T> pending = new LinkedHashMap<>(changes);
+        rows.replaceAll(row -> {
+            int id = idOf.applyAsInt(row);
+            return pending.containsKey(id) ? pending.remove(id) : row;
+        });
+        rows.removeIf(Objects::isNull);
+        for (T row : pending.values()) {
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+    }
+}
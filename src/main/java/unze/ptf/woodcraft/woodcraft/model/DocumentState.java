@@ -0,0 +1,76 @@
+package unze.ptf.woodcraft.woodcraft.model;
+
+import unze.ptf.woodcraft.woodcraft.util.PersistentIntMap;
+
+// One immutable version of a document's contents. Edits return a new version that shares everything it did not
+// change, so holding on to an old version costs nothing and it can be read from any thread.
+public final class DocumentState {
+    public static final DocumentState EMPTY = new DocumentState(PersistentIntMap.empty(), PersistentIntMap.empty(),
+            PersistentIntMap.empty(), PersistentIntMap.empty(), PersistentIntMap.empty(), PersistentIntMap.empty());
+
+    private final PersistentIntMap<NodePoint> nodes;
+    private final PersistentIntMap<Edge> edges;
+    private final PersistentIntMap<Guide> guides;
+    private final PersistentIntMap<Dimension> dimensions;
+    private final PersistentIntMap<ShapePolygon> shapes;
+    private final PersistentIntMap<ManualShape> manualShapes;
+
+    private DocumentState(PersistentIntMap<NodePoint> nodes, PersistentIntMap<Edge> edges,
+                          PersistentIntMap<Guide> guides, PersistentIntMap<Dimension> dimensions,
+                          PersistentIntMap<ShapePolygon> shapes, PersistentIntMap<ManualShape> manualShapes) {
+        this.nodes = nodes;
+        this.edges = edges;
+        this.guides = guides;
+        this.dimensions = dimensions;
+        this.shapes = shapes;
+        this.manualShapes = manualShapes;
+    }
+
+    public PersistentIntMap<NodePoint> getNodes() {
+        return nodes;
+    }
+
+    public PersistentIntMap<Edge> getEdges() {
+        return edges;
+    }
+
+    public PersistentIntMap<Guide> getGuides() {
+        return guides;
+    }
+
+    public PersistentIntMap<Dimension> getDimensions() {
+        return dimensions;
+    }
+
+    public PersistentIntMap<ShapePolygon> getShapes() {
+        return shapes;
+    }
+
+    public PersistentIntMap<ManualShape> getManualShapes() {
+        return manualShapes;
+    }
+
+    public DocumentState withNodes(PersistentIntMap<NodePoint> nodes) {
+        return new DocumentState(nodes, edges, guides, dimensions, shapes, manualShapes);
+    }
+
+    public DocumentState withEdges(PersistentIntMap<Edge> edges) {
+        return new DocumentState(nodes, edges, guides, dimensions, shapes, manualShapes);
+    }
+
+    public DocumentState withGuides(PersistentIntMap<Guide> guides) {
+        return new DocumentState(nodes, edges, guides, dimensions, shapes, manualShapes);
+    }
+
+    public DocumentState withDimensions(PersistentIntMap<Dimension> dimensions) {
+        return new DocumentState(nodes, edges, guides, dimensions, shapes, manualShapes);
+    }
+
+    public DocumentState withShapes(PersistentIntMap<ShapePolygon> shapes) {
+        return new DocumentState(nodes, edges, guides, dimensions, shapes, manualShapes);
+    }
+
+    public DocumentState withManualShapes(PersistentIntMap<ManualShape> manualShapes) {
+        return new DocumentState(nodes, edges, guides, dimensions, shapes, manualShapes);
+    }
+}
@@ -0,0 +1,6 @@
+package unze.ptf.woodcraft.woodcraft.model;
+
+import javafx.geometry.Point2D;
+
+public record EdgeControlUpdate(int edgeId, Point2D start, Point2D end) {
+}
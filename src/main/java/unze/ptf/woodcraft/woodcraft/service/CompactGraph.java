@@ -0,0 +1,202 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.model.NodePoint;
+import unze.ptf.woodcraft.woodcraft.util.LongIntHashMap;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+public final class CompactGraph {
+    private final NodePoint[] nodes;
+    private final LongIntHashMap nodeIndex;
+    private final Edge[] edges;
+    private final LongIntHashMap edgeIndex;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final int[] incidentEdges;
+
+    private CompactGraph(NodePoint[] nodes, LongIntHashMap nodeIndex, Edge[] edges, LongIntHashMap edgeIndex,
+                         int[] offsets, int[] neighbors, int[] incidentEdges) {
+        this.nodes = nodes;
+        this.nodeIndex = nodeIndex;
+        this.edges = edges;
+        this.edgeIndex = edgeIndex;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.incidentEdges = incidentEdges;
+    }
+
+    public static CompactGraph of(Collection<NodePoint> nodeList, Collection<Edge> edgeList) {
+        LongIntHashMap nodeIndex = new LongIntHashMap(nodeList.size());
+        NodePoint[] nodes = new NodePoint[nodeList.size()];
+        int nodeCount = 0;
+        for (NodePoint node : nodeList) {
+            int index = nodeIndex.get(node.getId(), -1);
+            if (index < 0) {
+                index = nodeCount++;
+                nodeIndex.put(node.getId(), index);
+            }
+            nodes[index] = node;
+        }
+        if (nodeCount < nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodeCount);
+        }
+
+        LongIntHashMap edgeIndex = new LongIntHashMap(edgeList.size());
+        Edge[] edges = new Edge[edgeList.size()];
+        int edgeCount = 0;
+        for (Edge edge : edgeList) {
+            int a = edge.getStartNodeId();
+            int b = edge.getEndNodeId();
+            if (a == b || !nodeIndex.containsKey(a) || !nodeIndex.containsKey(b)) {
+                continue;
+            }
+            long key = pairKey(a, b);
+            int slot = edgeIndex.get(key, -1);
+            if (slot < 0) {
+                slot = edgeCount++;
+                edgeIndex.put(key, slot);
+            }
+            edges[slot] = edge;
+        }
+        if (edgeCount < edges.length) {
+            edges = Arrays.copyOf(edges, edgeCount);
+        }
+
+        int[] offsets = new int[nodeCount + 1];
+        int[] starts = new int[edgeCount];
+        int[] ends = new int[edgeCount];
+        for (int slot = 0; slot < edgeCount; slot++) {
+            starts[slot] = nodeIndex.get(edges[slot].getStartNodeId(), -1);
+            ends[slot] = nodeIndex.get(edges[slot].getEndNodeId(), -1);
+            offsets[starts[slot] + 1]++;
+            offsets[ends[slot] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] cursor = Arrays.copyOf(offsets, nodeCount);
+        int[] neighbors = new int[edgeCount * 2];
+        int[] incidentEdges = new int[edgeCount * 2];
+        for (int slot = 0; slot < edgeCount; slot++) {
+            int start = starts[slot];
+            int end = ends[slot];
+            neighbors[cursor[start]] = end;
+            incidentEdges[cursor[start]++] = slot;
+            neighbors[cursor[end]] = start;
+            incidentEdges[cursor[end]++] = slot;
+        }
+        return new CompactGraph(nodes, nodeIndex, edges, edgeIndex, offsets, neighbors, incidentEdges);
+    }
+
+    public int nodeCount() {
+        return nodes.length;
+    }
+
+    public int edgeCount() {
+        return edges.length;
+    }
+
+    public int indexOf(int nodeId) {
+        return nodeIndex.get(nodeId, -1);
+    }
+
+    public NodePoint node(int index) {
+        return nodes[index];
+    }
+
+    public NodePoint findNode(int nodeId) {
+        int index = indexOf(nodeId);
+        return index < 0 ? null : nodes[index];
+    }
+
+    public int nodeId(int index) {
+        return nodes[index].getId();
+    }
+
+    public double x(int index) {
+        return nodes[index].getXCm();
+    }
+
+    public double y(int index) {
+        return nodes[index].getYCm();
+    }
+
+    public int degree(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    public int firstNeighbor(int index) {
+        return offsets[index];
+    }
+
+    public int neighborAt(int position) {
+        return neighbors[position];
+    }
+
+    public int edgeAt(int position) {
+        return incidentEdges[position];
+    }
+
+    public Edge edge(int slot) {
+        return edges[slot];
+    }
+
+    public int edgeSlot(int firstNodeId, int secondNodeId) {
+        return edgeIndex.get(pairKey(firstNodeId, secondNodeId), -1);
+    }
+
+    public Edge findEdge(int firstNodeId, int secondNodeId) {
+        int slot = edgeSlot(firstNodeId, secondNodeId);
+        return slot < 0 ? null : edges[slot];
+    }
+
+    public static long pairKey(int firstNodeId, int secondNodeId) {
+        int low = Math.min(firstNodeId, secondNodeId);
+        int high = Math.max(firstNodeId, secondNodeId);
+        return ((long) low << 32) | (high & 0xffffffffL);
+    }
+
+    public static CycleKey cycleKey(List<Integer> cycle) {
+        int size = cycle.size();
+        int[] nodes = new int[size];
+        if (size == 0) {
+            return new CycleKey(0, nodes);
+        }
+        int start = 0;
+        for (int i = 1; i < size; i++) {
+            if (cycle.get(i) < cycle.get(start)) {
+                start = i;
+            }
+        }
+        int step = cycle.get((start + 1) % size) <= cycle.get((start - 1 + size) % size) ? 1 : size - 1;
+        long hash = 0xcbf29ce484222325L ^ size;
+        for (int i = 0, index = start; i < size; i++, index = (index + step) % size) {
+            nodes[i] = cycle.get(index);
+            hash = (hash ^ nodes[i]) * 0x100000001b3L;
+            hash ^= hash >>> 29;
+        }
+        return new CycleKey(hash, nodes);
+    }
+
+    // A cycle read from its smallest node id, in the direction with the smaller second id. The hash only speeds up
+    // lookups; equality compares the node sequences, so cycles whose hashes collide stay apart.
+    public record CycleKey(long hash, int[] nodes) {
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof CycleKey key && key.hash == hash && Arrays.equals(key.nodes, nodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(nodes);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+public class ConnectivityIndex {
+    private final LongIntHashMap slots = new LongIntHashMap();
+    private final LongIntHashMap edgeStarts = new LongIntHashMap();
+    private final LongIntHashMap edgeEnds = new LongIntHashMap();
+    private final LongIntHashMap treeEdges = new LongIntHashMap();
+    private int[] nodeIds = new int[16];
+    private int[] setParent = new int[16];
+    private int[] setSize = new int[16];
+    private int[] treeParent = new int[16];
+    private int[] depth = new int[16];
+    private int[][] forest = new int[16][];
+    private int[] forestSize = new int[16];
+    private int count;
+    private boolean stale;
+
+    public void clear() {
+        slots.clear();
+        edgeStarts.clear();
+        edgeEnds.clear();
+        treeEdges.clear();
+        count = 0;
+        stale = false;
+    }
+
+    public void reset(Collection<Edge> edges) {
+        clear();
+        for (Edge edge : edges) {
+            addEdge(edge);
+        }
+    }
+
+    // Returns true when the edge closes a cycle, i.e. its endpoints were already connected.
+    public boolean addEdge(Edge edge) {
+        if (edgeStarts.containsKey(edge.getId())) {
+            removeEdge(edge.getId());
+        }
+        refresh();
+        edgeStarts.put(edge.getId(), edge.getStartNodeId());
+        edgeEnds.put(edge.getId(), edge.getEndNodeId());
+        return join(edge.getId(), edge.getStartNodeId(), edge.getEndNodeId());
+    }
+
+    public void removeEdge(int edgeId) {
+        if (!edgeStarts.remove(edgeId)) {
+            return;
+        }
+        edgeEnds.remove(edgeId);
+        // A non-tree edge only closed a cycle, so the forest is unchanged. Removing a tree edge may split a
+        // component, which union-find cannot undo; the forest is rebuilt on the next query instead.
+        if (treeEdges.remove(edgeId)) {
+            stale = true;
+        }
+    }
+
+    public boolean contains(int nodeId) {
+        refresh();
+        return slots.containsKey(nodeId);
+    }
+
+    public boolean connected(int firstNodeId, int secondNodeId) {
+        if (firstNodeId == secondNodeId) {
+            return true;
+        }
+        refresh();
+        int first = slots.get(firstNodeId, -1);
+        int second = slots.get(secondNodeId, -1);
+        if (first < 0 || second < 0) {
+            return false;
+        }
+        return find(first) == find(second);
+    }
+
+    public List<Integer> path(int startNodeId, int endNodeId) {
+        if (startNodeId == endNodeId) {
+            return List.of(startNodeId);
+        }
+        if (!connected(startNodeId, endNodeId)) {
+            return List.of();
+        }
+        int a = slots.get(startNodeId, -1);
+        int b = slots.get(endNodeId, -1);
+        int[] fromEnd = new int[depth[b] + 1];
+        int endCount = 0;
+        List<Integer> path = new ArrayList<>();
+        while (depth[a] > depth[b]) {
+            path.add(nodeIds[a]);
+            a = treeParent[a];
+        }
+        while (depth[b] > depth[a]) {
+            fromEnd[endCount++] = nodeIds[b];
+            b = treeParent[b];
+        }
+        while (a != b) {
+            path.add(nodeIds[a]);
+            fromEnd[endCount++] = nodeIds[b];
+            a = treeParent[a];
+            b = treeParent[b];
+        }
+        path.add(nodeIds[a]);
+        for (int i = endCount - 1; i >= 0; i--) {
+            path.add(fromEnd[i]);
+        }
+        return path;
+    }
+
+    private void refresh() {
+        if (!stale) {
+            return;
+        }
+        stale = false;
+        slots.clear();
+        treeEdges.clear();
+        count = 0;
+        for (long edgeId : edgeStarts.keys()) {
+            join((int) edgeId, edgeStarts.get(edgeId, 0), edgeEnds.get(edgeId, 0));
+        }
+    }
+
+    private boolean join(int edgeId, int startNodeId, int endNodeId) {
+        int start = slotFor(startNodeId);
+        int end = slotFor(endNodeId);
+        int startRoot = find(start);
+        int endRoot = find(end);
+        if (startRoot == endRoot) {
+            return true;
+        }
+        treeEdges.put(edgeId, 1);
+        int attachTo = start;
+        int attached = end;
+        if (setSize[startRoot] < setSize[endRoot]) {
+            attachTo = end;
+            attached = start;
+        }
+        reroot(attached);
+        treeParent[attached] = attachTo;
+        link(attachTo, attached);
+        link(attached, attachTo);
+        refreshDepths(attached, depth[attachTo] + 1);
+
+        int smallRoot = find(attached);
+        int largeRoot = find(attachTo);
+        setParent[smallRoot] = largeRoot;
+        setSize[largeRoot] += setSize[smallRoot];
+        return false;
+    }
+
+    private int slotFor(int nodeId) {
+        int slot = slots.get(nodeId, -1);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (count == nodeIds.length) {
+            int capacity = count * 2;
+            nodeIds = Arrays.copyOf(nodeIds, capacity);
+            setParent = Arrays.copyOf(setParent, capacity);
+            setSize = Arrays.copyOf(setSize, capacity);
+            treeParent = Arrays.copyOf(treeParent, capacity);
+            depth = Arrays.copyOf(depth, capacity);
+            forest = Arrays.copyOf(forest, capacity);
+            forestSize = Arrays.copyOf(forestSize, capacity);
+        }
+        slot = count++;
+        slots.put(nodeId, slot);
+        nodeIds[slot] = nodeId;
+        setParent[slot] = slot;
+        setSize[slot] = 1;
+        treeParent[slot] = -1;
+        depth[slot] = 0;
+        forestSize[slot] = 0;
+        if (forest[slot] == null) {
+            forest[slot] = new int[2];
+        }
+        return slot;
+    }
+
+    private void link(int from, int to) {
+        if (forestSize[from] == forest[from].length) {
+            forest[from] = Arrays.copyOf(forest[from], forestSize[from] * 2);
+        }
+        forest[from][forestSize[from]++] = to;
+    }
+
+    private int find(int slot) {
+        int root = slot;
+        while (setParent[root] != root) {
+            root = setParent[root];
+        }
+        while (slot != root) {
+            int next = setParent[slot];
+            setParent[slot] = root;
+            slot = next;
+        }
+        return root;
+    }
+
+    private void reroot(int slot) {
+        int previous = -1;
+        int current = slot;
+        while (current >= 0) {
+            int next = treeParent[current];
+            treeParent[current] = previous;
+            previous = current;
+            current = next;
+        }
+    }
+
+    private void refreshDepths(int rootSlot, int rootDepth) {
+        int[] queue = new int[Math.max(1, setSize[find(rootSlot)])];
+        int head = 0;
+        int tail = 0;
+        depth[rootSlot] = rootDepth;
+        queue[tail++] = rootSlot;
+        while (head < tail) {
+            int current = queue[head++];
+            for (int i = 0; i < forestSize[current]; i++) {
+                int neighbor = forest[current][i];
+                if (neighbor == treeParent[current]) {
+                    continue;
+                }
+                depth[neighbor] = depth[current] + 1;
+                if (tail == queue.length) {
+                    queue = Arrays.copyOf(queue, tail * 2);
+                }
+                queue[tail++] = neighbor;
+            }
+        }
+    }
+}
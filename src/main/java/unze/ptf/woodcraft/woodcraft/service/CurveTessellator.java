@@ -0,0 +1,116 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import javafx.geometry.Point2D;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CurveTessellator {
+    public static final double GEOMETRY_TOLERANCE_CM = 0.005;
+    public static final double SCREEN_TOLERANCE_PX = 0.25;
+
+    private static final int MAX_SEGMENTS = 256;
+    private static final int MAX_CACHED = 4096;
+
+    private final Map<Long, Entry> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    public static double screenTolerance(double scale) {
+        return SCREEN_TOLERANCE_PX / Math.max(scale, 1e-6);
+    }
+
+    public void appendCubic(List<Point2D> points, int edgeId, Point2D p0, Point2D p1, Point2D p2, Point2D p3,
+                            double tolerance) {
+        if (points.isEmpty()) {
+            points.add(p0);
+        }
+        int level = level(tolerance);
+        Point2D[] samples;
+        boolean reversed = false;
+        synchronized (cache) {
+            long key = ((long) edgeId << 8) | (level & 0xff);
+            Entry entry = cache.get(key);
+            if (entry != null && entry.matches(p0, p1, p2, p3)) {
+                samples = entry.samples;
+            } else if (entry != null && entry.matches(p3, p2, p1, p0)) {
+                samples = entry.samples;
+                reversed = true;
+            } else {
+                samples = flatten(p0, p1, p2, p3, Math.scalb(1.0, level));
+                cache.put(key, new Entry(p0, p1, p2, p3, samples));
+            }
+        }
+        int last = samples.length - 1;
+        for (int i = 1; i <= last; i++) {
+            points.add(reversed ? samples[last - i] : samples[i]);
+        }
+    }
+
+    public int segmentCount(Point2D p0, Point2D p1, Point2D p2, Point2D p3, double tolerance) {
+        double ddx = Math.max(Math.abs(p0.getX() - 2 * p1.getX() + p2.getX()),
+                Math.abs(p1.getX() - 2 * p2.getX() + p3.getX()));
+        double ddy = Math.max(Math.abs(p0.getY() - 2 * p1.getY() + p2.getY()),
+                Math.abs(p1.getY() - 2 * p2.getY() + p3.getY()));
+        double bend = Math.hypot(ddx, ddy);
+        if (bend <= 0 || tolerance <= 0) {
+            return 1;
+        }
+        int segments = (int) Math.ceil(Math.sqrt(0.75 * bend / tolerance));
+        return Math.max(1, Math.min(MAX_SEGMENTS, segments));
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private Point2D[] flatten(Point2D p0, Point2D p1, Point2D p2, Point2D p3, double tolerance) {
+        int segments = segmentCount(p0, p1, p2, p3, tolerance);
+        Point2D[] samples = new Point2D[segments + 1];
+        samples[0] = p0;
+        for (int i = 1; i < segments; i++) {
+            double t = (double) i / segments;
+            double u = 1 - t;
+            double x = u * u * u * p0.getX()
+                    + 3 * u * u * t * p1.getX()
+                    + 3 * u * t * t * p2.getX()
+                    + t * t * t * p3.getX();
+            double y = u * u * u * p0.getY()
+                    + 3 * u * u * t * p1.getY()
+                    + 3 * u * t * t * p2.getY()
+                    + t * t * t * p3.getY();
+            samples[i] = new Point2D(x, y);
+        }
+        samples[segments] = p3;
+        return samples;
+    }
+
+    private int level(double tolerance) {
+        double clamped = Math.max(1e-6, Math.min(tolerance, 1e6));
+        return Math.getExponent(clamped);
+    }
+
+    private static final class Entry {
+        private final double[] controls;
+        private final Point2D[] samples;
+
+        private Entry(Point2D p0, Point2D p1, Point2D p2, Point2D p3, Point2D[] samples) {
+            this.controls = new double[]{p0.getX(), p0.getY(), p1.getX(), p1.getY(),
+                    p2.getX(), p2.getY(), p3.getX(), p3.getY()};
+            this.samples = samples;
+        }
+
+        private boolean matches(Point2D p0, Point2D p1, Point2D p2, Point2D p3) {
+            return controls[0] == p0.getX() && controls[1] == p0.getY()
+                    && controls[2] == p1.getX() && controls[3] == p1.getY()
+                    && controls[4] == p2.getX() && controls[5] == p2.getY()
+                    && controls[6] == p3.getX() && controls[7] == p3.getY();
+        }
+    }
+}
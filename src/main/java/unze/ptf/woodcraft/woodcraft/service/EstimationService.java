@@ -24,7 +24,10 @@ public class EstimationService {
     }
 
     public List<EstimationSummary> estimate(int documentId, double wastePercent) {
-        List<ShapePolygon> shapes = shapeDao.findByDocument(documentId);
+        return estimate(shapeDao.findByDocument(documentId), wastePercent);
+    }
+
+    public List<EstimationSummary> estimate(List<ShapePolygon> shapes, double wastePercent) {
         Map<Integer, List<ShapePolygon>> grouped = new HashMap<>();
         for (ShapePolygon shape : shapes) {
             if (shape.getMaterialId() != null) {
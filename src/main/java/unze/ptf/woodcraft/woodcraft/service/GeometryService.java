@@ -4,17 +4,30 @@ import javafx.geometry.Point2D;
 import unze.ptf.woodcraft.woodcraft.model.Edge;
 import unze.ptf.woodcraft.woodcraft.model.NodePoint;
 import unze.ptf.woodcraft.woodcraft.model.ShapePolygon;
+import unze.ptf.woodcraft.woodcraft.util.BezierMath;
+import unze.ptf.woodcraft.woodcraft.util.RTree;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class GeometryService {
+    private static final double ARC_LENGTH_TOLERANCE_CM = 1e-6;
+
+    private final CurveTessellator curveTessellator;
+    private final ConnectivityIndex connectivity = new ConnectivityIndex();
+    private volatile boolean parallelShapeBuilding = !Boolean.getBoolean("woodcraft.geometry.sequential");
+
     public static final class CycleResult {
         private final boolean cycleDetected;
         private final List<Integer> nodeIds;
@@ -33,29 +46,73 @@ public class GeometryService {
         }
     }
 
-    public CycleResult detectCycleForEdge(List<Edge> existingEdges, int startNodeId, int endNodeId) {
-        Map<Integer, List<Integer>> adjacency = buildAdjacency(existingEdges);
-        List<Integer> path = findPath(adjacency, startNodeId, endNodeId);
-        if (path.isEmpty()) {
-            return new CycleResult(false, List.of());
+    public GeometryService() {
+        this(new CurveTessellator());
+    }
+
+    public GeometryService(CurveTessellator curveTessellator) {
+        this.curveTessellator = curveTessellator;
+    }
+
+    public CurveTessellator getCurveTessellator() {
+        return curveTessellator;
+    }
+
+    public boolean isParallelShapeBuilding() {
+        return parallelShapeBuilding;
+    }
+
+    public void setParallelShapeBuilding(boolean parallelShapeBuilding) {
+        this.parallelShapeBuilding = parallelShapeBuilding;
+    }
+
+    public void resetConnectivity(List<Edge> edges) {
+        synchronized (connectivity) {
+            connectivity.reset(edges);
         }
-        return new CycleResult(true, path);
     }
 
+    public void addConnectivityEdge(Edge edge) {
+        synchronized (connectivity) {
+            connectivity.addEdge(edge);
+        }
+    }
+
+    public void removeConnectivityEdge(int edgeId) {
+        synchronized (connectivity) {
+            connectivity.removeEdge(edgeId);
+        }
+    }
+
+    // Answers from the edges fed through resetConnectivity/addConnectivityEdge/removeConnectivityEdge, so call it
+    // before adding the new edge itself.
+    public CycleResult detectCycleForEdge(int startNodeId, int endNodeId) {
+        synchronized (connectivity) {
+            List<Integer> path = connectivity.path(startNodeId, endNodeId);
+            if (path.isEmpty()) {
+                return new CycleResult(false, List.of());
+            }
+            return new CycleResult(true, path);
+        }
+    }
+
+    // For each edge, the shortest cycle through it: a BFS between its endpoints that skips the edge itself.
     public List<List<Integer>> detectAllCycles(List<Edge> edges) {
-        Set<String> seen = new HashSet<>();
+        Map<Integer, List<int[]>> adjacency = new HashMap<>();
+        for (int i = 0; i < edges.size(); i++) {
+            Edge edge = edges.get(i);
+            adjacency.computeIfAbsent(edge.getStartNodeId(), key -> new ArrayList<>())
+                    .add(new int[] {edge.getEndNodeId(), i});
+            adjacency.computeIfAbsent(edge.getEndNodeId(), key -> new ArrayList<>())
+                    .add(new int[] {edge.getStartNodeId(), i});
+        }
+        Set<CompactGraph.CycleKey> seen = new HashSet<>();
         List<List<Integer>> cycles = new ArrayList<>();
         for (int i = 0; i < edges.size(); i++) {
             Edge edge = edges.get(i);
-            List<Edge> remaining = new ArrayList<>(edges);
-            remaining.remove(i);
-            CycleResult result = detectCycleForEdge(remaining, edge.getStartNodeId(), edge.getEndNodeId());
-            if (result.cycleDetected()) {
-                List<Integer> cycle = result.nodeIds();
-                String key = normalizeCycle(cycle);
-                if (seen.add(key)) {
-                    cycles.add(cycle);
-                }
+            List<Integer> cycle = findPath(adjacency, edge.getStartNodeId(), edge.getEndNodeId(), i);
+            if (!cycle.isEmpty() && seen.add(CompactGraph.cycleKey(cycle))) {
+                cycles.add(cycle);
             }
         }
         return cycles;
@@ -63,42 +120,57 @@ public class GeometryService {
 
     public ShapePolygon buildShapeFromCycle(int documentId, Integer materialId, List<Integer> nodeIds,
                                             Map<Integer, NodePoint> nodeMap, Map<String, Edge> edgeMap) {
+        return buildShapeFromCycle(documentId, materialId, nodeIds, CompactGraph.of(nodeMap.values(), edgeMap.values()));
+    }
+
+    public ShapePolygon buildShapeFromCycle(int documentId, Integer materialId, List<Integer> nodeIds,
+                                            CompactGraph graph) {
         List<NodePoint> nodes = new ArrayList<>();
         for (Integer nodeId : nodeIds) {
-            NodePoint node = nodeMap.get(nodeId);
+            NodePoint node = graph.findNode(nodeId);
             if (node != null) {
                 nodes.add(node);
             }
         }
-        List<Point2D> sampled = samplePath(nodeIds, nodeMap, edgeMap);
-        double area = computeAreaCm2(sampled);
-        double perimeter = computePerimeterCm(sampled);
+        double area = Math.abs(computeSignedAreaCm2(nodeIds, graph));
+        double perimeter = computePerimeterCm(nodeIds, graph);
         return new ShapePolygon(0, documentId, materialId, 1, nodeIds, nodes, area, perimeter);
     }
 
     public List<ShapePolygon> buildShapes(int documentId, List<NodePoint> nodes, List<Edge> edges) {
-        Map<Integer, NodePoint> nodeMap = new HashMap<>();
-        for (NodePoint node : nodes) {
-            nodeMap.put(node.getId(), node);
-        }
-        Map<String, Edge> edgeMap = buildEdgeMap(edges);
-        Map<Integer, List<Integer>> adjacency = new HashMap<>();
-        for (Edge edge : edges) {
-            adjacency.computeIfAbsent(edge.getStartNodeId(), key -> new ArrayList<>()).add(edge.getEndNodeId());
-            adjacency.computeIfAbsent(edge.getEndNodeId(), key -> new ArrayList<>()).add(edge.getStartNodeId());
-        }
+        CompactGraph graph = CompactGraph.of(nodes, edges);
+        PlanarFaceExtractor extractor = new PlanarFaceExtractor();
+        extractor.setParallel(parallelShapeBuilding);
+        List<List<Integer>> faces = extractor.extractFaces(graph);
+        Stream<List<Integer>> stream = faces.stream();
+        if (parallelShapeBuilding && graph.edgeCount() >= PlanarFaceExtractor.PARALLEL_EDGE_THRESHOLD) {
+            stream = faces.parallelStream();
+        }
+        List<ShapePolygon> shapes = stream
+                .map(face -> buildFaceShape(documentId, face, graph))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return filterContainedCycles(shapes, graph);
+    }
 
-        Set<String> seenCycles = new HashSet<>();
-        List<ShapePolygon> shapes = new ArrayList<>();
-        for (NodePoint node : nodes) {
-            List<Integer> path = new ArrayList<>();
-            path.add(node.getId());
-            dfsCycles(node.getId(), node.getId(), adjacency, path, seenCycles, shapes, nodeMap, edgeMap, documentId);
+    private ShapePolygon buildFaceShape(int documentId, List<Integer> face, CompactGraph graph) {
+        double signedArea = computeSignedAreaCm2(face, graph);
+        if (signedArea <= 0) {
+            return null;
         }
-        return filterContainedCycles(shapes, nodeMap, edgeMap);
+        List<NodePoint> cycleNodes = new ArrayList<>();
+        for (int nodeId : face) {
+            cycleNodes.add(graph.findNode(nodeId));
+        }
+        return new ShapePolygon(-1, documentId, null, 1, face, cycleNodes, signedArea,
+                computePerimeterCm(face, graph));
     }
 
     public double computeAreaCm2(List<Point2D> points) {
+        return Math.abs(computeSignedAreaCm2(points));
+    }
+
+    public double computeSignedAreaCm2(List<Point2D> points) {
         if (points.size() < 3) {
             return 0;
         }
@@ -108,7 +180,7 @@ public class GeometryService {
             Point2D next = points.get((i + 1) % points.size());
             sum += (current.getX() * next.getY()) - (next.getX() * current.getY());
         }
-        return Math.abs(sum) / 2.0;
+        return sum / 2.0;
     }
 
     public double computePerimeterCm(List<Point2D> points) {
@@ -126,28 +198,63 @@ public class GeometryService {
         return perimeter;
     }
 
-    private Map<Integer, List<Integer>> buildAdjacency(List<Edge> edges) {
-        Map<Integer, List<Integer>> adjacency = new HashMap<>();
-        for (Edge edge : edges) {
-            adjacency.computeIfAbsent(edge.getStartNodeId(), key -> new ArrayList<>()).add(edge.getEndNodeId());
-            adjacency.computeIfAbsent(edge.getEndNodeId(), key -> new ArrayList<>()).add(edge.getStartNodeId());
+    public double computeSignedAreaCm2(List<Integer> nodeIds, CompactGraph graph) {
+        if (nodeIds.size() < 3) {
+            return 0;
         }
-        return adjacency;
+        double sum = 0;
+        for (int i = 0; i < nodeIds.size(); i++) {
+            double[] c = segment(nodeIds.get(i), nodeIds.get((i + 1) % nodeIds.size()), graph);
+            if (c != null) {
+                sum += BezierMath.cubicSignedArea(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]);
+            }
+        }
+        return sum;
     }
 
-    private Map<String, Edge> buildEdgeMap(List<Edge> edges) {
-        Map<String, Edge> map = new HashMap<>();
-        for (Edge edge : edges) {
-            map.put(edgeKey(edge.getStartNodeId(), edge.getEndNodeId()), edge);
+    public double computePerimeterCm(List<Integer> nodeIds, CompactGraph graph) {
+        if (nodeIds.size() < 2) {
+            return 0;
+        }
+        double perimeter = 0;
+        for (int i = 0; i < nodeIds.size(); i++) {
+            int startId = nodeIds.get(i);
+            int endId = nodeIds.get((i + 1) % nodeIds.size());
+            double[] c = segment(startId, endId, graph);
+            if (c == null) {
+                continue;
+            }
+            if (isCurved(graph.findEdge(startId, endId))) {
+                perimeter += BezierMath.cubicLength(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7],
+                        ARC_LENGTH_TOLERANCE_CM);
+            } else {
+                perimeter += Math.hypot(c[6] - c[0], c[7] - c[1]);
+            }
         }
-        return map;
+        return perimeter;
+    }
+
+    public List<Point2D> sampleCycle(List<Integer> nodeIds, CompactGraph graph) {
+        return samplePath(nodeIds, graph);
     }
 
-    private String edgeKey(int a, int b) {
-        return a < b ? a + "-" + b : b + "-" + a;
+    public CompactGraph.CycleKey cycleKey(List<Integer> nodeIds) {
+        return CompactGraph.cycleKey(nodeIds);
+    }
+
+    public boolean encloses(ShapePolygon outer, List<Point2D> outerSamples,
+                            ShapePolygon inner, List<Point2D> innerSamples) {
+        if (outerSamples.size() < 3 || innerSamples.size() < 3) {
+            return false;
+        }
+        if (outer.getAreaCm2() <= inner.getAreaCm2() || sharesNode(outer, inner)) {
+            return false;
+        }
+        return pointInPolygon(outerSamples, innerSamples.get(0));
     }
 
-    private List<Integer> findPath(Map<Integer, List<Integer>> adjacency, int startNodeId, int endNodeId) {
+    private List<Integer> findPath(Map<Integer, List<int[]>> adjacency, int startNodeId, int endNodeId,
+                                   int skippedEdge) {
         if (startNodeId == endNodeId) {
             return List.of(startNodeId);
         }
@@ -157,13 +264,19 @@ public class GeometryService {
         prev.put(startNodeId, null);
         while (!queue.isEmpty()) {
             int current = queue.removeFirst();
-            for (int neighbor : adjacency.getOrDefault(current, List.of())) {
-                if (prev.containsKey(neighbor)) {
+            for (int[] link : adjacency.getOrDefault(current, List.of())) {
+                int neighbor = link[0];
+                if (link[1] == skippedEdge || prev.containsKey(neighbor)) {
                     continue;
                 }
                 prev.put(neighbor, current);
                 if (neighbor == endNodeId) {
-                    return buildPath(prev, endNodeId);
+                    List<Integer> path = new ArrayList<>();
+                    for (Integer node = endNodeId; node != null; node = prev.get(node)) {
+                        path.add(node);
+                    }
+                    Collections.reverse(path);
+                    return path;
                 }
                 queue.add(neighbor);
             }
@@ -171,62 +284,46 @@ public class GeometryService {
         return List.of();
     }
 
-    private List<Integer> buildPath(Map<Integer, Integer> prev, int endNodeId) {
-        List<Integer> path = new ArrayList<>();
-        Integer current = endNodeId;
-        while (current != null) {
-            path.add(current);
-            current = prev.get(current);
-        }
-        List<Integer> ordered = new ArrayList<>();
-        for (int i = path.size() - 1; i >= 0; i--) {
-            ordered.add(path.get(i));
-        }
-        return ordered;
-    }
-
-    private void dfsCycles(int start, int current, Map<Integer, List<Integer>> adjacency, List<Integer> path,
-                           Set<String> seenCycles, List<ShapePolygon> shapes, Map<Integer, NodePoint> nodeMap,
-                           Map<String, Edge> edgeMap, int documentId) {
-        List<Integer> neighbors = adjacency.getOrDefault(current, List.of());
-        for (int neighbor : neighbors) {
-            if (neighbor == start && path.size() >= 3) {
-                String key = normalizeCycle(path);
-                if (seenCycles.add(key)) {
-                    List<NodePoint> cycleNodes = new ArrayList<>();
-                    for (int nodeId : path) {
-                        NodePoint node = nodeMap.get(nodeId);
-                        if (node != null) {
-                            cycleNodes.add(node);
-                        }
-                    }
-                    List<Point2D> sampled = samplePath(path, nodeMap, edgeMap);
-                    double area = computeAreaCm2(sampled);
-                    double perimeter = computePerimeterCm(sampled);
-                    shapes.add(new ShapePolygon(-1, documentId, null, 1, new ArrayList<>(path), cycleNodes, area, perimeter));
-                }
-            } else if (!path.contains(neighbor)) {
-                path.add(neighbor);
-                dfsCycles(start, neighbor, adjacency, path, seenCycles, shapes, nodeMap, edgeMap, documentId);
-                path.remove(path.size() - 1);
-            }
-        }
+    private double[] segment(int startId, int endId, CompactGraph graph) {
+        NodePoint start = graph.findNode(startId);
+        NodePoint end = graph.findNode(endId);
+        if (start == null || end == null) {
+            return null;
+        }
+        Edge edge = graph.findEdge(startId, endId);
+        if (!isCurved(edge)) {
+            return new double[]{start.getXCm(), start.getYCm(), start.getXCm(), start.getYCm(),
+                    end.getXCm(), end.getYCm(), end.getXCm(), end.getYCm()};
+        }
+        if (edge.getStartNodeId() == startId) {
+            return new double[]{start.getXCm(), start.getYCm(),
+                    edge.getControlStartXCm(), edge.getControlStartYCm(),
+                    edge.getControlEndXCm(), edge.getControlEndYCm(),
+                    end.getXCm(), end.getYCm()};
+        }
+        return new double[]{start.getXCm(), start.getYCm(),
+                edge.getControlEndXCm(), edge.getControlEndYCm(),
+                edge.getControlStartXCm(), edge.getControlStartYCm(),
+                end.getXCm(), end.getYCm()};
     }
 
-    private List<Point2D> samplePath(List<Integer> nodeIds, Map<Integer, NodePoint> nodeMap,
-                                     Map<String, Edge> edgeMap) {
+    private boolean isCurved(Edge edge) {
+        return edge != null && edge.getControlStartXCm() != null && edge.getControlStartYCm() != null
+                && edge.getControlEndXCm() != null && edge.getControlEndYCm() != null;
+    }
+
+    private List<Point2D> samplePath(List<Integer> nodeIds, CompactGraph graph) {
         List<Point2D> points = new ArrayList<>();
         for (int i = 0; i < nodeIds.size(); i++) {
             int startId = nodeIds.get(i);
             int endId = nodeIds.get((i + 1) % nodeIds.size());
-            NodePoint start = nodeMap.get(startId);
-            NodePoint end = nodeMap.get(endId);
+            NodePoint start = graph.findNode(startId);
+            NodePoint end = graph.findNode(endId);
             if (start == null || end == null) {
                 continue;
             }
-            Edge edge = edgeMap.get(edgeKey(startId, endId));
-            if (edge != null && edge.getControlStartXCm() != null && edge.getControlStartYCm() != null
-                    && edge.getControlEndXCm() != null && edge.getControlEndYCm() != null) {
+            Edge edge = graph.findEdge(startId, endId);
+            if (isCurved(edge)) {
                 Point2D c1;
                 Point2D c2;
                 if (edge.getStartNodeId() == startId) {
@@ -236,11 +333,11 @@ public class GeometryService {
                     c1 = new Point2D(edge.getControlEndXCm(), edge.getControlEndYCm());
                     c2 = new Point2D(edge.getControlStartXCm(), edge.getControlStartYCm());
                 }
-                sampleCubic(points,
+                curveTessellator.appendCubic(points, edge.getId(),
                         new Point2D(start.getXCm(), start.getYCm()),
                         c1, c2,
                         new Point2D(end.getXCm(), end.getYCm()),
-                        20);
+                        CurveTessellator.GEOMETRY_TOLERANCE_CM);
             } else {
                 if (points.isEmpty()) {
                     points.add(new Point2D(start.getXCm(), start.getYCm()));
@@ -251,62 +348,36 @@ public class GeometryService {
         return points;
     }
 
-    private void sampleCubic(List<Point2D> points, Point2D p0, Point2D p1, Point2D p2, Point2D p3, int segments) {
-        if (points.isEmpty()) {
-            points.add(p0);
-        }
-        for (int i = 1; i <= segments; i++) {
-            double t = (double) i / segments;
-            double u = 1 - t;
-            double x = u * u * u * p0.getX()
-                    + 3 * u * u * t * p1.getX()
-                    + 3 * u * t * t * p2.getX()
-                    + t * t * t * p3.getX();
-            double y = u * u * u * p0.getY()
-                    + 3 * u * u * t * p1.getY()
-                    + 3 * u * t * t * p2.getY()
-                    + t * t * t * p3.getY();
-            points.add(new Point2D(x, y));
-        }
-    }
-
-    private List<ShapePolygon> filterContainedCycles(List<ShapePolygon> shapes,
-                                                     Map<Integer, NodePoint> nodeMap,
-                                                     Map<String, Edge> edgeMap) {
+    List<ShapePolygon> filterContainedCycles(List<ShapePolygon> shapes, CompactGraph graph) {
         if (shapes.size() <= 1) {
             return shapes;
         }
-        List<List<Point2D>> samples = new ArrayList<>();
+        List<double[]> bounds = new ArrayList<>(shapes.size());
         for (ShapePolygon shape : shapes) {
-            samples.add(samplePath(shape.getNodeIds(), nodeMap, edgeMap));
-        }
-        boolean[] keep = new boolean[shapes.size()];
-        for (int i = 0; i < keep.length; i++) {
-            keep[i] = true;
+            bounds.add(controlBounds(shape.getNodeIds(), graph));
         }
+        RTree index = RTree.pack(bounds);
+        List<List<Point2D>> samples = new ArrayList<>(shapes.size());
         for (int i = 0; i < shapes.size(); i++) {
-            List<Point2D> outer = samples.get(i);
-            if (outer.size() < 3) {
+            samples.add(null);
+        }
+        boolean[] keep = new boolean[shapes.size()];
+        Arrays.fill(keep, true);
+        for (int j = 0; j < shapes.size(); j++) {
+            NodePoint anchor = graph.findNode(shapes.get(j).getNodeIds().get(0));
+            if (anchor == null) {
                 continue;
             }
-            double outerArea = shapes.get(i).getAreaCm2();
-            for (int j = 0; j < shapes.size(); j++) {
-                if (i == j) {
-                    continue;
+            int inner = j;
+            index.searchPoint(anchor.getXCm(), anchor.getYCm(), outer -> {
+                if (outer == inner || !keep[outer]) {
+                    return;
                 }
-                if (outerArea <= shapes.get(j).getAreaCm2()) {
-                    continue;
+                if (encloses(shapes.get(outer), samplesFor(outer, shapes, samples, graph),
+                        shapes.get(inner), samplesFor(inner, shapes, samples, graph))) {
+                    keep[outer] = false;
                 }
-                List<Point2D> inner = samples.get(j);
-                if (inner.size() < 3) {
-                    continue;
-                }
-                Point2D probe = inner.get(0);
-                if (pointInPolygon(outer, probe)) {
-                    keep[i] = false;
-                    break;
-                }
-            }
+            });
         }
         List<ShapePolygon> filtered = new ArrayList<>();
         for (int i = 0; i < shapes.size(); i++) {
@@ -317,6 +388,44 @@ public class GeometryService {
         return filtered;
     }
 
+    private List<Point2D> samplesFor(int index, List<ShapePolygon> shapes, List<List<Point2D>> samples,
+                                     CompactGraph graph) {
+        List<Point2D> sampled = samples.get(index);
+        if (sampled == null) {
+            sampled = samplePath(shapes.get(index).getNodeIds(), graph);
+            samples.set(index, sampled);
+        }
+        return sampled;
+    }
+
+    private double[] controlBounds(List<Integer> nodeIds, CompactGraph graph) {
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int i = 0; i < nodeIds.size(); i++) {
+            double[] c = segment(nodeIds.get(i), nodeIds.get((i + 1) % nodeIds.size()), graph);
+            if (c == null) {
+                continue;
+            }
+            for (int k = 0; k < 8; k += 2) {
+                bounds[0] = Math.min(bounds[0], c[k]);
+                bounds[1] = Math.min(bounds[1], c[k + 1]);
+                bounds[2] = Math.max(bounds[2], c[k]);
+                bounds[3] = Math.max(bounds[3], c[k + 1]);
+            }
+        }
+        return bounds;
+    }
+
+    private boolean sharesNode(ShapePolygon first, ShapePolygon second) {
+        Set<Integer> nodeIds = new HashSet<>(first.getNodeIds());
+        for (int nodeId : second.getNodeIds()) {
+            if (nodeIds.contains(nodeId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean pointInPolygon(List<Point2D> polygon, Point2D point) {
         boolean inside = false;
         for (int i = 0, j = polygon.size() - 1; i < polygon.size(); j = i++) {
@@ -331,31 +440,4 @@ public class GeometryService {
         }
         return inside;
     }
-
-    private String normalizeCycle(List<Integer> path) {
-        int size = path.size();
-        List<Integer> forward = new ArrayList<>(path);
-        List<Integer> backward = new ArrayList<>();
-        for (int i = path.size() - 1; i >= 0; i--) {
-            backward.add(path.get(i));
-        }
-        String a = rotationKey(forward, size);
-        String b = rotationKey(backward, size);
-        return (a.compareTo(b) <= 0) ? a : b;
-    }
-
-    private String rotationKey(List<Integer> cycle, int size) {
-        int minIndex = 0;
-        for (int i = 1; i < size; i++) {
-            if (cycle.get(i) < cycle.get(minIndex)) {
-                minIndex = i;
-            }
-        }
-        StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < size; i++) {
-            int index = (minIndex + i) % size;
-            builder.append(cycle.get(index)).append('-');
-        }
-        return builder.toString();
-    }
 }
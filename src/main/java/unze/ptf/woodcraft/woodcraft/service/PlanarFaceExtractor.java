@@ -0,0 +1,570 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.model.NodePoint;
+import unze.ptf.woodcraft.woodcraft.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+public class PlanarFaceExtractor {
+    public record FaceDelta(List<List<Integer>> removed, List<List<Integer>> added) {
+    }
+
+    public static final int PARALLEL_EDGE_THRESHOLD = 2000;
+
+    private static final long[] NO_HALVES = new long[0];
+
+    // The graph is kept by id and edited in place, so an update only revisits the nodes around what changed.
+    private final Map<Integer, NodePoint> nodes = new HashMap<>();
+    private final Map<Integer, Edge> edges = new HashMap<>();
+    private final Map<Integer, List<Edge>> incident = new HashMap<>();
+    private final Map<Integer, long[]> rotation = new HashMap<>();
+    private final LongIntHashMap rotationIndex = new LongIntHashMap();
+    private final LongIntHashMap faceByHalf = new LongIntHashMap();
+    private final List<Face> faces = new ArrayList<>();
+    private int[] freeFaceIds = new int[16];
+    private int freeFaceCount;
+    private boolean parallel = true;
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public List<List<Integer>> extractFaces(List<NodePoint> nodes, List<Edge> edges) {
+        return extractFaces(CompactGraph.of(nodes, edges));
+    }
+
+    public List<List<Integer>> extractFaces(CompactGraph source) {
+        reset();
+        return update(source).added();
+    }
+
+    public void reset() {
+        nodes.clear();
+        edges.clear();
+        incident.clear();
+        rotation.clear();
+        rotationIndex.clear();
+        faceByHalf.clear();
+        faces.clear();
+        freeFaceCount = 0;
+    }
+
+    public NodePoint findNode(int nodeId) {
+        return nodes.get(nodeId);
+    }
+
+    // Several edges may join the same two nodes; like CompactGraph, the one read last (the highest id) counts.
+    public Edge findEdge(int firstNodeId, int secondNodeId) {
+        if (firstNodeId == secondNodeId || !nodes.containsKey(firstNodeId) || !nodes.containsKey(secondNodeId)) {
+            return null;
+        }
+        Edge found = null;
+        for (Edge edge : incident.getOrDefault(firstNodeId, List.of())) {
+            if (other(edge, firstNodeId) == secondNodeId && (found == null || edge.getId() > found.getId())) {
+                found = edge;
+            }
+        }
+        return found;
+    }
+
+    public FaceDelta update(List<NodePoint> nodes, List<Edge> edges) {
+        return update(CompactGraph.of(nodes, edges));
+    }
+
+    // Compares a full copy of the graph with the stored one; callers that know what changed should pass only that.
+    public FaceDelta update(CompactGraph next) {
+        List<NodePoint> changedNodes = new ArrayList<>();
+        for (int index = 0; index < next.nodeCount(); index++) {
+            NodePoint node = next.node(index);
+            if (!samePosition(nodes.get(node.getId()), node)) {
+                changedNodes.add(node);
+            }
+        }
+        List<Integer> removedNodeIds = new ArrayList<>();
+        for (int nodeId : nodes.keySet()) {
+            if (next.indexOf(nodeId) < 0) {
+                removedNodeIds.add(nodeId);
+            }
+        }
+        List<Edge> changedEdges = new ArrayList<>();
+        Set<Integer> nextEdgeIds = new HashSet<>();
+        for (int slot = 0; slot < next.edgeCount(); slot++) {
+            Edge edge = next.edge(slot);
+            nextEdgeIds.add(edge.getId());
+            if (!sameEdge(edges.get(edge.getId()), edge)) {
+                changedEdges.add(edge);
+            }
+        }
+        List<Integer> removedEdgeIds = new ArrayList<>();
+        for (int edgeId : edges.keySet()) {
+            if (!nextEdgeIds.contains(edgeId)) {
+                removedEdgeIds.add(edgeId);
+            }
+        }
+        return update(changedNodes, removedNodeIds, changedEdges, removedEdgeIds);
+    }
+
+    public FaceDelta update(Collection<NodePoint> changedNodes, Collection<Integer> removedNodeIds,
+                            Collection<Edge> changedEdges, Collection<Integer> removedEdgeIds) {
+        boolean initial = rotation.isEmpty();
+        NodeSet dirty = new NodeSet();
+        for (int edgeId : removedEdgeIds) {
+            Edge edge = edges.remove(edgeId);
+            if (edge != null) {
+                unlink(edge);
+                dirty.add(edge.getStartNodeId());
+                dirty.add(edge.getEndNodeId());
+            }
+        }
+        for (Edge edge : changedEdges) {
+            Edge previous = edges.put(edge.getId(), edge);
+            if (previous != null) {
+                unlink(previous);
+            }
+            link(edge);
+            if (!sameEdge(previous, edge)) {
+                if (previous != null) {
+                    dirty.add(previous.getStartNodeId());
+                    dirty.add(previous.getEndNodeId());
+                }
+                dirty.add(edge.getStartNodeId());
+                dirty.add(edge.getEndNodeId());
+            }
+        }
+        NodeSet moved = new NodeSet();
+        for (int nodeId : removedNodeIds) {
+            if (nodes.remove(nodeId) != null) {
+                moved.add(nodeId);
+            }
+        }
+        for (NodePoint node : changedNodes) {
+            if (!samePosition(nodes.put(node.getId(), node), node)) {
+                moved.add(node.getId());
+            }
+        }
+        // A node that appears, disappears or moves turns the edges around its old and new neighbours.
+        for (int i = 0; i < moved.size; i++) {
+            int nodeId = moved.ids[i];
+            dirty.add(nodeId);
+            for (long half : rotation.getOrDefault(nodeId, NO_HALVES)) {
+                dirty.add((int) half);
+            }
+            for (Edge edge : incident.getOrDefault(nodeId, List.of())) {
+                dirty.add(other(edge, nodeId));
+            }
+        }
+
+        if (parallel && initial && edges.size() >= PARALLEL_EDGE_THRESHOLD) {
+            return buildInParallel();
+        }
+
+        List<Face> affected = new ArrayList<>();
+        for (int i = 0; i < dirty.size; i++) {
+            long[] around = rotation.remove(dirty.ids[i]);
+            if (around == null) {
+                continue;
+            }
+            for (long half : around) {
+                int faceId = faceByHalf.get(half, -1);
+                if (faceId >= 0) {
+                    Face face = faces.get(faceId);
+                    affected.add(face);
+                    releaseFace(faceId, face);
+                }
+            }
+            for (long half : around) {
+                rotationIndex.remove(half);
+            }
+        }
+        for (int i = 0; i < dirty.size; i++) {
+            if (nodes.containsKey(dirty.ids[i])) {
+                rotation.put(dirty.ids[i], buildRotation(dirty.ids[i]));
+            }
+        }
+
+        List<Face> created = new ArrayList<>();
+        for (int i = 0; i < dirty.size; i++) {
+            for (long half : rotation.getOrDefault(dirty.ids[i], NO_HALVES)) {
+                if (!faceByHalf.containsKey(half)) {
+                    created.add(register(trace(half)));
+                }
+            }
+        }
+        return delta(affected, created);
+    }
+
+    private FaceDelta buildInParallel() {
+        int[] ids = new int[nodes.size()];
+        int count = 0;
+        for (int nodeId : nodes.keySet()) {
+            ids[count++] = nodeId;
+        }
+        long[][] around = new long[ids.length][];
+        IntStream.range(0, ids.length).parallel().forEach(index -> around[index] = sortRotation(ids[index]));
+        for (int index = 0; index < ids.length; index++) {
+            rotation.put(ids[index], around[index]);
+            for (int i = 0; i < around[index].length; i++) {
+                rotationIndex.put(around[index][i], i);
+            }
+        }
+
+        List<List<Face>> walked = components(ids, around).parallelStream()
+                .map(this::walkComponent)
+                .toList();
+        List<Face> created = new ArrayList<>();
+        for (List<Face> componentFaces : walked) {
+            for (Face face : componentFaces) {
+                created.add(register(face));
+            }
+        }
+        return delta(List.of(), created);
+    }
+
+    private List<int[]> components(int[] ids, long[][] around) {
+        int count = ids.length;
+        LongIntHashMap indexOf = new LongIntHashMap(count);
+        int[] parent = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexOf.put(ids[i], i);
+            parent[i] = i;
+        }
+        for (int index = 0; index < count; index++) {
+            for (long half : around[index]) {
+                int a = root(parent, index);
+                int b = root(parent, indexOf.get((int) half, index));
+                if (a != b) {
+                    parent[Math.max(a, b)] = Math.min(a, b);
+                }
+            }
+        }
+        int[] componentOf = new int[count];
+        int[] sizes = new int[count];
+        int components = 0;
+        for (int index = 0; index < count; index++) {
+            int root = root(parent, index);
+            componentOf[index] = root == index ? components++ : componentOf[root];
+            sizes[componentOf[index]]++;
+        }
+        List<int[]> members = new ArrayList<>(components);
+        for (int c = 0; c < components; c++) {
+            members.add(new int[sizes[c]]);
+        }
+        int[] filled = new int[components];
+        for (int index = 0; index < count; index++) {
+            int c = componentOf[index];
+            members.get(c)[filled[c]++] = ids[index];
+        }
+        return members;
+    }
+
+    private int root(int[] parent, int index) {
+        while (parent[index] != index) {
+            parent[index] = parent[parent[index]];
+            index = parent[index];
+        }
+        return index;
+    }
+
+    private List<Face> walkComponent(int[] memberIds) {
+        List<Face> walked = new ArrayList<>();
+        LongIntHashMap visited = new LongIntHashMap();
+        for (int nodeId : memberIds) {
+            for (long half : rotation.get(nodeId)) {
+                if (visited.containsKey(half)) {
+                    continue;
+                }
+                Face face = trace(half);
+                for (long walkedHalf : face.halves) {
+                    visited.put(walkedHalf, 0);
+                }
+                walked.add(face);
+            }
+        }
+        return walked;
+    }
+
+    private FaceDelta delta(List<Face> affected, List<Face> created) {
+        created.sort((left, right) -> {
+            int order = Integer.compare(order(left, 0), order(right, 0));
+            return order != 0 ? order : Integer.compare(order(left, 1), order(right, 1));
+        });
+        List<List<Integer>> removed = new ArrayList<>();
+        for (Face face : affected) {
+            if (face.cycle != null) {
+                removed.add(face.cycle);
+            }
+        }
+        List<List<Integer>> added = new ArrayList<>();
+        for (Face face : created) {
+            if (face.cycle != null) {
+                added.add(face.cycle);
+            }
+        }
+        return new FaceDelta(removed, added);
+    }
+
+    private void link(Edge edge) {
+        if (edge.getStartNodeId() == edge.getEndNodeId()) {
+            return;
+        }
+        incident.computeIfAbsent(edge.getStartNodeId(), key -> new ArrayList<>()).add(edge);
+        incident.computeIfAbsent(edge.getEndNodeId(), key -> new ArrayList<>()).add(edge);
+    }
+
+    private void unlink(Edge edge) {
+        unlink(edge.getStartNodeId(), edge);
+        unlink(edge.getEndNodeId(), edge);
+    }
+
+    private void unlink(int nodeId, Edge edge) {
+        List<Edge> around = incident.get(nodeId);
+        if (around == null) {
+            return;
+        }
+        around.remove(edge);
+        if (around.isEmpty()) {
+            incident.remove(nodeId);
+        }
+    }
+
+    private int other(Edge edge, int nodeId) {
+        return edge.getStartNodeId() == nodeId ? edge.getEndNodeId() : edge.getStartNodeId();
+    }
+
+    private long[] buildRotation(int nodeId) {
+        long[] around = sortRotation(nodeId);
+        for (int i = 0; i < around.length; i++) {
+            rotationIndex.put(around[i], i);
+        }
+        return around;
+    }
+
+    private long[] sortRotation(int nodeId) {
+        List<Edge> touching = incident.getOrDefault(nodeId, List.of());
+        NodePoint from = nodes.get(nodeId);
+        int[] neighbors = new int[touching.size()];
+        Edge[] links = new Edge[touching.size()];
+        int degree = 0;
+        for (Edge edge : touching) {
+            int neighbor = other(edge, nodeId);
+            if (!nodes.containsKey(neighbor)) {
+                continue;
+            }
+            int k = 0;
+            while (k < degree && neighbors[k] != neighbor) {
+                k++;
+            }
+            if (k == degree) {
+                neighbors[degree++] = neighbor;
+                links[k] = edge;
+            } else if (edge.getId() > links[k].getId()) {
+                links[k] = edge;
+            }
+        }
+        if (degree == 0) {
+            return NO_HALVES;
+        }
+        long[] around = new long[degree];
+        double[] angles = new double[degree];
+        for (int k = 0; k < degree; k++) {
+            around[k] = halfKey(nodeId, neighbors[k]);
+            angles[k] = tangentAngle(links[k], from, nodes.get(neighbors[k]));
+        }
+        for (int i = 1; i < degree; i++) {
+            long half = around[i];
+            double angle = angles[i];
+            int j = i - 1;
+            while (j >= 0 && angles[j] > angle) {
+                around[j + 1] = around[j];
+                angles[j + 1] = angles[j];
+                j--;
+            }
+            around[j + 1] = half;
+            angles[j + 1] = angle;
+        }
+        return around;
+    }
+
+    private Face trace(long start) {
+        long[] halves = new long[8];
+        int count = 0;
+        long half = start;
+        do {
+            if (count == halves.length) {
+                halves = Arrays.copyOf(halves, count * 2);
+            }
+            halves[count++] = half;
+            half = next(half);
+        } while (half != start);
+        return new Face(Arrays.copyOf(halves, count), reduce(halves, count));
+    }
+
+    private Face register(Face face) {
+        int faceId;
+        if (freeFaceCount > 0) {
+            faceId = freeFaceIds[--freeFaceCount];
+            faces.set(faceId, face);
+        } else {
+            faceId = faces.size();
+            faces.add(face);
+        }
+        for (long half : face.halves) {
+            faceByHalf.put(half, faceId);
+        }
+        return face;
+    }
+
+    private void releaseFace(int faceId, Face face) {
+        for (long half : face.halves) {
+            faceByHalf.remove(half);
+        }
+        faces.set(faceId, null);
+        if (freeFaceCount == freeFaceIds.length) {
+            freeFaceIds = Arrays.copyOf(freeFaceIds, freeFaceCount * 2);
+        }
+        freeFaceIds[freeFaceCount++] = faceId;
+    }
+
+    private long next(long half) {
+        int target = (int) half;
+        long twin = halfKey(target, (int) (half >>> 32));
+        long[] around = rotation.get(target);
+        int index = rotationIndex.get(twin, 0);
+        return around[(index - 1 + around.length) % around.length];
+    }
+
+    private List<Integer> reduce(long[] halves, int count) {
+        int[] walk = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int nodeId = (int) (halves[i] >>> 32);
+            if (size >= 2 && walk[size - 2] == nodeId) {
+                size--;
+            } else {
+                walk[size++] = nodeId;
+            }
+        }
+        int first = 0;
+        while (size - first >= 3) {
+            int last = size - 1;
+            if (walk[last] == walk[first + 1]) {
+                first += 2;
+            } else if (walk[last - 1] == walk[first]) {
+                first++;
+                size--;
+            } else {
+                break;
+            }
+        }
+        int length = size - first;
+        if (length < 3) {
+            return null;
+        }
+        LongIntHashMap seen = new LongIntHashMap(length);
+        int best = first;
+        for (int i = first; i < size; i++) {
+            if (seen.containsKey(walk[i])) {
+                return null;
+            }
+            seen.put(walk[i], i);
+            if (walk[i] < walk[best]) {
+                best = i;
+            }
+        }
+        List<Integer> cycle = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            cycle.add(walk[first + (best - first + i) % length]);
+        }
+        return cycle;
+    }
+
+    private int order(Face face, int position) {
+        if (face.cycle == null) {
+            return Integer.MAX_VALUE;
+        }
+        return face.cycle.get(position);
+    }
+
+    private double tangentAngle(Edge edge, NodePoint from, NodePoint to) {
+        boolean fromStart = edge.getStartNodeId() == from.getId();
+        double fromX = from.getXCm();
+        double fromY = from.getYCm();
+        double dx = to.getXCm() - fromX;
+        double dy = to.getYCm() - fromY;
+        if (edge.getControlStartXCm() != null && edge.getControlStartYCm() != null
+                && edge.getControlEndXCm() != null && edge.getControlEndYCm() != null) {
+            double nearX = fromStart ? edge.getControlStartXCm() : edge.getControlEndXCm();
+            double nearY = fromStart ? edge.getControlStartYCm() : edge.getControlEndYCm();
+            double farX = fromStart ? edge.getControlEndXCm() : edge.getControlStartXCm();
+            double farY = fromStart ? edge.getControlEndYCm() : edge.getControlStartYCm();
+            if (Math.hypot(nearX - fromX, nearY - fromY) > 1e-9) {
+                dx = nearX - fromX;
+                dy = nearY - fromY;
+            } else if (Math.hypot(farX - fromX, farY - fromY) > 1e-9) {
+                dx = farX - fromX;
+                dy = farY - fromY;
+            }
+        }
+        return Math.atan2(dy, dx);
+    }
+
+    private boolean samePosition(NodePoint previous, NodePoint current) {
+        return previous != null && previous.getXCm() == current.getXCm() && previous.getYCm() == current.getYCm();
+    }
+
+    private boolean sameEdge(Edge previous, Edge current) {
+        return previous != null
+                && previous.getId() == current.getId()
+                && previous.getStartNodeId() == current.getStartNodeId()
+                && previous.getEndNodeId() == current.getEndNodeId()
+                && Objects.equals(previous.getControlStartXCm(), current.getControlStartXCm())
+                && Objects.equals(previous.getControlStartYCm(), current.getControlStartYCm())
+                && Objects.equals(previous.getControlEndXCm(), current.getControlEndXCm())
+                && Objects.equals(previous.getControlEndYCm(), current.getControlEndYCm());
+    }
+
+    private long halfKey(int from, int to) {
+        return ((long) from << 32) | (to & 0xffffffffL);
+    }
+
+    private static final class NodeSet {
+        private final LongIntHashMap index = new LongIntHashMap();
+        private int[] ids = new int[16];
+        private int size;
+
+        private void add(int nodeId) {
+            if (index.containsKey(nodeId)) {
+                return;
+            }
+            index.put(nodeId, size);
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = nodeId;
+        }
+
+        private boolean contains(int nodeId) {
+            return index.containsKey(nodeId);
+        }
+    }
+
+    private static final class Face {
+        private final long[] halves;
+        private final List<Integer> cycle;
+
+        private Face(long[] halves, List<Integer> cycle) {
+            this.halves = halves;
+            this.cycle = cycle;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import javafx.geometry.Point2D;
+import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.model.NodePoint;
+import unze.ptf.woodcraft.woodcraft.model.ShapePolygon;
+import unze.ptf.woodcraft.woodcraft.util.PersistentIntMap;
+import unze.ptf.woodcraft.woodcraft.util.SpatialGrid;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ShapeTopologyService {
+    public record ShapeChanges(List<ShapePolygon> added, List<ShapePolygon> updated, List<ShapePolygon> removed) {
+        public boolean isEmpty() {
+            return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private static final double FACE_GRID_CELL_CM = 10.0;
+
+    private final GeometryService geometryService;
+    private final PlanarFaceExtractor extractor = new PlanarFaceExtractor();
+    private final Map<CompactGraph.CycleKey, Face> faces = new LinkedHashMap<>();
+    private final Map<Integer, Face> faceById = new HashMap<>();
+    private final SpatialGrid faceGrid = new SpatialGrid(FACE_GRID_CELL_CM);
+    private PersistentIntMap<NodePoint> nodes = PersistentIntMap.empty();
+    private PersistentIntMap<Edge> edges = PersistentIntMap.empty();
+    private int nextFaceId;
+    private Integer documentId;
+
+    public ShapeTopologyService(GeometryService geometryService) {
+        this.geometryService = geometryService;
+    }
+
+    public synchronized void reset() {
+        extractor.reset();
+        faces.clear();
+        faceById.clear();
+        faceGrid.clear();
+        nodes = PersistentIntMap.empty();
+        edges = PersistentIntMap.empty();
+        documentId = null;
+    }
+
+    public synchronized List<ShapePolygon> getShapes() {
+        List<ShapePolygon> visible = new ArrayList<>();
+        for (Face face : faces.values()) {
+            if (!face.hidden) {
+                visible.add(face.shape);
+            }
+        }
+        return visible;
+    }
+
+    // Only the rows that differ from the previous call reach the face extractor, and only faces near the change are
+    // looked at again, so an edit costs about the same in a small drawing and a large one.
+    public synchronized ShapeChanges update(int documentId, PersistentIntMap<NodePoint> nodes,
+                                            PersistentIntMap<Edge> edges) {
+        if (this.documentId == null || this.documentId != documentId) {
+            reset();
+            this.documentId = documentId;
+        }
+        List<NodePoint> changedNodes = new ArrayList<>();
+        List<Integer> removedNodeIds = new ArrayList<>();
+        nodes.diff(this.nodes, (nodeId, before, after) -> {
+            if (after == null) {
+                removedNodeIds.add(nodeId);
+            } else {
+                changedNodes.add(after);
+            }
+        });
+        List<Edge> changedEdges = new ArrayList<>();
+        List<Integer> removedEdgeIds = new ArrayList<>();
+        edges.diff(this.edges, (edgeId, before, after) -> {
+            if (after == null) {
+                removedEdgeIds.add(edgeId);
+            } else {
+                changedEdges.add(after);
+            }
+        });
+        this.nodes = nodes;
+        this.edges = edges;
+        extractor.setParallel(geometryService.isParallelShapeBuilding());
+        PlanarFaceExtractor.FaceDelta delta = extractor.update(changedNodes, removedNodeIds, changedEdges,
+                removedEdgeIds);
+        if (delta.removed().isEmpty() && delta.added().isEmpty()) {
+            return new ShapeChanges(List.of(), List.of(), List.of());
+        }
+
+        Map<CompactGraph.CycleKey, ShapePolygon> visibleBefore = new HashMap<>();
+        List<double[]> dirtyBounds = new ArrayList<>();
+        Set<CompactGraph.CycleKey> touched = new LinkedHashSet<>();
+        for (List<Integer> cycle : delta.removed()) {
+            CompactGraph.CycleKey key = geometryService.cycleKey(cycle);
+            Face face = faces.get(key);
+            if (face == null || !sameDirection(face.shape.getNodeIds(), cycle)) {
+                continue;
+            }
+            faces.remove(key);
+            faceById.remove(face.id);
+            faceGrid.remove(face.id);
+            touched.add(key);
+            dirtyBounds.add(face.bounds);
+            if (!face.hidden) {
+                visibleBefore.put(key, face.shape);
+            }
+        }
+
+        Set<Face> affected = new LinkedHashSet<>();
+        CompactGraph graph = localGraph(delta.added());
+        for (List<Integer> cycle : delta.added()) {
+            double area = geometryService.computeSignedAreaCm2(cycle, graph);
+            if (area <= 0) {
+                continue;
+            }
+            List<Point2D> samples = geometryService.sampleCycle(cycle, graph);
+            List<NodePoint> cycleNodes = new ArrayList<>();
+            for (int nodeId : cycle) {
+                cycleNodes.add(graph.findNode(nodeId));
+            }
+            ShapePolygon shape = new ShapePolygon(-1, documentId, null, 1, cycle, cycleNodes,
+                    area, geometryService.computePerimeterCm(cycle, graph));
+            CompactGraph.CycleKey key = geometryService.cycleKey(cycle);
+            Face face = new Face(nextFaceId++, key, shape, samples, bounds(samples));
+            faces.put(key, face);
+            faceById.put(face.id, face);
+            faceGrid.put(face.id, face.bounds[0], face.bounds[1], face.bounds[2], face.bounds[3]);
+            affected.add(face);
+            touched.add(key);
+            dirtyBounds.add(face.bounds);
+        }
+
+        // Whether a face encloses another only changes for faces overlapping a face that came or went.
+        for (double[] box : dirtyBounds) {
+            faceGrid.query(box[0], box[1], box[2], box[3], faceId -> affected.add(faceById.get(faceId)));
+        }
+        for (Face face : affected) {
+            if (!face.hidden && !touched.contains(face.key)) {
+                visibleBefore.put(face.key, face.shape);
+            }
+            touched.add(face.key);
+            face.hidden = isEnclosing(face);
+        }
+
+        List<ShapePolygon> added = new ArrayList<>();
+        List<ShapePolygon> updated = new ArrayList<>();
+        List<ShapePolygon> removed = new ArrayList<>();
+        for (CompactGraph.CycleKey key : touched) {
+            ShapePolygon before = visibleBefore.get(key);
+            Face face = faces.get(key);
+            ShapePolygon after = face == null || face.hidden ? null : face.shape;
+            if (before == null && after != null) {
+                added.add(after);
+            } else if (before != null && after == null) {
+                removed.add(before);
+            } else if (before != null && before != after && !sameMetrics(before, after)) {
+                updated.add(after);
+            }
+        }
+        return new ShapeChanges(added, updated, removed);
+    }
+
+    private boolean isEnclosing(Face outer) {
+        List<Face> candidates = new ArrayList<>();
+        faceGrid.query(outer.bounds[0], outer.bounds[1], outer.bounds[2], outer.bounds[3],
+                faceId -> candidates.add(faceById.get(faceId)));
+        for (Face inner : candidates) {
+            if (inner == outer || !containsPoint(outer.bounds, inner.samples.get(0))) {
+                continue;
+            }
+            if (geometryService.encloses(outer.shape, outer.samples, inner.shape, inner.samples)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Just the nodes and edges of the given cycles, enough to measure them without copying the whole drawing.
+    private CompactGraph localGraph(List<List<Integer>> cycles) {
+        Map<Integer, NodePoint> cycleNodes = new HashMap<>();
+        Map<Integer, Edge> cycleEdges = new HashMap<>();
+        for (List<Integer> cycle : cycles) {
+            for (int i = 0; i < cycle.size(); i++) {
+                int nodeId = cycle.get(i);
+                cycleNodes.put(nodeId, extractor.findNode(nodeId));
+                Edge edge = extractor.findEdge(nodeId, cycle.get((i + 1) % cycle.size()));
+                if (edge != null) {
+                    cycleEdges.put(edge.getId(), edge);
+                }
+            }
+        }
+        return CompactGraph.of(cycleNodes.values(), cycleEdges.values());
+    }
+
+    private boolean sameDirection(List<Integer> stored, List<Integer> cycle) {
+        int index = stored.indexOf(cycle.get(0));
+        return index >= 0 && stored.get((index + 1) % stored.size()).equals(cycle.get(1));
+    }
+
+    private boolean sameMetrics(ShapePolygon first, ShapePolygon second) {
+        return first.getAreaCm2() == second.getAreaCm2()
+                && first.getPerimeterCm() == second.getPerimeterCm()
+                && first.getNodeIds().equals(second.getNodeIds());
+    }
+
+    private double[] bounds(List<Point2D> samples) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (Point2D point : samples) {
+            minX = Math.min(minX, point.getX());
+            minY = Math.min(minY, point.getY());
+            maxX = Math.max(maxX, point.getX());
+            maxY = Math.max(maxY, point.getY());
+        }
+        return new double[]{minX, minY, maxX, maxY};
+    }
+
+    private boolean containsPoint(double[] bounds, Point2D point) {
+        return point.getX() >= bounds[0] && point.getX() <= bounds[2]
+                && point.getY() >= bounds[1] && point.getY() <= bounds[3];
+    }
+
+    private static final class Face {
+        private final int id;
+        private final CompactGraph.CycleKey key;
+        private final ShapePolygon shape;
+        private final List<Point2D> samples;
+        private final double[] bounds;
+        private boolean hidden;
+
+        private Face(int id, CompactGraph.CycleKey key, ShapePolygon shape, List<Point2D> samples, double[] bounds) {
+            this.id = id;
+            this.key = key;
+            this.shape = shape;
+            this.samples = samples;
+            this.bounds = bounds;
+        }
+    }
+}
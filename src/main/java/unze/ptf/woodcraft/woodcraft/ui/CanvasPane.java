@@ -1,8 +1,11 @@
 package unze.ptf.woodcraft.woodcraft.ui;
 
+import javafx.animation.AnimationTimer;
 import javafx.geometry.Point2D;
 import javafx.scene.Cursor;
 import javafx.scene.Group;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
@@ -14,22 +17,29 @@ import javafx.scene.shape.Rectangle;
 import javafx.scene.shape.StrokeLineCap;
 import javafx.scene.text.Text;
 import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.model.EdgeControlUpdate;
 import unze.ptf.woodcraft.woodcraft.model.Dimension;
 import unze.ptf.woodcraft.woodcraft.model.DimensionType;
+import unze.ptf.woodcraft.woodcraft.model.DocumentChanges;
 import unze.ptf.woodcraft.woodcraft.model.Guide;
 import unze.ptf.woodcraft.woodcraft.model.ManualShape;
 import unze.ptf.woodcraft.woodcraft.model.NodePoint;
 import unze.ptf.woodcraft.woodcraft.model.ShapePolygon;
 import unze.ptf.woodcraft.woodcraft.model.UnitSystem;
+import unze.ptf.woodcraft.woodcraft.service.CurveTessellator;
+import unze.ptf.woodcraft.woodcraft.util.SpatialGrid;
 import unze.ptf.woodcraft.woodcraft.util.UnitConverter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 
 public class CanvasPane extends Pane {
     public enum Mode {
@@ -44,6 +54,11 @@ public class CanvasPane extends Pane {
         SLICE
     }
 
+    public enum SelectionMode {
+        TOUCHING,
+        ENCLOSED
+    }
+
     private enum SelectableType {
         NODE,
         SHAPE,
@@ -52,8 +67,33 @@ public class CanvasPane extends Pane {
         MANUAL_SHAPE
     }
 
+    private enum CanvasPart {
+        SHAPE,
+        MANUAL_SHAPE,
+        EDGE,
+        DIMENSION_LINE,
+        DIMENSION_LABEL,
+        DIMENSION_EXTENSION
+    }
+
     private static final double NODE_RADIUS = 4.5;
     private static final double HANDLE_RADIUS = 4;
+    private static final double NODE_GRID_CELL_CM = 2.0;
+    private static final double SHAPE_GRID_CELL_CM = 10.0;
+    private static final double SHAPE_STROKE_PADDING = 2.0;
+    // Level-of-detail thresholds: below the overview scale (px per cm) nodes shrink to dots, bezier handles are
+    // left out and outlines are tessellated coarser; dimensions shorter than the pixel length lose label and arrows.
+    private static final double OVERVIEW_SCALE = 3.0;
+    private static final double OVERVIEW_NODE_RADIUS = 2.0;
+    private static final double OVERVIEW_TOLERANCE_FACTOR = 4.0;
+    private static final double DIMENSION_DETAIL_MIN_PX = 32.0;
+    private static final double LABEL_PADDING = 3.0;
+    private static final double ARROW_SIZE_CM = 0.4;
+    private static final double ARROW_HALF_WIDTH_CM = ARROW_SIZE_CM * 0.6;
+    // How far, in screen pixels, past a row's geometry a canvas paint query reaches so strokes on the edge still show.
+    private static final double CANVAS_PAINT_PADDING_PX = 4.0;
+    private static final int NO_ROW = Integer.MIN_VALUE;
+    private static final int DEFAULT_CANVAS_RENDER_THRESHOLD = Integer.getInteger("woodcraft.canvasRenderThreshold", 5000);
 
     private final Group contentLayer = new Group();
     private final Group boardLayer = new Group();
@@ -90,6 +130,42 @@ public class CanvasPane extends Pane {
     private final Map<Integer, Color> materialColors = new HashMap<>();
     private final Map<Integer, EdgeControls> edgeControls = new HashMap<>();
 
+    // Lookup indexes mirroring the lists above, kept in step with every add, set and move.
+    private final Map<Integer, NodePoint> nodeById = new HashMap<>();
+    private final Map<Integer, Integer> nodeIndex = new HashMap<>();
+    private final Map<Integer, Edge> edgeById = new HashMap<>();
+    private final Map<Long, Edge> edgeByEndpoints = new HashMap<>();
+    private final Map<Integer, List<Edge>> edgesByNode = new HashMap<>();
+    private final Map<Integer, Dimension> dimensionById = new HashMap<>();
+    private final Map<Integer, Guide> guideById = new HashMap<>();
+    private final Map<Integer, ShapePolygon> shapeById = new HashMap<>();
+    private final Map<Integer, ManualShape> manualShapeById = new HashMap<>();
+    private final SpatialGrid nodeGrid = new SpatialGrid(NODE_GRID_CELL_CM);
+    private final SpatialGrid shapeGrid = new SpatialGrid(SHAPE_GRID_CELL_CM);
+    private final SpatialGrid manualShapeGrid = new SpatialGrid(SHAPE_GRID_CELL_CM);
+    private final SpatialGrid dimensionGrid = new SpatialGrid(SHAPE_GRID_CELL_CM);
+    private final SpatialGrid dimensionLabelGrid = new SpatialGrid(SHAPE_GRID_CELL_CM);
+    // Whole dimensions, extension lines included, and edge curves by their control hulls; painting and hit testing
+    // read these rather than any view.
+    private final SpatialGrid dimensionExtentGrid = new SpatialGrid(SHAPE_GRID_CELL_CM);
+    private final SpatialGrid edgeGrid = new SpatialGrid(SHAPE_GRID_CELL_CM);
+    // Each shape's sampled outline in cm, as interleaved x, y pairs, so a paint never re-tessellates.
+    private final Map<Integer, double[]> shapeOutlines = new HashMap<>();
+    private final Text labelMeasure = new Text();
+
+    // Above the threshold these layers leave the scene graph and their views are dropped. The rows are painted onto
+    // renderCanvas straight from the model, found through the grids above, which also answer the hit tests.
+    private final List<Group> paintedLayers = List.of(shapeLayer, manualShapeLayer, plankLayer, edgeLayer, dimensionLayer);
+    private final Canvas renderCanvas = new Canvas();
+    private int canvasRenderThreshold = DEFAULT_CANVAS_RENDER_THRESHOLD;
+    private boolean canvasMode;
+    private boolean canvasPaintPending;
+    private CanvasHit canvasEventTarget;
+    private CanvasHit canvasPressTarget;
+    private CanvasHit canvasHoverTarget;
+    private Integer hoveredShapeId;
+    private Integer hoveredManualShapeId;
+
     private Consumer<Point2D> onCanvasClicked;
     private IntConsumer onNodeClicked;
     private IntConsumer onShapeClicked;
@@ -108,6 +184,7 @@ public class CanvasPane extends Pane {
     private Consumer<List<ManualShape>> onManualShapesMoved;
     private BiConsumer<Point2D, Point2D> onSliceLine;
 
+    private CurveTessellator curveTessellator = new CurveTessellator();
     private double scale = 10.0;
     private Mode mode = Mode.DRAW_SHAPE;
     private final java.util.Set<Integer> selectedNodes = new java.util.HashSet<>();
@@ -143,7 +220,18 @@ public class CanvasPane extends Pane {
     private final java.util.Map<Integer, Double> moveGuideStart = new java.util.HashMap<>();
     private final java.util.Map<Integer, Dimension> moveDimensionStart = new java.util.HashMap<>();
     private final java.util.Map<Integer, List<Point2D>> moveManualStart = new java.util.HashMap<>();
+    // Shapes and node-linked dimensions adjacent to the dragged nodes, collected once when the drag starts.
+    private final java.util.Set<Integer> moveShapeIds = new java.util.LinkedHashSet<>();
+    private final List<Integer> moveLinkedDimensionIndices = new ArrayList<>();
     private Integer moveDragSingleNodeId;
+    // Mouse events can outpace the screen, so a drag keeps only the latest pointer and applies it once per pulse.
+    private Point2D moveDragPendingCm;
+    private final AnimationTimer moveDragPulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            applyPendingMoveDrag();
+        }
+    };
     private boolean bulkMoveActive;
     private Point2D bulkMoveDelta;
     private final java.util.Set<Integer> bulkMoveNodes = new java.util.HashSet<>();
@@ -151,6 +239,7 @@ public class CanvasPane extends Pane {
     private Point2D sliceStart;
     private Line slicePreview;
     private UnitSystem unitSystem = UnitSystem.CM;
+    private SelectionMode selectionMode = SelectionMode.TOUCHING;
     private Point2D rectStartCm;
     private double rectStartX;
     private double rectStartY;
@@ -188,8 +277,19 @@ public class CanvasPane extends Pane {
         slicePreview.setVisible(false);
         sliceLayer.getChildren().add(slicePreview);
         getChildren().addAll(contentLayer, guideLayer, selectionRect, rectPreview);
-        widthProperty().addListener((obs, oldVal, newVal) -> redraw());
-        heightProperty().addListener((obs, oldVal, newVal) -> redraw());
+        // Only the guides and the render canvas span the viewport; everything else is drawn in document space.
+        widthProperty().addListener((obs, oldVal, newVal) -> {
+            redrawGuides();
+            requestCanvasPaint();
+        });
+        heightProperty().addListener((obs, oldVal, newVal) -> {
+            redrawGuides();
+            requestCanvasPaint();
+        });
+        for (Group layer : paintedLayers) {
+            layer.visibleProperty().addListener(observable -> requestCanvasPaint());
+        }
+        renderCanvas.addEventHandler(MouseEvent.ANY, this::handleCanvasMouse);
 
         setOnMousePressed(event -> {
             if (event.getButton() == MouseButton.MIDDLE) {
@@ -200,7 +300,7 @@ public class CanvasPane extends Pane {
                 return;
             }
             if (event.getButton() == MouseButton.PRIMARY && mode == Mode.DRAW_RECT
-                    && (event.getTarget() == this || event.getTarget() == boardRect)) {
+                    && isBoardTarget(event.getTarget())) {
                 rectStartCm = toCm(event.getX(), event.getY());
                 rectStartX = event.getX();
                 rectStartY = event.getY();
@@ -241,7 +341,8 @@ public class CanvasPane extends Pane {
             }
             if (moveDragging) {
                 Point2D local = sceneToLocal(event.getSceneX(), event.getSceneY());
-                updateMoveDrag(toCm(local.getX(), local.getY()));
+                moveDragPendingCm = toCm(local.getX(), local.getY());
+                moveDragPulse.start();
                 event.consume();
                 return;
             }
@@ -303,7 +404,7 @@ public class CanvasPane extends Pane {
             if (selectionRect.isVisible()) {
                 return;
             }
-            if (event.getTarget() != this && event.getTarget() != boardRect) {
+            if (!isBoardTarget(event.getTarget())) {
                 return;
             }
             if (mode == Mode.DIMENSION) {
@@ -509,26 +610,86 @@ public class CanvasPane extends Pane {
         if (colors != null) {
             materialColors.putAll(colors);
         }
-        redraw();
+        for (Map.Entry<Integer, Polygon> entry : shapeViews.entrySet()) {
+            ShapePolygon shape = shapeById.get(entry.getKey());
+            if (shape != null) {
+                entry.getValue().setFill(shapeFill(shape));
+            }
+        }
+        requestCanvasPaint();
     }
 
     public void addShape(ShapePolygon shape) {
         shapes.add(shape);
+        shapeById.put(shape.getId(), shape);
         drawShape(shape);
+        updateRenderMode();
     }
 
     public void setShapes(List<ShapePolygon> shapes) {
+        Map<Integer, ShapePolygon> previous = new HashMap<>(shapeById);
         this.shapes.clear();
         this.shapes.addAll(shapes);
-        redraw();
+        shapeById.clear();
+        for (ShapePolygon shape : shapes) {
+            shapeById.put(shape.getId(), shape);
+        }
+        List<javafx.scene.Node> stale = new ArrayList<>();
+        for (ShapePolygon shape : this.shapes) {
+            ShapePolygon before = previous.remove(shape.getId());
+            Polygon polygon = shapeViews.get(shape.getId());
+            // Canvas mode keeps no views, so there only new rows are drawn and changed ones patched.
+            if (before == null || polygon == null && !canvasMode) {
+                drawShape(shape);
+            } else if (before != shape) {
+                patchShape(shape, polygon, stale);
+            }
+        }
+        for (Integer shapeId : previous.keySet()) {
+            removeShapeView(shapeId, stale);
+        }
+        removeViews(shapeLayer, stale);
+        updateRenderMode();
+        updateSelectionStyles();
     }
 
     public void setManualShapes(List<ManualShape> shapes) {
+        Map<Integer, ManualShape> previous = new HashMap<>(manualShapeById);
         manualShapes.clear();
+        manualShapeById.clear();
         if (shapes != null) {
             manualShapes.addAll(shapes);
+            for (ManualShape shape : shapes) {
+                manualShapeById.put(shape.getId(), shape);
+            }
         }
-        redraw();
+        List<javafx.scene.Node> stale = new ArrayList<>();
+        for (ManualShape shape : manualShapes) {
+            ManualShape before = previous.remove(shape.getId());
+            Polygon polygon = manualShapeViews.get(shape.getId());
+            if (before == null || polygon == null && !canvasMode) {
+                drawManualShape(shape);
+            } else if (before != shape) {
+                if (shape.getPoints() == null || shape.getPoints().size() < 3) {
+                    previous.put(shape.getId(), shape);
+                    continue;
+                }
+                if (polygon != null) {
+                    setPolygonPoints(polygon, shape.getPoints());
+                }
+                indexManualShape(shape.getId(), shape.getPoints());
+            }
+        }
+        for (Integer manualId : previous.keySet()) {
+            Polygon polygon = manualShapeViews.remove(manualId);
+            manualShapeGrid.remove(manualId);
+            if (polygon != null) {
+                stale.add(polygon);
+            }
+        }
+        removeViews(manualShapeLayer, stale);
+        updateRenderMode();
+        updateSelectionStyles();
     }
 
     public void setSelectedNode(int nodeId) {
@@ -630,7 +791,17 @@ public class CanvasPane extends Pane {
 
     public void setUnitSystem(UnitSystem unitSystem) {
         this.unitSystem = unitSystem == null ? UnitSystem.CM : unitSystem;
-        redraw();
+        for (Dimension dimension : dimensions) {
+            refreshDimensionView(dimension.getId());
+        }
+    }
+
+    public void setSelectionMode(SelectionMode selectionMode) {
+        this.selectionMode = selectionMode == null ? SelectionMode.TOUCHING : selectionMode;
+    }
+
+    public void setCurveTessellator(CurveTessellator curveTessellator) {
+        this.curveTessellator = curveTessellator;
     }
 
     public void setScale(double scale) {
@@ -641,20 +812,103 @@ public class CanvasPane extends Pane {
     public void setCanvasSizeCm(double widthCm, double heightCm) {
         this.canvasWidthCm = Math.max(1, widthCm);
         this.canvasHeightCm = Math.max(1, heightCm);
-        redraw();
+        updateBoardAndClip();
     }
 
     public void setNodes(List<NodePoint> nodes) {
+        Map<Integer, NodePoint> previous = new HashMap<>(nodeById);
         this.nodes.clear();
         this.nodes.addAll(nodes);
-        redraw();
+        nodeById.clear();
+        nodeIndex.clear();
+        nodeGrid.clear();
+        for (int i = 0; i < this.nodes.size(); i++) {
+            nodeIndex.put(this.nodes.get(i).getId(), i);
+            indexNode(this.nodes.get(i));
+        }
+        java.util.Set<Integer> changed = new java.util.HashSet<>();
+        List<javafx.scene.Node> stale = new ArrayList<>();
+        for (NodePoint node : this.nodes) {
+            NodePoint before = previous.remove(node.getId());
+            Circle circle = nodeViews.get(node.getId());
+            if (circle == null) {
+                drawNode(node);
+                changed.add(node.getId());
+            } else if (before != node) {
+                circle.setCenterX(node.getXCm() * scale);
+                circle.setCenterY(node.getYCm() * scale);
+                changed.add(node.getId());
+            }
+        }
+        for (Integer nodeId : previous.keySet()) {
+            Circle circle = nodeViews.remove(nodeId);
+            if (circle != null) {
+                stale.add(circle);
+            }
+            changed.add(nodeId);
+        }
+        removeViews(nodeLayer, stale);
+        if (changed.isEmpty()) {
+            return;
+        }
+        // Edge curves and shape outlines are drawn from node positions, so only the ones touching a changed node move.
+        List<javafx.scene.Node> staleEdges = new ArrayList<>();
+        java.util.Set<Integer> synced = new java.util.HashSet<>();
+        for (Integer nodeId : changed) {
+            for (Edge edge : edgesAt(nodeId)) {
+                if (synced.add(edge.getId())) {
+                    syncEdgeView(edge, staleEdges);
+                }
+            }
+        }
+        removeViews(edgeLayer, staleEdges);
+        patchShapesTouching(changed);
+        updateSelectionStyles();
     }
 
     public void setEdges(List<Edge> edges) {
+        Map<Integer, Edge> previous = new HashMap<>(edgeById);
         this.edges.clear();
         this.edges.addAll(edges);
-        edgeControls.clear();
-        redraw();
+        edgeById.clear();
+        edgeByEndpoints.clear();
+        edgesByNode.clear();
+        for (Edge edge : edges) {
+            indexEdge(edge);
+        }
+        java.util.Set<Integer> changedNodes = new java.util.HashSet<>();
+        List<javafx.scene.Node> stale = new ArrayList<>();
+        for (Edge edge : this.edges) {
+            Edge before = previous.remove(edge.getId());
+            // Controls are re-derived from the row as before; a view is only touched when they actually differ.
+            EdgeControls cached = edgeControls.remove(edge.getId());
+            CubicCurveView view = edgeViews.get(edge.getId());
+            boolean rowChanged = before != edge;
+            syncEdgeView(edge, stale);
+            if (rowChanged || view == null && !canvasMode
+                    || !java.util.Objects.equals(cached, edgeControls.get(edge.getId()))) {
+                changedNodes.add(edge.getStartNodeId());
+                changedNodes.add(edge.getEndNodeId());
+                if (before != null) {
+                    changedNodes.add(before.getStartNodeId());
+                    changedNodes.add(before.getEndNodeId());
+                }
+            }
+        }
+        for (Edge edge : previous.values()) {
+            edgeControls.remove(edge.getId());
+            edgeGrid.remove(edge.getId());
+            CubicCurveView view = edgeViews.remove(edge.getId());
+            if (view != null) {
+                stale.add(view.curve());
+            }
+            changedNodes.add(edge.getStartNodeId());
+            changedNodes.add(edge.getEndNodeId());
+        }
+        removeViews(edgeLayer, stale);
+        patchShapesTouching(changedNodes);
+        updateRenderMode();
+        updateSelectionStyles();
     }
 
     public void setPlankRects(List<PlankRect> planks) {
@@ -662,41 +916,233 @@ public class CanvasPane extends Pane {
         if (planks != null) {
             plankRects.addAll(planks);
         }
-        redraw();
+        plankLayer.getChildren().clear();
+        for (PlankRect plank : plankRects) {
+            drawPlank(plank);
+        }
+        updateRenderMode();
+        requestCanvasPaint();
     }
 
     public void setDimensions(List<Dimension> dimensions) {
+        Map<Integer, Dimension> previous = new HashMap<>(dimensionById);
         this.dimensions.clear();
+        dimensionById.clear();
         if (dimensions != null) {
             this.dimensions.addAll(dimensions);
+            for (Dimension dimension : dimensions) {
+                dimensionById.put(dimension.getId(), dimension);
+            }
         }
-        redraw();
+        if (moveDragging) {
+            collectMovedDimensions();
+        }
+        List<javafx.scene.Node> stale = new ArrayList<>();
+        List<Dimension> added = new ArrayList<>();
+        for (Dimension dimension : this.dimensions) {
+            Dimension before = previous.remove(dimension.getId());
+            if (before == null || !canvasMode && !dimensionViews.containsKey(dimension.getId())) {
+                added.add(dimension);
+            } else if (before != dimension) {
+                // Dimension views hold several shapes and handlers bound to the row, so a changed row is redrawn.
+                removeDimensionView(dimension.getId(), stale);
+                added.add(dimension);
+            }
+        }
+        for (Integer dimensionId : previous.keySet()) {
+            removeDimensionView(dimensionId, stale);
+        }
+        removeViews(dimensionLayer, stale);
+        for (Dimension dimension : added) {
+            drawDimension(dimension);
+        }
+        updateRenderMode();
+        updateSelectionStyles();
     }
 
     public void setGuides(List<Guide> guides) {
         this.guides.clear();
         this.guides.addAll(guides);
-        redraw();
+        guideById.clear();
+        for (Guide guide : guides) {
+            guideById.put(guide.getId(), guide);
+        }
+        redrawGuides();
+        updateSelectionStyles();
+    }
+
+    // Undo and redo hand back only the rows they touched; these patch those rows and their views and leave the rest.
+    public void applyNodeChanges(Map<Integer, NodePoint> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<javafx.scene.Node> stale = new ArrayList<>();
+        for (Map.Entry<Integer, NodePoint> entry : changes.entrySet()) {
+            NodePoint node = entry.getValue();
+            Circle circle = nodeViews.get(entry.getKey());
+            if (node == null) {
+                removeNode(entry.getKey());
+                if (circle != null) {
+                    nodeViews.remove(entry.getKey());
+                    stale.add(circle);
+                }
+            } else if (!nodeIndex.containsKey(node.getId())) {
+                addNode(node);
+            } else {
+                replaceNode(node);
+                if (circle == null) {
+                    drawNode(node);
+                } else {
+                    circle.setCenterX(node.getXCm() * scale);
+                    circle.setCenterY(node.getYCm() * scale);
+                }
+            }
+        }
+        removeViews(nodeLayer, stale);
+        java.util.Set<Integer> synced = new java.util.HashSet<>();
+        for (Integer nodeId : changes.keySet()) {
+            for (Edge edge : edgesAt(nodeId)) {
+                if (synced.add(edge.getId())) {
+                    syncEdgeView(edge, stale);
+                }
+            }
+        }
+        removeViews(edgeLayer, stale);
+        patchShapesTouching(changes.keySet());
+        updateSelectionStyles();
+    }
+
+    public void applyEdgeChanges(Map<Integer, Edge> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        java.util.Set<Integer> changedNodes = new java.util.HashSet<>();
+        List<javafx.scene.Node> stale = new ArrayList<>();
+        for (Map.Entry<Integer, Edge> entry : changes.entrySet()) {
+            Edge before = edgeById.get(entry.getKey());
+            if (before != null) {
+                unindexEdge(before);
+                changedNodes.add(before.getStartNodeId());
+                changedNodes.add(before.getEndNodeId());
+            }
+            // The restored row carries its own controls, so they are re-derived rather than kept from the view.
+            edgeControls.remove(entry.getKey());
+            Edge edge = entry.getValue();
+            if (edge == null) {
+                edgeGrid.remove(entry.getKey());
+                CubicCurveView view = edgeViews.remove(entry.getKey());
+                if (view != null) {
+                    stale.add(view.curve());
+                }
+                continue;
+            }
+            indexEdge(edge);
+            syncEdgeView(edge, stale);
+            changedNodes.add(edge.getStartNodeId());
+            changedNodes.add(edge.getEndNodeId());
+        }
+        DocumentChanges.applyTo(edges, changes, Edge::getId);
+        removeViews(edgeLayer, stale);
+        patchShapesTouching(changedNodes);
+        updateRenderMode();
+        updateSelectionStyles();
+    }
+
+    public void applyGuideChanges(Map<Integer, Guide> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<javafx.scene.Node> stale = new ArrayList<>();
+        for (Map.Entry<Integer, Guide> entry : changes.entrySet()) {
+            Line line = guideViews.remove(entry.getKey());
+            if (line != null) {
+                stale.add(line);
+            }
+            guideById.remove(entry.getKey());
+            if (entry.getValue() != null) {
+                guideById.put(entry.getKey(), entry.getValue());
+                drawGuide(entry.getValue());
+            }
+        }
+        DocumentChanges.applyTo(guides, changes, Guide::getId);
+        removeViews(guideLayer, stale);
+        updateSelectionStyles();
+    }
+
+    public void applyDimensionChanges(Map<Integer, Dimension> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<javafx.scene.Node> stale = new ArrayList<>();
+        for (Map.Entry<Integer, Dimension> entry : changes.entrySet()) {
+            removeDimensionView(entry.getKey(), stale);
+            dimensionById.remove(entry.getKey());
+            if (entry.getValue() != null) {
+                dimensionById.put(entry.getKey(), entry.getValue());
+            }
+        }
+        DocumentChanges.applyTo(dimensions, changes, Dimension::getId);
+        if (moveDragging) {
+            collectMovedDimensions();
+        }
+        removeViews(dimensionLayer, stale);
+        for (Dimension dimension : changes.values()) {
+            if (dimension != null) {
+                drawDimension(dimension);
+            }
+        }
+        updateRenderMode();
+        updateSelectionStyles();
+    }
+
+    public void applyManualShapeChanges(Map<Integer, ManualShape> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<javafx.scene.Node> stale = new ArrayList<>();
+        for (Map.Entry<Integer, ManualShape> entry : changes.entrySet()) {
+            Polygon polygon = manualShapeViews.remove(entry.getKey());
+            manualShapeGrid.remove(entry.getKey());
+            if (polygon != null) {
+                stale.add(polygon);
+            }
+            manualShapeById.remove(entry.getKey());
+            if (entry.getValue() != null) {
+                manualShapeById.put(entry.getKey(), entry.getValue());
+                drawManualShape(entry.getValue());
+            }
+        }
+        DocumentChanges.applyTo(manualShapes, changes, ManualShape::getId);
+        removeViews(manualShapeLayer, stale);
+        updateRenderMode();
+        updateSelectionStyles();
     }
 
     public void addNode(NodePoint node) {
+        nodeIndex.put(node.getId(), nodes.size());
         nodes.add(node);
+        indexNode(node);
         drawNode(node);
     }
 
     public void addEdge(Edge edge) {
         edges.add(edge);
+        indexEdge(edge);
         drawEdge(edge);
+        updateRenderMode();
     }
 
     public void addGuide(Guide guide) {
         guides.add(guide);
+        guideById.put(guide.getId(), guide);
         drawGuide(guide);
     }
 
     public void addDimension(Dimension dimension) {
         dimensions.add(dimension);
+        dimensionById.put(dimension.getId(), dimension);
         drawDimension(dimension);
+        updateRenderMode();
     }
 
     public void updateDimensionOffset(int dimensionId, Point2D offsetCm) {
@@ -716,6 +1162,7 @@ public class CanvasPane extends Pane {
                         dimension.getStartNodeId(),
                         dimension.getEndNodeId()
                 ));
+                dimensionById.put(dimensionId, dimensions.get(i));
                 break;
             }
         }
@@ -739,6 +1186,7 @@ public class CanvasPane extends Pane {
                         dimension.getStartNodeId(),
                         dimension.getEndNodeId()
                 ));
+                dimensionById.put(dimensionId, dimensions.get(i));
                 break;
             }
         }
@@ -835,6 +1283,7 @@ public class CanvasPane extends Pane {
         }
         return target == this
                 || target == boardRect
+                || target == renderCanvas
                 || target == boardLayer
                 || target == shapeLayer
                 || target == manualShapeLayer
@@ -894,6 +1343,9 @@ public class CanvasPane extends Pane {
         moveGuideStart.clear();
         moveDimensionStart.clear();
         moveManualStart.clear();
+        moveShapeIds.clear();
+        moveLinkedDimensionIndices.clear();
+        moveDragPendingCm = null;
         moveDragSingleNodeId = null;
 
         if (nodeIds != null) {
@@ -907,24 +1359,33 @@ public class CanvasPane extends Pane {
         if (moveNodeStart.size() == 1 && selectedShapes.isEmpty() && selectedManualShapes.isEmpty()) {
             moveDragSingleNodeId = moveNodeStart.keySet().iterator().next();
         }
-        for (Edge edge : edges) {
-            if (!moveNodeStart.containsKey(edge.getStartNodeId())
-                    && !moveNodeStart.containsKey(edge.getEndNodeId())) {
-                continue;
-            }
-            NodePoint start = findNode(edge.getStartNodeId());
-            NodePoint end = findNode(edge.getEndNodeId());
-            if (start == null || end == null) {
-                continue;
+        for (Integer nodeId : moveNodeStart.keySet()) {
+            for (Edge edge : edgesAt(nodeId)) {
+                if (moveEdgeStart.containsKey(edge.getId())) {
+                    continue;
+                }
+                NodePoint start = findNode(edge.getStartNodeId());
+                NodePoint end = findNode(edge.getEndNodeId());
+                if (start == null || end == null) {
+                    continue;
+                }
+                ensureEdgeControls(edge, start, end);
+                EdgeControls controls = edgeControls.get(edge.getId());
+                if (controls != null) {
+                    moveEdgeStart.put(edge.getId(), new EdgeControls(
+                            controls.start() == null ? null : new Point2D(controls.start().getX(), controls.start().getY()),
+                            controls.end() == null ? null : new Point2D(controls.end().getX(), controls.end().getY())
+                    ));
+                }
             }
-            ensureEdgeControls(edge, start, end);
-            EdgeControls controls = edgeControls.get(edge.getId());
-            if (controls != null) {
-                moveEdgeStart.put(edge.getId(), new EdgeControls(
-                        controls.start() == null ? null : new Point2D(controls.start().getX(), controls.start().getY()),
-                        controls.end() == null ? null : new Point2D(controls.end().getX(), controls.end().getY())
-                ));
+        }
+        if (!moveNodeStart.isEmpty()) {
+            for (ShapePolygon shape : shapes) {
+                if (touchesAny(shape, moveNodeStart.keySet())) {
+                    moveShapeIds.add(shape.getId());
+                }
             }
+            collectMovedDimensions();
         }
         for (Integer guideId : selectedGuides) {
             Guide guide = findGuide(guideId);
@@ -946,6 +1407,16 @@ public class CanvasPane extends Pane {
         }
     }
 
+    private void applyPendingMoveDrag() {
+        Point2D pending = moveDragPendingCm;
+        if (pending == null) {
+            moveDragPulse.stop();
+            return;
+        }
+        moveDragPendingCm = null;
+        updateMoveDrag(pending);
+    }
+
     private void updateMoveDrag(Point2D currentCm) {
         if (moveDragStartCm == null) {
             return;
@@ -955,14 +1426,9 @@ public class CanvasPane extends Pane {
             Point2D start = entry.getValue();
             updateNodePositionRaw(entry.getKey(), start.add(delta));
         }
+        updateMovedDimensions();
         for (Map.Entry<Integer, EdgeControls> entry : moveEdgeStart.entrySet()) {
-            Edge edge = null;
-            for (Edge candidate : edges) {
-                if (candidate.getId() == entry.getKey()) {
-                    edge = candidate;
-                    break;
-                }
-            }
+            Edge edge = edgeById.get(entry.getKey());
             if (edge == null) {
                 continue;
             }
@@ -978,11 +1444,26 @@ public class CanvasPane extends Pane {
                 endControl = endControl.add(delta);
             }
             edgeControls.put(edge.getId(), new EdgeControls(startControl, endControl));
+            NodePoint start = findNode(edge.getStartNodeId());
+            NodePoint end = findNode(edge.getEndNodeId());
+            if (start != null && end != null) {
+                patchEdge(edge, start, end);
+            }
         }
-        for (Integer nodeId : moveNodeStart.keySet()) {
-            updateConnectedEdges(nodeId);
+        for (Integer shapeId : moveShapeIds) {
+            ShapePolygon shape = shapeById.get(shapeId);
+            if (shape == null) {
+                continue;
+            }
+            List<Point2D> sampled = buildSampledPolygon(shape);
+            if (sampled.size() >= 3) {
+                Polygon polygon = shapeViews.get(shapeId);
+                if (polygon != null) {
+                    setPolygonPoints(polygon, sampled);
+                }
+                indexShape(shapeId, sampled);
+            }
         }
-        updateShapePolygons();
         refreshHandleLayer();
         boolean guidesChanged = false;
         for (Map.Entry<Integer, Double> entry : moveGuideStart.entrySet()) {
@@ -1029,6 +1510,9 @@ public class CanvasPane extends Pane {
 
     private void finishMoveDrag() {
         moveDragging = false;
+        // The release lands on the last pointer position even if no pulse has applied it yet.
+        applyPendingMoveDrag();
+        moveDragPulse.stop();
         if (moveDragStartCm == null) {
             return;
         }
@@ -1086,6 +1570,8 @@ public class CanvasPane extends Pane {
         moveGuideStart.clear();
         moveDimensionStart.clear();
         moveManualStart.clear();
+        moveShapeIds.clear();
+        moveLinkedDimensionIndices.clear();
     }
 
     private void redraw() {
@@ -1105,6 +1591,13 @@ public class CanvasPane extends Pane {
         edgeViews.clear();
         dimensionViews.clear();
         guideViews.clear();
+        shapeGrid.clear();
+        shapeOutlines.clear();
+        manualShapeGrid.clear();
+        edgeGrid.clear();
+        dimensionGrid.clear();
+        dimensionLabelGrid.clear();
+        dimensionExtentGrid.clear();
 
         updateBoardAndClip();
 
@@ -1136,9 +1629,9 @@ public class CanvasPane extends Pane {
     private void drawNode(NodePoint node) {
         double x = node.getXCm() * scale;
         double y = node.getYCm() * scale;
-        Circle circle = new Circle(x, y, NODE_RADIUS, Color.DODGERBLUE);
+        Circle circle = new Circle(x, y, isOverview() ? OVERVIEW_NODE_RADIUS : NODE_RADIUS, Color.DODGERBLUE);
         circle.setStroke(Color.WHITE);
-        circle.setStrokeWidth(1);
+        circle.setStrokeWidth(isOverview() ? 0 : 1);
         circle.setOnMouseClicked(event -> {
             if (suppressNextClick) {
                 suppressNextClick = false;
@@ -1146,7 +1639,8 @@ public class CanvasPane extends Pane {
                 return;
             }
             if (mode == Mode.DIMENSION) {
-                handleDimensionClick(new Point2D(node.getXCm(), node.getYCm()));
+                NodePoint current = findNode(node.getId());
+                handleDimensionClick(new Point2D(current.getXCm(), current.getYCm()));
                 event.consume();
                 return;
             }
@@ -1206,6 +1700,10 @@ public class CanvasPane extends Pane {
             return;
         }
         ensureEdgeControls(edge, start, end);
+        indexEdgeCurve(edge, start, end);
+        if (canvasMode) {
+            return;
+        }
         Point2D controlStart = getControlPoint(edge.getId(), true, start, end);
         Point2D controlEnd = getControlPoint(edge.getId(), false, start, end);
         javafx.scene.shape.CubicCurve curve = new javafx.scene.shape.CubicCurve(
@@ -1264,6 +1762,9 @@ public class CanvasPane extends Pane {
     }
 
     private void drawPlank(PlankRect plank) {
+        if (canvasMode) {
+            return;
+        }
         Polygon polygon = new Polygon();
         for (Point2D point : plank.points) {
             polygon.getPoints().addAll(point.getX() * scale, point.getY() * scale);
@@ -1275,6 +1776,11 @@ public class CanvasPane extends Pane {
     }
 
     private void drawDimension(Dimension dimension) {
+        indexDimension(dimension);
+        if (canvasMode) {
+            return;
+        }
+        int dimensionId = dimension.getId();
         Point2D start = new Point2D(dimension.getStartXCm(), dimension.getStartYCm());
         Point2D end = new Point2D(dimension.getEndXCm(), dimension.getEndYCm());
         Point2D offset = new Point2D(dimension.getOffsetXCm(), dimension.getOffsetYCm());
@@ -1298,27 +1804,8 @@ public class CanvasPane extends Pane {
         List<Polygon> arrows = buildArrowHeads(startOffset, endOffset);
         for (Polygon arrow : arrows) {
             arrow.setFill(Color.BLACK);
-            arrow.setOnMousePressed(event -> {
-                if (mode == Mode.SELECT && event.getButton() == MouseButton.PRIMARY) {
-                    boolean wasSelected = selectedDimensions.contains(dimension.getId());
-                    if (event.isShiftDown()) {
-                        toggleSelection(SelectableType.DIMENSION, dimension.getId(), true);
-                    } else if (!wasSelected) {
-                        clearSelectionSets();
-                        selectedDimensions.add(dimension.getId());
-                        updateSelectionStyles();
-                        notifySelectionChanged();
-                    }
-                    event.consume();
-                }
-            });
-            arrow.setOnMouseClicked(event -> {
-                if (mode == Mode.DELETE_DIMENSION && onDeleteDimensions != null) {
-                    onDeleteDimensions.accept(List.of(dimension.getId()));
-                    event.consume();
-                    return;
-                }
-            });
+            arrow.setOnMousePressed(event -> handleDimensionPressed(dimensionId, event));
+            arrow.setOnMouseClicked(event -> handleDimensionClicked(dimensionId, event));
         }
 
         String labelText = buildDimensionLabel(start, end, dimension.getType());
@@ -1330,123 +1817,128 @@ public class CanvasPane extends Pane {
 
         Group labelGroup = new Group(bg, text);
         labelGroup.setManaged(false);
-        positionLabel(labelGroup, text, bg, startOffset.midpoint(endOffset));
+        if (applyDimensionDetail(arrows, labelGroup, startOffset, endOffset)) {
+            positionLabel(labelGroup, text, bg, startOffset.midpoint(endOffset));
+        }
 
-        labelGroup.setOnMousePressed(event -> {
-            if (mode == Mode.SELECT && event.getButton() == MouseButton.PRIMARY) {
-                boolean wasSelected = selectedDimensions.contains(dimension.getId());
-                if (event.isShiftDown()) {
-                    toggleSelection(SelectableType.DIMENSION, dimension.getId(), true);
-                } else if (!wasSelected) {
-                    clearSelectionSets();
-                    selectedDimensions.add(dimension.getId());
-                    updateSelectionStyles();
-                    notifySelectionChanged();
-                }
-                event.consume();
-                return;
-            }
-            if (mode != Mode.DIMENSION) {
-                return;
-            }
-            Point2D local = sceneToLocal(event.getSceneX(), event.getSceneY());
-            dimensionDragStart = toCm(local.getX(), local.getY());
-            Dimension current = findDimensionById(dimension.getId());
-            if (current != null) {
-                dimensionDragOffsetStart = new Point2D(current.getOffsetXCm(), current.getOffsetYCm());
-            } else {
-                dimensionDragOffsetStart = offset;
-            }
-            event.consume();
-        });
-        labelGroup.setOnMouseDragged(event -> {
-            if (dimensionDragStart == null || dimensionDragOffsetStart == null) {
-                return;
-            }
-            Point2D local = sceneToLocal(event.getSceneX(), event.getSceneY());
-            Point2D currentCm = toCm(local.getX(), local.getY());
-            Point2D normal = dimensionNormal(start, end, dimension.getType());
-            Point2D delta = currentCm.subtract(dimensionDragStart);
-            double projected = delta.getX() * normal.getX() + delta.getY() * normal.getY();
-            Point2D newOffset = dimensionDragOffsetStart.add(normal.multiply(projected));
-            updateDimensionOffset(dimension.getId(), newOffset);
-            event.consume();
-        });
-        labelGroup.setOnMouseReleased(event -> {
-            if (onDimensionOffsetChanged != null && dimensionDragOffsetStart != null) {
-                Dimension current = findDimensionById(dimension.getId());
-                if (current != null) {
-                    onDimensionOffsetChanged.accept(current.getId(),
-                            new Point2D(current.getOffsetXCm(), current.getOffsetYCm()));
-                }
-            }
-            dimensionDragStart = null;
-            dimensionDragOffsetStart = null;
-            event.consume();
-        });
-        labelGroup.setOnMouseClicked(event -> {
-            if (mode == Mode.DELETE_DIMENSION && onDeleteDimensions != null) {
-                onDeleteDimensions.accept(List.of(dimension.getId()));
-                event.consume();
-                return;
-            }
-        });
+        labelGroup.setOnMousePressed(event -> handleDimensionLabelPressed(dimensionId, event));
+        labelGroup.setOnMouseDragged(event -> handleDimensionLabelDragged(dimensionId, event));
+        labelGroup.setOnMouseReleased(event -> handleDimensionLabelReleased(dimensionId, event));
+        labelGroup.setOnMouseClicked(event -> handleDimensionClicked(dimensionId, event));
 
-        dimensionLine.setOnMousePressed(event -> {
-            if (mode == Mode.SELECT && event.getButton() == MouseButton.PRIMARY) {
-                boolean wasSelected = selectedDimensions.contains(dimension.getId());
-                if (event.isShiftDown()) {
-                    toggleSelection(SelectableType.DIMENSION, dimension.getId(), true);
-                } else if (!wasSelected) {
-                    clearSelectionSets();
-                    selectedDimensions.add(dimension.getId());
-                    updateSelectionStyles();
-                    notifySelectionChanged();
-                }
-                event.consume();
-            }
-        });
-        dimensionLine.setOnMouseClicked(event -> {
-            if (mode == Mode.DELETE_DIMENSION && onDeleteDimensions != null) {
-                onDeleteDimensions.accept(List.of(dimension.getId()));
-                event.consume();
-                return;
-            }
-        });
+        dimensionLine.setOnMousePressed(event -> handleDimensionPressed(dimensionId, event));
+        dimensionLine.setOnMouseClicked(event -> handleDimensionClicked(dimensionId, event));
 
         dimensionLayer.getChildren().addAll(extensionStart, extensionEnd, dimensionLine);
         dimensionLayer.getChildren().addAll(arrows);
         dimensionLayer.getChildren().add(labelGroup);
-        dimensionViews.put(dimension.getId(), new DimensionView(extensionStart, extensionEnd, dimensionLine, arrows, labelGroup));
+        dimensionViews.put(dimensionId, new DimensionView(extensionStart, extensionEnd, dimensionLine, arrows, labelGroup));
     }
 
-    private void positionLabel(Group labelGroup, Text text, Rectangle bg, Point2D centerCm) {
-        double padding = 3;
-        double textWidth = text.getLayoutBounds().getWidth();
-        double textHeight = text.getLayoutBounds().getHeight();
-        bg.setWidth(textWidth + padding * 2);
-        bg.setHeight(textHeight + padding * 2);
-        text.setX(padding);
-        text.setY(textHeight + padding - 2);
-        labelGroup.setLayoutX(centerCm.getX() * scale - bg.getWidth() / 2);
-        labelGroup.setLayoutY(centerCm.getY() * scale - bg.getHeight() / 2);
+    // Dimension views and the canvas dispatch share these, keyed by id, so they always act on the current row.
+    private void handleDimensionPressed(int dimensionId, MouseEvent event) {
+        if (mode == Mode.SELECT && event.getButton() == MouseButton.PRIMARY) {
+            boolean wasSelected = selectedDimensions.contains(dimensionId);
+            if (event.isShiftDown()) {
+                toggleSelection(SelectableType.DIMENSION, dimensionId, true);
+            } else if (!wasSelected) {
+                clearSelectionSets();
+                selectedDimensions.add(dimensionId);
+                updateSelectionStyles();
+                notifySelectionChanged();
+            }
+            event.consume();
+        }
     }
 
-    private String buildDimensionLabel(Point2D start, Point2D end, DimensionType type) {
-        double dx = end.getX() - start.getX();
-        double dy = end.getY() - start.getY();
-        double lengthCm = switch (type) {
-            case HORIZONTAL -> Math.abs(dx);
-            case VERTICAL -> Math.abs(dy);
-            case ALIGNED -> Math.hypot(dx, dy);
-        };
-        double value = UnitConverter.fromCm(lengthCm, unitSystem);
-        String unitLabel = unitSystem == UnitSystem.IN ? "in" : "cm";
-        String format = unitSystem == UnitSystem.IN ? "%.2f" : "%.1f";
-        return String.format(format + " %s", value, unitLabel);
+    private void handleDimensionClicked(int dimensionId, MouseEvent event) {
+        if (mode == Mode.DELETE_DIMENSION && onDeleteDimensions != null) {
+            onDeleteDimensions.accept(List.of(dimensionId));
+            event.consume();
+        }
     }
 
-    private List<Polygon> buildArrowHeads(Point2D start, Point2D end) {
+    private void handleDimensionLabelPressed(int dimensionId, MouseEvent event) {
+        if (mode == Mode.SELECT && event.getButton() == MouseButton.PRIMARY) {
+            handleDimensionPressed(dimensionId, event);
+            return;
+        }
+        Dimension current = findDimensionById(dimensionId);
+        if (mode != Mode.DIMENSION || current == null) {
+            return;
+        }
+        Point2D local = sceneToLocal(event.getSceneX(), event.getSceneY());
+        dimensionDragStart = toCm(local.getX(), local.getY());
+        dimensionDragOffsetStart = new Point2D(current.getOffsetXCm(), current.getOffsetYCm());
+        event.consume();
+    }
+
+    private void handleDimensionLabelDragged(int dimensionId, MouseEvent event) {
+        Dimension current = findDimensionById(dimensionId);
+        if (dimensionDragStart == null || dimensionDragOffsetStart == null || current == null) {
+            return;
+        }
+        Point2D local = sceneToLocal(event.getSceneX(), event.getSceneY());
+        Point2D currentCm = toCm(local.getX(), local.getY());
+        Point2D normal = dimensionNormal(new Point2D(current.getStartXCm(), current.getStartYCm()),
+                new Point2D(current.getEndXCm(), current.getEndYCm()), current.getType());
+        Point2D delta = currentCm.subtract(dimensionDragStart);
+        double projected = delta.getX() * normal.getX() + delta.getY() * normal.getY();
+        updateDimensionOffset(dimensionId, dimensionDragOffsetStart.add(normal.multiply(projected)));
+        event.consume();
+    }
+
+    private void handleDimensionLabelReleased(int dimensionId, MouseEvent event) {
+        if (onDimensionOffsetChanged != null && dimensionDragOffsetStart != null) {
+            Dimension current = findDimensionById(dimensionId);
+            if (current != null) {
+                onDimensionOffsetChanged.accept(current.getId(),
+                        new Point2D(current.getOffsetXCm(), current.getOffsetYCm()));
+            }
+        }
+        dimensionDragStart = null;
+        dimensionDragOffsetStart = null;
+        event.consume();
+    }
+
+    private void positionLabel(Group labelGroup, Text text, Rectangle bg, Point2D centerCm) {
+        double textWidth = text.getLayoutBounds().getWidth();
+        double textHeight = text.getLayoutBounds().getHeight();
+        bg.setWidth(textWidth + LABEL_PADDING * 2);
+        bg.setHeight(textHeight + LABEL_PADDING * 2);
+        text.setX(LABEL_PADDING);
+        text.setY(textHeight + LABEL_PADDING - 2);
+        labelGroup.setLayoutX(centerCm.getX() * scale - bg.getWidth() / 2);
+        labelGroup.setLayoutY(centerCm.getY() * scale - bg.getHeight() / 2);
+    }
+
+    // The label box positionLabel would lay out, in document pixels: x, y, width, height, then the text origin.
+    private double[] measureLabel(String text, Point2D centerCm) {
+        labelMeasure.setText(text);
+        double textWidth = labelMeasure.getLayoutBounds().getWidth();
+        double textHeight = labelMeasure.getLayoutBounds().getHeight();
+        double width = textWidth + LABEL_PADDING * 2;
+        double height = textHeight + LABEL_PADDING * 2;
+        double x = centerCm.getX() * scale - width / 2;
+        double y = centerCm.getY() * scale - height / 2;
+        return new double[] {x, y, width, height, x + LABEL_PADDING, y + textHeight + LABEL_PADDING - 2};
+    }
+
+    private String buildDimensionLabel(Point2D start, Point2D end, DimensionType type) {
+        double dx = end.getX() - start.getX();
+        double dy = end.getY() - start.getY();
+        double lengthCm = switch (type) {
+            case HORIZONTAL -> Math.abs(dx);
+            case VERTICAL -> Math.abs(dy);
+            case ALIGNED -> Math.hypot(dx, dy);
+        };
+        double value = UnitConverter.fromCm(lengthCm, unitSystem);
+        String unitLabel = unitSystem == UnitSystem.IN ? "in" : "cm";
+        String format = unitSystem == UnitSystem.IN ? "%.2f" : "%.1f";
+        return String.format(format + " %s", value, unitLabel);
+    }
+
+    private List<Polygon> buildArrowHeads(Point2D start, Point2D end) {
         List<Polygon> arrows = new ArrayList<>();
         Point2D direction = end.subtract(start);
         double length = Math.hypot(direction.getX(), direction.getY());
@@ -1455,10 +1947,8 @@ public class CanvasPane extends Pane {
         }
         Point2D dir = new Point2D(direction.getX() / length, direction.getY() / length);
         Point2D normal = new Point2D(-dir.getY(), dir.getX());
-        double sizeCm = 0.4;
-        double halfWidthCm = sizeCm * 0.6;
-        Polygon startArrow = buildArrowTriangle(start, dir, normal, sizeCm, halfWidthCm);
-        Polygon endArrow = buildArrowTriangle(end, dir.multiply(-1), normal, sizeCm, halfWidthCm);
+        Polygon startArrow = buildArrowTriangle(start, dir, normal, ARROW_SIZE_CM, ARROW_HALF_WIDTH_CM);
+        Polygon endArrow = buildArrowTriangle(end, dir.multiply(-1), normal, ARROW_SIZE_CM, ARROW_HALF_WIDTH_CM);
         arrows.add(startArrow);
         arrows.add(endArrow);
         return arrows;
@@ -1564,8 +2054,12 @@ public class CanvasPane extends Pane {
 
     private void refreshDimensionView(int dimensionId) {
         Dimension dimension = findDimensionById(dimensionId);
+        if (dimension == null) {
+            return;
+        }
+        indexDimension(dimension);
         DimensionView view = dimensionViews.get(dimensionId);
-        if (dimension == null || view == null) {
+        if (view == null) {
             return;
         }
         Point2D start = new Point2D(dimension.getStartXCm(), dimension.getStartYCm());
@@ -1599,10 +2093,68 @@ public class CanvasPane extends Pane {
                 bg = (Rectangle) child;
             }
         }
+        boolean detailed = applyDimensionDetail(view.arrows, view.labelGroup, startOffset, endOffset);
         if (text != null && bg != null) {
             text.setText(buildDimensionLabel(start, end, dimension.getType()));
-            positionLabel(view.labelGroup, text, bg, startOffset.midpoint(endOffset));
+            if (detailed) {
+                positionLabel(view.labelGroup, text, bg, startOffset.midpoint(endOffset));
+            }
+        }
+    }
+
+    // Selection works on the dimension line in document space and on the label box while the label is shown; the
+    // extent covers the extension lines too, for painting. All of it comes from the row, view or no view.
+    private void indexDimension(Dimension dimension) {
+        Point2D start = new Point2D(dimension.getStartXCm(), dimension.getStartYCm());
+        Point2D end = new Point2D(dimension.getEndXCm(), dimension.getEndYCm());
+        Point2D startOffset = start.add(dimension.getOffsetXCm(), dimension.getOffsetYCm());
+        Point2D endOffset = end.add(dimension.getOffsetXCm(), dimension.getOffsetYCm());
+        dimensionGrid.put(dimension.getId(), Math.min(startOffset.getX(), endOffset.getX()),
+                Math.min(startOffset.getY(), endOffset.getY()), Math.max(startOffset.getX(), endOffset.getX()),
+                Math.max(startOffset.getY(), endOffset.getY()));
+        indexBounds(dimensionExtentGrid, dimension.getId(), List.of(start, end, startOffset, endOffset));
+        if (isDimensionDetailed(startOffset, endOffset)) {
+            double[] box = measureLabel(buildDimensionLabel(start, end, dimension.getType()),
+                    startOffset.midpoint(endOffset));
+            dimensionLabelGrid.put(dimension.getId(), box[0] / scale, box[1] / scale,
+                    (box[0] + box[2]) / scale, (box[1] + box[3]) / scale);
+        } else {
+            dimensionLabelGrid.remove(dimension.getId());
+        }
+        requestCanvasPaint();
+    }
+
+    // A dimension too short on screen to read keeps only its lines; the label is not even measured until it shows.
+    private boolean isDimensionDetailed(Point2D startOffset, Point2D endOffset) {
+        return startOffset.distance(endOffset) * scale >= DIMENSION_DETAIL_MIN_PX;
+    }
+
+    private boolean applyDimensionDetail(List<Polygon> arrows, Group label, Point2D startOffset, Point2D endOffset) {
+        boolean detailed = isDimensionDetailed(startOffset, endOffset);
+        for (Polygon arrow : arrows) {
+            arrow.setVisible(detailed);
         }
+        label.setVisible(detailed);
+        return detailed;
+    }
+
+    // The arrow heads updateArrowPolygons draws, as cm triangles of interleaved x, y pairs.
+    private static double[][] arrowTriangles(Point2D start, Point2D end) {
+        Point2D direction = end.subtract(start);
+        double length = Math.hypot(direction.getX(), direction.getY());
+        if (length == 0) {
+            return new double[0][];
+        }
+        Point2D dir = new Point2D(direction.getX() / length, direction.getY() / length);
+        Point2D normal = new Point2D(-dir.getY(), dir.getX());
+        return new double[][] {arrowTriangle(start, dir, normal), arrowTriangle(end, dir.multiply(-1), normal)};
+    }
+
+    private static double[] arrowTriangle(Point2D tip, Point2D dir, Point2D normal) {
+        Point2D base = tip.add(dir.multiply(ARROW_SIZE_CM));
+        Point2D p1 = base.add(normal.multiply(ARROW_HALF_WIDTH_CM));
+        Point2D p2 = base.subtract(normal.multiply(ARROW_HALF_WIDTH_CM));
+        return new double[] {tip.getX(), tip.getY(), p1.getX(), p1.getY(), p2.getX(), p2.getY()};
     }
 
     private void updateArrowPolygons(List<Polygon> arrows, Point2D start, Point2D end) {
@@ -1616,12 +2168,10 @@ public class CanvasPane extends Pane {
         }
         Point2D dir = new Point2D(direction.getX() / length, direction.getY() / length);
         Point2D normal = new Point2D(-dir.getY(), dir.getX());
-        double sizeCm = 0.4;
-        double halfWidthCm = sizeCm * 0.6;
         Polygon startArrow = arrows.get(0);
         Polygon endArrow = arrows.get(1);
-        updateArrowTriangle(startArrow, start, dir, normal, sizeCm, halfWidthCm);
-        updateArrowTriangle(endArrow, end, dir.multiply(-1), normal, sizeCm, halfWidthCm);
+        updateArrowTriangle(startArrow, start, dir, normal, ARROW_SIZE_CM, ARROW_HALF_WIDTH_CM);
+        updateArrowTriangle(endArrow, end, dir.multiply(-1), normal, ARROW_SIZE_CM, ARROW_HALF_WIDTH_CM);
     }
 
     private void updateArrowTriangle(Polygon triangle, Point2D tip, Point2D dir, Point2D normal,
@@ -1637,12 +2187,7 @@ public class CanvasPane extends Pane {
     }
 
     private Dimension findDimensionById(int dimensionId) {
-        for (Dimension dimension : dimensions) {
-            if (dimension.getId() == dimensionId) {
-                return dimension;
-            }
-        }
-        return null;
+        return dimensionById.get(dimensionId);
     }
 
     private Point2D snapToNode(Point2D cmPoint) {
@@ -1658,14 +2203,18 @@ public class CanvasPane extends Pane {
     }
 
     private Integer findNodeNear(Point2D cmPoint, double thresholdCm) {
-        for (NodePoint node : nodes) {
-            double dx = node.getXCm() - cmPoint.getX();
-            double dy = node.getYCm() - cmPoint.getY();
-            if (Math.hypot(dx, dy) <= thresholdCm) {
-                return node.getId();
-            }
-        }
-        return null;
+        Integer[] nearest = new Integer[1];
+        double[] nearestDistance = {thresholdCm};
+        nodeGrid.query(cmPoint.getX() - thresholdCm, cmPoint.getY() - thresholdCm,
+                cmPoint.getX() + thresholdCm, cmPoint.getY() + thresholdCm, nodeId -> {
+                    NodePoint node = nodeById.get(nodeId);
+                    double distance = Math.hypot(node.getXCm() - cmPoint.getX(), node.getYCm() - cmPoint.getY());
+                    if (distance <= nearestDistance[0]) {
+                        nearest[0] = nodeId;
+                        nearestDistance[0] = distance;
+                    }
+                });
+        return nearest[0];
     }
 
     private void redrawGuides() {
@@ -1681,88 +2230,97 @@ public class CanvasPane extends Pane {
         if (sampled.size() < 3) {
             return;
         }
+        indexShape(shape.getId(), sampled);
+        if (canvasMode) {
+            return;
+        }
+        int shapeId = shape.getId();
         Polygon polygon = new Polygon();
         for (Point2D point : sampled) {
             polygon.getPoints().addAll(point.getX() * scale, point.getY() * scale);
         }
-        Color base = shape.getMaterialId() == null ? Color.LIGHTGRAY : materialColors.get(shape.getMaterialId());
-        if (base == null) {
-            base = Color.LIGHTGRAY;
-        }
-        polygon.setFill(new Color(base.getRed(), base.getGreen(), base.getBlue(), 0.25));
+        polygon.setFill(shapeFill(shape));
         polygon.setStroke(Color.GRAY);
         polygon.setStrokeWidth(1);
         polygon.setOnMouseEntered(event -> {
-            if (!selectedShapes.contains(shape.getId())) {
+            if (!selectedShapes.contains(shapeId)) {
                 polygon.setStroke(Color.DEEPSKYBLUE);
                 polygon.setStrokeWidth(1.6);
             }
         });
         polygon.setOnMouseExited(event -> updateSelectionStyles());
-        polygon.setOnMousePressed(event -> {
-            if (mode == Mode.SELECT && event.getButton() == MouseButton.PRIMARY) {
-                boolean wasSelected = selectedShapes.contains(shape.getId());
-                if (event.isShiftDown()) {
-                    toggleSelection(SelectableType.SHAPE, shape.getId(), true);
-                } else if (!wasSelected) {
-                    clearSelectionSets();
-                    selectedShapes.add(shape.getId());
-                    selectedShapeId = shape.getId();
-                    selectedNodeId = null;
-                    updateSelectionStyles();
-                    notifySelectionChanged();
-                }
-                event.consume();
-                return;
+        polygon.setOnMousePressed(event -> handleShapePressed(shapeId, event));
+        polygon.setOnMouseClicked(event -> handleShapeClicked(shapeId, event));
+        shapeViews.put(shapeId, polygon);
+        shapeLayer.getChildren().add(polygon);
+    }
+
+    // Shape views and the canvas dispatch share these, keyed by id, so they always act on the current row.
+    private void handleShapePressed(int shapeId, MouseEvent event) {
+        if (mode == Mode.SELECT && event.getButton() == MouseButton.PRIMARY) {
+            boolean wasSelected = selectedShapes.contains(shapeId);
+            if (event.isShiftDown()) {
+                toggleSelection(SelectableType.SHAPE, shapeId, true);
+            } else if (!wasSelected) {
+                clearSelectionSets();
+                selectedShapes.add(shapeId);
+                selectedShapeId = shapeId;
+                selectedNodeId = null;
+                updateSelectionStyles();
+                notifySelectionChanged();
             }
-            if (mode == Mode.MOVE_NODE && event.getButton() == MouseButton.PRIMARY) {
-                if (!selectedShapes.contains(shape.getId())) {
-                    clearSelectionSets();
-                    selectedShapes.add(shape.getId());
-                    selectedShapeId = shape.getId();
-                    selectedNodeId = null;
-                    updateSelectionStyles();
-                    notifySelectionChanged();
-                }
-                Point2D local = sceneToLocal(event.getSceneX(), event.getSceneY());
-                startMoveDrag(toCm(local.getX(), local.getY()), collectMoveNodeIds());
-                event.consume();
+            event.consume();
+            return;
+        }
+        if (mode == Mode.MOVE_NODE && event.getButton() == MouseButton.PRIMARY) {
+            if (!selectedShapes.contains(shapeId)) {
+                clearSelectionSets();
+                selectedShapes.add(shapeId);
+                selectedShapeId = shapeId;
+                selectedNodeId = null;
+                updateSelectionStyles();
+                notifySelectionChanged();
             }
-        });
-        polygon.setOnMouseClicked(event -> {
             Point2D local = sceneToLocal(event.getSceneX(), event.getSceneY());
-            Point2D cmPoint = toCm(local.getX(), local.getY());
-            if (mode == Mode.SELECT) {
-                if (suppressNextClick) {
-                    suppressNextClick = false;
-                    event.consume();
-                    return;
-                }
-                if (onShapeClicked != null) {
-                    onShapeClicked.accept(shape.getId());
-                }
-                if (onShapeClickedWithPoint != null) {
-                    onShapeClickedWithPoint.accept(shape.getId(), cmPoint);
-                }
-                event.consume();
-                return;
-            }
-            if (onShapeClicked != null) {
-                onShapeClicked.accept(shape.getId());
-            }
-            if (onShapeClickedWithPoint != null) {
-                onShapeClickedWithPoint.accept(shape.getId(), cmPoint);
-            }
+            startMoveDrag(toCm(local.getX(), local.getY()), collectMoveNodeIds());
             event.consume();
-        });
-        shapeViews.put(shape.getId(), polygon);
-        shapeLayer.getChildren().add(polygon);
+        }
+    }
+
+    private void handleShapeClicked(int shapeId, MouseEvent event) {
+        Point2D local = sceneToLocal(event.getSceneX(), event.getSceneY());
+        Point2D cmPoint = toCm(local.getX(), local.getY());
+        if (mode == Mode.SELECT && suppressNextClick) {
+            suppressNextClick = false;
+            event.consume();
+            return;
+        }
+        if (onShapeClicked != null) {
+            onShapeClicked.accept(shapeId);
+        }
+        if (onShapeClickedWithPoint != null) {
+            onShapeClickedWithPoint.accept(shapeId, cmPoint);
+        }
+        event.consume();
+    }
+
+    private Color shapeFill(ShapePolygon shape) {
+        Color base = shape.getMaterialId() == null ? Color.LIGHTGRAY : materialColors.get(shape.getMaterialId());
+        if (base == null) {
+            base = Color.LIGHTGRAY;
+        }
+        return new Color(base.getRed(), base.getGreen(), base.getBlue(), 0.25);
     }
 
     private void drawManualShape(ManualShape shape) {
         if (shape.getPoints() == null || shape.getPoints().size() < 3) {
             return;
         }
+        indexManualShape(shape.getId(), shape.getPoints());
+        if (canvasMode) {
+            return;
+        }
+        int manualId = shape.getId();
         Polygon polygon = new Polygon();
         for (Point2D point : shape.getPoints()) {
             polygon.getPoints().addAll(point.getX() * scale, point.getY() * scale);
@@ -1771,63 +2329,58 @@ public class CanvasPane extends Pane {
         polygon.setStroke(Color.rgb(60, 90, 140, 0.8));
         polygon.setStrokeWidth(1.2);
         polygon.setOnMouseEntered(event -> {
-            if (!selectedManualShapes.contains(shape.getId())) {
+            if (!selectedManualShapes.contains(manualId)) {
                 polygon.setStroke(Color.DEEPSKYBLUE);
                 polygon.setStrokeWidth(1.6);
             }
         });
         polygon.setOnMouseExited(event -> updateSelectionStyles());
-        polygon.setOnMousePressed(event -> {
-            if (mode == Mode.SELECT && event.getButton() == MouseButton.PRIMARY) {
-                boolean wasSelected = selectedManualShapes.contains(shape.getId());
-                if (event.isShiftDown()) {
-                    toggleSelection(SelectableType.MANUAL_SHAPE, shape.getId(), true);
-                } else if (!wasSelected) {
-                    clearSelectionSets();
-                    selectedManualShapes.add(shape.getId());
-                    updateSelectionStyles();
-                    notifySelectionChanged();
-                }
-                event.consume();
-                return;
-            }
-            if (mode == Mode.MOVE_NODE && event.getButton() == MouseButton.PRIMARY) {
-                if (!selectedManualShapes.contains(shape.getId())) {
-                    clearSelectionSets();
-                    selectedManualShapes.add(shape.getId());
-                    updateSelectionStyles();
-                    notifySelectionChanged();
-                }
-                Point2D local = sceneToLocal(event.getSceneX(), event.getSceneY());
-                startMoveDrag(toCm(local.getX(), local.getY()), collectMoveNodeIds());
-                event.consume();
+        polygon.setOnMousePressed(event -> handleManualShapePressed(manualId, event));
+        polygon.setOnMouseClicked(this::handleManualShapeClicked);
+        manualShapeViews.put(manualId, polygon);
+        manualShapeLayer.getChildren().add(polygon);
+    }
+
+    private void handleManualShapePressed(int manualId, MouseEvent event) {
+        if (mode == Mode.SELECT && event.getButton() == MouseButton.PRIMARY) {
+            boolean wasSelected = selectedManualShapes.contains(manualId);
+            if (event.isShiftDown()) {
+                toggleSelection(SelectableType.MANUAL_SHAPE, manualId, true);
+            } else if (!wasSelected) {
+                clearSelectionSets();
+                selectedManualShapes.add(manualId);
+                updateSelectionStyles();
+                notifySelectionChanged();
             }
-        });
-        polygon.setOnMouseClicked(event -> {
-            if (mode == Mode.SELECT) {
-                if (suppressNextClick) {
-                    suppressNextClick = false;
-                    event.consume();
-                    return;
-                }
-                event.consume();
-                return;
+            event.consume();
+            return;
+        }
+        if (mode == Mode.MOVE_NODE && event.getButton() == MouseButton.PRIMARY) {
+            if (!selectedManualShapes.contains(manualId)) {
+                clearSelectionSets();
+                selectedManualShapes.add(manualId);
+                updateSelectionStyles();
+                notifySelectionChanged();
             }
-        });
-        manualShapeViews.put(shape.getId(), polygon);
-        manualShapeLayer.getChildren().add(polygon);
+            Point2D local = sceneToLocal(event.getSceneX(), event.getSceneY());
+            startMoveDrag(toCm(local.getX(), local.getY()), collectMoveNodeIds());
+            event.consume();
+        }
     }
 
-    private List<NodePoint> resolveShapeNodes(ShapePolygon shape) {
-        Map<Integer, NodePoint> nodeMap = new HashMap<>();
-        for (NodePoint node : nodes) {
-            nodeMap.put(node.getId(), node);
+    private void handleManualShapeClicked(MouseEvent event) {
+        if (mode == Mode.SELECT) {
+            suppressNextClick = false;
+            event.consume();
         }
+    }
+
+    private List<NodePoint> resolveShapeNodes(ShapePolygon shape) {
         List<NodePoint> resolved = new ArrayList<>();
         java.util.Set<Integer> seen = new java.util.HashSet<>();
         if (shape.getNodeIds() != null) {
             for (Integer nodeId : shape.getNodeIds()) {
-                NodePoint node = nodeMap.get(nodeId);
+                NodePoint node = nodeById.get(nodeId);
                 if (node != null) {
                     resolved.add(node);
                     seen.add(node.getId());
@@ -1839,210 +2392,913 @@ public class CanvasPane extends Pane {
                 if (node == null || seen.contains(node.getId())) {
                     continue;
                 }
-                NodePoint canonical = nodeMap.getOrDefault(node.getId(), node);
+                NodePoint canonical = nodeById.getOrDefault(node.getId(), node);
                 resolved.add(canonical);
                 seen.add(canonical.getId());
             }
         }
-        return resolved;
+        return resolved;
+    }
+
+    private void updateNodePosition(int nodeId, Point2D cmPoint, boolean resetHandles) {
+        double xCm = Math.max(0, cmPoint.getX());
+        double yCm = Math.max(0, cmPoint.getY());
+        Point2D previous = null;
+        NodePoint node = nodeById.get(nodeId);
+        if (node != null) {
+            previous = new Point2D(node.getXCm(), node.getYCm());
+            replaceNode(new NodePoint(nodeId, node.getDocumentId(), xCm, yCm));
+        }
+        if (previous != null && !resetHandles) {
+            updateControlsForNode(nodeId, previous, new Point2D(xCm, yCm));
+        } else if (resetHandles) {
+            resetControlsForNode(nodeId);
+        }
+        updateDimensionsForNode(nodeId, new Point2D(xCm, yCm));
+        Circle circle = nodeViews.get(nodeId);
+        if (circle != null) {
+            circle.setCenterX(xCm * scale);
+            circle.setCenterY(yCm * scale);
+        }
+        if (!bulkMoveActive) {
+            updateConnectedEdges(nodeId);
+            updateShapePolygons();
+            refreshHandleLayer();
+        }
+    }
+
+    private void updateNodePositionRaw(int nodeId, Point2D cmPoint) {
+        double xCm = Math.max(0, cmPoint.getX());
+        double yCm = Math.max(0, cmPoint.getY());
+        NodePoint node = nodeById.get(nodeId);
+        if (node != null) {
+            replaceNode(new NodePoint(nodeId, node.getDocumentId(), xCm, yCm));
+        }
+        Circle circle = nodeViews.get(nodeId);
+        if (circle != null) {
+            circle.setCenterX(xCm * scale);
+            circle.setCenterY(yCm * scale);
+        }
+    }
+
+    private void collectMovedDimensions() {
+        moveLinkedDimensionIndices.clear();
+        for (int i = 0; i < dimensions.size(); i++) {
+            Dimension dimension = dimensions.get(i);
+            if ((dimension.getStartNodeId() != null && moveNodeStart.containsKey(dimension.getStartNodeId()))
+                    || (dimension.getEndNodeId() != null && moveNodeStart.containsKey(dimension.getEndNodeId()))) {
+                moveLinkedDimensionIndices.add(i);
+            }
+        }
+    }
+
+    // Only the dimensions linked to dragged nodes, found once when the drag starts.
+    private void updateMovedDimensions() {
+        for (int i : moveLinkedDimensionIndices) {
+            Dimension dimension = dimensions.get(i);
+            NodePoint startNode = dimension.getStartNodeId() != null && moveNodeStart.containsKey(dimension.getStartNodeId())
+                    ? nodeById.get(dimension.getStartNodeId()) : null;
+            NodePoint endNode = dimension.getEndNodeId() != null && moveNodeStart.containsKey(dimension.getEndNodeId())
+                    ? nodeById.get(dimension.getEndNodeId()) : null;
+            dimensions.set(i, new Dimension(
+                    dimension.getId(),
+                    dimension.getDocumentId(),
+                    startNode != null ? startNode.getXCm() : dimension.getStartXCm(),
+                    startNode != null ? startNode.getYCm() : dimension.getStartYCm(),
+                    endNode != null ? endNode.getXCm() : dimension.getEndXCm(),
+                    endNode != null ? endNode.getYCm() : dimension.getEndYCm(),
+                    dimension.getOffsetXCm(),
+                    dimension.getOffsetYCm(),
+                    dimension.getType(),
+                    dimension.getStartNodeId(),
+                    dimension.getEndNodeId()
+            ));
+            dimensionById.put(dimension.getId(), dimensions.get(i));
+            refreshDimensionView(dimension.getId());
+        }
+    }
+
+    private void updateDimensionsForNode(int nodeId, Point2D position) {
+        for (int i = 0; i < dimensions.size(); i++) {
+            Dimension dimension = dimensions.get(i);
+            boolean isStart = dimension.getStartNodeId() != null && dimension.getStartNodeId() == nodeId;
+            boolean isEnd = dimension.getEndNodeId() != null && dimension.getEndNodeId() == nodeId;
+            if (!isStart && !isEnd) {
+                continue;
+            }
+            double startX = isStart ? position.getX() : dimension.getStartXCm();
+            double startY = isStart ? position.getY() : dimension.getStartYCm();
+            double endX = isEnd ? position.getX() : dimension.getEndXCm();
+            double endY = isEnd ? position.getY() : dimension.getEndYCm();
+            dimensions.set(i, new Dimension(
+                    dimension.getId(),
+                    dimension.getDocumentId(),
+                    startX,
+                    startY,
+                    endX,
+                    endY,
+                    dimension.getOffsetXCm(),
+                    dimension.getOffsetYCm(),
+                    dimension.getType(),
+                    dimension.getStartNodeId(),
+                    dimension.getEndNodeId()
+            ));
+            dimensionById.put(dimension.getId(), dimensions.get(i));
+            refreshDimensionView(dimension.getId());
+        }
+    }
+
+    private void updateConnectedEdges(int nodeId) {
+        for (Edge edge : edgesAt(nodeId)) {
+            if (edge.getStartNodeId() != nodeId && edge.getEndNodeId() != nodeId) {
+                continue;
+            }
+            NodePoint start = findNode(edge.getStartNodeId());
+            NodePoint end = findNode(edge.getEndNodeId());
+            if (start == null || end == null) {
+                continue;
+            }
+            patchEdge(edge, start, end);
+        }
+    }
+
+    private void patchEdge(Edge edge, NodePoint start, NodePoint end) {
+        indexEdgeCurve(edge, start, end);
+        CubicCurveView view = edgeViews.get(edge.getId());
+        if (view == null) {
+            return;
+        }
+        Point2D controlStart = getControlPoint(edge.getId(), true, start, end);
+        Point2D controlEnd = getControlPoint(edge.getId(), false, start, end);
+        view.curve.setStartX(start.getXCm() * scale);
+        view.curve.setStartY(start.getYCm() * scale);
+        view.curve.setControlX1(controlStart.getX() * scale);
+        view.curve.setControlY1(controlStart.getY() * scale);
+        view.curve.setControlX2(controlEnd.getX() * scale);
+        view.curve.setControlY2(controlEnd.getY() * scale);
+        view.curve.setEndX(end.getXCm() * scale);
+        view.curve.setEndY(end.getYCm() * scale);
+    }
+
+    // Brings one edge's curve in line with its row and endpoints: drawn, patched, or dropped when a node is gone.
+    private void syncEdgeView(Edge edge, List<javafx.scene.Node> stale) {
+        NodePoint start = findNode(edge.getStartNodeId());
+        NodePoint end = findNode(edge.getEndNodeId());
+        CubicCurveView view = edgeViews.get(edge.getId());
+        if (start == null || end == null) {
+            edgeGrid.remove(edge.getId());
+            if (view != null) {
+                edgeViews.remove(edge.getId());
+                stale.add(view.curve());
+            }
+            return;
+        }
+        if (view == null) {
+            drawEdge(edge);
+            return;
+        }
+        ensureEdgeControls(edge, start, end);
+        patchEdge(edge, start, end);
+    }
+
+    private void patchShapesTouching(java.util.Set<Integer> nodeIds) {
+        if (nodeIds.isEmpty()) {
+            return;
+        }
+        List<javafx.scene.Node> stale = new ArrayList<>();
+        for (ShapePolygon shape : shapes) {
+            if (!touchesAny(shape, nodeIds)) {
+                continue;
+            }
+            Polygon polygon = shapeViews.get(shape.getId());
+            if (polygon == null && !canvasMode) {
+                drawShape(shape);
+            } else {
+                patchShape(shape, polygon, stale);
+            }
+        }
+        removeViews(shapeLayer, stale);
+    }
+
+    private static boolean touchesAny(ShapePolygon shape, java.util.Set<Integer> nodeIds) {
+        if (shape.getNodeIds() != null) {
+            for (Integer nodeId : shape.getNodeIds()) {
+                if (nodeIds.contains(nodeId)) {
+                    return true;
+                }
+            }
+        }
+        if (shape.getNodes() != null) {
+            for (NodePoint node : shape.getNodes()) {
+                if (node != null && nodeIds.contains(node.getId())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void patchShape(ShapePolygon shape, Polygon polygon, List<javafx.scene.Node> stale) {
+        List<Point2D> sampled = buildSampledPolygon(shape);
+        if (sampled.size() < 3) {
+            removeShapeView(shape.getId(), stale);
+            return;
+        }
+        if (polygon != null) {
+            setPolygonPoints(polygon, sampled);
+            polygon.setFill(shapeFill(shape));
+        }
+        indexShape(shape.getId(), sampled);
+    }
+
+    private void removeShapeView(int shapeId, List<javafx.scene.Node> stale) {
+        Polygon polygon = shapeViews.remove(shapeId);
+        shapeGrid.remove(shapeId);
+        shapeOutlines.remove(shapeId);
+        if (polygon != null) {
+            stale.add(polygon);
+        }
+    }
+
+    private void removeDimensionView(int dimensionId, List<javafx.scene.Node> stale) {
+        DimensionView view = dimensionViews.remove(dimensionId);
+        dimensionGrid.remove(dimensionId);
+        dimensionLabelGrid.remove(dimensionId);
+        dimensionExtentGrid.remove(dimensionId);
+        if (view == null) {
+            return;
+        }
+        stale.add(view.extensionStart());
+        stale.add(view.extensionEnd());
+        stale.add(view.dimensionLine());
+        stale.addAll(view.arrows());
+        stale.add(view.labelGroup());
+    }
+
+    private void setPolygonPoints(Polygon polygon, List<Point2D> points) {
+        List<Double> coordinates = new ArrayList<>(points.size() * 2);
+        for (Point2D point : points) {
+            coordinates.add(point.getX() * scale);
+            coordinates.add(point.getY() * scale);
+        }
+        polygon.getPoints().setAll(coordinates);
+    }
+
+    // Removing one child at a time is linear in the layer size, so stale views are dropped in a single pass.
+    private static void removeViews(Group layer, List<javafx.scene.Node> stale) {
+        if (stale.isEmpty()) {
+            return;
+        }
+        layer.getChildren().removeAll(new java.util.HashSet<>(stale));
+        stale.clear();
+    }
+
+    private void updateShapePolygons() {
+        for (ShapePolygon shape : shapes) {
+            List<Point2D> sampled = buildSampledPolygon(shape);
+            if (sampled.size() < 3) {
+                continue;
+            }
+            Polygon polygon = shapeViews.get(shape.getId());
+            if (polygon != null) {
+                setPolygonPoints(polygon, sampled);
+            }
+            indexShape(shape.getId(), sampled);
+        }
+    }
+
+    private List<Point2D> buildSampledPolygon(ShapePolygon shape) {
+        List<NodePoint> shapeNodes = resolveShapeNodes(shape);
+        if (shapeNodes.size() < 2) {
+            return List.of();
+        }
+        List<Point2D> points = new ArrayList<>();
+        for (int i = 0; i < shapeNodes.size(); i++) {
+            NodePoint start = shapeNodes.get(i);
+            NodePoint end = shapeNodes.get((i + 1) % shapeNodes.size());
+            Edge edge = findEdgeBetween(start.getId(), end.getId());
+            if (edge == null) {
+                if (points.isEmpty()) {
+                    points.add(new Point2D(start.getXCm(), start.getYCm()));
+                }
+                points.add(new Point2D(end.getXCm(), end.getYCm()));
+                continue;
+            }
+            ensureEdgeControls(edge, start, end);
+            EdgeControls controls = edgeControls.get(edge.getId());
+            if (controls == null) {
+                if (points.isEmpty()) {
+                    points.add(new Point2D(start.getXCm(), start.getYCm()));
+                }
+                points.add(new Point2D(end.getXCm(), end.getYCm()));
+                continue;
+            }
+            Point2D c1 = edge.getStartNodeId() == start.getId() ? controls.start() : controls.end();
+            Point2D c2 = edge.getStartNodeId() == start.getId() ? controls.end() : controls.start();
+            curveTessellator.appendCubic(points, edge.getId(),
+                    new Point2D(start.getXCm(), start.getYCm()),
+                    c1,
+                    c2,
+                    new Point2D(end.getXCm(), end.getYCm()),
+                    outlineTolerance());
+        }
+        return points;
+    }
+
+    private double outlineTolerance() {
+        double tolerance = CurveTessellator.screenTolerance(scale);
+        return isOverview() ? tolerance * OVERVIEW_TOLERANCE_FACTOR : tolerance;
+    }
+
+    private boolean isOverview() {
+        return scale < OVERVIEW_SCALE;
+    }
+
+    private Edge findEdgeBetween(int nodeA, int nodeB) {
+        return edgeByEndpoints.get(endpointKey(nodeA, nodeB));
+    }
+
+    private List<Edge> edgesAt(int nodeId) {
+        return edgesByNode.getOrDefault(nodeId, List.of());
+    }
+
+    private void indexNode(NodePoint node) {
+        nodeById.put(node.getId(), node);
+        nodeGrid.put(node.getId(), node.getXCm(), node.getYCm(), node.getXCm(), node.getYCm());
+    }
+
+    // Nodes are only ever appended or replaced wholesale, so an id keeps its list position while it is dragged.
+    private void replaceNode(NodePoint node) {
+        Integer index = nodeIndex.get(node.getId());
+        if (index != null) {
+            nodes.set(index, node);
+        }
+        indexNode(node);
+    }
+
+    // The last node takes the removed one's slot, so only one index entry moves.
+    private void removeNode(int nodeId) {
+        Integer index = nodeIndex.remove(nodeId);
+        if (index == null) {
+            return;
+        }
+        NodePoint last = nodes.remove(nodes.size() - 1);
+        if (index < nodes.size()) {
+            nodes.set(index, last);
+            nodeIndex.put(last.getId(), index);
+        }
+        nodeById.remove(nodeId);
+        nodeGrid.remove(nodeId);
+    }
+
+    private void indexEdge(Edge edge) {
+        edgeById.put(edge.getId(), edge);
+        // The first edge between two nodes wins, as the list scan this replaces did.
+        edgeByEndpoints.putIfAbsent(endpointKey(edge.getStartNodeId(), edge.getEndNodeId()), edge);
+        edgesByNode.computeIfAbsent(edge.getStartNodeId(), ignored -> new ArrayList<>()).add(edge);
+        if (edge.getEndNodeId() != edge.getStartNodeId()) {
+            edgesByNode.computeIfAbsent(edge.getEndNodeId(), ignored -> new ArrayList<>()).add(edge);
+        }
+    }
+
+    private void unindexEdge(Edge edge) {
+        edgeById.remove(edge.getId());
+        List<Edge> atStart = edgesByNode.get(edge.getStartNodeId());
+        if (atStart != null) {
+            atStart.removeIf(other -> other.getId() == edge.getId());
+        }
+        List<Edge> atEnd = edgesByNode.get(edge.getEndNodeId());
+        if (atEnd != null) {
+            atEnd.removeIf(other -> other.getId() == edge.getId());
+        }
+        long key = endpointKey(edge.getStartNodeId(), edge.getEndNodeId());
+        if (edgeByEndpoints.get(key) == edge) {
+            edgeByEndpoints.remove(key);
+            for (Edge other : edgesAt(edge.getStartNodeId())) {
+                if (endpointKey(other.getStartNodeId(), other.getEndNodeId()) == key) {
+                    edgeByEndpoints.put(key, other);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static long endpointKey(int nodeA, int nodeB) {
+        return ((long) Math.min(nodeA, nodeB) << 32) | (Math.max(nodeA, nodeB) & 0xFFFFFFFFL);
+    }
+
+    private void indexShape(int shapeId, List<Point2D> sampled) {
+        indexBounds(shapeGrid, shapeId, sampled);
+        shapeOutlines.put(shapeId, toOutline(sampled));
+        requestCanvasPaint();
+    }
+
+    private void indexManualShape(int manualId, List<Point2D> points) {
+        indexBounds(manualShapeGrid, manualId, points);
+        requestCanvasPaint();
+    }
+
+    // A cubic never leaves the hull of its end and control points, so that box is all the grid needs.
+    private void indexEdgeCurve(Edge edge, NodePoint start, NodePoint end) {
+        Point2D controlStart = getControlPoint(edge.getId(), true, start, end);
+        Point2D controlEnd = getControlPoint(edge.getId(), false, start, end);
+        indexBounds(edgeGrid, edge.getId(), List.of(new Point2D(start.getXCm(), start.getYCm()), controlStart,
+                controlEnd, new Point2D(end.getXCm(), end.getYCm())));
+        requestCanvasPaint();
+    }
+
+    private static double[] toOutline(List<Point2D> points) {
+        double[] outline = new double[points.size() * 2];
+        for (int i = 0; i < points.size(); i++) {
+            outline[i * 2] = points.get(i).getX();
+            outline[i * 2 + 1] = points.get(i).getY();
+        }
+        return outline;
+    }
+
+    private static void indexBounds(SpatialGrid grid, int id, List<Point2D> points) {
+        if (points == null || points.isEmpty()) {
+            grid.remove(id);
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (Point2D point : points) {
+            minX = Math.min(minX, point.getX());
+            minY = Math.min(minY, point.getY());
+            maxX = Math.max(maxX, point.getX());
+            maxY = Math.max(maxY, point.getY());
+        }
+        grid.put(id, minX, minY, maxX, maxY);
+    }
+
+    private void updateLayerTransforms() {
+        contentLayer.setTranslateX(panX);
+        contentLayer.setTranslateY(panY);
+        requestCanvasPaint();
+    }
+
+    public void setCanvasRenderThreshold(int threshold) {
+        this.canvasRenderThreshold = Math.max(0, threshold);
+        updateRenderMode();
+    }
+
+    public boolean isCanvasRendering() {
+        return canvasMode;
+    }
+
+    private void updateRenderMode() {
+        int entities = shapes.size() + manualShapes.size() + edges.size() + dimensions.size() + plankRects.size();
+        // Switching back waits for a clear margin so a drawing hovering at the threshold does not flip every edit.
+        if (!canvasMode && entities > canvasRenderThreshold) {
+            switchRenderer(true);
+        } else if (canvasMode && entities < canvasRenderThreshold - canvasRenderThreshold / 5) {
+            switchRenderer(false);
+        }
+    }
+
+    private void switchRenderer(boolean canvas) {
+        canvasMode = canvas;
+        canvasPressTarget = null;
+        canvasHoverTarget = null;
+        canvasEventTarget = null;
+        hoveredShapeId = null;
+        hoveredManualShapeId = null;
+        int index = contentLayer.getChildren().indexOf(canvas ? paintedLayers.get(0) : renderCanvas);
+        if (canvas) {
+            contentLayer.getChildren().removeAll(paintedLayers);
+            contentLayer.getChildren().add(index, renderCanvas);
+            // The grids already hold every row, and nothing on the canvas path reads a view, so the views go.
+            for (Group layer : paintedLayers) {
+                layer.getChildren().clear();
+            }
+            shapeViews.clear();
+            manualShapeViews.clear();
+            edgeViews.clear();
+            dimensionViews.clear();
+            requestCanvasPaint();
+            return;
+        }
+        contentLayer.getChildren().remove(renderCanvas);
+        contentLayer.getChildren().addAll(index, paintedLayers);
+        for (ShapePolygon shape : shapes) {
+            drawShape(shape);
+        }
+        for (ManualShape shape : manualShapes) {
+            drawManualShape(shape);
+        }
+        for (PlankRect plank : plankRects) {
+            drawPlank(plank);
+        }
+        for (Edge edge : edges) {
+            drawEdge(edge);
+        }
+        for (Dimension dimension : dimensions) {
+            drawDimension(dimension);
+        }
+        updateSelectionStyles();
+    }
+
+    // Paints are coalesced into the next layout pass, which also runs before a snapshot is taken.
+    private void requestCanvasPaint() {
+        if (canvasMode && !canvasPaintPending) {
+            canvasPaintPending = true;
+            requestLayout();
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+        if (canvasMode && canvasPaintPending) {
+            canvasPaintPending = false;
+            paintCanvas();
+        }
+    }
+
+    private void paintCanvas() {
+        double width = Math.max(1, getWidth());
+        double height = Math.max(1, getHeight());
+        if (renderCanvas.getWidth() != width) {
+            renderCanvas.setWidth(width);
+        }
+        if (renderCanvas.getHeight() != height) {
+            renderCanvas.setHeight(height);
+        }
+        // The canvas lives in the panned content layer but stays pinned to the viewport.
+        renderCanvas.setLayoutX(-panX);
+        renderCanvas.setLayoutY(-panY);
+        GraphicsContext gc = renderCanvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, width, height);
+        // Rows are painted straight from the model in layer order. The grids name the ones reaching into the
+        // viewport, so panning a zoomed-in drawing costs what is on screen rather than what is in the document.
+        double padding = CANVAS_PAINT_PADDING_PX / scale;
+        double[] viewport = {-panX / scale - padding, -panY / scale - padding,
+                (width - panX) / scale + padding, (height - panY) / scale + padding};
+        gc.save();
+        gc.translate(panX, panY);
+        if (shapeLayer.isVisible()) {
+            for (int shapeId : visibleRows(viewport, shapeGrid)) {
+                paintShape(gc, shapeId);
+            }
+        }
+        if (manualShapeLayer.isVisible()) {
+            for (int manualId : visibleRows(viewport, manualShapeGrid)) {
+                paintManualShape(gc, manualId);
+            }
+        }
+        if (plankLayer.isVisible()) {
+            for (PlankRect plank : plankRects) {
+                LayerPainter.polygon(gc, toOutline(plank.points), scale, Color.rgb(250, 200, 90, 0.18),
+                        Color.rgb(200, 140, 60, 0.6), 1);
+            }
+        }
+        if (edgeLayer.isVisible()) {
+            for (int edgeId : visibleRows(viewport, edgeGrid)) {
+                paintEdge(gc, edgeId);
+            }
+        }
+        if (dimensionLayer.isVisible()) {
+            // A label can reach past its dimension's lines, so either index can bring a dimension into view.
+            for (int dimensionId : visibleRows(viewport, dimensionExtentGrid, dimensionLabelGrid)) {
+                paintDimension(gc, dimensionId);
+            }
+        }
+        gc.restore();
     }
 
-    private void updateNodePosition(int nodeId, Point2D cmPoint, boolean resetHandles) {
-        double xCm = Math.max(0, cmPoint.getX());
-        double yCm = Math.max(0, cmPoint.getY());
-        Point2D previous = null;
-        for (int i = 0; i < nodes.size(); i++) {
-            NodePoint node = nodes.get(i);
-            if (node.getId() == nodeId) {
-                previous = new Point2D(node.getXCm(), node.getYCm());
-                nodes.set(i, new NodePoint(nodeId, node.getDocumentId(), xCm, yCm));
-                break;
+    // The ids indexed inside the viewport, each once and in id order, which is the order the rows were drawn in.
+    private static int[] visibleRows(double[] viewport, SpatialGrid... grids) {
+        IntStream.Builder found = IntStream.builder();
+        for (SpatialGrid grid : grids) {
+            grid.query(viewport[0], viewport[1], viewport[2], viewport[3], found::add);
+        }
+        int[] ids = found.build().toArray();
+        Arrays.sort(ids);
+        int count = 0;
+        for (int id : ids) {
+            if (count == 0 || ids[count - 1] != id) {
+                ids[count++] = id;
             }
         }
-        if (previous != null && !resetHandles) {
-            updateControlsForNode(nodeId, previous, new Point2D(xCm, yCm));
-        } else if (resetHandles) {
-            resetControlsForNode(nodeId);
+        return Arrays.copyOf(ids, count);
+    }
+
+    // The styles below are the ones updateSelectionStyles and the hover handlers give the views.
+    private void paintShape(GraphicsContext gc, int shapeId) {
+        ShapePolygon shape = shapeById.get(shapeId);
+        double[] outline = shapeOutlines.get(shapeId);
+        if (shape == null || outline == null) {
+            return;
         }
-        updateDimensionsForNode(nodeId, new Point2D(xCm, yCm));
-        Circle circle = nodeViews.get(nodeId);
-        if (circle != null) {
-            circle.setCenterX(xCm * scale);
-            circle.setCenterY(yCm * scale);
+        boolean selected = selectedShapes.contains(shapeId);
+        boolean hovered = !selected && hoveredShapeId != null && hoveredShapeId == shapeId;
+        LayerPainter.polygon(gc, outline, scale, shapeFill(shape),
+                selected ? Color.RED : hovered ? Color.DEEPSKYBLUE : Color.GRAY,
+                selected ? 2 : hovered ? 1.6 : 1);
+    }
+
+    private void paintManualShape(GraphicsContext gc, int manualId) {
+        ManualShape shape = manualShapeById.get(manualId);
+        if (shape == null || shape.getPoints() == null || shape.getPoints().size() < 3) {
+            return;
         }
-        if (!bulkMoveActive) {
-            updateConnectedEdges(nodeId);
-            updateShapePolygons();
-            refreshHandleLayer();
+        boolean selected = selectedManualShapes.contains(manualId);
+        boolean hovered = !selected && hoveredManualShapeId != null && hoveredManualShapeId == manualId;
+        LayerPainter.polygon(gc, toOutline(shape.getPoints()), scale, Color.rgb(120, 160, 220, 0.2),
+                selected ? Color.RED : hovered ? Color.DEEPSKYBLUE : Color.rgb(60, 90, 140, 0.8),
+                selected ? 2 : hovered ? 1.6 : 1.2);
+    }
+
+    private void paintEdge(GraphicsContext gc, int edgeId) {
+        Edge edge = edgeById.get(edgeId);
+        NodePoint start = edge == null ? null : findNode(edge.getStartNodeId());
+        NodePoint end = edge == null ? null : findNode(edge.getEndNodeId());
+        if (start == null || end == null) {
+            return;
         }
+        LayerPainter.curve(gc, new Point2D(start.getXCm(), start.getYCm()),
+                getControlPoint(edgeId, true, start, end), getControlPoint(edgeId, false, start, end),
+                new Point2D(end.getXCm(), end.getYCm()), scale, Color.DARKSLATEGRAY, 2, StrokeLineCap.ROUND);
     }
 
-    private void updateNodePositionRaw(int nodeId, Point2D cmPoint) {
-        double xCm = Math.max(0, cmPoint.getX());
-        double yCm = Math.max(0, cmPoint.getY());
-        for (int i = 0; i < nodes.size(); i++) {
-            NodePoint node = nodes.get(i);
-            if (node.getId() == nodeId) {
-                nodes.set(i, new NodePoint(nodeId, node.getDocumentId(), xCm, yCm));
-                break;
-            }
+    private void paintDimension(GraphicsContext gc, int dimensionId) {
+        Dimension dimension = dimensionById.get(dimensionId);
+        if (dimension == null) {
+            return;
         }
-        updateDimensionsForNode(nodeId, new Point2D(xCm, yCm));
-        Circle circle = nodeViews.get(nodeId);
-        if (circle != null) {
-            circle.setCenterX(xCm * scale);
-            circle.setCenterY(yCm * scale);
+        Point2D start = new Point2D(dimension.getStartXCm(), dimension.getStartYCm());
+        Point2D end = new Point2D(dimension.getEndXCm(), dimension.getEndYCm());
+        Point2D startOffset = start.add(dimension.getOffsetXCm(), dimension.getOffsetYCm());
+        Point2D endOffset = end.add(dimension.getOffsetXCm(), dimension.getOffsetYCm());
+        boolean selected = selectedDimensions.contains(dimensionId);
+        Color extension = selected ? Color.ORANGE : Color.rgb(80, 80, 80, 0.7);
+        LayerPainter.line(gc, start, startOffset, scale, extension, selected ? 1.4 : 1);
+        LayerPainter.line(gc, end, endOffset, scale, extension, selected ? 1.4 : 1);
+        LayerPainter.line(gc, startOffset, endOffset, scale, selected ? Color.ORANGE : Color.rgb(60, 60, 60, 0.9),
+                selected ? 1.6 : 1.2);
+        if (!isDimensionDetailed(startOffset, endOffset)) {
+            return;
         }
+        for (double[] arrow : arrowTriangles(startOffset, endOffset)) {
+            LayerPainter.polygon(gc, arrow, scale, selected ? Color.ORANGE : Color.BLACK, null, 0);
+        }
+        String text = buildDimensionLabel(start, end, dimension.getType());
+        LayerPainter.label(gc, measureLabel(text, startOffset.midpoint(endOffset)), text, labelMeasure.getFont(),
+                Color.rgb(255, 255, 255, 0.85), selected ? Color.ORANGE : Color.rgb(150, 150, 150, 0.6),
+                Color.rgb(0x3a, 0x3a, 0x3a));
     }
 
-    private void updateDimensionsForNode(int nodeId, Point2D position) {
-        boolean changed = false;
-        for (int i = 0; i < dimensions.size(); i++) {
-            Dimension dimension = dimensions.get(i);
-            boolean isStart = dimension.getStartNodeId() != null && dimension.getStartNodeId() == nodeId;
-            boolean isEnd = dimension.getEndNodeId() != null && dimension.getEndNodeId() == nodeId;
-            if (!isStart && !isEnd) {
-                continue;
-            }
-            double startX = isStart ? position.getX() : dimension.getStartXCm();
-            double startY = isStart ? position.getY() : dimension.getStartYCm();
-            double endX = isEnd ? position.getX() : dimension.getEndXCm();
-            double endY = isEnd ? position.getY() : dimension.getEndYCm();
-            dimensions.set(i, new Dimension(
-                    dimension.getId(),
-                    dimension.getDocumentId(),
-                    startX,
-                    startY,
-                    endX,
-                    endY,
-                    dimension.getOffsetXCm(),
-                    dimension.getOffsetYCm(),
-                    dimension.getType(),
-                    dimension.getStartNodeId(),
-                    dimension.getEndNodeId()
-            ));
-            refreshDimensionView(dimension.getId());
-            changed = true;
+    private void handleCanvasMouse(MouseEvent event) {
+        javafx.event.EventType<? extends MouseEvent> type = event.getEventType();
+        CanvasHit target;
+        if (type == MouseEvent.MOUSE_DRAGGED || type == MouseEvent.MOUSE_RELEASED) {
+            target = canvasPressTarget;
+        } else if (type == MouseEvent.MOUSE_EXITED || type == MouseEvent.MOUSE_EXITED_TARGET) {
+            target = null;
+        } else {
+            target = hitTest(event.getX(), event.getY());
         }
-        if (changed) {
-            redrawGuides();
+        canvasEventTarget = target;
+        if (type == MouseEvent.MOUSE_PRESSED) {
+            canvasPressTarget = target;
+        } else if (type == MouseEvent.MOUSE_RELEASED) {
+            canvasPressTarget = null;
+        }
+        if (type == MouseEvent.MOUSE_MOVED || type == MouseEvent.MOUSE_EXITED || type == MouseEvent.MOUSE_EXITED_TARGET) {
+            hoverCanvasRow(target);
+            return;
+        }
+        if (target != null) {
+            dispatchToRow(target, event, type);
         }
     }
 
-    private void updateConnectedEdges(int nodeId) {
-        for (Edge edge : edges) {
-            if (edge.getStartNodeId() != nodeId && edge.getEndNodeId() != nodeId) {
-                continue;
+    // Runs the handler the row's view would have run. Like a view handler it consumes what it acts on, so the pane's
+    // own handlers only see events the row left alone.
+    private void dispatchToRow(CanvasHit hit, MouseEvent event, javafx.event.EventType<? extends MouseEvent> type) {
+        int id = hit.id();
+        switch (hit.part()) {
+            case SHAPE -> {
+                if (type == MouseEvent.MOUSE_PRESSED) {
+                    handleShapePressed(id, event);
+                } else if (type == MouseEvent.MOUSE_CLICKED) {
+                    handleShapeClicked(id, event);
+                }
             }
-            CubicCurveView view = edgeViews.get(edge.getId());
-            if (view == null) {
-                continue;
+            case MANUAL_SHAPE -> {
+                if (type == MouseEvent.MOUSE_PRESSED) {
+                    handleManualShapePressed(id, event);
+                } else if (type == MouseEvent.MOUSE_CLICKED) {
+                    handleManualShapeClicked(event);
+                }
             }
-            NodePoint start = findNode(edge.getStartNodeId());
-            NodePoint end = findNode(edge.getEndNodeId());
-            if (start == null || end == null) {
-                continue;
+            case DIMENSION_LINE -> {
+                if (type == MouseEvent.MOUSE_PRESSED) {
+                    handleDimensionPressed(id, event);
+                } else if (type == MouseEvent.MOUSE_CLICKED) {
+                    handleDimensionClicked(id, event);
+                }
+            }
+            case DIMENSION_LABEL -> {
+                if (type == MouseEvent.MOUSE_PRESSED) {
+                    handleDimensionLabelPressed(id, event);
+                } else if (type == MouseEvent.MOUSE_DRAGGED) {
+                    handleDimensionLabelDragged(id, event);
+                } else if (type == MouseEvent.MOUSE_RELEASED) {
+                    handleDimensionLabelReleased(id, event);
+                } else if (type == MouseEvent.MOUSE_CLICKED) {
+                    handleDimensionClicked(id, event);
+                }
+            }
+            case EDGE, DIMENSION_EXTENSION -> {
+                // Drawn without handlers; a hit only keeps the event from counting as a board click.
             }
-            Point2D controlStart = getControlPoint(edge.getId(), true, start, end);
-            Point2D controlEnd = getControlPoint(edge.getId(), false, start, end);
-            view.curve.setStartX(start.getXCm() * scale);
-            view.curve.setStartY(start.getYCm() * scale);
-            view.curve.setControlX1(controlStart.getX() * scale);
-            view.curve.setControlY1(controlStart.getY() * scale);
-            view.curve.setControlX2(controlEnd.getX() * scale);
-            view.curve.setControlY2(controlEnd.getY() * scale);
-            view.curve.setEndX(end.getXCm() * scale);
-            view.curve.setEndY(end.getYCm() * scale);
         }
     }
 
-    private void updateShapePolygons() {
-        for (ShapePolygon shape : shapes) {
-            Polygon polygon = shapeViews.get(shape.getId());
-            if (polygon == null) {
-                continue;
+    // Only shapes react to hover, as their views' enter and exit handlers do.
+    private void hoverCanvasRow(CanvasHit target) {
+        if (java.util.Objects.equals(target, canvasHoverTarget)) {
+            return;
+        }
+        canvasHoverTarget = target;
+        hoveredShapeId = target != null && target.part() == CanvasPart.SHAPE ? target.id() : null;
+        hoveredManualShapeId = target != null && target.part() == CanvasPart.MANUAL_SHAPE ? target.id() : null;
+        requestCanvasPaint();
+    }
+
+    // The topmost row under a point, taking the layers in paint order and skipping hidden or mouse-transparent ones.
+    // Outlines, curves and lines are hit within half their stroke, as a view is picked.
+    private CanvasHit hitTest(double xPx, double yPx) {
+        Point2D point = toCm(xPx, yPx);
+        double x = point.getX();
+        double y = point.getY();
+        if (isHitLayer(dimensionLayer)) {
+            CanvasHit hit = hitDimension(x, y);
+            if (hit != null) {
+                return hit;
             }
-            List<Point2D> sampled = buildSampledPolygon(shape);
-            if (sampled.size() < 3) {
-                continue;
+        }
+        if (isHitLayer(edgeLayer)) {
+            int edgeId = topmostAt(edgeGrid, x, y, strokeReach(2), id -> edgeContains(id, x, y));
+            if (edgeId != NO_ROW) {
+                return new CanvasHit(CanvasPart.EDGE, edgeId);
             }
-            polygon.getPoints().clear();
-            for (Point2D point : sampled) {
-                polygon.getPoints().addAll(point.getX() * scale, point.getY() * scale);
+        }
+        if (isHitLayer(manualShapeLayer)) {
+            int manualId = topmostAt(manualShapeGrid, x, y, strokeReach(2), id -> {
+                ManualShape shape = manualShapeById.get(id);
+                return shape != null && outlineContains(toOutline(shape.getPoints()), x, y,
+                        strokeReach(selectedManualShapes.contains(id) ? 2 : 1.2));
+            });
+            if (manualId != NO_ROW) {
+                return new CanvasHit(CanvasPart.MANUAL_SHAPE, manualId);
+            }
+        }
+        if (isHitLayer(shapeLayer)) {
+            int shapeId = topmostAt(shapeGrid, x, y, strokeReach(2), id -> {
+                double[] outline = shapeOutlines.get(id);
+                return outline != null && outlineContains(outline, x, y, strokeReach(selectedShapes.contains(id) ? 2 : 1));
+            });
+            if (shapeId != NO_ROW) {
+                return new CanvasHit(CanvasPart.SHAPE, shapeId);
             }
         }
+        return null;
     }
 
-    private List<Point2D> buildSampledPolygon(ShapePolygon shape) {
-        List<NodePoint> shapeNodes = resolveShapeNodes(shape);
-        if (shapeNodes.size() < 2) {
-            return List.of();
-        }
-        List<Point2D> points = new ArrayList<>();
-        for (int i = 0; i < shapeNodes.size(); i++) {
-            NodePoint start = shapeNodes.get(i);
-            NodePoint end = shapeNodes.get((i + 1) % shapeNodes.size());
-            Edge edge = findEdgeBetween(start.getId(), end.getId());
-            if (edge == null) {
-                if (points.isEmpty()) {
-                    points.add(new Point2D(start.getXCm(), start.getYCm()));
-                }
-                points.add(new Point2D(end.getXCm(), end.getYCm()));
-                continue;
+    private static boolean isHitLayer(Group layer) {
+        return layer.isVisible() && !layer.isMouseTransparent();
+    }
+
+    // A label sits above its own lines, and a later dimension above an earlier one.
+    private CanvasHit hitDimension(double x, double y) {
+        int labelId = topmostAt(dimensionLabelGrid, x, y, 0, id -> true);
+        CanvasHit[] topmost = {labelId == NO_ROW ? null : new CanvasHit(CanvasPart.DIMENSION_LABEL, labelId)};
+        double reach = Math.max(ARROW_HALF_WIDTH_CM, strokeReach(1.6));
+        dimensionExtentGrid.query(x - reach, y - reach, x + reach, y + reach, id -> {
+            if (topmost[0] != null && topmost[0].id() >= id) {
+                return;
             }
-            ensureEdgeControls(edge, start, end);
-            EdgeControls controls = edgeControls.get(edge.getId());
-            if (controls == null) {
-                if (points.isEmpty()) {
-                    points.add(new Point2D(start.getXCm(), start.getYCm()));
+            CanvasPart part = dimensionPartAt(id, x, y);
+            if (part != null) {
+                topmost[0] = new CanvasHit(part, id);
+            }
+        });
+        return topmost[0];
+    }
+
+    private CanvasPart dimensionPartAt(int dimensionId, double x, double y) {
+        Dimension dimension = dimensionById.get(dimensionId);
+        if (dimension == null) {
+            return null;
+        }
+        Point2D start = new Point2D(dimension.getStartXCm(), dimension.getStartYCm());
+        Point2D end = new Point2D(dimension.getEndXCm(), dimension.getEndYCm());
+        Point2D startOffset = start.add(dimension.getOffsetXCm(), dimension.getOffsetYCm());
+        Point2D endOffset = end.add(dimension.getOffsetXCm(), dimension.getOffsetYCm());
+        boolean selected = selectedDimensions.contains(dimensionId);
+        if (segmentDistance(x, y, startOffset, endOffset) <= strokeReach(selected ? 1.6 : 1.2)) {
+            return CanvasPart.DIMENSION_LINE;
+        }
+        if (isDimensionDetailed(startOffset, endOffset)) {
+            for (double[] arrow : arrowTriangles(startOffset, endOffset)) {
+                if (polygonContains(arrow, x, y)) {
+                    return CanvasPart.DIMENSION_LINE;
                 }
-                points.add(new Point2D(end.getXCm(), end.getYCm()));
-                continue;
             }
-            Point2D c1 = edge.getStartNodeId() == start.getId() ? controls.start() : controls.end();
-            Point2D c2 = edge.getStartNodeId() == start.getId() ? controls.end() : controls.start();
-            sampleCubic(points,
-                    new Point2D(start.getXCm(), start.getYCm()),
-                    c1,
-                    c2,
-                    new Point2D(end.getXCm(), end.getYCm()),
-                    18);
         }
-        return points;
+        double extensionReach = strokeReach(selected ? 1.4 : 1);
+        if (segmentDistance(x, y, start, startOffset) <= extensionReach
+                || segmentDistance(x, y, end, endOffset) <= extensionReach) {
+            return CanvasPart.DIMENSION_EXTENSION;
+        }
+        return null;
     }
 
-    private Edge findEdgeBetween(int nodeA, int nodeB) {
-        for (Edge edge : edges) {
-            if ((edge.getStartNodeId() == nodeA && edge.getEndNodeId() == nodeB)
-                    || (edge.getStartNodeId() == nodeB && edge.getEndNodeId() == nodeA)) {
-                return edge;
+    private boolean edgeContains(int edgeId, double x, double y) {
+        Edge edge = edgeById.get(edgeId);
+        NodePoint start = edge == null ? null : findNode(edge.getStartNodeId());
+        NodePoint end = edge == null ? null : findNode(edge.getEndNodeId());
+        if (start == null || end == null) {
+            return false;
+        }
+        List<Point2D> points = new ArrayList<>();
+        curveTessellator.appendCubic(points, edgeId, new Point2D(start.getXCm(), start.getYCm()),
+                getControlPoint(edgeId, true, start, end), getControlPoint(edgeId, false, start, end),
+                new Point2D(end.getXCm(), end.getYCm()), outlineTolerance());
+        double[] curve = toOutline(points);
+        for (int i = 0; i + 3 < curve.length; i += 2) {
+            if (segmentDistance(x, y, curve[i], curve[i + 1], curve[i + 2], curve[i + 3]) <= strokeReach(2)) {
+                return true;
             }
         }
-        return null;
+        return false;
+    }
+
+    private double strokeReach(double strokeWidthPx) {
+        return strokeWidthPx / 2 / scale;
+    }
+
+    // Later rows paint over earlier ones, so the topmost hit is the highest id that passes the test.
+    private static int topmostAt(SpatialGrid grid, double x, double y, double reach, IntPredicate hits) {
+        int[] topmost = {NO_ROW};
+        grid.query(x - reach, y - reach, x + reach, y + reach, id -> {
+            if (id > topmost[0] && hits.test(id)) {
+                topmost[0] = id;
+            }
+        });
+        return topmost[0];
     }
 
-    private void sampleCubic(List<Point2D> points, Point2D p0, Point2D p1, Point2D p2, Point2D p3, int segments) {
-        if (points.isEmpty()) {
-            points.add(p0);
+    // A filled outline is hit inside or on its stroke.
+    private static boolean outlineContains(double[] outline, double x, double y, double reach) {
+        if (polygonContains(outline, x, y)) {
+            return true;
         }
-        for (int i = 1; i <= segments; i++) {
-            double t = (double) i / segments;
-            double u = 1 - t;
-            double x = u * u * u * p0.getX()
-                    + 3 * u * u * t * p1.getX()
-                    + 3 * u * t * t * p2.getX()
-                    + t * t * t * p3.getX();
-            double y = u * u * u * p0.getY()
-                    + 3 * u * u * t * p1.getY()
-                    + 3 * u * t * t * p2.getY()
-                    + t * t * t * p3.getY();
-            points.add(new Point2D(x, y));
+        int count = outline.length / 2;
+        for (int i = 0; i < count; i++) {
+            int j = (i + 1) % count;
+            if (segmentDistance(x, y, outline[i * 2], outline[i * 2 + 1], outline[j * 2], outline[j * 2 + 1]) <= reach) {
+                return true;
+            }
         }
+        return false;
     }
 
-    private void updateLayerTransforms() {
-        contentLayer.setTranslateX(panX);
-        contentLayer.setTranslateY(panY);
+    private static boolean polygonContains(double[] outline, double x, double y) {
+        boolean inside = false;
+        int count = outline.length / 2;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            double xi = outline[i * 2];
+            double yi = outline[i * 2 + 1];
+            double xj = outline[j * 2];
+            double yj = outline[j * 2 + 1];
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    private static double segmentDistance(double x, double y, Point2D from, Point2D to) {
+        return segmentDistance(x, y, from.getX(), from.getY(), to.getX(), to.getY());
+    }
+
+    private static double segmentDistance(double x, double y, double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((x - x0) * dx + (y - y0) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x - (x0 + t * dx), y - (y0 + t * dy));
+    }
+
+    private boolean isBoardTarget(Object target) {
+        return target == this || target == boardRect || (target == renderCanvas && canvasEventTarget == null);
     }
 
     private void updateBoardAndClip() {
@@ -2055,110 +3311,88 @@ public class CanvasPane extends Pane {
     }
 
     private List<Integer> collectNodesInSelection() {
-        double minX = selectionRect.getX();
-        double maxX = selectionRect.getX() + selectionRect.getWidth();
-        double minY = selectionRect.getY();
-        double maxY = selectionRect.getY() + selectionRect.getHeight();
-        double paddingCm = (NODE_RADIUS * 2.0) / scale;
-        double minCmX = (minX - panX) / scale - paddingCm;
-        double maxCmX = (maxX - panX) / scale + paddingCm;
-        double minCmY = (minY - panY) / scale - paddingCm;
-        double maxCmY = (maxY - panY) / scale + paddingCm;
+        // Touching pads by the whole node circle; enclosing asks only for the centre inside the rectangle.
         List<Integer> selected = new ArrayList<>();
-        for (NodePoint node : nodes) {
-            double xCm = node.getXCm();
-            double yCm = node.getYCm();
-            if (xCm >= minCmX && xCm <= maxCmX && yCm >= minCmY && yCm <= maxCmY) {
-                selected.add(node.getId());
-            }
-        }
-        for (Map.Entry<Integer, Circle> entry : nodeViews.entrySet()) {
-            Circle circle = entry.getValue();
-            if (circle == null) {
-                continue;
-            }
-            if (intersectsSelection(circle) && !selected.contains(entry.getKey())) {
-                selected.add(entry.getKey());
-            }
-        }
+        querySelection(nodeGrid, (isOverview() ? OVERVIEW_NODE_RADIUS : NODE_RADIUS) * 2.0, selected::add);
         return selected;
     }
 
+    // Resolves the rubber band against a model-space index. The padding, in screen pixels, lets touching reach the
+    // stroke drawn around the indexed geometry; enclosing compares the geometry itself.
+    private void querySelection(SpatialGrid grid, double paddingPx, IntConsumer action) {
+        double[] rect = selectionRectCm();
+        if (selectionMode == SelectionMode.ENCLOSED) {
+            grid.queryEnclosed(rect[0], rect[1], rect[2], rect[3], action);
+            return;
+        }
+        double paddingCm = paddingPx / scale;
+        grid.query(rect[0] - paddingCm, rect[1] - paddingCm, rect[2] + paddingCm, rect[3] + paddingCm, action);
+    }
+
+    private double[] selectionRectCm() {
+        return new double[] {
+                (selectionRect.getX() - panX) / scale,
+                (selectionRect.getY() - panY) / scale,
+                (selectionRect.getX() + selectionRect.getWidth() - panX) / scale,
+                (selectionRect.getY() + selectionRect.getHeight() - panY) / scale
+        };
+    }
+
     private List<Integer> collectGuidesInSelection() {
+        // Guides run across the whole board, so in either mode a guide is picked when the rectangle crosses it.
+        double[] rect = selectionRectCm();
         List<Integer> selected = new ArrayList<>();
-        for (Map.Entry<Integer, Line> entry : guideViews.entrySet()) {
-            Line line = entry.getValue();
-            if (line == null) {
+        for (Guide guide : guides) {
+            if (!guideViews.containsKey(guide.getId())) {
                 continue;
             }
-            if (intersectsSelection(line)) {
-                selected.add(entry.getKey());
+            double position = guide.getPositionCm();
+            boolean crossed = guide.getOrientation() == Guide.Orientation.HORIZONTAL
+                    ? position >= rect[1] && position <= rect[3]
+                    : position >= rect[0] && position <= rect[2];
+            if (crossed) {
+                selected.add(guide.getId());
             }
         }
         return selected;
     }
 
     private List<Integer> collectDimensionsInSelection() {
-        List<Integer> selected = new ArrayList<>();
-        for (Map.Entry<Integer, DimensionView> entry : dimensionViews.entrySet()) {
-            DimensionView view = entry.getValue();
-            if (view == null) {
-                continue;
-            }
-            if (view.labelGroup != null) {
-                if (intersectsSelection(view.labelGroup)) {
-                    selected.add(entry.getKey());
-                    continue;
-                }
-            }
-            Line line = view.dimensionLine;
-            if (line != null) {
-                if (intersectsSelection(line)) {
-                    selected.add(entry.getKey());
+        java.util.Set<Integer> selected = new java.util.LinkedHashSet<>();
+        if (selectionMode == SelectionMode.ENCLOSED) {
+            java.util.Set<Integer> labelsInside = new java.util.HashSet<>();
+            querySelection(dimensionLabelGrid, 0, labelsInside::add);
+            querySelection(dimensionGrid, 0, id -> {
+                if (labelsInside.contains(id) || !dimensionLabelGrid.contains(id)) {
+                    selected.add(id);
                 }
-            }
+            });
+        } else {
+            querySelection(dimensionLabelGrid, 1, selected::add);
+            querySelection(dimensionGrid, 1, selected::add);
         }
-        return selected;
+        return new ArrayList<>(selected);
     }
 
     private List<Integer> collectShapesInSelection() {
-        List<Integer> selected = new ArrayList<>();
-        for (Map.Entry<Integer, Polygon> entry : shapeViews.entrySet()) {
-            Polygon polygon = entry.getValue();
-            if (polygon == null) {
-                continue;
-            }
-            if (intersectsSelection(polygon)) {
-                selected.add(entry.getKey());
-            }
-        }
-        return selected;
+        return collectPolygonsInSelection(shapeGrid, shapeById);
     }
 
     private List<Integer> collectManualShapesInSelection() {
+        return collectPolygonsInSelection(manualShapeGrid, manualShapeById);
+    }
+
+    private List<Integer> collectPolygonsInSelection(SpatialGrid grid, Map<Integer, ?> rows) {
+        // The grid holds each outline's bounds as drawn, so the bounds test needs no view geometry.
         List<Integer> selected = new ArrayList<>();
-        for (Map.Entry<Integer, Polygon> entry : manualShapeViews.entrySet()) {
-            Polygon polygon = entry.getValue();
-            if (polygon == null) {
-                continue;
-            }
-            if (intersectsSelection(polygon)) {
-                selected.add(entry.getKey());
+        querySelection(grid, SHAPE_STROKE_PADDING, id -> {
+            if (rows.containsKey(id)) {
+                selected.add(id);
             }
-        }
+        });
         return selected;
     }
 
-    private boolean intersectsSelection(javafx.scene.Node node) {
-        javafx.geometry.Bounds selectionBounds = selectionRect.getBoundsInParent();
-        javafx.geometry.Bounds bounds = node.localToScene(node.getBoundsInLocal());
-        javafx.geometry.Bounds paneBounds = sceneToLocal(bounds);
-        return paneBounds.getMaxX() >= selectionBounds.getMinX()
-                && paneBounds.getMinX() <= selectionBounds.getMaxX()
-                && paneBounds.getMaxY() >= selectionBounds.getMinY()
-                && paneBounds.getMinY() <= selectionBounds.getMaxY();
-    }
-
     private void updateSelectionStyles() {
         for (Map.Entry<Integer, Circle> entry : nodeViews.entrySet()) {
             Circle circle = entry.getValue();
@@ -2224,49 +3458,31 @@ public class CanvasPane extends Pane {
                 }
             }
         }
+        requestCanvasPaint();
         refreshHandleLayer();
     }
 
     private NodePoint findNode(int nodeId) {
-        for (NodePoint node : nodes) {
-            if (node.getId() == nodeId) {
-                return node;
-            }
-        }
-        return null;
+        return nodeById.get(nodeId);
     }
 
     private Guide findGuide(int guideId) {
-        for (Guide guide : guides) {
-            if (guide.getId() == guideId) {
-                return guide;
-            }
-        }
-        return null;
+        return guideById.get(guideId);
     }
 
     private ShapePolygon findShape(int shapeId) {
-        for (ShapePolygon shape : shapes) {
-            if (shape.getId() == shapeId) {
-                return shape;
-            }
-        }
-        return null;
+        return shapeById.get(shapeId);
     }
 
     private ManualShape findManualShape(int manualId) {
-        for (ManualShape shape : manualShapes) {
-            if (shape.getId() == manualId) {
-                return shape;
-            }
-        }
-        return null;
+        return manualShapeById.get(manualId);
     }
 
     private void replaceGuide(Guide guide, double positionCm) {
         for (int i = 0; i < guides.size(); i++) {
             if (guides.get(i).getId() == guide.getId()) {
                 guides.set(i, new Guide(guide.getId(), guide.getDocumentId(), guide.getOrientation(), positionCm));
+                guideById.put(guide.getId(), guides.get(i));
                 return;
             }
         }
@@ -2277,16 +3493,15 @@ public class CanvasPane extends Pane {
             ManualShape shape = manualShapes.get(i);
             if (shape.getId() == manualId) {
                 manualShapes.set(i, new ManualShape(shape.getId(), shape.getDocumentId(), points));
+                manualShapeById.put(manualId, manualShapes.get(i));
                 break;
             }
         }
         Polygon polygon = manualShapeViews.get(manualId);
         if (polygon != null) {
-            polygon.getPoints().clear();
-            for (Point2D point : points) {
-                polygon.getPoints().addAll(point.getX() * scale, point.getY() * scale);
-            }
+            setPolygonPoints(polygon, points);
         }
+        indexManualShape(manualId, points);
     }
 
     private void refreshHandleLayer() {
@@ -2302,7 +3517,7 @@ public class CanvasPane extends Pane {
         if (node == null) {
             return;
         }
-        for (Edge edge : edges) {
+        for (Edge edge : edgesAt(handleNodeId)) {
             boolean isStart = edge.getStartNodeId() == handleNodeId;
             boolean isEnd = edge.getEndNodeId() == handleNodeId;
             if (!isStart && !isEnd) {
@@ -2314,6 +3529,10 @@ public class CanvasPane extends Pane {
                 continue;
             }
             Point2D controlPoint = getControlPoint(edge.getId(), isStart, start, end);
+            // Zoomed out, a handle sitting on its node would only hide the node and steal its drag.
+            if (isOverview() && controlPoint.distance(node.getXCm(), node.getYCm()) * scale < HANDLE_RADIUS * 2) {
+                continue;
+            }
             Line handleLine = new Line(
                     node.getXCm() * scale,
                     node.getYCm() * scale,
@@ -2469,7 +3688,7 @@ public class CanvasPane extends Pane {
     }
 
     private void resetControlsForNode(int nodeId) {
-        for (Edge edge : edges) {
+        for (Edge edge : edgesAt(nodeId)) {
             if (edge.getStartNodeId() != nodeId && edge.getEndNodeId() != nodeId) {
                 continue;
             }
@@ -2503,10 +3722,11 @@ public class CanvasPane extends Pane {
     private record EdgeControls(Point2D start, Point2D end) {
     }
 
-    public record EdgeControlUpdate(int edgeId, Point2D start, Point2D end) {
+    private record CubicCurveView(javafx.scene.shape.CubicCurve curve) {
     }
 
-    private record CubicCurveView(javafx.scene.shape.CubicCurve curve) {
+    // What a canvas mouse event landed on, standing in for the view a scene-graph event would target.
+    private record CanvasHit(CanvasPart part, int id) {
     }
 
     private record DimensionView(Line extensionStart, Line extensionEnd, Line dimensionLine,
@@ -0,0 +1,98 @@
+package unze.ptf.woodcraft.woodcraft.ui;
+
+import javafx.geometry.Point2D;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Paint;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.text.Font;
+
+// Paints model geometry onto a canvas in document pixels, the way the matching views would draw it. Geometry is
+// given in cm with the scale to draw it at.
+final class LayerPainter {
+    // Below these on-screen sizes a polygon is drawn as a dot, and a curve as its chord; the difference is invisible.
+    private static final double DOT_MAX_PX = 1.5;
+    private static final double CURVE_DETAIL_MIN_PX = 6.0;
+
+    private LayerPainter() {
+    }
+
+    // Points are interleaved x, y pairs; a null fill or stroke is left out, as on a view.
+    static void polygon(GraphicsContext gc, double[] outline, double scale, Paint fill, Paint stroke,
+                        double strokeWidth) {
+        int count = outline.length / 2;
+        if (count < 2) {
+            return;
+        }
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            xs[i] = outline[i * 2] * scale;
+            ys[i] = outline[i * 2 + 1] * scale;
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        if (maxX - minX <= DOT_MAX_PX && maxY - minY <= DOT_MAX_PX) {
+            gc.setFill(stroke != null ? stroke : fill);
+            gc.fillRect(minX, minY, Math.max(1, maxX - minX), Math.max(1, maxY - minY));
+            return;
+        }
+        if (fill != null) {
+            gc.setFill(fill);
+            gc.fillPolygon(xs, ys, count);
+        }
+        if (stroke != null && strokeWidth > 0) {
+            applyStroke(gc, stroke, strokeWidth, StrokeLineCap.SQUARE);
+            gc.strokePolygon(xs, ys, count);
+        }
+    }
+
+    static void curve(GraphicsContext gc, Point2D start, Point2D controlStart, Point2D controlEnd, Point2D end,
+                      double scale, Paint stroke, double strokeWidth, StrokeLineCap cap) {
+        double extent = Math.max(
+                Math.max(Math.max(start.getX(), end.getX()), Math.max(controlStart.getX(), controlEnd.getX()))
+                        - Math.min(Math.min(start.getX(), end.getX()), Math.min(controlStart.getX(), controlEnd.getX())),
+                Math.max(Math.max(start.getY(), end.getY()), Math.max(controlStart.getY(), controlEnd.getY()))
+                        - Math.min(Math.min(start.getY(), end.getY()), Math.min(controlStart.getY(), controlEnd.getY())));
+        applyStroke(gc, stroke, strokeWidth, cap);
+        if (extent * scale < CURVE_DETAIL_MIN_PX) {
+            gc.strokeLine(start.getX() * scale, start.getY() * scale, end.getX() * scale, end.getY() * scale);
+            return;
+        }
+        gc.beginPath();
+        gc.moveTo(start.getX() * scale, start.getY() * scale);
+        gc.bezierCurveTo(controlStart.getX() * scale, controlStart.getY() * scale,
+                controlEnd.getX() * scale, controlEnd.getY() * scale, end.getX() * scale, end.getY() * scale);
+        gc.stroke();
+    }
+
+    static void line(GraphicsContext gc, Point2D start, Point2D end, double scale, Paint stroke, double strokeWidth) {
+        applyStroke(gc, stroke, strokeWidth, StrokeLineCap.SQUARE);
+        gc.strokeLine(start.getX() * scale, start.getY() * scale, end.getX() * scale, end.getY() * scale);
+    }
+
+    // The box is already in document pixels: x, y, width, height, then the text origin on its baseline.
+    static void label(GraphicsContext gc, double[] box, String text, Font font, Paint fill, Paint border,
+                      Paint textFill) {
+        gc.setFill(fill);
+        gc.fillRect(box[0], box[1], box[2], box[3]);
+        applyStroke(gc, border, 1, StrokeLineCap.SQUARE);
+        gc.strokeRect(box[0], box[1], box[2], box[3]);
+        gc.setFill(textFill);
+        gc.setFont(font);
+        gc.setTextBaseline(VPos.BASELINE);
+        gc.fillText(text, box[4], box[5]);
+    }
+
+    private static void applyStroke(GraphicsContext gc, Paint stroke, double strokeWidth, StrokeLineCap cap) {
+        gc.setStroke(stroke);
+        gc.setLineWidth(strokeWidth);
+        gc.setLineCap(cap);
+    }
+}
@@ -191,6 +191,7 @@ public class MainController {
         List<Edge> edges = edgeDao.findByDocument(currentDocument.getId());
         canvasPane.setNodes(nodes);
         canvasPane.setEdges(edges);
+        geometryService.resetConnectivity(edges);
         canvasPane.setGuides(guideDao.findByDocument(currentDocument.getId()));
         loadShapes(nodes);
         refreshMaterials();
@@ -246,11 +247,12 @@ public class MainController {
         if (startNodeId == endNodeId) {
             return;
         }
-        List<Edge> existingEdges = edgeDao.findByDocument(currentDocument.getId());
+        GeometryService.CycleResult cycleResult = geometryService.detectCycleForEdge(startNodeId, endNodeId);
         var edge = edgeDao.create(currentDocument.getId(), startNodeId, endNodeId);
+        geometryService.addConnectivityEdge(edge);
         canvasPane.addEdge(edge);
-        GeometryService.CycleResult cycleResult = geometryService.detectCycleForEdge(existingEdges, startNodeId, endNodeId);
         if (cycleResult.cycleDetected()) {
+            List<Edge> existingEdges = edgeDao.findByDocument(currentDocument.getId());
             Map<Integer, NodePoint> nodeMap = buildNodeMap();
             Material material = getActiveMaterial();
             Integer materialId = material == null ? null : material.getId();
@@ -316,10 +318,11 @@ public class MainController {
         NodePoint node = nodeDao.create(currentDocument.getId(), hit.snapPoint.getX(), hit.snapPoint.getY());
         int nodeId = node.getId();
         edgeDao.deleteById(hit.edgeId);
-        edgeDao.create(currentDocument.getId(), hit.startNodeId, nodeId);
-        edgeDao.create(currentDocument.getId(), nodeId, hit.endNodeId);
+        geometryService.removeConnectivityEdge(hit.edgeId);
+        geometryService.addConnectivityEdge(edgeDao.create(currentDocument.getId(), hit.startNodeId, nodeId));
+        geometryService.addConnectivityEdge(edgeDao.create(currentDocument.getId(), nodeId, hit.endNodeId));
         if (selectedNodeId != null && selectedNodeId != nodeId) {
-            edgeDao.create(currentDocument.getId(), selectedNodeId, nodeId);
+            geometryService.addConnectivityEdge(edgeDao.create(currentDocument.getId(), selectedNodeId, nodeId));
         }
         selectedNodeId = nodeId;
         canvasPane.setNodes(nodeDao.findByDocument(currentDocument.getId()));
@@ -469,6 +472,7 @@ public class MainController {
         nodeDao.delete(nodeId);
         List<NodePoint> nodes = nodeDao.findByDocument(currentDocument.getId());
         List<Edge> edges = edgeDao.findByDocument(currentDocument.getId());
+        geometryService.resetConnectivity(edges);
         canvasPane.setNodes(nodes);
         canvasPane.setEdges(edges);
         recomputeShapesFromGeometry(nodes, edges);
@@ -1,5 +1,6 @@
 package unze.ptf.woodcraft.woodcraft.ui;
 
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Point2D;
 import javafx.scene.Parent;
@@ -15,6 +16,7 @@ import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Separator;
@@ -44,18 +46,16 @@ import javafx.scene.shape.Line;
 import javafx.scene.shape.SVGPath;
 import javafx.scene.Group;
 import unze.ptf.woodcraft.woodcraft.dao.DocumentDao;
-import unze.ptf.woodcraft.woodcraft.dao.DimensionDao;
-import unze.ptf.woodcraft.woodcraft.dao.EdgeDao;
-import unze.ptf.woodcraft.woodcraft.dao.GuideDao;
-import unze.ptf.woodcraft.woodcraft.dao.ManualShapeDao;
+import unze.ptf.woodcraft.woodcraft.dao.DocumentRepository;
 import unze.ptf.woodcraft.woodcraft.dao.MaterialDao;
-import unze.ptf.woodcraft.woodcraft.dao.NodeDao;
-import unze.ptf.woodcraft.woodcraft.dao.ShapeDao;
 import unze.ptf.woodcraft.woodcraft.dao.UserDao;
 import unze.ptf.woodcraft.woodcraft.model.Dimension;
 import unze.ptf.woodcraft.woodcraft.model.DimensionType;
 import unze.ptf.woodcraft.woodcraft.model.Document;
+import unze.ptf.woodcraft.woodcraft.model.DocumentChanges;
+import unze.ptf.woodcraft.woodcraft.model.DocumentState;
 import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.model.EdgeControlUpdate;
 import unze.ptf.woodcraft.woodcraft.model.Guide;
 import unze.ptf.woodcraft.woodcraft.model.ManualShape;
 import unze.ptf.woodcraft.woodcraft.model.Material;
@@ -65,20 +65,24 @@ import unze.ptf.woodcraft.woodcraft.model.Role;
 import unze.ptf.woodcraft.woodcraft.model.ShapePolygon;
 import unze.ptf.woodcraft.woodcraft.model.UnitSystem;
 import unze.ptf.woodcraft.woodcraft.service.AuthService;
+import unze.ptf.woodcraft.woodcraft.service.CompactGraph;
+import unze.ptf.woodcraft.woodcraft.service.CurveTessellator;
 import unze.ptf.woodcraft.woodcraft.service.EstimationService;
 import unze.ptf.woodcraft.woodcraft.service.EstimationSummary;
 import unze.ptf.woodcraft.woodcraft.service.GeometryService;
 import unze.ptf.woodcraft.woodcraft.service.PdfExportService;
+import unze.ptf.woodcraft.woodcraft.service.ShapeTopologyService;
 import unze.ptf.woodcraft.woodcraft.session.SessionManager;
+import unze.ptf.woodcraft.woodcraft.util.PersistentIntMap;
 import unze.ptf.woodcraft.woodcraft.util.UnitConverter;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import javafx.scene.Node;
@@ -86,20 +90,15 @@ import javafx.scene.Node;
 
 public class MainView {
     private static final double RULER_SIZE = 24;
-    private static final int HISTORY_LIMIT = 200;
 
     private final SessionManager sessionManager;
     private final AuthService authService;
     private final UserDao userDao;
     private final MaterialDao materialDao;
     private final DocumentDao documentDao;
-    private final DimensionDao dimensionDao;
-    private final NodeDao nodeDao;
-    private final EdgeDao edgeDao;
-    private final GuideDao guideDao;
-    private final ShapeDao shapeDao;
-    private final ManualShapeDao manualShapeDao;
+    private final DocumentRepository documentRepository;
     private final GeometryService geometryService;
+    private final ShapeTopologyService shapeTopology;
     private final EstimationService estimationService;
     private final SceneNavigator navigator;
 
@@ -134,6 +133,9 @@ public class MainView {
     private final ListView<String> cutList = new ListView<>();
     private final ListView<String> sheetList = new ListView<>();
     private final Label totalCostLabel = new Label("Ukupno: $0.00");
+    private final Label recomputeStatusLabel = new Label();
+    private Alert errorAlert;
+    private final RecomputeService recomputeService = new RecomputeService();
     private final Label selectedShapeLabel = new Label("Odabrani oblik: nema");
     private final Label selectedShapeCostLabel = new Label();
 
@@ -142,9 +144,7 @@ public class MainView {
     private final List<Dimension> dimensions = new ArrayList<>();
     private final List<ManualShape> manualShapes = new ArrayList<>();
     private final PdfExportService pdfExportService = new PdfExportService();
-    private final ArrayDeque<ProjectSnapshot> undoStack = new ArrayDeque<>();
-    private final ArrayDeque<ProjectSnapshot> redoStack = new ArrayDeque<>();
-    private boolean historyRestoring;
+    private boolean updatingMaterialSelection;
 
     private double scale = 10.0;
     private Document currentDocument;
@@ -176,8 +176,7 @@ public class MainView {
     private final Label plankAngleLabel = new Label("Kut: 0°");
 
     public MainView(SessionManager sessionManager, AuthService authService, UserDao userDao, MaterialDao materialDao,
-                    DocumentDao documentDao, DimensionDao dimensionDao, NodeDao nodeDao, EdgeDao edgeDao,
-                    GuideDao guideDao, ShapeDao shapeDao, ManualShapeDao manualShapeDao,
+                    DocumentDao documentDao, DocumentRepository documentRepository,
                     GeometryService geometryService, EstimationService estimationService,
                     SceneNavigator navigator, int documentId) {
         this.sessionManager = sessionManager;
@@ -185,13 +184,9 @@ public class MainView {
         this.userDao = userDao;
         this.materialDao = materialDao;
         this.documentDao = documentDao;
-        this.dimensionDao = dimensionDao;
-        this.nodeDao = nodeDao;
-        this.edgeDao = edgeDao;
-        this.guideDao = guideDao;
-        this.shapeDao = shapeDao;
-        this.manualShapeDao = manualShapeDao;
+        this.documentRepository = documentRepository;
         this.geometryService = geometryService;
+        this.shapeTopology = new ShapeTopologyService(geometryService);
         this.estimationService = estimationService;
         this.navigator = navigator;
         this.currentDocument = documentDao.findById(documentId, sessionManager.getCurrentUser().getId()).orElse(null);
@@ -236,12 +231,23 @@ public class MainView {
         updateSidebarVisibility();
 
 
+        recomputeService.setOnStateChanged(this::updateRecomputeStatus);
+        recomputeService.setOnError(error -> {
+            // A failed update may have stopped halfway, so the next recompute starts the topology over.
+            shapeTopology.reset();
+            updateRecomputeStatus(RecomputeService.State.IDLE);
+            showError("Greska pri racunanju oblika:\n"
+                    + (error.getMessage() == null ? error.toString() : error.getMessage()));
+        });
+        documentRepository.setOnError(error -> Platform.runLater(
+                () -> showError("Greska pri spremanju projekta:\n" + error.getMessage())));
         canvasPane.setOnCanvasClicked(this::handleCanvasClick);
         canvasPane.setOnNodeClicked(this::handleNodeClick);
         canvasPane.setOnShapeClicked(this::handleShapeClick);
         canvasPane.setOnShapeClickedWithPoint(this::handleShapeClickAt);
         canvasPane.setOnNodeMoveFinished(this::handleNodeMoveFinished);
         canvasPane.setOnNodesMoved(this::handleNodesMoved);
+        canvasPane.setCurveTessellator(geometryService.getCurveTessellator());
         canvasPane.setOnEdgeControlsChanged(this::handleEdgeControlsChanged);
         canvasPane.setOnDeleteNodes(this::handleDeleteNodes);
         canvasPane.setOnDeleteGuides(this::handleDeleteGuides);
@@ -272,7 +278,11 @@ public class MainView {
         Menu edit = new Menu("Uredi");
         MenuItem editCanvas = new MenuItem("Postavke platna");
         editCanvas.setOnAction(event -> openCanvasSettings());
-        edit.getItems().add(editCanvas);
+        CheckMenuItem enclosedSelection = new CheckMenuItem("Odabir samo potpuno obuhvacenih");
+        enclosedSelection.setOnAction(event -> canvasPane.setSelectionMode(enclosedSelection.isSelected()
+                ? CanvasPane.SelectionMode.ENCLOSED
+                : CanvasPane.SelectionMode.TOUCHING));
+        edit.getItems().addAll(editCanvas, enclosedSelection);
         Menu view = new Menu("Prikaz");
         MenuItem unitsToggle = new MenuItem("Promijeni jedinice (cm/in)");
         unitsToggle.setOnAction(event -> toggleUnits());
@@ -485,6 +495,7 @@ public class MainView {
                 int id = materialDao.create(material);
                 refreshMaterials();
                 selectDefaultMaterialById(id);
+                refreshShapeReports();
             });
         });
         Button editMaterial = new Button("Uredi materijal");
@@ -498,13 +509,18 @@ public class MainView {
                 materialDao.update(material);
                 refreshMaterials();
                 selectDefaultMaterialById(material.getId());
+                refreshShapeReports();
             });
         });
         HBox materialActions = new HBox(8, addMaterial, editMaterial);
         materialActions.setAlignment(Pos.CENTER_LEFT);
 
         Label defaultLabel = new Label("Zadani materijal za oblike");
-        defaultMaterial.setOnAction(event -> recomputeShapes());
+        defaultMaterial.setOnAction(event -> {
+            if (!updatingMaterialSelection) {
+                applyDefaultMaterialToShapes();
+            }
+        });
         defaultMaterial.setCellFactory(listView -> new ListCell<>() {
             @Override
             protected void updateItem(Material item, boolean empty) {
@@ -525,7 +541,8 @@ public class MainView {
 
         Region summarySpacer = new Region();
         HBox.setHgrow(summarySpacer, Priority.ALWAYS);
-        HBox summaryHeader = new HBox(8, summaryLabel, summarySpacer, totalCostLabel);
+        recomputeStatusLabel.setStyle("-fx-text-fill: #808080;");
+        HBox summaryHeader = new HBox(8, summaryLabel, recomputeStatusLabel, summarySpacer, totalCostLabel);
         summaryHeader.setAlignment(Pos.CENTER_LEFT);
 
         VBox summaryBox = new VBox(6, summaryList);
@@ -600,42 +617,45 @@ public class MainView {
         if (currentDocument == null) {
             return;
         }
+        documentRepository.open(currentDocument.getId());
         loadDocumentState(true);
     }
 
     private void loadDocumentState(boolean recompute) {
         unitSystem = currentDocument.getUnitSystem();
-        canvasPane.setNodes(nodeDao.findByDocument(currentDocument.getId()));
-        canvasPane.setEdges(edgeDao.findByDocument(currentDocument.getId()));
+        canvasPane.setNodes(documentRepository.getNodes());
+        canvasPane.setEdges(documentRepository.getEdges());
         guides.clear();
-        guides.addAll(guideDao.findByDocument(currentDocument.getId()));
+        guides.addAll(documentRepository.getGuides());
         canvasPane.setGuides(guides);
         dimensions.clear();
-        dimensions.addAll(dimensionDao.findByDocument(currentDocument.getId()));
+        dimensions.addAll(documentRepository.getDimensions());
         canvasPane.setDimensions(dimensions);
         manualShapes.clear();
-        manualShapes.addAll(manualShapeDao.findByDocument(currentDocument.getId()));
+        manualShapes.addAll(documentRepository.getManualShapes());
         canvasPane.setManualShapes(manualShapes);
         canvasPane.setUnitSystem(unitSystem);
         canvasPane.setCanvasSizeCm(currentDocument.getWidthCm(), currentDocument.getHeightCm());
         refreshMaterials();
+        loadShapesFromDb();
         if (recompute) {
             recomputeShapes();
         } else {
-            loadShapesFromDb();
-            updateSelectedShapeSummary();
-            updatePlankPreview();
-            updateSummary();
-            updateCutList();
+            refreshShapeReports();
         }
     }
 
     private void refreshMaterials() {
         List<Material> materials = materialDao.findByUser(sessionManager.getCurrentUser().getId());
         renderMaterials(materials);
-        defaultMaterial.getItems().setAll(materials);
-        if (!materials.isEmpty() && defaultMaterial.getSelectionModel().isEmpty()) {
-            defaultMaterial.getSelectionModel().select(0);
+        updatingMaterialSelection = true;
+        try {
+            defaultMaterial.getItems().setAll(materials);
+            if (!materials.isEmpty() && defaultMaterial.getSelectionModel().isEmpty()) {
+                defaultMaterial.getSelectionModel().select(0);
+            }
+        } finally {
+            updatingMaterialSelection = false;
         }
     }
 
@@ -707,11 +727,16 @@ public class MainView {
     }
 
     private void selectDefaultMaterialById(int materialId) {
-        for (Material material : defaultMaterial.getItems()) {
-            if (material.getId() == materialId) {
-                defaultMaterial.getSelectionModel().select(material);
-                break;
+        updatingMaterialSelection = true;
+        try {
+            for (Material material : defaultMaterial.getItems()) {
+                if (material.getId() == materialId) {
+                    defaultMaterial.getSelectionModel().select(material);
+                    break;
+                }
             }
+        } finally {
+            updatingMaterialSelection = false;
         }
     }
 
@@ -783,7 +808,7 @@ public class MainView {
         if (shape == null) {
             return;
         }
-        List<Edge> edges = edgeDao.findByDocument(currentDocument.getId());
+        List<Edge> edges = documentRepository.getEdges();
         EdgeSnapHit hit = findEdgeSnap(shape, cmPoint, edges);
         if (hit == null) {
             return;
@@ -797,20 +822,20 @@ public class MainView {
         }
         pushHistory();
         Point2D snapped = clampToCanvas(hit.snapPoint);
-        NodePoint node = nodeDao.create(currentDocument.getId(), snapped.getX(), snapped.getY());
+        NodePoint node = documentRepository.createNode(snapped.getX(), snapped.getY());
         int nodeId = node.getId();
-        edgeDao.deleteById(hit.edgeId);
-        edgeDao.create(currentDocument.getId(), hit.startNodeId, nodeId);
-        edgeDao.create(currentDocument.getId(), nodeId, hit.endNodeId);
+        documentRepository.deleteEdge(hit.edgeId);
+        documentRepository.createEdge(hit.startNodeId, nodeId);
+        documentRepository.createEdge(nodeId, hit.endNodeId);
         if (lastDrawNodeId != null && lastDrawNodeId != nodeId) {
-            edgeDao.create(currentDocument.getId(), lastDrawNodeId, nodeId);
+            documentRepository.createEdge(lastDrawNodeId, nodeId);
         }
         lastDrawNodeId = nodeId;
         selectedNodeId = nodeId;
         selectedShapeId = null;
         canvasPane.setSelectedNode(nodeId);
-        canvasPane.setNodes(nodeDao.findByDocument(currentDocument.getId()));
-        canvasPane.setEdges(edgeDao.findByDocument(currentDocument.getId()));
+        canvasPane.setNodes(documentRepository.getNodes());
+        canvasPane.setEdges(documentRepository.getEdges());
         recomputeShapes();
         updateSelectedShapeSummary();
     }
@@ -820,7 +845,7 @@ public class MainView {
             return;
         }
         pushHistory();
-        var node = nodeDao.create(currentDocument.getId(), cmPoint.getX(), cmPoint.getY());
+        var node = documentRepository.createNode(cmPoint.getX(), cmPoint.getY());
         canvasPane.addNode(node);
         if (lastDrawNodeId != null) {
             handleEdgeCreate(lastDrawNodeId, node.getId());
@@ -834,7 +859,7 @@ public class MainView {
             return;
         }
         pushHistory();
-        var edge = edgeDao.create(currentDocument.getId(), startNodeId, endNodeId);
+        var edge = documentRepository.createEdge(startNodeId, endNodeId);
         canvasPane.addEdge(edge);
         recomputeShapes();
     }
@@ -853,18 +878,18 @@ public class MainView {
             return;
         }
         pushHistory();
-        NodePoint n1 = nodeDao.create(currentDocument.getId(), minX, minY);
-        NodePoint n2 = nodeDao.create(currentDocument.getId(), maxX, minY);
-        NodePoint n3 = nodeDao.create(currentDocument.getId(), maxX, maxY);
-        NodePoint n4 = nodeDao.create(currentDocument.getId(), minX, maxY);
+        NodePoint n1 = documentRepository.createNode(minX, minY);
+        NodePoint n2 = documentRepository.createNode(maxX, minY);
+        NodePoint n3 = documentRepository.createNode(maxX, maxY);
+        NodePoint n4 = documentRepository.createNode(minX, maxY);
         canvasPane.addNode(n1);
         canvasPane.addNode(n2);
         canvasPane.addNode(n3);
         canvasPane.addNode(n4);
-        canvasPane.addEdge(edgeDao.create(currentDocument.getId(), n1.getId(), n2.getId()));
-        canvasPane.addEdge(edgeDao.create(currentDocument.getId(), n2.getId(), n3.getId()));
-        canvasPane.addEdge(edgeDao.create(currentDocument.getId(), n3.getId(), n4.getId()));
-        canvasPane.addEdge(edgeDao.create(currentDocument.getId(), n4.getId(), n1.getId()));
+        canvasPane.addEdge(documentRepository.createEdge(n1.getId(), n2.getId()));
+        canvasPane.addEdge(documentRepository.createEdge(n2.getId(), n3.getId()));
+        canvasPane.addEdge(documentRepository.createEdge(n3.getId(), n4.getId()));
+        canvasPane.addEdge(documentRepository.createEdge(n4.getId(), n1.getId()));
         lastDrawNodeId = null;
         recomputeShapes();
     }
@@ -913,91 +938,37 @@ public class MainView {
     }
 
     private void pushHistory() {
-        if (historyRestoring || currentDocument == null) {
+        if (currentDocument == null) {
             return;
         }
-        undoStack.push(captureSnapshot());
-        redoStack.clear();
-        while (undoStack.size() > HISTORY_LIMIT) {
-            undoStack.removeLast();
-        }
-    }
-
-    private ProjectSnapshot captureSnapshot() {
-        Document doc = documentDao.findById(currentDocument.getId(), sessionManager.getCurrentUser().getId())
-                .orElse(currentDocument);
-        return new ProjectSnapshot(
-                doc,
-                nodeDao.findByDocument(doc.getId()),
-                edgeDao.findByDocument(doc.getId()),
-                guideDao.findByDocument(doc.getId()),
-                dimensionDao.findByDocument(doc.getId()),
-                shapeDao.findByDocument(doc.getId()),
-                manualShapeDao.findByDocument(doc.getId())
-        );
+        documentRepository.beginEdit();
     }
 
     private void undo() {
-        if (undoStack.isEmpty()) {
-            return;
+        if (currentDocument != null) {
+            documentRepository.undo().ifPresent(this::applyChanges);
         }
-        ProjectSnapshot current = captureSnapshot();
-        ProjectSnapshot snapshot = undoStack.pop();
-        redoStack.push(current);
-        restoreSnapshot(snapshot);
     }
 
     private void redo() {
-        if (redoStack.isEmpty()) {
-            return;
-        }
-        ProjectSnapshot current = captureSnapshot();
-        ProjectSnapshot snapshot = redoStack.pop();
-        undoStack.push(current);
-        restoreSnapshot(snapshot);
-    }
-
-    private void restoreSnapshot(ProjectSnapshot snapshot) {
-        if (snapshot == null || currentDocument == null) {
-            return;
-        }
-        historyRestoring = true;
-        try {
-            documentDao.updateSettings(currentDocument.getId(), snapshot.document.getWidthCm(),
-                    snapshot.document.getHeightCm(), snapshot.document.getKerfMm(),
-                    snapshot.document.getUnitSystem());
-
-            dimensionDao.deleteByDocument(currentDocument.getId());
-            edgeDao.deleteByDocument(currentDocument.getId());
-            nodeDao.deleteByDocument(currentDocument.getId());
-            guideDao.deleteByDocument(currentDocument.getId());
-            shapeDao.deleteByDocument(currentDocument.getId());
-            manualShapeDao.deleteByDocument(currentDocument.getId());
-
-            for (NodePoint node : snapshot.nodes) {
-                nodeDao.insertWithId(node);
-            }
-            for (Edge edge : snapshot.edges) {
-                edgeDao.insertWithId(edge);
-            }
-            for (Guide guide : snapshot.guides) {
-                guideDao.insertWithId(guide);
-            }
-            for (ShapePolygon shape : snapshot.shapes) {
-                shapeDao.insertWithId(shape);
-            }
-            for (Dimension dimension : snapshot.dimensions) {
-                dimensionDao.insertWithId(dimension);
-            }
-            for (ManualShape shape : snapshot.manualShapes) {
-                manualShapeDao.insertWithId(shape);
-            }
-        } finally {
-            historyRestoring = false;
-        }
-        currentDocument = documentDao.findById(currentDocument.getId(), sessionManager.getCurrentUser().getId())
-                .orElse(currentDocument);
-        loadDocumentState(false);
+        if (currentDocument != null) {
+            documentRepository.redo().ifPresent(this::applyChanges);
+        }
+    }
+
+    // Only the rows the step touched are patched; the shape topology finds the rest through its own diff.
+    private void applyChanges(DocumentChanges changes) {
+        canvasPane.applyNodeChanges(changes.nodes());
+        canvasPane.applyEdgeChanges(changes.edges());
+        DocumentChanges.applyTo(guides, changes.guides(), Guide::getId);
+        canvasPane.applyGuideChanges(changes.guides());
+        DocumentChanges.applyTo(dimensions, changes.dimensions(), Dimension::getId);
+        canvasPane.applyDimensionChanges(changes.dimensions());
+        DocumentChanges.applyTo(manualShapes, changes.manualShapes(), ManualShape::getId);
+        canvasPane.applyManualShapeChanges(changes.manualShapes());
+        // Shape rows reach the canvas once the recompute reconciles them with the faces.
+        DocumentChanges.applyTo(shapes, changes.shapes(), ShapePolygon::getId);
+        recomputeShapes();
     }
 
     private void deleteSelection() {
@@ -1023,9 +994,9 @@ public class MainView {
     private void handleNodeMoveFinished(int nodeId, Point2D cmPoint) {
         pushHistory();
         Point2D snapped = clampToCanvas(applyGuideSnapping(cmPoint));
-        nodeDao.updatePosition(nodeId, snapped.getX(), snapped.getY());
-        updateDimensionsForNode(nodeId, snapped);
-        canvasPane.setNodes(nodeDao.findByDocument(currentDocument.getId()));
+        documentRepository.moveNodes(Map.of(nodeId, snapped));
+        updateDimensionsForNodes(Map.of(nodeId, snapped));
+        canvasPane.setNodes(documentRepository.getNodes());
         persistEdgeControls();
         recomputeShapes();
         if (currentTool == CanvasPane.Mode.MOVE_NODE) {
@@ -1038,50 +1009,43 @@ public class MainView {
             return;
         }
         pushHistory();
+        Map<Integer, Point2D> positions = new LinkedHashMap<>();
         for (NodePoint node : moved) {
-            Point2D snapped = clampToCanvas(new Point2D(node.getXCm(), node.getYCm()));
-            nodeDao.updatePosition(node.getId(), snapped.getX(), snapped.getY());
-            updateDimensionsForNode(node.getId(), snapped);
+            positions.put(node.getId(), clampToCanvas(new Point2D(node.getXCm(), node.getYCm())));
         }
-        canvasPane.setNodes(nodeDao.findByDocument(currentDocument.getId()));
+        documentRepository.moveNodes(positions);
+        updateDimensionsForNodes(positions);
+        canvasPane.setNodes(documentRepository.getNodes());
         persistEdgeControls();
         recomputeShapes();
     }
 
-    private void handleEdgeControlsChanged(CanvasPane.EdgeControlUpdate update) {
+    private void handleEdgeControlsChanged(EdgeControlUpdate update) {
         if (update == null) {
             return;
         }
         pushHistory();
-        edgeDao.updateControls(update.edgeId(),
-                update.start().getX(), update.start().getY(),
-                update.end().getX(), update.end().getY());
+        documentRepository.updateEdgeControls(List.of(update));
     }
 
     private void persistEdgeControls() {
-        List<CanvasPane.EdgeControlUpdate> updates = canvasPane.getEdgeControlUpdates();
-        for (CanvasPane.EdgeControlUpdate update : updates) {
-            edgeDao.updateControls(update.edgeId(),
-                    update.start().getX(), update.start().getY(),
-                    update.end().getX(), update.end().getY());
-        }
+        documentRepository.updateEdgeControls(canvasPane.getEdgeControlUpdates());
     }
 
-    private void updateDimensionsForNode(int nodeId, Point2D position) {
-        boolean changed = false;
+    private void updateDimensionsForNodes(Map<Integer, Point2D> positions) {
+        List<Dimension> changed = new ArrayList<>();
         for (int i = 0; i < dimensions.size(); i++) {
             Dimension dimension = dimensions.get(i);
-            boolean isStart = dimension.getStartNodeId() != null && dimension.getStartNodeId() == nodeId;
-            boolean isEnd = dimension.getEndNodeId() != null && dimension.getEndNodeId() == nodeId;
-            if (!isStart && !isEnd) {
+            Point2D start = dimension.getStartNodeId() == null ? null : positions.get(dimension.getStartNodeId());
+            Point2D end = dimension.getEndNodeId() == null ? null : positions.get(dimension.getEndNodeId());
+            if (start == null && end == null) {
                 continue;
             }
-            double startX = isStart ? position.getX() : dimension.getStartXCm();
-            double startY = isStart ? position.getY() : dimension.getStartYCm();
-            double endX = isEnd ? position.getX() : dimension.getEndXCm();
-            double endY = isEnd ? position.getY() : dimension.getEndYCm();
-            dimensionDao.updateEndpoints(dimension.getId(), startX, startY, endX, endY);
-            dimensions.set(i, new Dimension(
+            double startX = start != null ? start.getX() : dimension.getStartXCm();
+            double startY = start != null ? start.getY() : dimension.getStartYCm();
+            double endX = end != null ? end.getX() : dimension.getEndXCm();
+            double endY = end != null ? end.getY() : dimension.getEndYCm();
+            Dimension updated = new Dimension(
                     dimension.getId(),
                     dimension.getDocumentId(),
                     startX,
@@ -1093,38 +1057,38 @@ public class MainView {
                     dimension.getType(),
                     dimension.getStartNodeId(),
                     dimension.getEndNodeId()
-            ));
-            changed = true;
+            );
+            dimensions.set(i, updated);
+            changed.add(updated);
         }
-        if (changed) {
+        if (!changed.isEmpty()) {
+            documentRepository.updateDimensionEndpoints(changed);
             canvasPane.setDimensions(dimensions);
         }
     }
 
     private void eraseNode(int nodeId) {
         pushHistory();
-        edgeDao.deleteByNode(nodeId);
-        nodeDao.delete(nodeId);
-        canvasPane.setNodes(nodeDao.findByDocument(currentDocument.getId()));
-        canvasPane.setEdges(edgeDao.findByDocument(currentDocument.getId()));
+        documentRepository.deleteNode(nodeId);
+        canvasPane.setNodes(documentRepository.getNodes());
+        canvasPane.setEdges(documentRepository.getEdges());
         recomputeShapes();
     }
 
     private void handleDeleteNodes(List<Integer> nodeIds) {
         pushHistory();
         for (Integer nodeId : nodeIds) {
-            edgeDao.deleteByNode(nodeId);
-            nodeDao.delete(nodeId);
+            documentRepository.deleteNode(nodeId);
         }
-        canvasPane.setNodes(nodeDao.findByDocument(currentDocument.getId()));
-        canvasPane.setEdges(edgeDao.findByDocument(currentDocument.getId()));
+        canvasPane.setNodes(documentRepository.getNodes());
+        canvasPane.setEdges(documentRepository.getEdges());
         recomputeShapes();
     }
 
     private void handleDeleteGuides(List<Integer> guideIds) {
         pushHistory();
         for (Integer guideId : guideIds) {
-            guideDao.deleteById(guideId);
+            documentRepository.deleteGuide(guideId);
         }
         guides.removeIf(guide -> guideIds.contains(guide.getId()));
         canvasPane.setGuides(guides);
@@ -1133,7 +1097,7 @@ public class MainView {
     private void handleDeleteDimensions(List<Integer> dimensionIds) {
         pushHistory();
         for (Integer dimensionId : dimensionIds) {
-            dimensionDao.deleteById(dimensionId);
+            documentRepository.deleteDimension(dimensionId);
         }
         dimensions.removeIf(dimension -> dimensionIds.contains(dimension.getId()));
         canvasPane.setDimensions(dimensions);
@@ -1142,7 +1106,7 @@ public class MainView {
     private void handleDeleteManualShapes(List<Integer> manualIds) {
         pushHistory();
         for (Integer manualId : manualIds) {
-            manualShapeDao.deleteById(manualId);
+            documentRepository.deleteManualShape(manualId);
         }
         manualShapes.removeIf(shape -> manualIds.contains(shape.getId()));
         canvasPane.setManualShapes(manualShapes);
@@ -1153,8 +1117,7 @@ public class MainView {
             return;
         }
         pushHistory();
-        Dimension dimension = dimensionDao.create(
-                currentDocument.getId(),
+        Dimension dimension = documentRepository.createDimension(
                 draft.start().getX(),
                 draft.start().getY(),
                 draft.end().getX(),
@@ -1174,7 +1137,7 @@ public class MainView {
             return;
         }
         pushHistory();
-        dimensionDao.updateOffset(dimensionId, offsetCm.getX(), offsetCm.getY());
+        documentRepository.updateDimensionOffset(dimensionId, offsetCm.getX(), offsetCm.getY());
         for (int i = 0; i < dimensions.size(); i++) {
             Dimension dimension = dimensions.get(i);
             if (dimension.getId() == dimensionId) {
@@ -1202,7 +1165,7 @@ public class MainView {
         }
         pushHistory();
         for (Guide guide : moved) {
-            guideDao.updatePosition(guide.getId(), guide.getPositionCm());
+            documentRepository.moveGuide(guide.getId(), guide.getPositionCm());
             replaceGuideInList(guide);
         }
     }
@@ -1212,11 +1175,8 @@ public class MainView {
             return;
         }
         pushHistory();
+        documentRepository.moveDimensions(moved);
         for (Dimension dimension : moved) {
-            dimensionDao.updateEndpoints(dimension.getId(),
-                    dimension.getStartXCm(), dimension.getStartYCm(),
-                    dimension.getEndXCm(), dimension.getEndYCm());
-            dimensionDao.updateOffset(dimension.getId(), dimension.getOffsetXCm(), dimension.getOffsetYCm());
             replaceDimensionInList(dimension);
         }
     }
@@ -1227,7 +1187,7 @@ public class MainView {
         }
         pushHistory();
         for (ManualShape shape : moved) {
-            manualShapeDao.updatePoints(shape.getId(), shape.getPoints());
+            documentRepository.updateManualShapePoints(shape.getId(), shape.getPoints());
             replaceManualShapeInList(shape);
         }
     }
@@ -1241,8 +1201,8 @@ public class MainView {
         if (targetShapes.isEmpty()) {
             return;
         }
-        List<NodePoint> allNodes = nodeDao.findByDocument(currentDocument.getId());
-        List<Edge> allEdges = edgeDao.findByDocument(currentDocument.getId());
+        List<NodePoint> allNodes = documentRepository.getNodes();
+        List<Edge> allEdges = documentRepository.getEdges();
         Map<Integer, NodePoint> nodeMap = new HashMap<>();
         for (NodePoint node : allNodes) {
             nodeMap.put(node.getId(), node);
@@ -1292,18 +1252,18 @@ public class MainView {
                 int existingNodeId = nearExistingNode(hit, a, b);
                 int boundaryNodeId = existingNodeId;
                 if (boundaryNodeId == -1) {
-                    NodePoint created = nodeDao.create(currentDocument.getId(), hit.getX(), hit.getY());
+                    NodePoint created = documentRepository.createNode(hit.getX(), hit.getY());
                     boundaryNodeId = created.getId();
                     nodeMap.put(boundaryNodeId, created);
                 }
-                NodePoint cutNode = nodeDao.create(currentDocument.getId(), hit.getX(), hit.getY());
+                NodePoint cutNode = documentRepository.createNode(hit.getX(), hit.getY());
                 int cutNodeId = cutNode.getId();
                 nodeMap.put(cutNodeId, cutNode);
                 int edgeId = findEdgeId(allEdges, a.getId(), b.getId());
                 if (edgeId != -1) {
-                    edgeDao.deleteById(edgeId);
-                    edgeDao.create(currentDocument.getId(), a.getId(), boundaryNodeId);
-                    edgeDao.create(currentDocument.getId(), boundaryNodeId, b.getId());
+                    documentRepository.deleteEdge(edgeId);
+                    documentRepository.createEdge(a.getId(), boundaryNodeId);
+                    documentRepository.createEdge(boundaryNodeId, b.getId());
                 }
                 intersections.add(new IntersectionHit(cutNodeId, projectionT(start, end, hit)));
             }
@@ -1312,12 +1272,12 @@ public class MainView {
                 int startNodeId = intersections.get(0).nodeId();
                 int endNodeId = intersections.get(intersections.size() - 1).nodeId();
                 if (startNodeId != endNodeId && findEdgeId(allEdges, startNodeId, endNodeId) == -1) {
-                    edgeDao.create(currentDocument.getId(), startNodeId, endNodeId);
+                    documentRepository.createEdge(startNodeId, endNodeId);
                 }
             }
         }
-        canvasPane.setNodes(nodeDao.findByDocument(currentDocument.getId()));
-        canvasPane.setEdges(edgeDao.findByDocument(currentDocument.getId()));
+        canvasPane.setNodes(documentRepository.getNodes());
+        canvasPane.setEdges(documentRepository.getEdges());
         recomputeShapes();
     }
 
@@ -1352,7 +1312,7 @@ public class MainView {
                 pushHistory();
                 Point2D cmPoint = canvasPane.toCanvasCm(local);
                 double positionCm = cmPoint.getY();
-                Guide guide = guideDao.create(currentDocument.getId(), Guide.Orientation.HORIZONTAL, positionCm);
+                Guide guide = documentRepository.createGuide(Guide.Orientation.HORIZONTAL, positionCm);
                 guides.add(guide);
                 canvasPane.addGuide(guide);
             }
@@ -1382,7 +1342,7 @@ public class MainView {
                 pushHistory();
                 Point2D cmPoint = canvasPane.toCanvasCm(local);
                 double positionCm = cmPoint.getX();
-                Guide guide = guideDao.create(currentDocument.getId(), Guide.Orientation.VERTICAL, positionCm);
+                Guide guide = documentRepository.createGuide(Guide.Orientation.VERTICAL, positionCm);
                 guides.add(guide);
                 canvasPane.addGuide(guide);
             }
@@ -1393,30 +1353,28 @@ public class MainView {
         if (currentDocument == null) {
             return;
         }
+        int documentId = currentDocument.getId();
+        DocumentState snapshot = documentRepository.snapshot();
+        recomputeService.submit(() -> {
+            shapeTopology.update(documentId, snapshot.getNodes(), snapshot.getEdges());
+            return snapshot.getNodes();
+        }, nodes -> publishShapes(documentId, nodes));
+    }
+
+    private void publishShapes(int documentId, PersistentIntMap<NodePoint> nodes) {
+        if (currentDocument == null || currentDocument.getId() != documentId) {
+            return;
+        }
         List<Integer> preservedNodeIds = (currentTool == CanvasPane.Mode.MOVE_NODE
                 || currentTool == CanvasPane.Mode.SELECT)
                 ? canvasPane.getSelectedNodeIds()
                 : List.of();
-        List<NodePoint> nodes = nodeDao.findByDocument(currentDocument.getId());
-        List<Edge> edges = edgeDao.findByDocument(currentDocument.getId());
-        List<ShapePolygon> computed = geometryService.buildShapes(currentDocument.getId(), nodes, edges);
-        Material material = defaultMaterial.getSelectionModel().getSelectedItem();
-        List<ShapePolygon> assigned = computed.stream()
-                .map(shape -> new ShapePolygon(-1, shape.getDocumentId(),
-                        material == null ? null : material.getId(), shape.getQuantity(), shape.getNodeIds(),
-                        shape.getNodes(), shape.getAreaCm2(), shape.getPerimeterCm()))
-                .toList();
-        shapeDao.replaceShapes(currentDocument.getId(), assigned);
-        loadShapesFromDb();
+        reconcileShapes();
         selectedShapeId = null;
         canvasPane.clearSelection();
         if (!preservedNodeIds.isEmpty()) {
-            java.util.Set<Integer> existing = new java.util.HashSet<>();
-            for (NodePoint node : nodes) {
-                existing.add(node.getId());
-            }
             List<Integer> restored = preservedNodeIds.stream()
-                    .filter(existing::contains)
+                    .filter(nodes::containsKey)
                     .toList();
             if (!restored.isEmpty()) {
                 selectedNodeId = restored.get(0);
@@ -1427,6 +1385,88 @@ public class MainView {
         } else {
             selectedNodeId = null;
         }
+        refreshShapeReports();
+    }
+
+    private void updateRecomputeStatus(RecomputeService.State state) {
+        switch (state) {
+            case RUNNING -> recomputeStatusLabel.setText("Racunanje oblika...");
+            case STALE -> recomputeStatusLabel.setText("Oblici zastarjeli");
+            default -> recomputeStatusLabel.setText("");
+        }
+    }
+
+    private void showError(String message) {
+        // A failing write-behind batch can report more than once; one open dialog is enough.
+        if (errorAlert != null && errorAlert.isShowing()) {
+            return;
+        }
+        errorAlert = new Alert(Alert.AlertType.ERROR, message);
+        errorAlert.show();
+    }
+
+    private void reconcileShapes() {
+        Map<CompactGraph.CycleKey, ShapePolygon> stored = new HashMap<>();
+        // Undo and redo can bring back a row for a cycle that was re-created meanwhile; keep only one.
+        List<ShapePolygon> duplicates = new ArrayList<>();
+        for (ShapePolygon shape : shapes) {
+            ShapePolygon previous = stored.put(geometryService.cycleKey(shape.getNodeIds()), shape);
+            if (previous != null) {
+                duplicates.add(previous);
+            }
+        }
+        Material material = defaultMaterial.getSelectionModel().getSelectedItem();
+        shapes.clear();
+        for (ShapePolygon shape : shapeTopology.getShapes()) {
+            ShapePolygon existing = stored.remove(geometryService.cycleKey(shape.getNodeIds()));
+            if (existing == null) {
+                shapes.add(documentRepository.createShape(new ShapePolygon(-1, shape.getDocumentId(),
+                        material == null ? null : material.getId(), shape.getQuantity(), shape.getNodeIds(),
+                        shape.getNodes(), shape.getAreaCm2(), shape.getPerimeterCm())));
+                continue;
+            }
+            ShapePolygon updated = withIdentity(existing, shape);
+            if (existing.getAreaCm2() != shape.getAreaCm2()
+                    || existing.getPerimeterCm() != shape.getPerimeterCm()
+                    || !existing.getNodeIds().equals(shape.getNodeIds())) {
+                documentRepository.updateShapeGeometry(updated);
+            }
+            shapes.add(updated);
+        }
+        for (ShapePolygon stale : stored.values()) {
+            documentRepository.deleteShape(stale.getId());
+        }
+        for (ShapePolygon duplicate : duplicates) {
+            documentRepository.deleteShape(duplicate.getId());
+        }
+        canvasPane.setShapes(shapes);
+    }
+
+    private ShapePolygon withIdentity(ShapePolygon stored, ShapePolygon computed) {
+        return new ShapePolygon(stored.getId(), stored.getDocumentId(), stored.getMaterialId(), stored.getQuantity(),
+                computed.getNodeIds(), computed.getNodes(), computed.getAreaCm2(), computed.getPerimeterCm());
+    }
+
+    private void applyDefaultMaterialToShapes() {
+        Material material = defaultMaterial.getSelectionModel().getSelectedItem();
+        if (currentDocument == null || material == null) {
+            return;
+        }
+        for (int i = 0; i < shapes.size(); i++) {
+            ShapePolygon shape = shapes.get(i);
+            if (shape.getMaterialId() != null && shape.getMaterialId() == material.getId()) {
+                continue;
+            }
+            documentRepository.updateShapeMaterial(shape.getId(), material.getId());
+            shapes.set(i, new ShapePolygon(shape.getId(), shape.getDocumentId(), material.getId(),
+                    shape.getQuantity(), shape.getNodeIds(), shape.getNodes(), shape.getAreaCm2(),
+                    shape.getPerimeterCm()));
+        }
+        canvasPane.setShapes(shapes);
+        refreshShapeReports();
+    }
+
+    private void refreshShapeReports() {
         updateSelectedShapeSummary();
         updatePlankPreview();
         updateSummary();
@@ -1510,7 +1550,7 @@ public class MainView {
     }
 
     private List<NodePoint> resolveShapeNodes(ShapePolygon shape) {
-        List<NodePoint> nodes = nodeDao.findByDocument(currentDocument.getId());
+        List<NodePoint> nodes = documentRepository.getNodes();
         Map<Integer, NodePoint> nodeMap = new HashMap<>();
         for (NodePoint node : nodes) {
             nodeMap.put(node.getId(), node);
@@ -1546,28 +1586,18 @@ public class MainView {
     }
 
     private void loadShapesFromDb() {
+        recomputeService.cancel();
+        shapeTopology.reset();
         shapes.clear();
-        List<ShapePolygon> stored = shapeDao.findByDocument(currentDocument.getId());
-        List<NodePoint> nodes = nodeDao.findByDocument(currentDocument.getId());
-        List<Edge> edges = edgeDao.findByDocument(currentDocument.getId());
-        Map<Integer, NodePoint> nodeMap = new HashMap<>();
-        for (NodePoint node : nodes) {
-            nodeMap.put(node.getId(), node);
-        }
-        Map<String, Edge> edgeMap = new HashMap<>();
-        for (Edge edge : edges) {
-            String key = edge.getStartNodeId() < edge.getEndNodeId()
-                    ? edge.getStartNodeId() + "-" + edge.getEndNodeId()
-                    : edge.getEndNodeId() + "-" + edge.getStartNodeId();
-            edgeMap.put(key, edge);
-        }
+        List<ShapePolygon> stored = documentRepository.getShapes();
+        CompactGraph graph = CompactGraph.of(documentRepository.getNodes(),
+                documentRepository.getEdges());
         for (ShapePolygon storedShape : stored) {
             ShapePolygon hydrated = geometryService.buildShapeFromCycle(
                     storedShape.getDocumentId(),
                     storedShape.getMaterialId(),
                     storedShape.getNodeIds(),
-                    nodeMap,
-                    edgeMap
+                    graph
             );
             shapes.add(new ShapePolygon(
                     storedShape.getId(),
@@ -1630,7 +1660,7 @@ public class MainView {
         summaryList.getItems().clear();
         sheetList.getItems().clear();
         double total = 0;
-        List<EstimationSummary> summaries = estimationService.estimate(currentDocument.getId(), currentWastePercent);
+        List<EstimationSummary> summaries = estimationService.estimate(documentRepository.getShapes(), currentWastePercent);
         for (EstimationSummary summary : summaries) {
             summaryList.getItems().add(summary.getMaterialName() + " - " + summary.getDetails()
                     + String.format(" ($%.2f)", summary.getCost()));
@@ -1854,7 +1884,7 @@ public class MainView {
             currentWastePercent = 10.0;
             return;
         }
-        Map<String, Edge> edgeMap = buildEdgeMap(edgeDao.findByDocument(currentDocument.getId()));
+        Map<String, Edge> edgeMap = buildEdgeMap(documentRepository.getEdges());
         List<Point2D> polygon = extractPolygon(shape, edgeMap);
         if (polygon.size() < 3) {
             canvasPane.setPlankRects(List.of());
@@ -1924,12 +1954,12 @@ public class MainView {
                 control1 = new Point2D(edge.getControlEndXCm(), edge.getControlEndYCm());
                 control2 = new Point2D(edge.getControlStartXCm(), edge.getControlStartYCm());
             }
-            sampleCubic(points,
+            geometryService.getCurveTessellator().appendCubic(points, edge.getId(),
                     new Point2D(start.getXCm(), start.getYCm()),
                     control1,
                     control2,
                     new Point2D(end.getXCm(), end.getYCm()),
-                    18);
+                    CurveTessellator.GEOMETRY_TOLERANCE_CM);
         }
         return points;
     }
@@ -1950,25 +1980,6 @@ public class MainView {
         return a + "-" + b;
     }
 
-    private void sampleCubic(List<Point2D> points, Point2D p0, Point2D p1, Point2D p2, Point2D p3, int segments) {
-        if (points.isEmpty()) {
-            points.add(p0);
-        }
-        for (int i = 1; i <= segments; i++) {
-            double t = (double) i / segments;
-            double u = 1 - t;
-            double x = u * u * u * p0.getX()
-                    + 3 * u * u * t * p1.getX()
-                    + 3 * u * t * t * p2.getX()
-                    + t * t * t * p3.getX();
-            double y = u * u * u * p0.getY()
-                    + 3 * u * u * t * p1.getY()
-                    + 3 * u * t * t * p2.getY()
-                    + t * t * t * p3.getY();
-            points.add(new Point2D(x, y));
-        }
-    }
-
     private void replaceGuideInList(Guide guide) {
         for (int i = 0; i < guides.size(); i++) {
             if (guides.get(i).getId() == guide.getId()) {
@@ -2307,11 +2318,6 @@ public class MainView {
         return new Point2D(cx * factor, cy * factor);
     }
 
-    private record ProjectSnapshot(Document document, List<NodePoint> nodes, List<Edge> edges, List<Guide> guides,
-                                   List<Dimension> dimensions, List<ShapePolygon> shapes,
-                                   List<ManualShape> manualShapes) {
-    }
-
     private record PlankResult(List<CanvasPane.PlankRect> planks, double plankWidthCm,
                                double wastePercent, double coveragePercent) {
     }
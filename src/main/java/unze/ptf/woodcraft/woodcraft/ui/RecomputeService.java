@@ -0,0 +1,125 @@
+package unze.ptf.woodcraft.woodcraft.ui;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class RecomputeService {
+    public enum State {
+        IDLE,
+        RUNNING,
+        STALE
+    }
+
+    private static final long DEBOUNCE_MS = 50;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final AtomicLong generation = new AtomicLong();
+    private ScheduledFuture<?> pending;
+    private State state = State.IDLE;
+    private Consumer<State> onStateChanged;
+    private Consumer<Throwable> onError;
+
+    public RecomputeService() {
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "woodcraft-recompute");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    public void setOnStateChanged(Consumer<State> onStateChanged) {
+        this.onStateChanged = onStateChanged;
+    }
+
+    public void setOnError(Consumer<Throwable> onError) {
+        this.onError = onError;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public <T> void submit(Callable<T> work, Consumer<T> publish) {
+        long ticket = generation.incrementAndGet();
+        synchronized (this) {
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            pending = executor.schedule(() -> run(ticket, work, publish), DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+        }
+        setState(State.STALE);
+    }
+
+    public void cancel() {
+        generation.incrementAndGet();
+        synchronized (this) {
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+        setState(State.IDLE);
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private <T> void run(long ticket, Callable<T> work, Consumer<T> publish) {
+        if (ticket != generation.get()) {
+            return;
+        }
+        Platform.runLater(() -> updateState(ticket, State.RUNNING));
+        T result;
+        try {
+            result = work.call();
+        } catch (Throwable exception) {
+            // Errors too: deep geometry recursion can overflow the stack, and the state must not stay RUNNING.
+            Platform.runLater(() -> {
+                if (ticket == generation.get()) {
+                    setState(State.IDLE);
+                    if (onError != null) {
+                        onError.accept(exception);
+                    }
+                }
+            });
+            return;
+        }
+        if (ticket != generation.get()) {
+            return;
+        }
+        Platform.runLater(() -> {
+            if (ticket != generation.get()) {
+                return;
+            }
+            publish.accept(result);
+            setState(State.IDLE);
+        });
+    }
+
+    private void updateState(long ticket, State next) {
+        if (ticket == generation.get()) {
+            setState(next);
+        }
+    }
+
+    private void setState(State next) {
+        if (state == next) {
+            return;
+        }
+        state = next;
+        if (onStateChanged != null) {
+            onStateChanged.accept(next);
+        }
+    }
+}
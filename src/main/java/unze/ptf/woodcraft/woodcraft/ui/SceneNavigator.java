@@ -3,13 +3,8 @@ package unze.ptf.woodcraft.woodcraft.ui;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import unze.ptf.woodcraft.woodcraft.dao.DocumentDao;
-import unze.ptf.woodcraft.woodcraft.dao.DimensionDao;
-import unze.ptf.woodcraft.woodcraft.dao.EdgeDao;
-import unze.ptf.woodcraft.woodcraft.dao.GuideDao;
-import unze.ptf.woodcraft.woodcraft.dao.ManualShapeDao;
+import unze.ptf.woodcraft.woodcraft.dao.DocumentRepository;
 import unze.ptf.woodcraft.woodcraft.dao.MaterialDao;
-import unze.ptf.woodcraft.woodcraft.dao.NodeDao;
-import unze.ptf.woodcraft.woodcraft.dao.ShapeDao;
 import unze.ptf.woodcraft.woodcraft.dao.UserDao;
 import unze.ptf.woodcraft.woodcraft.service.AuthService;
 import unze.ptf.woodcraft.woodcraft.service.EstimationService;
@@ -26,12 +21,7 @@ public class SceneNavigator {
     private final UserDao userDao;
     private final MaterialDao materialDao;
     private final DocumentDao documentDao;
-    private final DimensionDao dimensionDao;
-    private final NodeDao nodeDao;
-    private final EdgeDao edgeDao;
-    private final GuideDao guideDao;
-    private final ShapeDao shapeDao;
-    private final ManualShapeDao manualShapeDao;
+    private final DocumentRepository documentRepository;
     private final GeometryService geometryService;
     private final EstimationService estimationService;
 
@@ -43,8 +33,7 @@ public class SceneNavigator {
     private static final double MIN_H = 650;
 
     public SceneNavigator(Stage stage, SessionManager sessionManager, AuthService authService, UserDao userDao,
-                          MaterialDao materialDao, DocumentDao documentDao, DimensionDao dimensionDao, NodeDao nodeDao,
-                          EdgeDao edgeDao, GuideDao guideDao, ShapeDao shapeDao, ManualShapeDao manualShapeDao,
+                          MaterialDao materialDao, DocumentDao documentDao, DocumentRepository documentRepository,
                           GeometryService geometryService, EstimationService estimationService) {
         this.stage = stage;
         this.sessionManager = sessionManager;
@@ -52,12 +41,7 @@ public class SceneNavigator {
         this.userDao = userDao;
         this.materialDao = materialDao;
         this.documentDao = documentDao;
-        this.dimensionDao = dimensionDao;
-        this.nodeDao = nodeDao;
-        this.edgeDao = edgeDao;
-        this.guideDao = guideDao;
-        this.shapeDao = shapeDao;
-        this.manualShapeDao = manualShapeDao;
+        this.documentRepository = documentRepository;
         this.geometryService = geometryService;
         this.estimationService = estimationService;
     }
@@ -84,24 +68,28 @@ public class SceneNavigator {
     }
 
     public void showLogin() {
+        documentRepository.close();
         LoginView view = new LoginView(authService, this);
         scene.setRoot(view.getRoot()); 
     }
 
     public void showSignup() {
+        documentRepository.close();
         SignupView view = new SignupView(authService, this, userDao);
         scene.setRoot(view.getRoot()); 
     }
 
     public void showProjects() {
+        documentRepository.close();
         ProjectListView view = new ProjectListView(sessionManager, documentDao, this);
         scene.setRoot(view.getRoot()); 
     }
 
     public void showMain(int documentId) {
+        documentRepository.close();
         MainView view = new MainView(
-                sessionManager, authService, userDao, materialDao, documentDao, dimensionDao,
-                nodeDao, edgeDao, guideDao, shapeDao, manualShapeDao, geometryService, estimationService, this, documentId
+                sessionManager, authService, userDao, materialDao, documentDao, documentRepository,
+                geometryService, estimationService, this, documentId
         );
         scene.setRoot(view.getRoot()); // ✅ ne mijenja se veličina prozora
 
@@ -0,0 +1,60 @@
+package unze.ptf.woodcraft.woodcraft.util;
+
+public final class BezierMath {
+    private static final double[] GAUSS_NODES = {
+            0.0,
+            -0.5384693101056831, 0.5384693101056831,
+            -0.9061798459386640, 0.9061798459386640
+    };
+    private static final double[] GAUSS_WEIGHTS = {
+            0.5688888888888889,
+            0.4786286704993665, 0.4786286704993665,
+            0.2369268850561891, 0.2369268850561891
+    };
+    private static final int MAX_DEPTH = 16;
+
+    private BezierMath() {
+    }
+
+    public static double cubicSignedArea(double x0, double y0, double x1, double y1,
+                                         double x2, double y2, double x3, double y3) {
+        return (6 * (x0 * y1 - x1 * y0)
+                + 3 * (x0 * y2 - x2 * y0)
+                + (x0 * y3 - x3 * y0)
+                + 3 * (x1 * y2 - x2 * y1)
+                + 3 * (x1 * y3 - x3 * y1)
+                + 6 * (x2 * y3 - x3 * y2)) / 20;
+    }
+
+    public static double cubicLength(double x0, double y0, double x1, double y1,
+                                     double x2, double y2, double x3, double y3, double tolerance) {
+        double[] c = {x0, y0, x1, y1, x2, y2, x3, y3};
+        return adaptiveLength(c, 0, 1, gaussLength(c, 0, 1), tolerance, 0);
+    }
+
+    private static double adaptiveLength(double[] c, double from, double to, double whole, double tolerance, int depth) {
+        double middle = (from + to) / 2;
+        double left = gaussLength(c, from, middle);
+        double right = gaussLength(c, middle, to);
+        double split = left + right;
+        if (depth >= MAX_DEPTH || Math.abs(split - whole) <= tolerance) {
+            return split;
+        }
+        return adaptiveLength(c, from, middle, left, tolerance / 2, depth + 1)
+                + adaptiveLength(c, middle, to, right, tolerance / 2, depth + 1);
+    }
+
+    private static double gaussLength(double[] c, double from, double to) {
+        double half = (to - from) / 2;
+        double center = (to + from) / 2;
+        double sum = 0;
+        for (int i = 0; i < GAUSS_NODES.length; i++) {
+            double t = center + half * GAUSS_NODES[i];
+            double u = 1 - t;
+            double dx = 3 * (u * u * (c[2] - c[0]) + 2 * u * t * (c[4] - c[2]) + t * t * (c[6] - c[4]));
+            double dy = 3 * (u * u * (c[3] - c[1]) + 2 * u * t * (c[5] - c[3]) + t * t * (c[7] - c[5]));
+            sum += GAUSS_WEIGHTS[i] * Math.hypot(dx, dy);
+        }
+        return sum * half;
+    }
+}
@@ -0,0 +1,176 @@
+package unze.ptf.woodcraft.woodcraft.util;
+
+import javafx.geometry.Point2D;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class GeometryCodec {
+    // Legacy rows are comma separated text, so a leading control byte can never be mistaken for one.
+    private static final byte PACKED_IDS = 1;
+    private static final byte PACKED_POINTS = 2;
+
+    private GeometryCodec() {
+    }
+
+    public static byte[] encodeIds(List<Integer> ids) {
+        int count = ids == null ? 0 : ids.size();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 5 + count * 5);
+        buffer.put(PACKED_IDS);
+        putVarint(buffer, count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int id = ids.get(i);
+            putVarint(buffer, zigzag(id - previous));
+            previous = id;
+        }
+        return trim(buffer);
+    }
+
+    public static List<Integer> decodeIds(byte[] data) {
+        if (data == null || data.length == 0) {
+            return List.of();
+        }
+        if (data[0] != PACKED_IDS) {
+            return parseIds(new String(data, StandardCharsets.UTF_8));
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, 1, data.length - 1);
+        int count = getVarint(buffer);
+        List<Integer> ids = new ArrayList<>(count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += unzigzag(getVarint(buffer));
+            ids.add(previous);
+        }
+        return ids;
+    }
+
+    public static byte[] encodePoints(List<Point2D> points) {
+        int count = points == null ? 0 : points.size();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 5 + count * 16).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(PACKED_POINTS);
+        putVarint(buffer, count);
+        for (int i = 0; i < count; i++) {
+            Point2D point = points.get(i);
+            buffer.putDouble(point.getX());
+            buffer.putDouble(point.getY());
+        }
+        return trim(buffer);
+    }
+
+    public static List<Point2D> decodePoints(byte[] data) {
+        if (data == null || data.length == 0) {
+            return new ArrayList<>();
+        }
+        if (data[0] != PACKED_POINTS) {
+            return parsePoints(new String(data, StandardCharsets.UTF_8));
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, 1, data.length - 1).order(ByteOrder.LITTLE_ENDIAN);
+        int count = getVarint(buffer);
+        List<Point2D> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(new Point2D(buffer.getDouble(), buffer.getDouble()));
+        }
+        return points;
+    }
+
+    public static String formatIds(List<Integer> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < ids.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(ids.get(i));
+        }
+        return builder.toString();
+    }
+
+    public static List<Integer> parseIds(String value) {
+        if (value == null || value.isBlank()) {
+            return List.of();
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (String part : value.split(",")) {
+            try {
+                ids.add(Integer.parseInt(part.trim()));
+            } catch (NumberFormatException ignored) {
+                // ignore invalid entries
+            }
+        }
+        return ids;
+    }
+
+    public static String formatPoints(List<Point2D> points) {
+        if (points == null || points.isEmpty()) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < points.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            Point2D point = points.get(i);
+            builder.append(point.getX()).append(':').append(point.getY());
+        }
+        return builder.toString();
+    }
+
+    public static List<Point2D> parsePoints(String value) {
+        List<Point2D> points = new ArrayList<>();
+        if (value == null || value.isBlank()) {
+            return points;
+        }
+        for (String part : value.split(",")) {
+            String[] coords = part.trim().split(":");
+            if (coords.length != 2) {
+                continue;
+            }
+            try {
+                points.add(new Point2D(Double.parseDouble(coords[0]), Double.parseDouble(coords[1])));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return points;
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static byte[] trim(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(result);
+        return result;
+    }
+}
@@ -0,0 +1,123 @@
+package unze.ptf.woodcraft.woodcraft.util;
+
+import java.util.Arrays;
+
+public final class LongIntHashMap {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int threshold;
+    private int shift;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return used[slot(key)];
+    }
+
+    public int get(long key, int missingValue) {
+        int slot = slot(key);
+        return used[slot] ? values[slot] : missingValue;
+    }
+
+    public void put(long key, int value) {
+        int slot = slot(key);
+        if (!used[slot]) {
+            used[slot] = true;
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+        if (size > threshold) {
+            resize();
+        }
+    }
+
+    public boolean remove(long key) {
+        int slot = slot(key);
+        if (!used[slot]) {
+            return false;
+        }
+        used[slot] = false;
+        size--;
+        int mask = keys.length - 1;
+        int next = (slot + 1) & mask;
+        while (used[next]) {
+            long movedKey = keys[next];
+            int movedValue = values[next];
+            used[next] = false;
+            size--;
+            put(movedKey, movedValue);
+            next = (next + 1) & mask;
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    public long[] keys() {
+        long[] result = new long[size];
+        int index = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                result[index++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldKeys[i]);
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        size = 0;
+        threshold = (int) (capacity * LOAD_FACTOR);
+        shift = Long.numberOfLeadingZeros(capacity) + 1;
+    }
+}
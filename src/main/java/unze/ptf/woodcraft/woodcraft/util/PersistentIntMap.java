@@ -0,0 +1,186 @@
+package unze.ptf.woodcraft.woodcraft.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Immutable map from non-negative int keys to values, stored as a 32-way bitmapped trie. Every update copies only
+// the path to the changed key, so older versions stay valid and share the rest of the tree.
+public final class PersistentIntMap<V> {
+    public interface ChangeVisitor<V> {
+        void changed(int key, V before, V after);
+    }
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int TOP_SHIFT = 30;
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key < 0) {
+            return null;
+        }
+        Node node = root;
+        for (int shift = TOP_SHIFT; node != null; shift -= BITS) {
+            int bit = 1 << ((key >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[node.position(bit)];
+            if (shift == 0) {
+                return (V) slot;
+            }
+            node = (Node) slot;
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    public PersistentIntMap<V> put(int key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Key must not be negative: " + key);
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null");
+        }
+        V previous = get(key);
+        if (previous == value) {
+            return this;
+        }
+        return new PersistentIntMap<>(put(root, TOP_SHIFT, key, value), previous == null ? size + 1 : size);
+    }
+
+    public PersistentIntMap<V> remove(int key) {
+        if (get(key) == null) {
+            return this;
+        }
+        return new PersistentIntMap<>(remove(root, TOP_SHIFT, key), size - 1);
+    }
+
+    public void forEach(Consumer<? super V> action) {
+        if (root != null) {
+            forEach(root, TOP_SHIFT, action);
+        }
+    }
+
+    // Values in ascending key order.
+    public List<V> values() {
+        List<V> values = new ArrayList<>(size);
+        forEach(values::add);
+        return values;
+    }
+
+    // Reports every key whose value differs from the one in older, with null for the side that lacks the key.
+    // Subtrees both versions share are skipped, so the cost follows the number of edits, not the size of the map.
+    public void diff(PersistentIntMap<V> older, ChangeVisitor<? super V> visitor) {
+        if (root != older.root) {
+            diff(older.root, root, TOP_SHIFT, 0, visitor);
+        }
+    }
+
+    private static Node put(Node node, int shift, int key, Object value) {
+        int bit = 1 << ((key >>> shift) & MASK);
+        if (node == null) {
+            return new Node(bit, new Object[]{shift == 0 ? value : put(null, shift - BITS, key, value)});
+        }
+        int position = node.position(bit);
+        if ((node.bitmap & bit) == 0) {
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, position);
+            slots[position] = shift == 0 ? value : put(null, shift - BITS, key, value);
+            System.arraycopy(node.slots, position, slots, position + 1, node.slots.length - position);
+            return new Node(node.bitmap | bit, slots);
+        }
+        Object[] slots = node.slots.clone();
+        slots[position] = shift == 0 ? value : put((Node) slots[position], shift - BITS, key, value);
+        return new Node(node.bitmap, slots);
+    }
+
+    private static Node remove(Node node, int shift, int key) {
+        int bit = 1 << ((key >>> shift) & MASK);
+        int position = node.position(bit);
+        Object replacement = shift == 0 ? null : remove((Node) node.slots[position], shift - BITS, key);
+        if (replacement != null) {
+            Object[] slots = node.slots.clone();
+            slots[position] = replacement;
+            return new Node(node.bitmap, slots);
+        }
+        if (node.slots.length == 1) {
+            return null;
+        }
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, position);
+        System.arraycopy(node.slots, position + 1, slots, position, slots.length - position);
+        return new Node(node.bitmap & ~bit, slots);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void diff(Node before, Node after, int shift, int prefix, ChangeVisitor<? super V> visitor) {
+        int beforeBits = before == null ? 0 : before.bitmap;
+        int afterBits = after == null ? 0 : after.bitmap;
+        for (int bits = beforeBits | afterBits; bits != 0; bits &= bits - 1) {
+            int bit = bits & -bits;
+            Object left = (beforeBits & bit) == 0 ? null : before.slots[before.position(bit)];
+            Object right = (afterBits & bit) == 0 ? null : after.slots[after.position(bit)];
+            if (left == right) {
+                continue;
+            }
+            int key = prefix | (Integer.numberOfTrailingZeros(bit) << shift);
+            if (shift == 0) {
+                visitor.changed(key, (V) left, (V) right);
+            } else {
+                diff((Node) left, (Node) right, shift - BITS, key, visitor);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void forEach(Node node, int shift, Consumer<? super V> action) {
+        for (Object slot : node.slots) {
+            if (shift == 0) {
+                action.accept((V) slot);
+            } else {
+                forEach((Node) slot, shift - BITS, action);
+            }
+        }
+    }
+
+    private static final class Node {
+        private final int bitmap;
+        private final Object[] slots;
+
+        private Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private int position(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package unze.ptf.woodcraft.woodcraft.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+public final class RTree {
+    private static final int NODE_CAPACITY = 16;
+
+    private final double[][] levelBounds;
+    private final int[][] levelChildren;
+    private final int[] ids;
+
+    private RTree(double[][] levelBounds, int[][] levelChildren, int[] ids) {
+        this.levelBounds = levelBounds;
+        this.levelChildren = levelChildren;
+        this.ids = ids;
+    }
+
+    public static RTree pack(List<double[]> bounds) {
+        int count = bounds.size();
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> centerX(bounds.get(i))));
+        int leafCount = Math.max(1, (count + NODE_CAPACITY - 1) / NODE_CAPACITY);
+        int sliceSize = NODE_CAPACITY * (int) Math.ceil(Math.sqrt(leafCount));
+        for (int from = 0; from < count; from += sliceSize) {
+            Arrays.sort(order, from, Math.min(count, from + sliceSize),
+                    Comparator.comparingDouble(i -> centerY(bounds.get(i))));
+        }
+        int[] ids = new int[count];
+        double[] items = new double[count * 4];
+        for (int i = 0; i < count; i++) {
+            ids[i] = order[i];
+            System.arraycopy(bounds.get(order[i]), 0, items, i * 4, 4);
+        }
+
+        List<double[]> boundsByLevel = new ArrayList<>();
+        List<int[]> childrenByLevel = new ArrayList<>();
+        double[] current = items;
+        int currentCount = count;
+        do {
+            int parents = Math.max(1, (currentCount + NODE_CAPACITY - 1) / NODE_CAPACITY);
+            double[] parentBounds = new double[parents * 4];
+            int[] firstChild = new int[parents + 1];
+            for (int p = 0; p < parents; p++) {
+                int from = p * NODE_CAPACITY;
+                int to = Math.min(currentCount, from + NODE_CAPACITY);
+                firstChild[p] = from;
+                double minX = Double.POSITIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                for (int c = from; c < to; c++) {
+                    minX = Math.min(minX, current[c * 4]);
+                    minY = Math.min(minY, current[c * 4 + 1]);
+                    maxX = Math.max(maxX, current[c * 4 + 2]);
+                    maxY = Math.max(maxY, current[c * 4 + 3]);
+                }
+                parentBounds[p * 4] = minX;
+                parentBounds[p * 4 + 1] = minY;
+                parentBounds[p * 4 + 2] = maxX;
+                parentBounds[p * 4 + 3] = maxY;
+            }
+            firstChild[parents] = currentCount;
+            boundsByLevel.add(current);
+            childrenByLevel.add(firstChild);
+            current = parentBounds;
+            currentCount = parents;
+        } while (currentCount > 1);
+        boundsByLevel.add(current);
+
+        int levels = boundsByLevel.size();
+        double[][] levelBounds = new double[levels][];
+        int[][] levelChildren = new int[levels][];
+        for (int level = 0; level < levels; level++) {
+            levelBounds[level] = boundsByLevel.get(levels - 1 - level);
+            levelChildren[level] = level == levels - 1 ? null : childrenByLevel.get(levels - 2 - level);
+        }
+        return new RTree(levelBounds, levelChildren, ids);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public void search(double minX, double minY, double maxX, double maxY, IntConsumer consumer) {
+        if (ids.length == 0) {
+            return;
+        }
+        search(0, 0, minX, minY, maxX, maxY, consumer);
+    }
+
+    public void searchPoint(double x, double y, IntConsumer consumer) {
+        search(x, y, x, y, consumer);
+    }
+
+    private void search(int level, int index, double minX, double minY, double maxX, double maxY,
+                        IntConsumer consumer) {
+        double[] bounds = levelBounds[level];
+        int offset = index * 4;
+        if (bounds[offset] > maxX || bounds[offset + 2] < minX
+                || bounds[offset + 1] > maxY || bounds[offset + 3] < minY) {
+            return;
+        }
+        int[] children = levelChildren[level];
+        if (children == null) {
+            consumer.accept(ids[index]);
+            return;
+        }
+        for (int child = children[index]; child < children[index + 1]; child++) {
+            search(level + 1, child, minX, minY, maxX, maxY, consumer);
+        }
+    }
+
+    private static double centerX(double[] bounds) {
+        return (bounds[0] + bounds[2]) / 2;
+    }
+
+    private static double centerY(double[] bounds) {
+        return (bounds[1] + bounds[3]) / 2;
+    }
+}
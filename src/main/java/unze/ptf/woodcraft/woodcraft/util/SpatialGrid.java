@@ -0,0 +1,144 @@
+package unze.ptf.woodcraft.woodcraft.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+// Uniform hash grid over axis-aligned bounds keyed by int id. Unlike RTree it can be updated in place, so it suits
+// items that move while the user drags them. Items spanning too many cells are kept aside and scanned linearly.
+public final class SpatialGrid {
+    private static final int MAX_CELLS_PER_ITEM = 64;
+
+    private final double cellSize;
+    private final Map<Long, List<Integer>> cells = new HashMap<>();
+    private final Map<Integer, double[]> bounds = new HashMap<>();
+    private final Set<Integer> oversized = new LinkedHashSet<>();
+
+    public SpatialGrid(double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    public int size() {
+        return bounds.size();
+    }
+
+    public boolean contains(int id) {
+        return bounds.containsKey(id);
+    }
+
+    public void clear() {
+        cells.clear();
+        bounds.clear();
+        oversized.clear();
+    }
+
+    public void put(int id, double minX, double minY, double maxX, double maxY) {
+        double[] previous = bounds.get(id);
+        if (previous != null && previous[0] == minX && previous[1] == minY
+                && previous[2] == maxX && previous[3] == maxY) {
+            return;
+        }
+        remove(id);
+        double[] box = {minX, minY, maxX, maxY};
+        bounds.put(id, box);
+        int minCellX = cell(minX);
+        int minCellY = cell(minY);
+        int maxCellX = cell(maxX);
+        int maxCellY = cell(maxY);
+        if ((long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > MAX_CELLS_PER_ITEM) {
+            oversized.add(id);
+            return;
+        }
+        for (int cx = minCellX; cx <= maxCellX; cx++) {
+            for (int cy = minCellY; cy <= maxCellY; cy++) {
+                cells.computeIfAbsent(key(cx, cy), ignored -> new ArrayList<>(4)).add(id);
+            }
+        }
+    }
+
+    public void remove(int id) {
+        double[] box = bounds.remove(id);
+        if (box == null || oversized.remove(id)) {
+            return;
+        }
+        for (int cx = cell(box[0]); cx <= cell(box[2]); cx++) {
+            for (int cy = cell(box[1]); cy <= cell(box[3]); cy++) {
+                long key = key(cx, cy);
+                List<Integer> ids = cells.get(key);
+                if (ids != null) {
+                    ids.remove(Integer.valueOf(id));
+                    if (ids.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    // Reports every id whose bounds touch the query rectangle exactly once.
+    public void query(double minX, double minY, double maxX, double maxY, IntConsumer action) {
+        int minCellX = cell(minX);
+        int minCellY = cell(minY);
+        int maxCellX = cell(maxX);
+        int maxCellY = cell(maxY);
+        if ((long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > cells.size()) {
+            for (Map.Entry<Integer, double[]> entry : bounds.entrySet()) {
+                if (overlaps(entry.getValue(), minX, minY, maxX, maxY)) {
+                    action.accept(entry.getKey());
+                }
+            }
+            return;
+        }
+        for (int cx = minCellX; cx <= maxCellX; cx++) {
+            for (int cy = minCellY; cy <= maxCellY; cy++) {
+                List<Integer> ids = cells.get(key(cx, cy));
+                if (ids == null) {
+                    continue;
+                }
+                for (int id : ids) {
+                    double[] box = bounds.get(id);
+                    // An item spanning several cells is reported only from the first one the query shares with it.
+                    if (overlaps(box, minX, minY, maxX, maxY)
+                            && cx == Math.max(minCellX, cell(box[0]))
+                            && cy == Math.max(minCellY, cell(box[1]))) {
+                        action.accept(id);
+                    }
+                }
+            }
+        }
+        for (int id : oversized) {
+            if (overlaps(bounds.get(id), minX, minY, maxX, maxY)) {
+                action.accept(id);
+            }
+        }
+    }
+
+    // Reports every id whose bounds lie entirely inside the query rectangle.
+    public void queryEnclosed(double minX, double minY, double maxX, double maxY, IntConsumer action) {
+        query(minX, minY, maxX, maxY, id -> {
+            double[] box = bounds.get(id);
+            if (box[0] >= minX && box[1] >= minY && box[2] <= maxX && box[3] <= maxY) {
+                action.accept(id);
+            }
+        });
+    }
+
+    private static boolean overlaps(double[] box, double minX, double minY, double maxX, double maxY) {
+        return box[0] <= maxX && box[2] >= minX && box[1] <= maxY && box[3] >= minY;
+    }
+
+    private int cell(double value) {
+        return (int) Math.floor(value / cellSize);
+    }
+
+    private static long key(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,376 @@
+package unze.ptf.woodcraft.woodcraft.dao;
+
+import javafx.geometry.Point2D;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import unze.ptf.woodcraft.woodcraft.db.Database;
+import unze.ptf.woodcraft.woodcraft.db.DatabaseInitializer;
+import unze.ptf.woodcraft.woodcraft.model.Dimension;
+import unze.ptf.woodcraft.woodcraft.model.DimensionType;
+import unze.ptf.woodcraft.woodcraft.model.DocumentChanges;
+import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.model.Guide;
+import unze.ptf.woodcraft.woodcraft.model.NodePoint;
+import unze.ptf.woodcraft.woodcraft.model.Role;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentRepositoryTest {
+    @TempDir
+    Path home;
+
+    private String previousHome;
+    private int documentId;
+
+    @BeforeEach
+    void createDocument() {
+        Database.shutdown();
+        previousHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.toString());
+        DatabaseInitializer.initialize();
+        int userId = new UserDao().createUser("test", "-", Role.ADMIN);
+        documentId = new DocumentDao().createDocument(userId, "Test");
+    }
+
+    @AfterEach
+    void restoreHome() {
+        Database.shutdown();
+        System.setProperty("user.home", previousHome);
+    }
+
+    @Test
+    void failedBatchIsRetriedWithLaterWritesInOrder() {
+        FailingNodeDao nodeDao = new FailingNodeDao(2);
+        DocumentRepository repository = repository(nodeDao);
+        AtomicInteger errors = new AtomicInteger();
+        repository.setOnError(error -> errors.incrementAndGet());
+        repository.open(documentId);
+
+        NodePoint first = repository.createNode(1, 2);
+        NodePoint second = repository.createNode(3, 4);
+        repository.moveNodes(Map.of(first.getId(), new Point2D(5, 6)));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            while (new NodeDao().findByDocument(documentId).size() < 2) {
+                Thread.sleep(20);
+            }
+        });
+        repository.close();
+
+        List<NodePoint> stored = new NodeDao().findByDocument(documentId);
+        assertEquals(1, errors.get());
+        assertEquals(Set.of(first.getId(), second.getId()), ids(stored));
+        NodePoint moved = stored.stream().filter(node -> node.getId() == first.getId()).findFirst().orElseThrow();
+        assertEquals(5, moved.getXCm());
+        assertEquals(6, moved.getYCm());
+    }
+
+    @Test
+    void closeReportsBatchThatKeepsFailing() {
+        DocumentRepository repository = repository(new FailingNodeDao(Integer.MAX_VALUE));
+        repository.open(documentId);
+        repository.createNode(1, 2);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> assertThrows(IllegalStateException.class, repository::close));
+        assertTrue(new NodeDao().findByDocument(documentId).isEmpty());
+    }
+
+    @Test
+    void writeThatKeepsFailingIsDroppedSoLaterWritesLand() {
+        DocumentRepository repository = repository(new NodeDao() {
+            @Override
+            public void insertAllWithId(List<NodePoint> nodes) {
+                if (nodes.stream().anyMatch(node -> node.getXCm() == 13)) {
+                    throw new IllegalStateException("Failed to insert node");
+                }
+                super.insertAllWithId(nodes);
+            }
+        });
+        repository.open(documentId);
+        repository.createNode(13, 0);
+        NodePoint kept = repository.createNode(1, 2);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> assertThrows(IllegalStateException.class, repository::close));
+        assertEquals(Set.of(kept.getId()), ids(new NodeDao().findByDocument(documentId)));
+    }
+
+    @Test
+    void errorThrownByWriteDoesNotHangFlushOrClose() {
+        DocumentRepository repository = repository(new NodeDao() {
+            @Override
+            public void insertAllWithId(List<NodePoint> nodes) {
+                throw new StackOverflowError();
+            }
+        });
+        AtomicInteger errors = new AtomicInteger();
+        repository.setOnError(error -> errors.incrementAndGet());
+        repository.open(documentId);
+        repository.createNode(1, 2);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertThrows(IllegalStateException.class, repository::flush);
+            assertThrows(IllegalStateException.class, repository::close);
+        });
+        assertEquals(1, errors.get());
+    }
+
+    @Test
+    void idsStayUniqueAcrossBlocksAndDirectInserts() {
+        NodeDao nodeDao = new NodeDao();
+        DocumentRepository repository = repository(nodeDao);
+        repository.open(documentId);
+
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 600; i++) {
+            assertTrue(ids.add(repository.createNode(i, i).getId()));
+            if (i % 200 == 0) {
+                // A row inserted outside the repository must never take an id the repository hands out.
+                assertFalse(ids.contains(nodeDao.create(documentId, -1, -1).getId()));
+            }
+        }
+        repository.close();
+
+        assertEquals(603, nodeDao.findByDocument(documentId).size());
+    }
+
+    @Test
+    void undoingNodeDeleteRestoresItsEdgesInOneBatch() {
+        CountingEdgeDao edgeDao = new CountingEdgeDao();
+        DocumentRepository repository = new DocumentRepository(new NodeDao(), edgeDao, new GuideDao(),
+                new DimensionDao(), new ShapeDao(), new ManualShapeDao());
+        repository.open(documentId);
+        NodePoint hub = repository.createNode(0, 0);
+        Set<Integer> edgeIds = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            NodePoint spoke = repository.createNode(10 * i, 10);
+            edgeIds.add(repository.createEdge(hub.getId(), spoke.getId()).getId());
+        }
+        repository.beginEdit();
+        repository.deleteNode(hub.getId());
+        repository.flush();
+        edgeDao.batches.clear();
+
+        assertTrue(repository.undo().isPresent());
+        repository.flush();
+
+        assertEquals(List.of(5), edgeDao.batches);
+        assertEquals(edgeIds, edgeIds(new EdgeDao().findByDocument(documentId)));
+        assertTrue(ids(new NodeDao().findByDocument(documentId)).contains(hub.getId()));
+        repository.close();
+    }
+
+    @Test
+    void undoAndRedoOfMultiRowEditRestoreMemoryAndDatabase() {
+        DocumentRepository repository = repository(new NodeDao());
+        repository.open(documentId);
+        NodePoint first = repository.createNode(1, 1);
+        NodePoint second = repository.createNode(2, 2);
+        repository.beginEdit();
+        repository.moveNodes(Map.of(first.getId(), new Point2D(10, 11), second.getId(), new Point2D(20, 21)));
+
+        DocumentChanges undone = repository.undo().orElseThrow();
+        assertEquals(Set.of(first.getId(), second.getId()), undone.nodes().keySet());
+        assertTrue(undone.edges().isEmpty());
+        assertPosition(undone.nodes().get(first.getId()), 1, 1);
+        assertPositions(repository, Map.of(first.getId(), new Point2D(1, 1), second.getId(), new Point2D(2, 2)));
+
+        DocumentChanges redone = repository.redo().orElseThrow();
+        assertPosition(redone.nodes().get(second.getId()), 20, 21);
+        assertPositions(repository, Map.of(first.getId(), new Point2D(10, 11), second.getId(), new Point2D(20, 21)));
+        repository.close();
+    }
+
+    @Test
+    void undoingDeleteRestoresRowWithSameId() {
+        DocumentRepository repository = repository(new NodeDao());
+        repository.open(documentId);
+        NodePoint node = repository.createNode(3, 4);
+        repository.beginEdit();
+        repository.deleteNode(node.getId());
+        repository.flush();
+        assertTrue(new NodeDao().findByDocument(documentId).isEmpty());
+
+        DocumentChanges changes = repository.undo().orElseThrow();
+        repository.flush();
+
+        assertEquals(node.getId(), changes.nodes().get(node.getId()).getId());
+        assertEquals(Set.of(node.getId()), ids(repository.getNodes()));
+        assertEquals(Set.of(node.getId()), ids(new NodeDao().findByDocument(documentId)));
+        repository.close();
+    }
+
+    @Test
+    void historyKeepsOnlyTheNewestSteps() {
+        DocumentRepository repository = repository(new NodeDao());
+        repository.open(documentId);
+        int steps = DocumentRepository.HISTORY_LIMIT + 5;
+        for (int i = 0; i < steps; i++) {
+            repository.beginEdit();
+            repository.createGuide(Guide.Orientation.VERTICAL, i);
+        }
+
+        for (int i = 0; i < DocumentRepository.HISTORY_LIMIT; i++) {
+            assertTrue(repository.undo().isPresent());
+        }
+        assertTrue(repository.undo().isEmpty());
+        repository.flush();
+
+        assertEquals(5, repository.getGuides().size());
+        assertEquals(5, new GuideDao().findByDocument(documentId).size());
+        repository.close();
+    }
+
+    @Test
+    void newEditClearsRedo() {
+        DocumentRepository repository = repository(new NodeDao());
+        repository.open(documentId);
+        repository.beginEdit();
+        repository.createGuide(Guide.Orientation.HORIZONTAL, 1);
+        assertTrue(repository.undo().isPresent());
+
+        repository.beginEdit();
+        Guide kept = repository.createGuide(Guide.Orientation.HORIZONTAL, 2);
+
+        assertTrue(repository.redo().isEmpty());
+        repository.flush();
+        List<Guide> stored = new GuideDao().findByDocument(documentId);
+        assertEquals(1, stored.size());
+        assertEquals(kept.getId(), stored.get(0).getId());
+        repository.close();
+    }
+
+    @Test
+    void movingDimensionsWritesEndpointsAndOffsetsInOneBatch() {
+        CountingDimensionDao dimensionDao = new CountingDimensionDao();
+        DocumentRepository repository = new DocumentRepository(new NodeDao(), new EdgeDao(), new GuideDao(),
+                dimensionDao, new ShapeDao(), new ManualShapeDao());
+        repository.open(documentId);
+        List<Dimension> moved = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Dimension dimension = repository.createDimension(i, 0, i, 10, 1, 0, DimensionType.VERTICAL, null, null);
+            moved.add(new Dimension(dimension.getId(), documentId, i + 5, 2, i + 5, 12, 3, 4,
+                    DimensionType.VERTICAL, null, null));
+        }
+        repository.flush();
+
+        repository.moveDimensions(moved);
+        repository.flush();
+
+        assertEquals(List.of(3), dimensionDao.batches);
+        assertEquals(0, dimensionDao.singleUpdates.get());
+        for (Dimension stored : new DimensionDao().findByDocument(documentId)) {
+            Dimension expected = moved.stream().filter(dimension -> dimension.getId() == stored.getId())
+                    .findFirst().orElseThrow();
+            assertEquals(expected.getStartXCm(), stored.getStartXCm());
+            assertEquals(expected.getEndYCm(), stored.getEndYCm());
+            assertEquals(3, stored.getOffsetXCm());
+            assertEquals(4, stored.getOffsetYCm());
+        }
+        repository.close();
+    }
+
+    private DocumentRepository repository(NodeDao nodeDao) {
+        return new DocumentRepository(nodeDao, new EdgeDao(), new GuideDao(), new DimensionDao(), new ShapeDao(),
+                new ManualShapeDao());
+    }
+
+    private static Set<Integer> edgeIds(List<Edge> edges) {
+        Set<Integer> ids = new HashSet<>();
+        for (Edge edge : edges) {
+            ids.add(edge.getId());
+        }
+        return ids;
+    }
+
+    private void assertPositions(DocumentRepository repository, Map<Integer, Point2D> expected) {
+        repository.flush();
+        for (List<NodePoint> nodes : List.of(repository.getNodes(), new NodeDao().findByDocument(documentId))) {
+            assertEquals(expected.keySet(), ids(nodes));
+            for (NodePoint node : nodes) {
+                Point2D position = expected.get(node.getId());
+                assertPosition(node, position.getX(), position.getY());
+            }
+        }
+    }
+
+    private static void assertPosition(NodePoint node, double xCm, double yCm) {
+        assertEquals(xCm, node.getXCm());
+        assertEquals(yCm, node.getYCm());
+    }
+
+    private static Set<Integer> ids(List<NodePoint> nodes) {
+        Set<Integer> ids = new HashSet<>();
+        for (NodePoint node : nodes) {
+            ids.add(node.getId());
+        }
+        return ids;
+    }
+
+    private static final class FailingNodeDao extends NodeDao {
+        private final AtomicInteger remainingFailures;
+
+        private FailingNodeDao(int failures) {
+            this.remainingFailures = new AtomicInteger(failures);
+        }
+
+        @Override
+        public void insertAllWithId(List<NodePoint> nodes) {
+            if (remainingFailures.getAndDecrement() > 0) {
+                throw new IllegalStateException("Failed to insert node");
+            }
+            super.insertAllWithId(nodes);
+        }
+    }
+
+    private static final class CountingEdgeDao extends EdgeDao {
+        private final List<Integer> batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void insertAllWithId(List<Edge> edges) {
+            batches.add(edges.size());
+            super.insertAllWithId(edges);
+        }
+    }
+
+    private static final class CountingDimensionDao extends DimensionDao {
+        private final List<Integer> batches = new CopyOnWriteArrayList<>();
+        private final AtomicInteger singleUpdates = new AtomicInteger();
+
+        @Override
+        public void updateGeometry(Collection<Dimension> dimensions) {
+            batches.add(dimensions.size());
+            super.updateGeometry(dimensions);
+        }
+
+        @Override
+        public void updateOffset(int dimensionId, double offsetXCm, double offsetYCm) {
+            singleUpdates.incrementAndGet();
+            super.updateOffset(dimensionId, offsetXCm, offsetYCm);
+        }
+
+        @Override
+        public void updateEndpoints(Collection<Dimension> dimensions) {
+            singleUpdates.incrementAndGet();
+            super.updateEndpoints(dimensions);
+        }
+    }
+}
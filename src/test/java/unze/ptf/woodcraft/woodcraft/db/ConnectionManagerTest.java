@@ -0,0 +1,180 @@
+package unze.ptf.woodcraft.woodcraft.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionManagerTest {
+    @TempDir
+    Path directory;
+
+    private ConnectionManager manager;
+
+    @BeforeEach
+    void createTable() throws SQLException {
+        manager = new ConnectionManager("jdbc:sqlite:" + directory.resolve("test.db"), 2);
+        try (Connection connection = manager.writer(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE items (id INTEGER PRIMARY KEY, value INTEGER NOT NULL)");
+        }
+    }
+
+    @AfterEach
+    void shutdown() {
+        manager.shutdown();
+    }
+
+    @Test
+    void pragmasAreSetOnEveryConnection() throws SQLException {
+        try (Connection writer = manager.writer()) {
+            assertEquals("wal", queryString(writer, "PRAGMA journal_mode"));
+            assertEquals(1, queryInt(writer, "PRAGMA foreign_keys"));
+            assertEquals(0, queryInt(writer, "PRAGMA query_only"));
+        }
+        try (Connection reader = manager.reader()) {
+            assertEquals(1, queryInt(reader, "PRAGMA foreign_keys"));
+            assertEquals(1, queryInt(reader, "PRAGMA query_only"));
+            assertThrows(SQLException.class, () -> execute(reader, "INSERT INTO items(value) VALUES (1)"));
+        }
+    }
+
+    @Test
+    void readersAreReusedAndBounded() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            try (Connection reader = manager.reader()) {
+                queryInt(reader, "SELECT COUNT(*) FROM items");
+            }
+        }
+        assertEquals(2, manager.metrics().openConnections());
+
+        Connection first = manager.reader();
+        Connection second = manager.reader();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> third = executor.submit(() -> {
+                try (Connection reader = manager.reader()) {
+                    return queryInt(reader, "SELECT COUNT(*) FROM items");
+                }
+            });
+            Thread.sleep(200);
+            assertFalse(third.isDone());
+
+            first.close();
+            assertEquals(0, third.get(5, TimeUnit.SECONDS));
+        } finally {
+            second.close();
+            executor.shutdownNow();
+        }
+        assertEquals(3, manager.metrics().openConnections());
+    }
+
+    @Test
+    void returnedLeaseCannotBeUsed() throws SQLException {
+        Connection reader = manager.reader();
+        reader.close();
+        reader.close();
+
+        assertTrue(reader.isClosed());
+        assertThrows(SQLException.class, reader::createStatement);
+    }
+
+    @Test
+    void readInsideWriteSeesUncommittedRows() throws SQLException {
+        try (Connection writer = manager.writer()) {
+            writer.setAutoCommit(false);
+            execute(writer, "INSERT INTO items(value) VALUES (7)");
+            try (Connection reader = manager.reader()) {
+                assertEquals(1, queryInt(reader, "SELECT COUNT(*) FROM items"));
+            }
+            // Closing the outer lease rolls back the transaction that was left open.
+        }
+        try (Connection reader = manager.reader()) {
+            assertEquals(0, queryInt(reader, "SELECT COUNT(*) FROM items"));
+        }
+    }
+
+    @Test
+    void concurrentReadsAndWritesLoseNothing() {
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<?>> work = new ArrayList<>();
+                for (int thread = 0; thread < 8; thread++) {
+                    int base = thread * 250;
+                    work.add(executor.submit(() -> {
+                        for (int i = 0; i < 250; i++) {
+                            try (Connection writer = manager.writer();
+                                 PreparedStatement statement = writer.prepareStatement(
+                                         "INSERT INTO items(value) VALUES (?)")) {
+                                statement.setInt(1, base + i);
+                                statement.executeUpdate();
+                            }
+                            if (i % 10 == 0) {
+                                try (Connection reader = manager.reader()) {
+                                    queryInt(reader, "SELECT COUNT(*) FROM items");
+                                }
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : work) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            try (Connection reader = manager.reader()) {
+                assertEquals(2000, queryInt(reader, "SELECT COUNT(DISTINCT value) FROM items"));
+            }
+            assertTrue(manager.metrics().openConnections() <= 3);
+        });
+    }
+
+    @Test
+    void shutdownRefusesNewWrites() {
+        manager.shutdown();
+
+        assertThrows(SQLException.class, manager::writer);
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static int queryInt(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static String queryString(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+            assertTrue(resultSet.next());
+            return resultSet.getString(1);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package unze.ptf.woodcraft.woodcraft.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatabaseInitializerTest {
+    private static final int LATEST_VERSION = 4;
+
+    @TempDir
+    Path home;
+
+    private String previousHome;
+
+    @BeforeEach
+    void useTemporaryHome() {
+        Database.shutdown();
+        previousHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.toString());
+    }
+
+    @AfterEach
+    void restoreHome() {
+        Database.shutdown();
+        System.setProperty("user.home", previousHome);
+    }
+
+    @Test
+    void freshDatabaseReachesLatestVersion() throws SQLException {
+        DatabaseInitializer.initialize();
+
+        assertEquals(LATEST_VERSION, queryInt("PRAGMA user_version"));
+        assertEquals(1, queryInt("SELECT COUNT(*) FROM sqlite_master WHERE name = 'idx_edges_start_node'"));
+    }
+
+    @Test
+    void initializeTwiceLeavesSchemaUnchanged() throws SQLException {
+        DatabaseInitializer.initialize();
+        String schema = schema();
+
+        DatabaseInitializer.initialize();
+
+        assertEquals(LATEST_VERSION, queryInt("PRAGMA user_version"));
+        assertEquals(schema, schema());
+    }
+
+    @Test
+    void deletingDocumentCascadesToItsRows() throws SQLException {
+        DatabaseInitializer.initialize();
+        execute("INSERT INTO users(id, username, password_hash, role) VALUES (1, 'a', '-', 'ADMIN')",
+                "INSERT INTO documents(id, user_id, name) VALUES (1, 1, 'd')",
+                "INSERT INTO nodes(id, document_id, x_cm, y_cm) VALUES (1, 1, 0, 0), (2, 1, 1, 0)",
+                "INSERT INTO edges(document_id, start_node_id, end_node_id) VALUES (1, 1, 2)",
+                "INSERT INTO guides(document_id, orientation, position_cm) VALUES (1, 'HORIZONTAL', 5)",
+                "DELETE FROM documents WHERE id = 1");
+
+        assertEquals(0, queryInt("SELECT COUNT(*) FROM nodes"));
+        assertEquals(0, queryInt("SELECT COUNT(*) FROM edges"));
+        assertEquals(0, queryInt("SELECT COUNT(*) FROM guides"));
+    }
+
+    @Test
+    void legacyDatabaseIsMigratedInPlace() throws IOException, SQLException {
+        // A database from before versioning: no cascades, text geometry, missing columns and orphaned rows.
+        legacy("CREATE TABLE users (id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT UNIQUE NOT NULL, "
+                        + "password_hash TEXT NOT NULL, role TEXT NOT NULL)",
+                "CREATE TABLE documents (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER NOT NULL, "
+                        + "name TEXT NOT NULL)",
+                "CREATE TABLE nodes (id INTEGER PRIMARY KEY AUTOINCREMENT, document_id INTEGER NOT NULL, "
+                        + "x_cm REAL NOT NULL, y_cm REAL NOT NULL)",
+                "CREATE TABLE edges (id INTEGER PRIMARY KEY AUTOINCREMENT, document_id INTEGER NOT NULL, "
+                        + "start_node_id INTEGER NOT NULL, end_node_id INTEGER NOT NULL)",
+                "CREATE TABLE shapes (id INTEGER PRIMARY KEY AUTOINCREMENT, document_id INTEGER NOT NULL, "
+                        + "material_id INTEGER, quantity INTEGER NOT NULL DEFAULT 1, node_ids TEXT NOT NULL, "
+                        + "area_cm2 REAL NOT NULL, perimeter_cm REAL NOT NULL)",
+                "CREATE TABLE manual_shapes (id INTEGER PRIMARY KEY AUTOINCREMENT, document_id INTEGER NOT NULL, "
+                        + "points TEXT NOT NULL)",
+                "INSERT INTO users(id, username, password_hash, role) VALUES (1, 'a', '-', 'ADMIN')",
+                "INSERT INTO documents(id, user_id, name) VALUES (1, 1, 'd')",
+                "INSERT INTO nodes(id, document_id, x_cm, y_cm) VALUES (1, 1, 0, 0), (2, 1, 10, 0), (3, 1, 0, 10), "
+                        + "(4, 99, 0, 0), (9, 1, 5, 5)",
+                "DELETE FROM nodes WHERE id = 9",
+                "INSERT INTO edges(document_id, start_node_id, end_node_id) VALUES (1, 1, 2), (1, 2, 4)",
+                "INSERT INTO shapes(document_id, material_id, node_ids, area_cm2, perimeter_cm) "
+                        + "VALUES (1, 7, '1,2,3', 50, 34)",
+                "INSERT INTO manual_shapes(document_id, points) VALUES (1, '0.0:0.0,10.0:0.0,0.0:10.0')");
+
+        DatabaseInitializer.initialize();
+
+        assertEquals(LATEST_VERSION, queryInt("PRAGMA user_version"));
+        assertEquals(244, queryInt("SELECT width_cm FROM documents WHERE id = 1"));
+        assertEquals(3, queryInt("SELECT COUNT(*) FROM nodes"));
+        assertEquals(1, queryInt("SELECT COUNT(*) FROM edges"));
+        assertEquals(1, queryInt("SELECT COUNT(*) FROM shapes WHERE material_id IS NULL"));
+        assertEquals(0, queryInt("SELECT COUNT(*) FROM shapes WHERE typeof(node_ids) <> 'blob'"));
+        assertEquals(0, queryInt("SELECT COUNT(*) FROM manual_shapes WHERE typeof(points) <> 'blob'"));
+        // The rebuilt nodes table must not reuse the id of the row deleted before the migration.
+        execute("INSERT INTO nodes(document_id, x_cm, y_cm) VALUES (1, 1, 1)");
+        assertEquals(10, queryInt("SELECT MAX(id) FROM nodes"));
+    }
+
+    @Test
+    void newerSchemaVersionIsRejected() throws IOException, SQLException {
+        legacy("PRAGMA user_version = " + (LATEST_VERSION + 1));
+
+        assertThrows(IllegalStateException.class, DatabaseInitializer::initialize);
+    }
+
+    private void legacy(String... sql) throws IOException, SQLException {
+        Files.createDirectories(Database.getDatabasePath().getParent());
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + Database.getDatabasePath());
+             Statement statement = connection.createStatement()) {
+            for (String line : sql) {
+                statement.execute(line);
+            }
+        }
+    }
+
+    private void execute(String... sql) throws SQLException {
+        try (Connection connection = Database.getConnection(); Statement statement = connection.createStatement()) {
+            for (String line : sql) {
+                statement.execute(line);
+            }
+        }
+    }
+
+    private int queryInt(String sql) throws SQLException {
+        try (Connection connection = Database.getReadConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+
+    private String schema() throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Connection connection = Database.getReadConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT sql FROM sqlite_master ORDER BY name")) {
+            while (resultSet.next()) {
+                rows.add(resultSet.getString(1));
+            }
+        }
+        return String.join("\n", rows);
+    }
+}
@@ -0,0 +1,37 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class CompactGraphTest {
+    @Test
+    void cycleKeyIgnoresStartAndDirection() {
+        CompactGraph.CycleKey key = CompactGraph.cycleKey(List.of(4, 7, 2, 9));
+
+        assertArrayEquals(new int[] {2, 7, 4, 9}, key.nodes());
+        assertEquals(key, CompactGraph.cycleKey(List.of(2, 9, 4, 7)));
+        assertEquals(key, CompactGraph.cycleKey(List.of(9, 4, 7, 2)));
+        assertNotEquals(key, CompactGraph.cycleKey(List.of(2, 4, 7, 9)));
+    }
+
+    @Test
+    void collidingHashesStayDistinct() {
+        CompactGraph.CycleKey first = new CompactGraph.CycleKey(42, new int[] {1, 2, 3});
+        CompactGraph.CycleKey second = new CompactGraph.CycleKey(42, new int[] {1, 2, 4});
+        Map<CompactGraph.CycleKey, String> faces = new HashMap<>();
+
+        faces.put(first, "first");
+        faces.put(second, "second");
+
+        assertEquals(first.hashCode(), second.hashCode());
+        assertEquals(2, faces.size());
+        assertEquals("first", faces.get(new CompactGraph.CycleKey(42, new int[] {1, 2, 3})));
+    }
+}
@@ -0,0 +1,63 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import org.junit.jupiter.api.Test;
+import unze.ptf.woodcraft.woodcraft.model.Edge;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectivityIndexTest {
+    @Test
+    void addEdgeReportsWhetherItClosesACycle() {
+        ConnectivityIndex index = new ConnectivityIndex();
+
+        assertFalse(index.addEdge(new Edge(1, 1, 1, 2)));
+        assertFalse(index.addEdge(new Edge(2, 1, 2, 3)));
+        assertTrue(index.addEdge(new Edge(3, 1, 3, 1)));
+        assertEquals(List.of(1, 2, 3), index.path(1, 3));
+    }
+
+    @Test
+    void removingNonTreeEdgeKeepsComponents() {
+        ConnectivityIndex index = new ConnectivityIndex();
+        index.reset(List.of(new Edge(1, 1, 1, 2), new Edge(2, 1, 2, 3), new Edge(3, 1, 3, 1)));
+
+        index.removeEdge(3);
+
+        assertTrue(index.connected(1, 3));
+        assertEquals(List.of(1, 2, 3), index.path(1, 3));
+    }
+
+    @Test
+    void removingTreeEdgeSplitsOrReroutes() {
+        ConnectivityIndex index = new ConnectivityIndex();
+        index.reset(List.of(new Edge(1, 1, 1, 2), new Edge(2, 1, 2, 3), new Edge(3, 1, 3, 4),
+                new Edge(4, 1, 4, 1)));
+
+        index.removeEdge(2);
+        assertTrue(index.connected(2, 3));
+        assertEquals(List.of(2, 1, 4, 3), index.path(2, 3));
+
+        index.removeEdge(4);
+        assertFalse(index.connected(2, 3));
+        assertTrue(index.path(1, 4).isEmpty());
+
+        assertFalse(index.addEdge(new Edge(5, 1, 2, 3)));
+        assertEquals(List.of(1, 2, 3, 4), index.path(1, 4));
+    }
+
+    @Test
+    void detectAllCyclesReturnsShortestCycleThroughEachEdge() {
+        GeometryService geometryService = new GeometryService();
+        // Two unit squares sharing the edge 2-5; the outline 1-2-3-6-5-4 is never the shortest cycle.
+        List<Edge> edges = List.of(new Edge(1, 1, 1, 2), new Edge(2, 1, 2, 3), new Edge(3, 1, 4, 5),
+                new Edge(4, 1, 5, 6), new Edge(5, 1, 1, 4), new Edge(6, 1, 2, 5), new Edge(7, 1, 3, 6));
+
+        List<List<Integer>> cycles = geometryService.detectAllCycles(edges);
+
+        assertEquals(List.of(List.of(1, 4, 5, 2), List.of(2, 5, 6, 3)), cycles);
+    }
+}
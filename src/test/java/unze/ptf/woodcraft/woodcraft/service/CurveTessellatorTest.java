@@ -0,0 +1,88 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import javafx.geometry.Point2D;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CurveTessellatorTest {
+    private static final double KAPPA = 0.5522847498307936;
+
+    @Test
+    void quarterCircleAreaIsCloseAtGeometryTolerance() {
+        CurveTessellator tessellator = new CurveTessellator();
+        double r = 50;
+        List<Point2D> points = new ArrayList<>();
+        points.add(new Point2D(0, 0));
+        points.add(new Point2D(r, 0));
+
+        tessellator.appendCubic(points, 1, new Point2D(r, 0), new Point2D(r, KAPPA * r), new Point2D(KAPPA * r, r),
+                new Point2D(0, r), CurveTessellator.GEOMETRY_TOLERANCE_CM);
+
+        assertEquals(Math.PI * r * r / 4, new GeometryService().computeAreaCm2(points), Math.PI * r * r / 4 * 5e-4);
+    }
+
+    @Test
+    void straightEdgesNeedOneSegment() {
+        CurveTessellator tessellator = new CurveTessellator();
+
+        assertEquals(1, tessellator.segmentCount(new Point2D(0, 0), new Point2D(10, 5), new Point2D(20, 10),
+                new Point2D(30, 15), CurveTessellator.GEOMETRY_TOLERANCE_CM));
+    }
+
+    @Test
+    void tighterToleranceNeedsMoreSegments() {
+        CurveTessellator tessellator = new CurveTessellator();
+        Point2D p0 = new Point2D(0, 0);
+        Point2D p1 = new Point2D(0, 20);
+        Point2D p2 = new Point2D(20, 20);
+        Point2D p3 = new Point2D(20, 0);
+
+        int coarse = tessellator.segmentCount(p0, p1, p2, p3, 1);
+        int fine = tessellator.segmentCount(p0, p1, p2, p3, 0.01);
+
+        assertTrue(fine > coarse, coarse + " vs " + fine);
+        assertEquals(256, tessellator.segmentCount(p0, p1, p2, p3, 1e-9));
+    }
+
+    @Test
+    void reversedEdgeReusesCachedSamples() {
+        CurveTessellator tessellator = new CurveTessellator();
+        Point2D p0 = new Point2D(0, 0);
+        Point2D p1 = new Point2D(0, 20);
+        Point2D p2 = new Point2D(20, 20);
+        Point2D p3 = new Point2D(20, 0);
+        List<Point2D> forward = new ArrayList<>();
+        List<Point2D> backward = new ArrayList<>();
+
+        tessellator.appendCubic(forward, 7, p0, p1, p2, p3, 0.1);
+        tessellator.appendCubic(backward, 7, p3, p2, p1, p0, 0.1);
+
+        Collections.reverse(backward);
+        assertEquals(forward, backward);
+        for (int i = 1; i < forward.size() - 1; i++) {
+            assertSame(forward.get(i), backward.get(i));
+        }
+    }
+
+    @Test
+    void movedControlsRebuildTheCachedEdge() {
+        CurveTessellator tessellator = new CurveTessellator();
+        List<Point2D> before = new ArrayList<>();
+        List<Point2D> after = new ArrayList<>();
+
+        tessellator.appendCubic(before, 3, new Point2D(0, 0), new Point2D(0, 20), new Point2D(20, 20),
+                new Point2D(20, 0), 0.1);
+        tessellator.appendCubic(after, 3, new Point2D(0, 0), new Point2D(0, 40), new Point2D(20, 40),
+                new Point2D(20, 0), 0.1);
+
+        double peak = after.stream().mapToDouble(Point2D::getY).max().orElseThrow();
+        assertEquals(30, peak, 0.1);
+    }
+}
@@ -0,0 +1,475 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import org.junit.jupiter.api.Test;
+import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.model.NodePoint;
+import unze.ptf.woodcraft.woodcraft.model.ShapePolygon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class PlanarFaceExtractorTest {
+    private static final double EPSILON = 1e-6;
+
+    private final List<NodePoint> nodes = new ArrayList<>();
+    private final List<Edge> edges = new ArrayList<>();
+    private int nextEdgeId = 1;
+
+    @Test
+    void gridMatchesBaseline() {
+        grid(4, 4, 10);
+        assertMatchesBaseline(9);
+    }
+
+    @Test
+    void nestedSquaresMatchBaseline() {
+        square(1, 0, 0, 40);
+        square(5, 10, 10, 20);
+        square(9, 15, 15, 10);
+        // The outer outlines enclose separate components, so only the innermost region survives the filter.
+        assertMatchesBaseline(1);
+    }
+
+    @Test
+    void nestedSquaresInsideGridCellMatchBaseline() {
+        grid(3, 3, 30);
+        square(100, 32, 32, 6);
+        assertMatchesBaseline(4);
+    }
+
+    @Test
+    void curvedLensMatchesBaseline() {
+        node(1, 0, 0);
+        node(2, 10, 0);
+        node(3, 5, 0);
+        node(4, 5, -6);
+        curve(1, 2, 3, 6, 7, 6);
+        edge(1, 3);
+        edge(3, 2);
+        curve(1, 4, 1, -4, 3, -6);
+        curve(4, 2, 7, -6, 9, -4);
+        assertMatchesBaseline(2);
+    }
+
+    @Test
+    void curvesLeavingTangentToStraightEdgesMatchBaseline() {
+        node(1, 0, 0);
+        node(2, 10, 0);
+        node(3, 10, 10);
+        node(4, 0, 10);
+        edge(1, 2);
+        edge(2, 3);
+        edge(3, 4);
+        edge(4, 1);
+        // Both curves leave node 1 almost along the straight edge to node 2, one on each side of it.
+        node(5, 10, -6);
+        curve(1, 3, 8, 0.5, 9, 4);
+        curve(1, 5, 5, -0.5, 8, -3);
+        edge(5, 2);
+        assertMatchesBaseline(3);
+    }
+
+    @Test
+    void danglingSpursMatchBaseline() {
+        grid(3, 3, 10);
+        node(50, 5, 5);
+        node(51, 7, 6);
+        node(52, -10, -10);
+        node(53, 25, 30);
+        edge(1, 50);
+        edge(50, 51);
+        edge(1, 52);
+        edge(9, 53);
+        assertMatchesBaseline(4);
+    }
+
+    @Test
+    void randomGridsMatchBaseline() {
+        Random random = new Random(42);
+        for (int round = 0; round < 150; round++) {
+            nodes.clear();
+            edges.clear();
+            grid(4, 4, 10);
+            edges.removeIf(edge -> random.nextDouble() < 0.3);
+            List<Integer> anchors = new ArrayList<>();
+            for (int id = 1; id <= 16; id++) {
+                anchors.add(id);
+            }
+            Collections.shuffle(anchors, random);
+            for (int spur = 0; spur < 3; spur++) {
+                int id = 200 + spur;
+                int anchor = anchors.get(spur);
+                NodePoint base = findNode(anchor);
+                node(id, base.getXCm() + 1 + random.nextInt(3), base.getYCm() + 2 + random.nextInt(3));
+                edge(anchor, id);
+            }
+            assertMatchesBaseline(-1);
+        }
+    }
+
+    @Test
+    void updateAfterAddingNodeMatchesFreshExtraction() {
+        grid(3, 3, 10);
+        PlanarFaceExtractor extractor = new PlanarFaceExtractor();
+        Set<List<Integer>> faces = directed(extractor.update(CompactGraph.of(nodes, edges)).added());
+
+        node(20, 25, 5);
+        node(21, 25, 15);
+        edge(3, 20);
+        edge(20, 21);
+        edge(21, 6);
+        assertUpdateMatchesFresh(extractor, faces);
+    }
+
+    @Test
+    void updateAfterRemovingEdgeMatchesFreshExtraction() {
+        grid(3, 3, 10);
+        PlanarFaceExtractor extractor = new PlanarFaceExtractor();
+        Set<List<Integer>> faces = directed(extractor.update(CompactGraph.of(nodes, edges)).added());
+
+        edges.removeIf(edge -> edge.getStartNodeId() == 5 && edge.getEndNodeId() == 6);
+        faces = assertUpdateMatchesFresh(extractor, faces);
+
+        edges.removeIf(edge -> edge.getStartNodeId() == 2 && edge.getEndNodeId() == 5);
+        assertUpdateMatchesFresh(extractor, faces);
+    }
+
+    @Test
+    void updateAfterMovingNodeMatchesFreshExtraction() {
+        grid(3, 3, 10);
+        PlanarFaceExtractor extractor = new PlanarFaceExtractor();
+        Set<List<Integer>> faces = directed(extractor.update(CompactGraph.of(nodes, edges)).added());
+
+        nodes.replaceAll(node -> node.getId() == 5 ? new NodePoint(5, 1, 14, 6) : node);
+        faces = assertUpdateMatchesFresh(extractor, faces);
+
+        // Dragging the centre past a neighbour's row reorders the edges around it.
+        nodes.replaceAll(node -> node.getId() == 5 ? new NodePoint(5, 1, 12, 25) : node);
+        assertUpdateMatchesFresh(extractor, faces);
+    }
+
+    @Test
+    void updateWithUnchangedGraphReportsNoChanges() {
+        grid(3, 3, 10);
+        PlanarFaceExtractor extractor = new PlanarFaceExtractor();
+        extractor.update(CompactGraph.of(nodes, edges));
+
+        PlanarFaceExtractor.FaceDelta delta = extractor.update(CompactGraph.of(nodes, edges));
+
+        assertTrue(delta.removed().isEmpty());
+        assertTrue(delta.added().isEmpty());
+    }
+
+    @Test
+    void parallelBuildMatchesSequentialBuild() {
+        Random random = new Random(8);
+        grid(36, 36, 10);
+        edges.removeIf(edge -> random.nextDouble() < 0.05);
+        // Separate components are walked on different threads.
+        for (int i = 0; i < 20; i++) {
+            square(5000 + i * 4, 400 + i * 20, 0, 10);
+        }
+        CompactGraph graph = CompactGraph.of(nodes, edges);
+        assertTrue(graph.edgeCount() >= PlanarFaceExtractor.PARALLEL_EDGE_THRESHOLD);
+        PlanarFaceExtractor parallel = new PlanarFaceExtractor();
+        PlanarFaceExtractor sequential = new PlanarFaceExtractor();
+        sequential.setParallel(false);
+
+        Set<List<Integer>> faces = directed(parallel.extractFaces(graph));
+        assertEquals(directed(sequential.extractFaces(graph)), faces);
+
+        GeometryService parallelService = new GeometryService();
+        GeometryService sequentialService = new GeometryService();
+        sequentialService.setParallelShapeBuilding(false);
+        assertEquals(shapeKeys(sequentialService.buildShapes(1, nodes, edges)),
+                shapeKeys(parallelService.buildShapes(1, nodes, edges)));
+
+        // A parallel build leaves the extractor ready for incremental updates.
+        nodes.replaceAll(node -> node.getId() == 40 ? new NodePoint(40, 1, 43, 12) : node);
+        assertUpdateMatchesFresh(parallel, faces);
+    }
+
+    private Set<List<Integer>> shapeKeys(List<ShapePolygon> shapes) {
+        Set<List<Integer>> keys = new HashSet<>();
+        for (ShapePolygon shape : shapes) {
+            keys.add(undirectedKey(shape.getNodeIds()));
+        }
+        return keys;
+    }
+
+    private Set<List<Integer>> assertUpdateMatchesFresh(PlanarFaceExtractor extractor, Set<List<Integer>> faces) {
+        CompactGraph graph = CompactGraph.of(nodes, edges);
+        PlanarFaceExtractor.FaceDelta delta = extractor.update(graph);
+        Set<List<Integer>> updated = new HashSet<>(faces);
+        for (List<Integer> removed : delta.removed()) {
+            assertTrue(updated.remove(directedKey(removed)), "removed face was not present: " + removed);
+        }
+        for (List<Integer> added : delta.added()) {
+            assertTrue(updated.add(directedKey(added)), "added face was already present: " + added);
+        }
+        assertEquals(directed(new PlanarFaceExtractor().extractFaces(graph)), updated);
+        return updated;
+    }
+
+    private void assertMatchesBaseline(int expectedCount) {
+        GeometryService geometryService = new GeometryService();
+        geometryService.setParallelShapeBuilding(false);
+        Set<List<Integer>> actual = new HashSet<>();
+        for (ShapePolygon shape : geometryService.buildShapes(1, nodes, edges)) {
+            assertTrue(actual.add(undirectedKey(shape.getNodeIds())), "duplicate shape: " + shape.getNodeIds());
+        }
+        Set<List<Integer>> expected = baselineRegions();
+        assertEquals(expected, actual);
+        if (expectedCount >= 0) {
+            assertEquals(expectedCount, actual.size());
+        }
+    }
+
+    // The pre-extractor algorithm: enumerate every simple cycle by DFS, then keep the cycles that no other cycle
+    // reaches into. Those are exactly the minimal regions; unions of adjacent regions and outlines around a
+    // nested component fall out.
+    private Set<List<Integer>> baselineRegions() {
+        Map<Integer, List<Integer>> adjacency = new HashMap<>();
+        Map<Long, Edge> edgeMap = new HashMap<>();
+        for (Edge edge : edges) {
+            if (edgeMap.putIfAbsent(CompactGraph.pairKey(edge.getStartNodeId(), edge.getEndNodeId()), edge) != null) {
+                continue;
+            }
+            adjacency.computeIfAbsent(edge.getStartNodeId(), key -> new ArrayList<>()).add(edge.getEndNodeId());
+            adjacency.computeIfAbsent(edge.getEndNodeId(), key -> new ArrayList<>()).add(edge.getStartNodeId());
+        }
+        Map<List<Integer>, List<Integer>> cycles = new HashMap<>();
+        for (NodePoint node : nodes) {
+            List<Integer> path = new ArrayList<>();
+            path.add(node.getId());
+            dfsCycles(node.getId(), node.getId(), adjacency, path, cycles);
+        }
+
+        Set<Integer> cycleNodes = new LinkedHashSet<>();
+        Set<Long> cycleEdges = new LinkedHashSet<>();
+        for (List<Integer> cycle : cycles.values()) {
+            for (int i = 0; i < cycle.size(); i++) {
+                cycleNodes.add(cycle.get(i));
+                cycleEdges.add(CompactGraph.pairKey(cycle.get(i), cycle.get((i + 1) % cycle.size())));
+            }
+        }
+        List<double[]> probes = new ArrayList<>();
+        for (int nodeId : cycleNodes) {
+            NodePoint node = findNode(nodeId);
+            probes.add(new double[] {node.getXCm(), node.getYCm()});
+        }
+        for (long pair : cycleEdges) {
+            Edge edge = edgeMap.get(pair);
+            List<double[]> samples = sampleEdge(edge, edge.getStartNodeId(), edge.getEndNodeId());
+            if (samples.size() > 2) {
+                probes.addAll(samples.subList(1, samples.size() - 1));
+            } else {
+                probes.add(new double[] {(samples.get(0)[0] + samples.get(1)[0]) / 2,
+                        (samples.get(0)[1] + samples.get(1)[1]) / 2});
+            }
+        }
+
+        Set<List<Integer>> regions = new HashSet<>();
+        for (Map.Entry<List<Integer>, List<Integer>> entry : cycles.entrySet()) {
+            List<double[]> polygon = sampleCycle(entry.getValue(), edgeMap);
+            if (Math.abs(signedArea(polygon)) < EPSILON) {
+                continue;
+            }
+            boolean minimal = true;
+            for (double[] probe : probes) {
+                if (strictlyInside(polygon, probe)) {
+                    minimal = false;
+                    break;
+                }
+            }
+            if (minimal) {
+                regions.add(entry.getKey());
+            }
+        }
+        return regions;
+    }
+
+    private void dfsCycles(int start, int current, Map<Integer, List<Integer>> adjacency, List<Integer> path,
+                           Map<List<Integer>, List<Integer>> cycles) {
+        for (int neighbor : adjacency.getOrDefault(current, List.of())) {
+            if (neighbor == start && path.size() >= 3) {
+                cycles.putIfAbsent(undirectedKey(path), new ArrayList<>(path));
+            } else if (neighbor > start && !path.contains(neighbor)) {
+                path.add(neighbor);
+                dfsCycles(start, neighbor, adjacency, path, cycles);
+                path.remove(path.size() - 1);
+            }
+        }
+    }
+
+    private List<double[]> sampleCycle(List<Integer> cycle, Map<Long, Edge> edgeMap) {
+        List<double[]> points = new ArrayList<>();
+        for (int i = 0; i < cycle.size(); i++) {
+            int from = cycle.get(i);
+            int to = cycle.get((i + 1) % cycle.size());
+            List<double[]> samples = sampleEdge(edgeMap.get(CompactGraph.pairKey(from, to)), from, to);
+            points.addAll(samples.subList(0, samples.size() - 1));
+        }
+        return points;
+    }
+
+    private List<double[]> sampleEdge(Edge edge, int from, int to) {
+        NodePoint start = findNode(from);
+        NodePoint end = findNode(to);
+        List<double[]> points = new ArrayList<>();
+        if (edge.getControlStartXCm() == null) {
+            points.add(new double[] {start.getXCm(), start.getYCm()});
+            points.add(new double[] {end.getXCm(), end.getYCm()});
+            return points;
+        }
+        boolean forward = edge.getStartNodeId() == from;
+        double c1x = forward ? edge.getControlStartXCm() : edge.getControlEndXCm();
+        double c1y = forward ? edge.getControlStartYCm() : edge.getControlEndYCm();
+        double c2x = forward ? edge.getControlEndXCm() : edge.getControlStartXCm();
+        double c2y = forward ? edge.getControlEndYCm() : edge.getControlStartYCm();
+        int segments = 64;
+        for (int i = 0; i <= segments; i++) {
+            double t = (double) i / segments;
+            double u = 1 - t;
+            double x = u * u * u * start.getXCm() + 3 * u * u * t * c1x + 3 * u * t * t * c2x + t * t * t * end.getXCm();
+            double y = u * u * u * start.getYCm() + 3 * u * u * t * c1y + 3 * u * t * t * c2y + t * t * t * end.getYCm();
+            points.add(new double[] {x, y});
+        }
+        return points;
+    }
+
+    private double signedArea(List<double[]> polygon) {
+        double sum = 0;
+        for (int i = 0; i < polygon.size(); i++) {
+            double[] current = polygon.get(i);
+            double[] next = polygon.get((i + 1) % polygon.size());
+            sum += current[0] * next[1] - next[0] * current[1];
+        }
+        return sum / 2;
+    }
+
+    private boolean strictlyInside(List<double[]> polygon, double[] point) {
+        boolean inside = false;
+        for (int i = 0, j = polygon.size() - 1; i < polygon.size(); j = i++) {
+            double[] a = polygon.get(i);
+            double[] b = polygon.get(j);
+            if (distanceToSegment(point, a, b) < 1e-3) {
+                return false;
+            }
+            if ((a[1] > point[1]) != (b[1] > point[1])
+                    && point[0] < (b[0] - a[0]) * (point[1] - a[1]) / (b[1] - a[1]) + a[0]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    private double distanceToSegment(double[] point, double[] a, double[] b) {
+        double dx = b[0] - a[0];
+        double dy = b[1] - a[1];
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0
+                : Math.max(0, Math.min(1, ((point[0] - a[0]) * dx + (point[1] - a[1]) * dy) / lengthSquared));
+        return Math.hypot(point[0] - (a[0] + t * dx), point[1] - (a[1] + t * dy));
+    }
+
+    private Set<List<Integer>> directed(List<List<Integer>> faces) {
+        Set<List<Integer>> keys = new HashSet<>();
+        for (List<Integer> face : faces) {
+            assertTrue(keys.add(directedKey(face)), "face reported twice: " + face);
+        }
+        return keys;
+    }
+
+    // Rotation only: a simple cycle bounds one face on each side, and the walk direction tells them apart.
+    private static List<Integer> directedKey(List<Integer> cycle) {
+        int start = 0;
+        for (int i = 1; i < cycle.size(); i++) {
+            if (cycle.get(i) < cycle.get(start)) {
+                start = i;
+            }
+        }
+        List<Integer> key = new ArrayList<>(cycle.size());
+        for (int i = 0; i < cycle.size(); i++) {
+            key.add(cycle.get((start + i) % cycle.size()));
+        }
+        return key;
+    }
+
+    private static List<Integer> undirectedKey(List<Integer> cycle) {
+        List<Integer> forward = directedKey(cycle);
+        List<Integer> backward = new ArrayList<>(forward.size());
+        backward.add(forward.get(0));
+        for (int i = forward.size() - 1; i > 0; i--) {
+            backward.add(forward.get(i));
+        }
+        for (int i = 0; i < forward.size(); i++) {
+            int compare = Integer.compare(forward.get(i), backward.get(i));
+            if (compare != 0) {
+                return compare < 0 ? forward : backward;
+            }
+        }
+        return forward;
+    }
+
+    private void grid(int columns, int rows, double spacing) {
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                node(row * columns + column + 1, column * spacing, row * spacing);
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int id = row * columns + column + 1;
+                if (column + 1 < columns) {
+                    edge(id, id + 1);
+                }
+                if (row + 1 < rows) {
+                    edge(id, id + columns);
+                }
+            }
+        }
+    }
+
+    private void square(int firstId, double x, double y, double size) {
+        node(firstId, x, y);
+        node(firstId + 1, x + size, y);
+        node(firstId + 2, x + size, y + size);
+        node(firstId + 3, x, y + size);
+        for (int i = 0; i < 4; i++) {
+            edge(firstId + i, firstId + (i + 1) % 4);
+        }
+    }
+
+    private void node(int id, double x, double y) {
+        nodes.add(new NodePoint(id, 1, x, y));
+    }
+
+    private void edge(int start, int end) {
+        edges.add(new Edge(nextEdgeId++, 1, start, end));
+    }
+
+    private void curve(int start, int end, double c1x, double c1y, double c2x, double c2y) {
+        edges.add(new Edge(nextEdgeId++, 1, start, end, c1x, c1y, c2x, c2y));
+    }
+
+    private NodePoint findNode(int id) {
+        for (NodePoint node : nodes) {
+            if (node.getId() == id) {
+                return node;
+            }
+        }
+        return fail("unknown node " + id);
+    }
+}
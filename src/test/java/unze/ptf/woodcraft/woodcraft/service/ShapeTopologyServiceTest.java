@@ -0,0 +1,142 @@
+package unze.ptf.woodcraft.woodcraft.service;
+
+import org.junit.jupiter.api.Test;
+import unze.ptf.woodcraft.woodcraft.model.Edge;
+import unze.ptf.woodcraft.woodcraft.model.NodePoint;
+import unze.ptf.woodcraft.woodcraft.model.ShapePolygon;
+import unze.ptf.woodcraft.woodcraft.util.PersistentIntMap;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShapeTopologyServiceTest {
+    private PersistentIntMap<NodePoint> nodes = PersistentIntMap.empty();
+    private PersistentIntMap<Edge> edges = PersistentIntMap.empty();
+    private int nextEdgeId = 1;
+
+    @Test
+    void editsMatchAFreshBuild() {
+        ShapeTopologyService topology = new ShapeTopologyService(new GeometryService());
+        grid(4, 4, 10);
+        Set<CompactGraph.CycleKey> shapes = keys(topology, topology.update(1, nodes, edges));
+        assertEquals(9, shapes.size());
+
+        // A square inside the middle cell hides the cell around it.
+        node(100, 13, 13);
+        node(101, 17, 13);
+        node(102, 17, 17);
+        node(103, 13, 17);
+        edge(100, 101);
+        edge(101, 102);
+        edge(102, 103);
+        edge(103, 100);
+        shapes = apply(topology, shapes);
+        assertEquals(9, shapes.size());
+
+        nodes = nodes.put(6, new NodePoint(6, 1, 12, 11));
+        shapes = apply(topology, shapes);
+
+        removeEdge(6, 7);
+        shapes = apply(topology, shapes);
+        assertEquals(8, shapes.size());
+    }
+
+    @Test
+    void randomEditsMatchAFreshBuild() {
+        Random random = new Random(5);
+        ShapeTopologyService topology = new ShapeTopologyService(new GeometryService());
+        grid(5, 5, 10);
+        Set<CompactGraph.CycleKey> shapes = keys(topology, topology.update(1, nodes, edges));
+        for (int round = 0; round < 60; round++) {
+            int nodeId = 1 + random.nextInt(25);
+            NodePoint node = nodes.get(nodeId);
+            if (random.nextBoolean()) {
+                nodes = nodes.put(nodeId, new NodePoint(nodeId, 1, node.getXCm() + random.nextInt(5) - 2,
+                        node.getYCm() + random.nextInt(5) - 2));
+            } else {
+                List<Edge> all = edges.values();
+                Edge edge = all.get(random.nextInt(all.size()));
+                edges = edges.remove(edge.getId());
+                if (random.nextBoolean()) {
+                    edge(edge.getStartNodeId(), edge.getEndNodeId());
+                }
+            }
+            shapes = apply(topology, shapes);
+        }
+    }
+
+    @Test
+    void unchangedDocumentReportsNothing() {
+        ShapeTopologyService topology = new ShapeTopologyService(new GeometryService());
+        grid(3, 3, 10);
+        topology.update(1, nodes, edges);
+
+        assertTrue(topology.update(1, nodes, edges).isEmpty());
+    }
+
+    private Set<CompactGraph.CycleKey> apply(ShapeTopologyService topology, Set<CompactGraph.CycleKey> before) {
+        ShapeTopologyService.ShapeChanges changes = topology.update(1, nodes, edges);
+        Set<CompactGraph.CycleKey> after = new HashSet<>(before);
+        for (ShapePolygon shape : changes.removed()) {
+            assertTrue(after.remove(CompactGraph.cycleKey(shape.getNodeIds())), "not shown: " + shape.getNodeIds());
+        }
+        for (ShapePolygon shape : changes.added()) {
+            assertTrue(after.add(CompactGraph.cycleKey(shape.getNodeIds())), "shown twice: " + shape.getNodeIds());
+        }
+        ShapeTopologyService fresh = new ShapeTopologyService(new GeometryService());
+        fresh.update(1, nodes, edges);
+        assertEquals(keys(fresh.getShapes()), after);
+        assertEquals(after, keys(topology.getShapes()));
+        return after;
+    }
+
+    private Set<CompactGraph.CycleKey> keys(ShapeTopologyService topology, ShapeTopologyService.ShapeChanges changes) {
+        assertEquals(keys(topology.getShapes()), keys(changes.added()));
+        return keys(changes.added());
+    }
+
+    private Set<CompactGraph.CycleKey> keys(List<ShapePolygon> shapes) {
+        Set<CompactGraph.CycleKey> keys = new HashSet<>();
+        for (ShapePolygon shape : shapes) {
+            keys.add(CompactGraph.cycleKey(shape.getNodeIds()));
+        }
+        return keys;
+    }
+
+    private void grid(int columns, int rows, double spacing) {
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int id = row * columns + column + 1;
+                node(id, column * spacing, row * spacing);
+                if (column > 0) {
+                    edge(id - 1, id);
+                }
+                if (row > 0) {
+                    edge(id - columns, id);
+                }
+            }
+        }
+    }
+
+    private void node(int id, double x, double y) {
+        nodes = nodes.put(id, new NodePoint(id, 1, x, y));
+    }
+
+    private void edge(int start, int end) {
+        int id = nextEdgeId++;
+        edges = edges.put(id, new Edge(id, 1, start, end));
+    }
+
+    private void removeEdge(int start, int end) {
+        for (Edge edge : edges.values()) {
+            if (edge.getStartNodeId() == start && edge.getEndNodeId() == end) {
+                edges = edges.remove(edge.getId());
+            }
+        }
+    }
+}
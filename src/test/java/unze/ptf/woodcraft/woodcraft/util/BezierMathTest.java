@@ -0,0 +1,87 @@
+package unze.ptf.woodcraft.woodcraft.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BezierMathTest {
+    private static final double KAPPA = 0.5522847498307936;
+
+    @Test
+    void straightControlsMatchPolygon() {
+        // Triangle (1,2) (7,10) (-3,6) with each side drawn as a cubic whose controls sit at thirds.
+        double[][] corners = {{1, 2}, {7, 10}, {-3, 6}};
+        double area = 0;
+        double length = 0;
+        for (int i = 0; i < corners.length; i++) {
+            double[] a = corners[i];
+            double[] b = corners[(i + 1) % corners.length];
+            double[] c = straight(a[0], a[1], b[0], b[1]);
+            area += BezierMath.cubicSignedArea(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]);
+            length += BezierMath.cubicLength(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7], 1e-9);
+        }
+
+        assertEquals(28, area, 1e-9);
+        assertEquals(10 + Math.hypot(10, 4) + Math.hypot(4, 4), length, 1e-9);
+    }
+
+    @Test
+    void circleQuadrantMatchesKnownAreaAndLength() {
+        double r = 10;
+
+        // The radii through the origin add nothing to the area, so the arc term alone is the quadrant.
+        double area = BezierMath.cubicSignedArea(r, 0, r, KAPPA * r, KAPPA * r, r, 0, r);
+        double length = BezierMath.cubicLength(r, 0, r, KAPPA * r, KAPPA * r, r, 0, r, 1e-9);
+
+        // The standard cubic quarter circle strays from the true arc by under 0.03% of the radius.
+        assertEquals(Math.PI * r * r / 4, area, Math.PI * r * r / 4 * 3e-4);
+        assertEquals(Math.PI * r / 2, length, Math.PI * r / 2 * 3e-4);
+    }
+
+    @Test
+    void randomCubicsMatchDenseIntegration() {
+        Random random = new Random(3);
+        for (int round = 0; round < 50; round++) {
+            double[] c = new double[8];
+            for (int i = 0; i < c.length; i++) {
+                c[i] = random.nextDouble() * 100 - 50;
+            }
+            double[] dense = denseAreaAndLength(c, 200_000);
+
+            assertEquals(dense[0], BezierMath.cubicSignedArea(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]), 1e-4);
+            assertEquals(dense[1], BezierMath.cubicLength(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7], 1e-9),
+                    1e-4);
+        }
+    }
+
+    @Test
+    void degenerateCubicHasNoAreaOrLength() {
+        assertEquals(0, BezierMath.cubicSignedArea(3, 4, 3, 4, 3, 4, 3, 4), 0);
+        assertEquals(0, BezierMath.cubicLength(3, 4, 3, 4, 3, 4, 3, 4, 1e-9), 0);
+    }
+
+    private static double[] straight(double x0, double y0, double x3, double y3) {
+        return new double[]{x0, y0, x0 + (x3 - x0) / 3, y0 + (y3 - y0) / 3,
+                x0 + 2 * (x3 - x0) / 3, y0 + 2 * (y3 - y0) / 3, x3, y3};
+    }
+
+    private static double[] denseAreaAndLength(double[] c, int steps) {
+        double area = 0;
+        double length = 0;
+        double previousX = c[0];
+        double previousY = c[1];
+        for (int i = 1; i <= steps; i++) {
+            double t = (double) i / steps;
+            double u = 1 - t;
+            double x = u * u * u * c[0] + 3 * u * u * t * c[2] + 3 * u * t * t * c[4] + t * t * t * c[6];
+            double y = u * u * u * c[1] + 3 * u * u * t * c[3] + 3 * u * t * t * c[5] + t * t * t * c[7];
+            area += (previousX * y - x * previousY) / 2;
+            length += Math.hypot(x - previousX, y - previousY);
+            previousX = x;
+            previousY = y;
+        }
+        return new double[]{area, length};
+    }
+}
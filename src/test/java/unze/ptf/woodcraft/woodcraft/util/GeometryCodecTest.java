@@ -0,0 +1,59 @@
+package unze.ptf.woodcraft.woodcraft.util;
+
+import javafx.geometry.Point2D;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeometryCodecTest {
+    @Test
+    void idsRoundTrip() {
+        List<Integer> ids = List.of(5, 3, 1_000_000, -7, 0, Integer.MAX_VALUE, Integer.MIN_VALUE);
+
+        assertEquals(ids, GeometryCodec.decodeIds(GeometryCodec.encodeIds(ids)));
+    }
+
+    @Test
+    void closeIdsPackSmallerThanText() {
+        List<Integer> ids = List.of(10_001, 10_002, 10_005, 10_003, 10_004);
+
+        byte[] packed = GeometryCodec.encodeIds(ids);
+
+        assertTrue(packed.length < GeometryCodec.formatIds(ids).length());
+    }
+
+    @Test
+    void emptyAndMissingIdsDecodeToEmpty() {
+        assertEquals(List.of(), GeometryCodec.decodeIds(GeometryCodec.encodeIds(List.of())));
+        assertEquals(List.of(), GeometryCodec.decodeIds(GeometryCodec.encodeIds(null)));
+        assertEquals(List.of(), GeometryCodec.decodeIds(null));
+        assertEquals(List.of(), GeometryCodec.decodeIds(new byte[0]));
+    }
+
+    @Test
+    void legacyTextIdsStillDecode() {
+        byte[] text = "4, 8,x,15".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(List.of(4, 8, 15), GeometryCodec.decodeIds(text));
+    }
+
+    @Test
+    void pointsRoundTripExactly() {
+        List<Point2D> points = List.of(new Point2D(0, 0), new Point2D(0.1, -12.75), new Point2D(1e-9, 244.0));
+
+        assertEquals(points, GeometryCodec.decodePoints(GeometryCodec.encodePoints(points)));
+    }
+
+    @Test
+    void legacyTextPointsStillDecode() {
+        List<Point2D> points = List.of(new Point2D(1.5, 2.0), new Point2D(-3.0, 4.25));
+        byte[] text = GeometryCodec.formatPoints(points).getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(points, GeometryCodec.decodePoints(text));
+        assertEquals(points, GeometryCodec.parsePoints("1.5:2.0, bad ,-3.0:4.25"));
+    }
+}
@@ -0,0 +1,94 @@
+package unze.ptf.woodcraft.woodcraft.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class PersistentIntMapTest {
+    @Test
+    void matchesTreeMapUnderRandomEdits() {
+        Random random = new Random(7);
+        PersistentIntMap<String> map = PersistentIntMap.empty();
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            // Mostly small keys so that removals hit, with some spread across the whole int range.
+            int key = random.nextInt(10) == 0 ? random.nextInt(Integer.MAX_VALUE) : random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                map = map.remove(key);
+                expected.remove(key);
+            } else {
+                String value = "v" + i;
+                map = map.put(key, value);
+                expected.put(key, value);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(new ArrayList<>(expected.values()), map.values());
+        for (int key = 0; key < 2_000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test
+    void earlierVersionsAreUnchanged() {
+        PersistentIntMap<String> first = PersistentIntMap.<String>empty().put(1, "a").put(40, "b").put(1_000, "c");
+        PersistentIntMap<String> second = first.put(40, "B").remove(1).put(33, "d");
+
+        assertEquals(List.of("a", "b", "c"), first.values());
+        assertEquals(3, first.size());
+        assertEquals(List.of("d", "B", "c"), second.values());
+        assertEquals(3, second.size());
+    }
+
+    @Test
+    void diffReportsOnlyChangedKeys() {
+        PersistentIntMap<String> older = PersistentIntMap.empty();
+        for (int key = 0; key < 5_000; key++) {
+            older = older.put(key, "v" + key);
+        }
+        PersistentIntMap<String> newer = older.put(7, "changed").remove(4_000).put(Integer.MAX_VALUE, "added");
+        Map<Integer, List<String>> changes = new TreeMap<>();
+
+        newer.diff(older, (key, before, after) -> changes.put(key, Arrays.asList(before, after)));
+
+        assertEquals(Map.of(7, Arrays.asList("v7", "changed"), 4_000, Arrays.asList("v4000", null),
+                Integer.MAX_VALUE, Arrays.asList(null, "added")), changes);
+        older.diff(older, (key, before, after) -> fail("unchanged map reported " + key));
+    }
+
+    @Test
+    void noOpEditsReturnSameInstance() {
+        String value = "a";
+        PersistentIntMap<String> map = PersistentIntMap.<String>empty().put(5, value);
+
+        assertSame(map, map.put(5, value));
+        assertSame(map, map.remove(6));
+        assertTrue(map.remove(5).isEmpty());
+    }
+
+    @Test
+    void extremeAndNegativeKeys() {
+        PersistentIntMap<String> map = PersistentIntMap.<String>empty().put(0, "zero").put(Integer.MAX_VALUE, "max");
+
+        assertEquals("zero", map.get(0));
+        assertEquals("max", map.get(Integer.MAX_VALUE));
+        assertNull(map.get(-1));
+        assertFalse(map.containsKey(Integer.MIN_VALUE));
+        assertSame(map, map.remove(-1));
+        assertThrows(IllegalArgumentException.class, () -> map.put(-1, "negative"));
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, null));
+    }
+}
@@ -0,0 +1,66 @@
+package unze.ptf.woodcraft.woodcraft.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RTreeTest {
+    @Test
+    void searchMatchesBruteForce() {
+        Random random = new Random(9);
+        List<double[]> bounds = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            double x = random.nextDouble() * 1_000;
+            double y = random.nextDouble() * 1_000;
+            bounds.add(new double[]{x, y, x + random.nextDouble() * 40, y + random.nextDouble() * 40});
+        }
+        RTree tree = RTree.pack(bounds);
+        assertEquals(bounds.size(), tree.size());
+
+        for (int query = 0; query < 200; query++) {
+            double x = random.nextDouble() * 1_000;
+            double y = random.nextDouble() * 1_000;
+            double size = query % 10 == 0 ? 0 : random.nextDouble() * 120;
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < bounds.size(); i++) {
+                double[] box = bounds.get(i);
+                if (box[0] <= x + size && box[2] >= x && box[1] <= y + size && box[3] >= y) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> found = new ArrayList<>();
+            tree.search(x, y, x + size, y + size, found::add);
+            found.sort(null);
+
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    void pointSearchFindsNestedBoxes() {
+        RTree tree = RTree.pack(List.of(new double[]{0, 0, 100, 100}, new double[]{10, 10, 20, 20},
+                new double[]{50, 50, 60, 60}));
+        List<Integer> found = new ArrayList<>();
+
+        tree.searchPoint(15, 15, found::add);
+        found.sort(null);
+
+        assertEquals(List.of(0, 1), found);
+    }
+
+    @Test
+    void emptyTreeFindsNothing() {
+        RTree tree = RTree.pack(List.of());
+        List<Integer> found = new ArrayList<>();
+
+        tree.search(-1e9, -1e9, 1e9, 1e9, found::add);
+
+        assertEquals(0, tree.size());
+        assertTrue(found.isEmpty());
+    }
+}
@@ -0,0 +1,119 @@
+package unze.ptf.woodcraft.woodcraft.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpatialGridTest {
+    @Test
+    void queriesMatchBruteForceUnderRandomEdits() {
+        Random random = new Random(11);
+        SpatialGrid grid = new SpatialGrid(10);
+        Map<Integer, double[]> expected = new HashMap<>();
+        for (int step = 0; step < 5_000; step++) {
+            int id = random.nextInt(300);
+            if (random.nextInt(4) == 0) {
+                grid.remove(id);
+                expected.remove(id);
+            } else {
+                double x = random.nextDouble() * 400 - 200;
+                double y = random.nextDouble() * 400 - 200;
+                // A few items span far more cells than the grid indexes per item.
+                double size = random.nextInt(20) == 0 ? 150 : random.nextDouble() * 25;
+                double[] box = {x, y, x + size, y + random.nextDouble() * size};
+                grid.put(id, box[0], box[1], box[2], box[3]);
+                expected.put(id, box);
+            }
+            if (step % 25 == 0) {
+                double x = random.nextDouble() * 400 - 200;
+                double y = random.nextDouble() * 400 - 200;
+                double size = random.nextInt(10) == 0 ? 500 : random.nextDouble() * 60;
+                assertQuery(grid, expected, x, y, x + size, y + size);
+            }
+        }
+        assertEquals(expected.size(), grid.size());
+    }
+
+    @Test
+    void pointQueryOnSharedCellBorder() {
+        SpatialGrid grid = new SpatialGrid(10);
+        grid.put(1, 5, 5, 10, 10);
+        grid.put(2, 10, 10, 15, 15);
+
+        assertEquals(List.of(1, 2), sorted(collect(grid, 10, 10, 10, 10)));
+    }
+
+    @Test
+    void movingItemLeavesItsOldCells() {
+        SpatialGrid grid = new SpatialGrid(10);
+        grid.put(1, 0, 0, 5, 5);
+        grid.put(1, 100, 100, 105, 105);
+
+        assertTrue(collect(grid, 0, 0, 6, 6).isEmpty());
+        assertEquals(List.of(1), collect(grid, 101, 101, 102, 102));
+
+        grid.remove(1);
+        assertFalse(grid.contains(1));
+        assertEquals(0, grid.size());
+    }
+
+    @Test
+    void enclosedQueryKeepsOnlyItemsFullyInside() {
+        SpatialGrid grid = new SpatialGrid(10);
+        grid.put(1, 2, 2, 8, 8);
+        grid.put(2, 5, 5, 25, 25);
+        grid.put(3, -500, -500, 500, 500);
+
+        List<Integer> enclosed = new ArrayList<>();
+        grid.queryEnclosed(0, 0, 20, 20, enclosed::add);
+
+        assertEquals(List.of(1), enclosed);
+    }
+
+    @Test
+    void rejectsNonPositiveCellSize() {
+        assertThrows(IllegalArgumentException.class, () -> new SpatialGrid(0));
+        assertThrows(IllegalArgumentException.class, () -> new SpatialGrid(Double.NaN));
+    }
+
+    private static void assertQuery(SpatialGrid grid, Map<Integer, double[]> expected,
+                                    double minX, double minY, double maxX, double maxY) {
+        List<Integer> touching = new ArrayList<>();
+        List<Integer> inside = new ArrayList<>();
+        for (Map.Entry<Integer, double[]> entry : expected.entrySet()) {
+            double[] box = entry.getValue();
+            if (box[0] <= maxX && box[2] >= minX && box[1] <= maxY && box[3] >= minY) {
+                touching.add(entry.getKey());
+                if (box[0] >= minX && box[1] >= minY && box[2] <= maxX && box[3] <= maxY) {
+                    inside.add(entry.getKey());
+                }
+            }
+        }
+        // Sorting the raw results also checks that nothing is reported twice.
+        assertEquals(sorted(touching), sorted(collect(grid, minX, minY, maxX, maxY)));
+        List<Integer> enclosed = new ArrayList<>();
+        grid.queryEnclosed(minX, minY, maxX, maxY, enclosed::add);
+        assertEquals(sorted(inside), sorted(enclosed));
+    }
+
+    private static List<Integer> collect(SpatialGrid grid, double minX, double minY, double maxX, double maxY) {
+        List<Integer> found = new ArrayList<>();
+        grid.query(minX, minY, maxX, maxY, found::add);
+        return found;
+    }
+
+    private static List<Integer> sorted(List<Integer> ids) {
+        List<Integer> copy = new ArrayList<>(ids);
+        copy.sort(null);
+        return copy;
+    }
+}